@@ -28,12 +28,19 @@ import com.google.common.primitives.Primitives;
 import edu.mit.streamjit.impl.blob.AbstractReadOnlyBuffer;
 import edu.mit.streamjit.impl.blob.Buffer;
 import edu.mit.streamjit.impl.blob.Buffers;
+import edu.mit.streamjit.impl.blob.ConcurrentArrayBuffer;
+import edu.mit.streamjit.impl.blob.DoubleSPSCRingBuffer;
+import edu.mit.streamjit.impl.blob.FloatSPSCRingBuffer;
+import edu.mit.streamjit.impl.blob.IntSPSCRingBuffer;
 import edu.mit.streamjit.impl.blob.PeekableBuffer;
 import edu.mit.streamjit.impl.common.InputBufferFactory;
 import edu.mit.streamjit.impl.common.NIOBuffers;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
@@ -41,7 +48,7 @@ import java.nio.file.StandardOpenOption;
 import java.util.Iterator;
 import java.util.List;
 import java.util.RandomAccess;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A source of input to a stream graph.
@@ -62,6 +69,20 @@ public class Input<I> {
 		return input.toString();
 	}
 
+	/**
+	 * An Input fed by the application after the stream is compiled.  The
+	 * nonblocking offer methods return how much they wrote; the timed variants
+	 * wait (without spinning) for the stream to free up space.
+	 * <p/>
+	 * ManualInputs from createManualInput() are backed by a lock-free bounded
+	 * queue and may be offered to by any number of threads.  ManualInputs from createSingleProducerManualInput() are backed
+	 * by a lock-free single-producer ring, which is faster but requires that
+	 * the offer methods be called by only one thread at a time (with
+	 * happens-before between successive producers); concurrent offers corrupt
+	 * the ring without any error.  Those created with a primitive wrapper type
+	 * accept primitive arrays and NIO buffers of that type without boxing.
+	 * Other ManualInputs accept them too, but box each item.
+	 */
 	public static final class ManualInput<I> extends Input<I> {
 		static {
 			InputBufferFactory.MANUALINPUT_LOOKUP = MethodHandles.lookup();
@@ -71,12 +92,13 @@ public class Input<I> {
 		private ManualInput(InputBufferFactory input) {
 			super(input);
 		}
-		private static <I> ManualInput<I> create() {
+		private static <I> ManualInput<I> create(Class<?> type, int capacity, boolean singleProducer) {
 			class ManualRealInput extends InputBufferFactory {
 				private ManualInput<?> manualInput;
 				@Override
 				public Buffer createReadableBuffer(int readerMinSize) {
-					return Buffers.blockingQueueBuffer(new ArrayBlockingQueue<>(readerMinSize), false, false);
+					int size = Math.max(Math.max(readerMinSize, capacity), 1);
+					return singleProducer ? Buffers.spscBuffer(type, size) : new ConcurrentArrayBuffer(size);
 				}
 				@Override
 				public String toString() {
@@ -88,19 +110,178 @@ public class Input<I> {
 			mri.manualInput = mi;
 			return mi;
 		}
+		private InputBufferFactory.ManualInputDelegate<I> delegate() {
+			InputBufferFactory.ManualInputDelegate<I> d = delegate;
+			checkState(d != null, "not yet connected to a compiled stream");
+			return d;
+		}
+		/**
+		 * Offers a boxed primitive item, for ManualInputs not backed by a
+		 * ring of its primitive type.
+		 */
+		@SuppressWarnings("unchecked")
+		private static <I> boolean offerBoxed(InputBufferFactory.ManualInputDelegate<I> d, Object item) {
+			return d.offer((I)item);
+		}
 		public boolean offer(I t) {
-			return delegate.offer(t);
+			return delegate().offer(checkNotNull(t));
 		}
 		public int offer(I[] data, int offset, int length) {
-			return delegate.offer(data, offset, length);
+			checkPositionIndexes(offset, offset + length, data.length);
+			return delegate().offer(data, offset, length);
+		}
+		public int offer(int[] data, int offset, int length) {
+			checkPositionIndexes(offset, offset + length, data.length);
+			InputBufferFactory.ManualInputDelegate<I> d = delegate();
+			Buffer b = d.buffer();
+			if (b instanceof IntSPSCRingBuffer)
+				return ((IntSPSCRingBuffer)b).write(data, offset, length);
+			for (int i = 0; i < length; ++i)
+				if (!offerBoxed(d, data[offset + i]))
+					return i;
+			return length;
+		}
+		/**
+		 * Offers the given buffer's remaining items, advancing its position
+		 * past those written.
+		 * @param data the items to offer
+		 * @return the number of items written
+		 */
+		public int offer(IntBuffer data) {
+			InputBufferFactory.ManualInputDelegate<I> d = delegate();
+			Buffer b = d.buffer();
+			if (b instanceof IntSPSCRingBuffer)
+				return ((IntSPSCRingBuffer)b).write(data);
+			int start = data.position();
+			while (data.hasRemaining() && offerBoxed(d, data.get(data.position())))
+				data.get();
+			return data.position() - start;
+		}
+		public int offer(float[] data, int offset, int length) {
+			checkPositionIndexes(offset, offset + length, data.length);
+			InputBufferFactory.ManualInputDelegate<I> d = delegate();
+			Buffer b = d.buffer();
+			if (b instanceof FloatSPSCRingBuffer)
+				return ((FloatSPSCRingBuffer)b).write(data, offset, length);
+			for (int i = 0; i < length; ++i)
+				if (!offerBoxed(d, data[offset + i]))
+					return i;
+			return length;
+		}
+		/**
+		 * Offers the given buffer's remaining items, advancing its position
+		 * past those written.
+		 * @param data the items to offer
+		 * @return the number of items written
+		 */
+		public int offer(FloatBuffer data) {
+			InputBufferFactory.ManualInputDelegate<I> d = delegate();
+			Buffer b = d.buffer();
+			if (b instanceof FloatSPSCRingBuffer)
+				return ((FloatSPSCRingBuffer)b).write(data);
+			int start = data.position();
+			while (data.hasRemaining() && offerBoxed(d, data.get(data.position())))
+				data.get();
+			return data.position() - start;
+		}
+		public int offer(double[] data, int offset, int length) {
+			checkPositionIndexes(offset, offset + length, data.length);
+			InputBufferFactory.ManualInputDelegate<I> d = delegate();
+			Buffer b = d.buffer();
+			if (b instanceof DoubleSPSCRingBuffer)
+				return ((DoubleSPSCRingBuffer)b).write(data, offset, length);
+			for (int i = 0; i < length; ++i)
+				if (!offerBoxed(d, data[offset + i]))
+					return i;
+			return length;
+		}
+		/**
+		 * Offers the given buffer's remaining items, advancing its position
+		 * past those written.
+		 * @param data the items to offer
+		 * @return the number of items written
+		 */
+		public int offer(DoubleBuffer data) {
+			InputBufferFactory.ManualInputDelegate<I> d = delegate();
+			Buffer b = d.buffer();
+			if (b instanceof DoubleSPSCRingBuffer)
+				return ((DoubleSPSCRingBuffer)b).write(data);
+			int start = data.position();
+			while (data.hasRemaining() && offerBoxed(d, data.get(data.position())))
+				data.get();
+			return data.position() - start;
+		}
+		/**
+		 * Offers the given item, waiting up to the given timeout for space.
+		 * @param t the item to offer
+		 * @param timeout the maximum time to wait
+		 * @param unit the unit of timeout
+		 * @return true iff the item was written
+		 * @throws InterruptedException if interrupted while waiting
+		 */
+		public boolean offer(I t, long timeout, TimeUnit unit) throws InterruptedException {
+			checkNotNull(t);
+			return Buffers.transferWithTimeout((done, remaining) -> offer(t) ? 1 : 0, 1, timeout, unit) == 1;
+		}
+		/**
+		 * Offers the given items, waiting up to the given timeout for space
+		 * for all of them.
+		 * @param data the array containing the items
+		 * @param offset the offset of the first item
+		 * @param length the number of items
+		 * @param timeout the maximum time to wait
+		 * @param unit the unit of timeout
+		 * @return the number of items written
+		 * @throws InterruptedException if interrupted while waiting (some
+		 * items may have been written)
+		 */
+		public int offer(I[] data, int offset, int length, long timeout, TimeUnit unit) throws InterruptedException {
+			return Buffers.transferWithTimeout((done, remaining) -> offer(data, offset + done, remaining), length, timeout, unit);
+		}
+		public int offer(int[] data, int offset, int length, long timeout, TimeUnit unit) throws InterruptedException {
+			return Buffers.transferWithTimeout((done, remaining) -> offer(data, offset + done, remaining), length, timeout, unit);
+		}
+		public int offer(float[] data, int offset, int length, long timeout, TimeUnit unit) throws InterruptedException {
+			return Buffers.transferWithTimeout((done, remaining) -> offer(data, offset + done, remaining), length, timeout, unit);
+		}
+		public int offer(double[] data, int offset, int length, long timeout, TimeUnit unit) throws InterruptedException {
+			return Buffers.transferWithTimeout((done, remaining) -> offer(data, offset + done, remaining), length, timeout, unit);
 		}
 		public void drain() {
-			delegate.drain();
+			delegate().drain();
 		}
 	}
 
 	public static <I> ManualInput<I> createManualInput() {
-		return ManualInput.create();
+		return ManualInput.create(Object.class, 0, false);
+	}
+
+	/**
+	 * Creates a ManualInput, safe for use by multiple threads, whose buffer
+	 * holds at least the given number of items (more if the stream requires
+	 * it).
+	 * @param <I> the type of Input to create
+	 * @param capacity the minimum buffer capacity
+	 * @return a ManualInput
+	 */
+	public static <I> ManualInput<I> createManualInput(int capacity) {
+		checkArgument(capacity >= 0, "bad capacity: %s", capacity);
+		return ManualInput.create(Object.class, capacity, false);
+	}
+
+	/**
+	 * Creates a ManualInput of the given type backed by a lock-free
+	 * single-producer ring holding at least the given number of items (more
+	 * if the stream requires it).  Wrapper types select an unboxed ring.  Only
+	 * one thread at a time may call the returned ManualInput's offer methods.
+	 * @param <I> the type of Input to create
+	 * @param type the type of the items
+	 * @param capacity the minimum buffer capacity
+	 * @return a ManualInput
+	 */
+	public static <I> ManualInput<I> createSingleProducerManualInput(Class<I> type, int capacity) {
+		checkArgument(capacity >= 0, "bad capacity: %s", capacity);
+		return ManualInput.create(checkNotNull(type), capacity, true);
 	}
 
 	public static <I> Input<I> empty() {
@@ -21,14 +21,27 @@
  */
 package edu.mit.streamjit.api;
 
+import static com.google.common.base.Preconditions.*;
+import com.google.common.primitives.Primitives;
 import edu.mit.streamjit.impl.blob.AbstractWriteOnlyBuffer;
 import edu.mit.streamjit.impl.blob.Buffer;
 import edu.mit.streamjit.impl.blob.Buffers;
+import edu.mit.streamjit.impl.blob.ConcurrentArrayBuffer;
+import edu.mit.streamjit.impl.blob.DoubleSPSCRingBuffer;
+import edu.mit.streamjit.impl.blob.FloatSPSCRingBuffer;
+import edu.mit.streamjit.impl.blob.IntSPSCRingBuffer;
+import edu.mit.streamjit.impl.common.BinaryFileOutputBuffer;
 import edu.mit.streamjit.impl.common.OutputBufferFactory;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.invoke.MethodHandles;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
 import java.util.Collection;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -49,18 +62,33 @@ public class Output<O> {
 		return output.toString();
 	}
 
+	/**
+	 * An Output read by the application while the stream runs.  The
+	 * nonblocking poll methods return what is available; the timed variants
+	 * wait (without spinning) for the stream to produce more.
+	 * <p/>
+	 * ManualOutputs from createManualOutput() are backed by a lock-free bounded
+	 * queue and may be polled by any number of threads.  ManualOutputs from createSingleConsumerManualOutput() are
+	 * backed by a lock-free single-consumer ring, which is faster but requires
+	 * that the poll methods be called by only one thread at a time (with
+	 * happens-before between successive consumers); concurrent polls corrupt
+	 * the ring without any error.  Those created with a primitive wrapper type
+	 * fill primitive arrays and NIO buffers of that type without boxing.
+	 * Other ManualOutputs fill them too, but unbox each item.
+	 */
 	public static final class ManualOutput<O> extends Output<O> {
 		//TODO: volatile?
 		private volatile Buffer buffer;
 		private ManualOutput(OutputBufferFactory output) {
 			super(output);
 		}
-		private static <O> ManualOutput<O> create() {
+		private static <O> ManualOutput<O> create(Class<?> type, int capacity, boolean singleConsumer) {
 			class ManualRealOutput extends OutputBufferFactory {
 				private ManualOutput<?> manualOutput;
 				@Override
 				public Buffer createWritableBuffer(int writerMinSize) {
-					Buffer buf = Buffers.blockingQueueBuffer(new ArrayBlockingQueue<>(writerMinSize), false, false);
+					int size = Math.max(Math.max(writerMinSize, capacity), 1);
+					Buffer buf = singleConsumer ? Buffers.spscBuffer(type, size) : new ConcurrentArrayBuffer(size);
 					manualOutput.buffer = buf;
 					return buf;
 				}
@@ -74,17 +102,176 @@ public class Output<O> {
 			mro.manualOutput = mo;
 			return mo;
 		}
+		private Buffer buffer() {
+			Buffer b = buffer;
+			checkState(b != null, "not yet connected to a compiled stream");
+			return b;
+		}
 		@SuppressWarnings("unchecked")
 		public O poll() {
-			return (O)buffer.read();
+			return (O)buffer().read();
 		}
 		public int poll(O[] data, int offset, int length) {
-			return buffer.read(data, offset, length);
+			checkPositionIndexes(offset, offset + length, data.length);
+			return buffer().read(data, offset, length);
+		}
+		public int poll(int[] data, int offset, int length) {
+			checkPositionIndexes(offset, offset + length, data.length);
+			Buffer b = buffer();
+			if (b instanceof IntSPSCRingBuffer)
+				return ((IntSPSCRingBuffer)b).read(data, offset, length);
+			for (int i = 0; i < length; ++i) {
+				Object item = b.read();
+				if (item == null)
+					return i;
+				data[offset + i] = (Integer)item;
+			}
+			return length;
+		}
+		/**
+		 * Polls items into the given buffer's remaining space, advancing its
+		 * position past those read.
+		 * @param data the buffer to fill
+		 * @return the number of items read
+		 */
+		public int poll(IntBuffer data) {
+			Buffer b = buffer();
+			if (b instanceof IntSPSCRingBuffer)
+				return ((IntSPSCRingBuffer)b).read(data);
+			int start = data.position();
+			Object item;
+			while (data.hasRemaining() && (item = b.read()) != null)
+				data.put((Integer)item);
+			return data.position() - start;
+		}
+		public int poll(float[] data, int offset, int length) {
+			checkPositionIndexes(offset, offset + length, data.length);
+			Buffer b = buffer();
+			if (b instanceof FloatSPSCRingBuffer)
+				return ((FloatSPSCRingBuffer)b).read(data, offset, length);
+			for (int i = 0; i < length; ++i) {
+				Object item = b.read();
+				if (item == null)
+					return i;
+				data[offset + i] = (Float)item;
+			}
+			return length;
+		}
+		/**
+		 * Polls items into the given buffer's remaining space, advancing its
+		 * position past those read.
+		 * @param data the buffer to fill
+		 * @return the number of items read
+		 */
+		public int poll(FloatBuffer data) {
+			Buffer b = buffer();
+			if (b instanceof FloatSPSCRingBuffer)
+				return ((FloatSPSCRingBuffer)b).read(data);
+			int start = data.position();
+			Object item;
+			while (data.hasRemaining() && (item = b.read()) != null)
+				data.put((Float)item);
+			return data.position() - start;
+		}
+		public int poll(double[] data, int offset, int length) {
+			checkPositionIndexes(offset, offset + length, data.length);
+			Buffer b = buffer();
+			if (b instanceof DoubleSPSCRingBuffer)
+				return ((DoubleSPSCRingBuffer)b).read(data, offset, length);
+			for (int i = 0; i < length; ++i) {
+				Object item = b.read();
+				if (item == null)
+					return i;
+				data[offset + i] = (Double)item;
+			}
+			return length;
+		}
+		/**
+		 * Polls items into the given buffer's remaining space, advancing its
+		 * position past those read.
+		 * @param data the buffer to fill
+		 * @return the number of items read
+		 */
+		public int poll(DoubleBuffer data) {
+			Buffer b = buffer();
+			if (b instanceof DoubleSPSCRingBuffer)
+				return ((DoubleSPSCRingBuffer)b).read(data);
+			int start = data.position();
+			Object item;
+			while (data.hasRemaining() && (item = b.read()) != null)
+				data.put((Double)item);
+			return data.position() - start;
+		}
+		/**
+		 * Polls one item, waiting up to the given timeout for one to be
+		 * produced.
+		 * @param timeout the maximum time to wait
+		 * @param unit the unit of timeout
+		 * @return the item, or null if none was produced in time
+		 * @throws InterruptedException if interrupted while waiting
+		 */
+		@SuppressWarnings("unchecked")
+		public O poll(long timeout, TimeUnit unit) throws InterruptedException {
+			Object[] item = new Object[1];
+			Buffers.transferWithTimeout((done, remaining) -> buffer().read(item, 0, 1), 1, timeout, unit);
+			return (O)item[0];
+		}
+		/**
+		 * Polls items, waiting up to the given timeout for enough to be
+		 * produced to fill the given range.
+		 * @param data the array to fill
+		 * @param offset the offset to begin filling at
+		 * @param length the number of items wanted
+		 * @param timeout the maximum time to wait
+		 * @param unit the unit of timeout
+		 * @return the number of items read
+		 * @throws InterruptedException if interrupted while waiting (some
+		 * items may have been read)
+		 */
+		public int poll(O[] data, int offset, int length, long timeout, TimeUnit unit) throws InterruptedException {
+			return Buffers.transferWithTimeout((done, remaining) -> poll(data, offset + done, remaining), length, timeout, unit);
+		}
+		public int poll(int[] data, int offset, int length, long timeout, TimeUnit unit) throws InterruptedException {
+			return Buffers.transferWithTimeout((done, remaining) -> poll(data, offset + done, remaining), length, timeout, unit);
+		}
+		public int poll(float[] data, int offset, int length, long timeout, TimeUnit unit) throws InterruptedException {
+			return Buffers.transferWithTimeout((done, remaining) -> poll(data, offset + done, remaining), length, timeout, unit);
+		}
+		public int poll(double[] data, int offset, int length, long timeout, TimeUnit unit) throws InterruptedException {
+			return Buffers.transferWithTimeout((done, remaining) -> poll(data, offset + done, remaining), length, timeout, unit);
 		}
 	}
 
 	public static <O> ManualOutput<O> createManualOutput() {
-		return ManualOutput.create();
+		return ManualOutput.create(Object.class, 0, false);
+	}
+
+	/**
+	 * Creates a ManualOutput, safe for use by multiple threads, whose buffer
+	 * holds at least the given number of items (more if the stream requires
+	 * it).
+	 * @param <O> the type of Output to create
+	 * @param capacity the minimum buffer capacity
+	 * @return a ManualOutput
+	 */
+	public static <O> ManualOutput<O> createManualOutput(int capacity) {
+		checkArgument(capacity >= 0, "bad capacity: %s", capacity);
+		return ManualOutput.create(Object.class, capacity, false);
+	}
+
+	/**
+	 * Creates a ManualOutput of the given type backed by a lock-free
+	 * single-consumer ring holding at least the given number of items (more
+	 * if the stream requires it).  Wrapper types select an unboxed ring.  Only
+	 * one thread at a time may call the returned ManualOutput's poll methods.
+	 * @param <O> the type of Output to create
+	 * @param type the type of the items
+	 * @param capacity the minimum buffer capacity
+	 * @return a ManualOutput
+	 */
+	public static <O> ManualOutput<O> createSingleConsumerManualOutput(Class<O> type, int capacity) {
+		checkArgument(capacity >= 0, "bad capacity: %s", capacity);
+		return ManualOutput.create(checkNotNull(type), capacity, true);
 	}
 
 	public static <O> Output<O> blackHole() {
@@ -101,10 +288,37 @@ public class Output<O> {
 		});
 	}
 
-	//TODO: we need flush() for good performance, and close() to avoid leaks.
-//	public static <O> Output<O> toBinaryFile(Path path, Class<I> type) {
-//
-//	}
+	/**
+	 * Creates an Output that writes primitives to the given file in the given
+	 * byte order, overwriting it.  The file is written through a large
+	 * staging buffer, then flushed, truncated and closed when the stream
+	 * drains.  This is the inverse of
+	 * {@link Input#fromBinaryFile(Path, Class, ByteOrder)}.
+	 * @param <O> the type of Output to create
+	 * @param path the file to write
+	 * @param type the wrapper type of the items (e.g., Float.class)
+	 * @param byteOrder the byte order to write in
+	 * @return an Output writing to the given file
+	 */
+	public static <O> Output<O> toBinaryFile(Path path, Class<O> type, ByteOrder byteOrder) {
+		checkArgument(Primitives.isWrapperType(type) && !type.equals(Void.class) && !type.equals(Boolean.class),
+				"not a numeric wrapper type: %s", type);
+		checkNotNull(byteOrder);
+		return new Output<>(new OutputBufferFactory() {
+			@Override
+			public Buffer createWritableBuffer(int writerMinSize) {
+				try {
+					return new BinaryFileOutputBuffer(path, type, byteOrder);
+				} catch (IOException ex) {
+					throw new RuntimeException(ex);
+				}
+			}
+			@Override
+			public String toString() {
+				return "Output.toBinaryFile("+path+", "+type.getSimpleName()+".class, "+byteOrder+")";
+			}
+		});
+	}
 
 	public static <O> Output<O> toCollection(final Collection<? super O> coll) {
 		return new Output<>(new OutputBufferFactory() {
@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2013-2014 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.blob;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import java.lang.reflect.Array;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Skeletal implementation of a single-producer, single-consumer ring Buffer.
+ * At most one thread may read and at most one thread may write at any given
+ * time (a handoff between threads must establish a happens-before edge, as a
+ * Phaser or the drain callback does).  This implementation does not block.
+ * <p/>
+ * The ring's length is a power of two so indices can be masked rather than
+ * divided.  The producer's and consumer's sequence counters live in separate
+ * padded objects so they don't share a cache line, and each side caches the
+ * last-seen value of the other side's counter, only rereading it (a volatile
+ * read of a line the other side is writing) when the cached value suggests
+ * the ring is full or empty.  Counters are published with lazySet, which is
+ * all an SPSC handoff needs.
+ * <p/>
+ * Subclasses provide the ring array and per-element boxing; bulk transfers
+ * call the subclass once per contiguous run (at most twice per transfer).
+ * @since 10/17/2026
+ */
+public abstract class AbstractSPSCRingBuffer extends AbstractBuffer {
+	/**
+	 * The ring array, of length mask+1.
+	 */
+	private final Object ring;
+	private final int mask;
+	/**
+	 * head.value is the consumer's read sequence; head.cache is the consumer's
+	 * cached copy of tail.value.
+	 */
+	private final Sequence head = new Sequence();
+	/**
+	 * tail.value is the producer's write sequence; tail.cache is the
+	 * producer's cached copy of head.value.
+	 */
+	private final Sequence tail = new Sequence();
+	/**
+	 * Run after items are written or read, respectively, to wake a parked
+	 * consumer or producer; see onWrite() and onRead().
+	 */
+	private volatile Runnable writeSignal, readSignal;
+
+	/**
+	 * Creates a new ring buffer holding at least the given number of elements
+	 * (rounded up to a power of two).
+	 * @param elementType the ring's element type (a primitive type for an
+	 * unboxed ring)
+	 * @param capacity the minimum capacity
+	 */
+	protected AbstractSPSCRingBuffer(Class<?> elementType, int capacity) {
+		checkArgument(capacity > 0, "bad capacity: %s", capacity);
+		checkArgument(capacity <= 1 << 30, "capacity too large: %s", capacity);
+		int length = Integer.highestOneBit(capacity);
+		if (length < capacity)
+			length <<= 1;
+		this.ring = Array.newInstance(elementType, length);
+		this.mask = length - 1;
+	}
+
+	/**
+	 * Returns the ring array for subclasses to cache in a typed field.
+	 * @return the ring array
+	 */
+	protected final Object ring() {
+		return ring;
+	}
+
+	/**
+	 * Returns this ring's element type.
+	 * @return this ring's element type
+	 */
+	public final Class<?> elementType() {
+		return ring.getClass().getComponentType();
+	}
+
+	/**
+	 * Returns the element at the given ring index, boxing if necessary.  The
+	 * Object variant also clears the slot.
+	 */
+	protected abstract Object take(int index);
+	/**
+	 * Stores the given element at the given ring index, unboxing if necessary.
+	 */
+	protected abstract void put(int index, Object element);
+	/**
+	 * Copies length elements beginning at the given ring index into the given
+	 * array.  The range does not wrap around the end of the ring.
+	 */
+	protected abstract void copyOut(int index, Object[] data, int offset, int length);
+	/**
+	 * Copies length elements from the given array into the ring beginning at
+	 * the given ring index.  The range does not wrap around the end of the
+	 * ring.
+	 */
+	protected abstract void copyIn(Object[] data, int offset, int index, int length);
+
+	@Override
+	public final Object read() {
+		long h = head.value;
+		if (readable(h, 1) == 0)
+			return null;
+		Object e = take((int)h & mask);
+		SEQUENCE.lazySet(head, h + 1);
+		signal(readSignal);
+		return e;
+	}
+
+	@Override
+	public final int read(Object[] data, int offset, int length) {
+		long h = head.value;
+		int n = readable(h, length);
+		if (n == 0)
+			return 0;
+		int index = (int)h & mask;
+		int first = Math.min(n, mask + 1 - index);
+		copyOut(index, data, offset, first);
+		if (first < n)
+			copyOut(0, data, offset + first, n - first);
+		SEQUENCE.lazySet(head, h + n);
+		signal(readSignal);
+		return n;
+	}
+
+	@Override
+	public final boolean readAll(Object[] data, int offset) {
+		int required = data.length - offset;
+		checkArgument(required <= capacity(), "readAll of %s items can never succeed with capacity %s", required, capacity());
+		if (readable(head.value, required) < required)
+			return false;
+		int read = read(data, offset, required);
+		assert read == required;
+		return true;
+	}
+
+	@Override
+	public final boolean write(Object t) {
+		long t0 = tail.value;
+		if (writable(t0, 1) == 0)
+			return false;
+		put((int)t0 & mask, t);
+		SEQUENCE.lazySet(tail, t0 + 1);
+		signal(writeSignal);
+		return true;
+	}
+
+	@Override
+	public final int write(Object[] data, int offset, int length) {
+		long t0 = tail.value;
+		int n = writable(t0, length);
+		if (n == 0)
+			return 0;
+		int index = (int)t0 & mask;
+		int first = Math.min(n, mask + 1 - index);
+		copyIn(data, offset, index, first);
+		if (first < n)
+			copyIn(data, offset + first, 0, n - first);
+		SEQUENCE.lazySet(tail, t0 + n);
+		signal(writeSignal);
+		return n;
+	}
+
+	/**
+	 * Reads up to length elements into the given array, which must be an
+	 * array of this ring's element type, without boxing.  Primitive
+	 * subclasses expose this through typed overloads.
+	 * @param data the array to write into
+	 * @param offset the offset to begin writing at
+	 * @param length the maximum number of elements to read
+	 * @param all if true, read length elements or nothing
+	 * @return the number of elements read
+	 */
+	protected final int readRaw(Object data, int offset, int length, boolean all) {
+		return readRuns(length, all, (index, done, n) -> System.arraycopy(ring, index, data, offset + done, n));
+	}
+
+	/**
+	 * Writes up to length elements from the given array, which must be an
+	 * array of this ring's element type, without unboxing.
+	 * @param data the array to read from
+	 * @param offset the offset to begin reading from
+	 * @param length the maximum number of elements to write
+	 * @return the number of elements written
+	 */
+	protected final int writeRaw(Object data, int offset, int length) {
+		return writeRuns(length, (index, done, n) -> System.arraycopy(data, offset + done, ring, index, n));
+	}
+
+	/**
+	 * Copies one contiguous run of ring slots to or from somewhere else.
+	 */
+	@FunctionalInterface
+	protected interface RunCopier {
+		/**
+		 * @param index the ring index of the run
+		 * @param done the number of elements copied by previous runs
+		 * @param length the length of the run
+		 */
+		public void copy(int index, int done, int length);
+	}
+
+	/**
+	 * Reads up to length elements by passing each contiguous run of readable
+	 * slots to the given copier (which must copy out of the ring array), then
+	 * publishing the read.
+	 * @param length the maximum number of elements to read
+	 * @param all if true, read length elements or nothing
+	 * @param copier copies runs out of the ring
+	 * @return the number of elements read
+	 */
+	protected final int readRuns(int length, boolean all, RunCopier copier) {
+		checkArgument(!all || length <= capacity(), "readAll of %s items can never succeed with capacity %s", length, capacity());
+		long h = head.value;
+		int n = readable(h, length);
+		if (n == 0 || (all && n < length))
+			return 0;
+		int index = (int)h & mask;
+		int first = Math.min(n, mask + 1 - index);
+		copier.copy(index, 0, first);
+		if (first < n)
+			copier.copy(0, first, n - first);
+		SEQUENCE.lazySet(head, h + n);
+		signal(readSignal);
+		return n;
+	}
+
+	/**
+	 * Writes up to length elements by passing each contiguous run of writable
+	 * slots to the given copier (which must copy into the ring array), then
+	 * publishing the write.
+	 * @param length the maximum number of elements to write
+	 * @param copier copies runs into the ring
+	 * @return the number of elements written
+	 */
+	protected final int writeRuns(int length, RunCopier copier) {
+		long t0 = tail.value;
+		int n = writable(t0, length);
+		if (n == 0)
+			return 0;
+		int index = (int)t0 & mask;
+		int first = Math.min(n, mask + 1 - index);
+		copier.copy(index, 0, first);
+		if (first < n)
+			copier.copy(0, first, n - first);
+		SEQUENCE.lazySet(tail, t0 + n);
+		signal(writeSignal);
+		return n;
+	}
+
+	/**
+	 * Sets the action to run after items are written to this buffer, for use
+	 * by an idle strategy to wake the (single) reader.  Replaces any
+	 * previously-set action; null removes it.  The action runs on the writer's
+	 * thread, so it should be cheap and must not block.
+	 * @param signal the action to run after writes, or null
+	 */
+	public final void onWrite(Runnable signal) {
+		this.writeSignal = signal;
+	}
+
+	/**
+	 * Sets the action to run after items are read from this buffer, for use by
+	 * an idle strategy to wake the (single) writer.  Replaces any
+	 * previously-set action; null removes it.
+	 * @param signal the action to run after reads, or null
+	 */
+	public final void onRead(Runnable signal) {
+		this.readSignal = signal;
+	}
+
+	private static void signal(Runnable signal) {
+		if (signal != null)
+			signal.run();
+	}
+
+	/**
+	 * Returns how many of the wanted elements the consumer can read, only
+	 * rereading the producer's sequence if the cached copy is insufficient.
+	 */
+	private int readable(long h, int wanted) {
+		long available = head.cache - h;
+		if (available < wanted) {
+			head.cache = tail.value;
+			available = head.cache - h;
+		}
+		return (int)Math.min(available, wanted);
+	}
+
+	/**
+	 * Returns how many of the wanted elements the producer can write, only
+	 * rereading the consumer's sequence if the cached copy is insufficient.
+	 */
+	private int writable(long t0, int wanted) {
+		int capacity = mask + 1;
+		long available = capacity - (t0 - tail.cache);
+		if (available < wanted) {
+			tail.cache = head.value;
+			available = capacity - (t0 - tail.cache);
+		}
+		return (int)Math.min(available, wanted);
+	}
+
+	@Override
+	public final int size() {
+		//Read head before tail so the reader sees a lower bound and the writer
+		//sees an upper bound, as Buffer.size() promises.
+		long h = head.value;
+		long t = tail.value;
+		return (int)Math.max(0, Math.min(t - h, mask + 1));
+	}
+
+	@Override
+	public final int capacity() {
+		return mask + 1;
+	}
+
+	private static final AtomicLongFieldUpdater<SequenceValue> SEQUENCE =
+			AtomicLongFieldUpdater.newUpdater(SequenceValue.class, "value");
+
+	/*
+	 * HotSpot lays out superclass fields before subclass fields, so padding
+	 * via inheritance keeps value and cache on their own cache line(s).
+	 */
+	@SuppressWarnings("unused")
+	private static class LeftPadding {
+		private long p0, p1, p2, p3, p4, p5, p6, p7;
+	}
+	private static class SequenceValue extends LeftPadding {
+		/**
+		 * This side's sequence; written only by the owning side.
+		 */
+		volatile long value;
+		/**
+		 * The owning side's cached copy of the other side's sequence.
+		 */
+		long cache;
+	}
+	@SuppressWarnings("unused")
+	private static final class Sequence extends SequenceValue {
+		private long q0, q1, q2, q3, q4, q5, q6, q7;
+	}
+}
@@ -74,6 +74,22 @@ public interface Blob {
 	 */
 	public int getMinimumBufferCapacity(Token token);
 
+	/**
+	 * Returns the type of the data items on the edge represented by the given
+	 * token, as far as this Blob knows.  Blobs that unbox their storage report
+	 * the primitive type, which lets the runtime create an unboxed Buffer for
+	 * the edge; Blobs that don't know return Object.class (the default).
+	 * @param token the edge to get the element type for
+	 * @return the element type of the given edge, or Object.class
+	 * @throws IllegalArgumentException if the given token is not an input or
+	 * output edge of this Blob
+	 */
+	public default Class<?> getElementType(Token token) {
+		checkArgument(getInputs().contains(token) || getOutputs().contains(token),
+				"%s not an input or output of this blob", token);
+		return Object.class;
+	}
+
 	/**
 	 * Installs buffers for this Blob's input and output edges.
 	 * @param buffers an immutable map of tokens to the buffer on the corresponding
@@ -25,10 +25,16 @@ import static com.google.common.base.Preconditions.*;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
+import com.google.common.primitives.Primitives;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntBinaryOperator;
 
 /**
  * Contains static methods related to Buffer instances.
@@ -201,6 +207,105 @@ public final class Buffers {
 		}
 	}
 
+	/**
+	 * Returns a nonblocking Buffer for an edge with exactly one reader and one
+	 * writer, unboxed if the given element type is int, float or double (or
+	 * their wrappers).  The returned buffer's capacity is the given capacity
+	 * rounded up to a power of two.
+	 * @param elementType the type of the items on the edge, or Object.class if
+	 * unknown
+	 * @param capacity the minimum capacity
+	 * @return an SPSC ring buffer
+	 * @see AbstractSPSCRingBuffer
+	 */
+	public static Buffer spscBuffer(Class<?> elementType, int capacity) {
+		Class<?> type = Primitives.unwrap(checkNotNull(elementType));
+		if (type.equals(int.class))
+			return new IntSPSCRingBuffer(capacity);
+		if (type.equals(float.class))
+			return new FloatSPSCRingBuffer(capacity);
+		if (type.equals(double.class))
+			return new DoubleSPSCRingBuffer(capacity);
+		return new SPSCRingBuffer(capacity);
+	}
+
+	/**
+	 * Combines two Blobs' reports of the element type of the edge between
+	 * them (see {@link Blob#getElementType(Blob.Token)}).  A Blob only reports
+	 * a primitive type (or its wrapper) when every item it reads or writes is
+	 * of that type, so one such report suffices to unbox the edge; if the
+	 * reports conflict, the result is Object.class.
+	 * @param a one Blob's report
+	 * @param b the other Blob's report
+	 * @return the element type to create the edge's buffer with
+	 */
+	public static Class<?> edgeElementType(Class<?> a, Class<?> b) {
+		a = Primitives.unwrap(a);
+		b = Primitives.unwrap(b);
+		if (a.equals(b) || !b.isPrimitive())
+			return a;
+		if (!a.isPrimitive())
+			return b;
+		return Object.class;
+	}
+
+	/**
+	 * Repeatedly calls the given transfer function until it has transferred
+	 * length items in total or the timeout elapses, backing off (spinning,
+	 * then yielding, then parking for up to a millisecond) between attempts
+	 * that make no progress.  This lets code outside the blob runtime (e.g.,
+	 * ManualInput producers) wait on nonblocking Buffers without burning a
+	 * core.
+	 * @param transfer called with the number of items transferred so far and
+	 * the number remaining; returns the number it transferred
+	 * @param length the number of items to transfer
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of timeout
+	 * @return the number of items transferred (between 0 and length,
+	 * inclusive)
+	 * @throws InterruptedException if interrupted while waiting (items may
+	 * have been transferred)
+	 */
+	public static int transferWithTimeout(IntBinaryOperator transfer, int length, long timeout, TimeUnit unit) throws InterruptedException {
+		checkArgument(length >= 0, "bad length: %s", length);
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		IdleStrategy idle = null;
+		int done = 0, idleCount = 0;
+		while (true) {
+			int n = transfer.applyAsInt(done, length - done);
+			done += n;
+			if (done == length)
+				return done;
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if (n != 0)
+				idleCount = 0;
+			else if (System.nanoTime() - deadline >= 0)
+				return done;
+			else {
+				if (idle == null)
+					idle = IdleStrategies.Kind.PARK.create();
+				idle.idle(++idleCount);
+			}
+		}
+	}
+
+	/**
+	 * Closes the given buffer if it holds external resources (that is, if it
+	 * implements Closeable, like a buffer writing to a file).  Blob hosts and
+	 * compiled streams call this on the overall output buffer once the stream
+	 * has drained and all output has been written.
+	 * @param buffer the buffer to close, or null
+	 */
+	public static void close(Buffer buffer) {
+		if (buffer instanceof Closeable)
+			try {
+				((Closeable)buffer).close();
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+	}
+
 	/**
 	 * Returns a read-only view of the given buffer.  (Note that reads still
 	 * modify the buffer as usual; this wrapper merely prohibits the write
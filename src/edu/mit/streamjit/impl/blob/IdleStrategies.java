@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2013-2014 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.blob;
+
+import static com.google.common.base.Preconditions.*;
+import edu.mit.streamjit.impl.common.Configuration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Contains static methods related to IdleStrategy instances.
+ * @since 10/17/2026
+ */
+public final class IdleStrategies {
+	private IdleStrategies() {}
+
+	/**
+	 * The Configuration extra-data key naming the idle strategy blob hosts
+	 * should use (the name of a {@link Kind}, case-insensitive).
+	 */
+	public static final String EXTRA_DATA_KEY = "idleStrategy";
+	private static final int SPINS = 100, YIELDS = 100;
+	private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+	private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/**
+	 * The idle strategies selectable by configuration.
+	 */
+	public enum Kind {
+		/**
+		 * Retry immediately.  Lowest latency; burns a core while idle.
+		 */
+		BUSY_SPIN {
+			@Override
+			public IdleStrategy create() {
+				return busySpin();
+			}
+		},
+		/**
+		 * Spin briefly, then yield the processor between attempts.
+		 */
+		SPIN_YIELD {
+			@Override
+			public IdleStrategy create() {
+				return spinYield(SPINS);
+			}
+		},
+		/**
+		 * Spin, then yield, then park for exponentially increasing times up
+		 * to a bound.
+		 */
+		PARK {
+			@Override
+			public IdleStrategy create() {
+				return exponentialPark(SPINS, YIELDS, MIN_PARK_NANOS, MAX_PARK_NANOS);
+			}
+		},
+		/**
+		 * Spin, then park until a watched buffer signals or a bound elapses.
+		 */
+		SIGNAL {
+			@Override
+			public IdleStrategy create() {
+				return signalled(SPINS, MAX_PARK_NANOS);
+			}
+		};
+		public abstract IdleStrategy create();
+	}
+
+	/**
+	 * Returns a new instance of the idle strategy named by the given
+	 * configuration's {@link #EXTRA_DATA_KEY} extra data, or a busy-spin
+	 * strategy if the configuration doesn't name one.
+	 * @param config the configuration
+	 * @return an idle strategy
+	 * @throws IllegalArgumentException if the named strategy doesn't exist
+	 */
+	public static IdleStrategy fromConfiguration(Configuration config) {
+		Object name = config.getExtraData(EXTRA_DATA_KEY);
+		if (name == null)
+			return busySpin();
+		if (name instanceof Kind)
+			return ((Kind)name).create();
+		return Kind.valueOf(name.toString().toUpperCase(Locale.ROOT)).create();
+	}
+
+	/**
+	 * Returns an idle strategy that retries immediately.
+	 * @return a busy-spin idle strategy
+	 */
+	public static IdleStrategy busySpin() {
+		return idleCount -> {};
+	}
+
+	/**
+	 * Returns an idle strategy that retries immediately the given number of
+	 * times, then yields before each further attempt.
+	 * @param spins the number of attempts before yielding
+	 * @return a spin-then-yield idle strategy
+	 */
+	public static IdleStrategy spinYield(int spins) {
+		checkArgument(spins >= 0, "bad spins: %s", spins);
+		return idleCount -> {
+			if (idleCount > spins)
+				Thread.yield();
+		};
+	}
+
+	/**
+	 * Returns an idle strategy that spins, then yields, then parks, doubling
+	 * the park time after each attempt from minParkNanos up to maxParkNanos.
+	 * @param spins the number of attempts before yielding
+	 * @param yields the number of yielding attempts before parking
+	 * @param minParkNanos the first park time
+	 * @param maxParkNanos the maximum park time (bounding wakeup latency)
+	 * @return an exponential-park idle strategy
+	 */
+	public static IdleStrategy exponentialPark(int spins, int yields, long minParkNanos, long maxParkNanos) {
+		checkArgument(spins >= 0 && yields >= 0, "bad spins/yields: %s %s", spins, yields);
+		checkArgument(0 < minParkNanos && minParkNanos <= maxParkNanos, "bad park times: %s %s", minParkNanos, maxParkNanos);
+		//Past this many doublings, we're surely at maxParkNanos.
+		final int maxShift = 63 - Long.numberOfLeadingZeros(maxParkNanos / minParkNanos) + 1;
+		return idleCount -> {
+			if (idleCount <= spins)
+				return;
+			if (idleCount <= spins + yields) {
+				Thread.yield();
+				return;
+			}
+			int shift = Math.min(idleCount - spins - yields - 1, maxShift);
+			LockSupport.parkNanos(Math.min(minParkNanos << shift, maxParkNanos));
+		};
+	}
+
+	/**
+	 * Returns an idle strategy that spins, then parks until a buffer it's
+	 * watching is written to (input) or read from (output), or until
+	 * maxParkNanos elapses.  Buffers that don't support signalling (currently,
+	 * anything but {@link AbstractSPSCRingBuffer}) are covered only by the
+	 * timeout.
+	 * <p/>
+	 * The returned strategy should be used by one thread at a time.
+	 * @param spins the number of attempts before parking
+	 * @param maxParkNanos the maximum park time (bounding wakeup latency when
+	 * a signal is missed or the buffer doesn't signal)
+	 * @return a buffer-signalled idle strategy
+	 */
+	public static IdleStrategy signalled(int spins, long maxParkNanos) {
+		checkArgument(spins >= 0, "bad spins: %s", spins);
+		checkArgument(maxParkNanos > 0, "bad park time: %s", maxParkNanos);
+		return new SignalledIdleStrategy(spins, maxParkNanos);
+	}
+
+	private static final class SignalledIdleStrategy implements IdleStrategy {
+		private final int spins;
+		private final long maxParkNanos;
+		private volatile Thread waiter;
+		private final Runnable wakeup = () -> {
+			Thread t = waiter;
+			if (t != null)
+				LockSupport.unpark(t);
+		};
+		private SignalledIdleStrategy(int spins, long maxParkNanos) {
+			this.spins = spins;
+			this.maxParkNanos = maxParkNanos;
+		}
+		@Override
+		public void idle(int idleCount) {
+			if (idleCount <= spins)
+				return;
+			waiter = Thread.currentThread();
+			LockSupport.parkNanos(this, maxParkNanos);
+			waiter = null;
+		}
+		@Override
+		public void watchInput(Buffer buffer) {
+			if (buffer instanceof AbstractSPSCRingBuffer)
+				((AbstractSPSCRingBuffer)buffer).onWrite(wakeup);
+		}
+		@Override
+		public void watchOutput(Buffer buffer) {
+			if (buffer instanceof AbstractSPSCRingBuffer)
+				((AbstractSPSCRingBuffer)buffer).onRead(wakeup);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2013-2014 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.blob;
+
+/**
+ * Decides what a thread does when an attempt to read from or write to a Buffer
+ * made no progress.  Blob hosts call idle() with the number of consecutive
+ * fruitless attempts and reset their count when progress is made, so
+ * strategies can back off without keeping per-thread state.
+ * <p/>
+ * Strategies that park may be woken early by Buffers that support signalling
+ * (see {@link AbstractSPSCRingBuffer#onWrite(Runnable)}); blob hosts register
+ * their buffers via watchInput() and watchOutput() when buffers are installed.
+ * @since 10/17/2026
+ * @see IdleStrategies
+ */
+public interface IdleStrategy {
+	/**
+	 * Called after an attempt made no progress.
+	 * @param idleCount the number of consecutive attempts that made no
+	 * progress, starting from 1
+	 */
+	public void idle(int idleCount);
+
+	/**
+	 * Registers interest in items being written to the given buffer (which
+	 * the caller reads from).  The default implementation does nothing.
+	 * @param buffer an input buffer
+	 */
+	public default void watchInput(Buffer buffer) {}
+
+	/**
+	 * Registers interest in items being read from the given buffer (which the
+	 * caller writes to).  The default implementation does nothing.
+	 * @param buffer an output buffer
+	 */
+	public default void watchOutput(Buffer buffer) {}
+}
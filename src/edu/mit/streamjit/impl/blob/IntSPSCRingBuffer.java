@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2013-2014 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.blob;
+
+import java.nio.IntBuffer;
+
+/**
+ * A single-producer, single-consumer ring Buffer of unboxed ints.  See
+ * {@link AbstractSPSCRingBuffer} for the concurrency contract.  The Object
+ * methods box and unbox at the ring boundary; the int[] overloads copy
+ * without boxing.
+ * @since 10/17/2026
+ */
+public final class IntSPSCRingBuffer extends AbstractSPSCRingBuffer {
+	private final int[] ring;
+	public IntSPSCRingBuffer(int capacity) {
+		super(int.class, capacity);
+		this.ring = (int[])ring();
+	}
+
+	/**
+	 * Reads up to length ints into the given array beginning at offset.
+	 * @param data the array to write into
+	 * @param offset the offset to begin writing at
+	 * @param length the number of items to read
+	 * @return the number of items read (between 0 and length, inclusive)
+	 */
+	public int read(int[] data, int offset, int length) {
+		return readRaw(data, offset, length, false);
+	}
+
+	/**
+	 * Atomically reads enough ints to fill the given array starting from
+	 * offset, or does nothing.
+	 * @param data the array to write into
+	 * @param offset the offset to begin writing at
+	 * @return true iff data was read
+	 */
+	public boolean readAll(int[] data, int offset) {
+		int required = data.length - offset;
+		return readRaw(data, offset, required, true) == required;
+	}
+
+	/**
+	 * Writes up to length ints from the given array beginning at offset.
+	 * @param data the array to read from
+	 * @param offset the offset to begin reading from
+	 * @param length the number of items to write
+	 * @return the number of items written (between 0 and length, inclusive)
+	 */
+	public int write(int[] data, int offset, int length) {
+		return writeRaw(data, offset, length);
+	}
+
+	/**
+	 * Reads as many ints as possible (up to the given buffer's remaining
+	 * space) into the given buffer, advancing its position.
+	 * @param data the buffer to write into
+	 * @return the number of items read
+	 */
+	public int read(IntBuffer data) {
+		return readRuns(data.remaining(), false, (index, done, n) -> data.put(ring, index, n));
+	}
+
+	/**
+	 * Writes as many ints as possible (up to the given buffer's remaining
+	 * items) from the given buffer, advancing its position.
+	 * @param data the buffer to read from
+	 * @return the number of items written
+	 */
+	public int write(IntBuffer data) {
+		return writeRuns(data.remaining(), (index, done, n) -> data.get(ring, index, n));
+	}
+
+	@Override
+	protected Object take(int index) {
+		return ring[index];
+	}
+
+	@Override
+	protected void put(int index, Object element) {
+		ring[index] = (Integer)element;
+	}
+
+	@Override
+	protected void copyOut(int index, Object[] data, int offset, int length) {
+		for (int i = 0; i < length; ++i)
+			data[offset + i] = ring[index + i];
+	}
+
+	@Override
+	protected void copyIn(Object[] data, int offset, int index, int length) {
+		for (int i = 0; i < length; ++i)
+			ring[index + i] = (Integer)data[offset + i];
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2013-2014 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.blob;
+
+/**
+ * A PeekableBuffer whose items are the remaining items of a java.nio.Buffer
+ * (an IntBuffer, FloatBuffer, etc.).  Clients that know the primitive type can
+ * read or peek directly from the NIO buffer without boxing; doing so (with
+ * relative gets, or absolute gets followed by a position change) consumes from
+ * this buffer too.
+ * @since 10/17/2026
+ */
+public interface NIOBackedBuffer extends PeekableBuffer {
+	/**
+	 * Returns the NIO buffer backing this buffer.  Its position is the front
+	 * of this buffer and its remaining() is this buffer's size().
+	 * @return the backing NIO buffer
+	 */
+	public java.nio.Buffer nioBuffer();
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2013-2014 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.blob;
+
+import java.util.Arrays;
+
+/**
+ * A single-producer, single-consumer ring Buffer of object references.  See
+ * {@link AbstractSPSCRingBuffer} for the concurrency contract.  Slots are
+ * cleared as they're read so the ring doesn't retain consumed items.
+ * @since 10/17/2026
+ */
+public final class SPSCRingBuffer extends AbstractSPSCRingBuffer {
+	private final Object[] ring;
+	public SPSCRingBuffer(int capacity) {
+		super(Object.class, capacity);
+		this.ring = (Object[])ring();
+	}
+
+	@Override
+	protected Object take(int index) {
+		Object e = ring[index];
+		ring[index] = null;
+		return e;
+	}
+
+	@Override
+	protected void put(int index, Object element) {
+		assert element != null : "Buffers can't hold null";
+		ring[index] = element;
+	}
+
+	@Override
+	protected void copyOut(int index, Object[] data, int offset, int length) {
+		System.arraycopy(ring, index, data, offset, length);
+		Arrays.fill(ring, index, index + length, null);
+	}
+
+	@Override
+	protected void copyIn(Object[] data, int offset, int index, int length) {
+		System.arraycopy(data, offset, ring, index, length);
+	}
+}
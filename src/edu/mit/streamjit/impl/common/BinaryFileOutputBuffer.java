@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2013-2014 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.common;
+
+import static com.google.common.base.Preconditions.*;
+import com.google.common.primitives.Primitives;
+import edu.mit.streamjit.impl.blob.AbstractWriteOnlyBuffer;
+import edu.mit.streamjit.util.PrimitiveUtils;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A write-only Buffer that writes primitives (given as their wrappers) to a
+ * file in a given byte order, the inverse of Input.fromBinaryFile.  Items are
+ * staged in a large direct buffer and written with FileChannel.write when it
+ * fills, on flush(), and on close(), which also truncates the file to the data
+ * written (in case it previously held more) and closes it.  Blob hosts close
+ * overall output buffers when the stream drains (see
+ * {@link edu.mit.streamjit.impl.blob.Buffers#close}).
+ * <p/>
+ * Like other overall output buffers, this buffer has one writer at a time.
+ * @since 10/17/2026
+ */
+public final class BinaryFileOutputBuffer extends AbstractWriteOnlyBuffer implements Flushable, Closeable {
+	private static final int DEFAULT_STAGING_BYTES = 1 << 20;
+	private final Path path;
+	private final Class<?> type;
+	private final int sizeof;
+	private final FileChannel channel;
+	private final ByteBuffer staging;
+	private boolean closed = false;
+
+	public BinaryFileOutputBuffer(Path path, Class<?> type, ByteOrder byteOrder) throws IOException {
+		this(path, type, byteOrder, DEFAULT_STAGING_BYTES);
+	}
+
+	public BinaryFileOutputBuffer(Path path, Class<?> type, ByteOrder byteOrder, int stagingBytes) throws IOException {
+		checkArgument(Primitives.isWrapperType(type) && !type.equals(Void.class) && !type.equals(Boolean.class),
+				"not a numeric wrapper type: %s", type);
+		this.path = path;
+		this.type = type;
+		this.sizeof = PrimitiveUtils.sizeof(Primitives.unwrap(type));
+		checkArgument(stagingBytes >= sizeof, "staging buffer too small: %s", stagingBytes);
+		this.staging = ByteBuffer.allocateDirect(stagingBytes - stagingBytes % sizeof).order(checkNotNull(byteOrder));
+		this.channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+	}
+
+	@Override
+	public boolean write(Object t) {
+		if (staging.remaining() < sizeof)
+			drainStaging();
+		put(t);
+		return true;
+	}
+
+	@Override
+	public int write(Object[] data, int offset, int length) {
+		for (int i = 0; i < length; ) {
+			int room = staging.remaining() / sizeof;
+			if (room == 0) {
+				drainStaging();
+				continue;
+			}
+			int end = i + Math.min(room, length - i);
+			for (; i < end; ++i)
+				put(data[offset + i]);
+		}
+		return length;
+	}
+
+	private void put(Object t) {
+		if (type == Integer.class)
+			staging.putInt((Integer)t);
+		else if (type == Float.class)
+			staging.putFloat((Float)t);
+		else if (type == Double.class)
+			staging.putDouble((Double)t);
+		else if (type == Long.class)
+			staging.putLong((Long)t);
+		else if (type == Short.class)
+			staging.putShort((Short)t);
+		else if (type == Character.class)
+			staging.putChar((Character)t);
+		else if (type == Byte.class)
+			staging.put((Byte)t);
+		else
+			throw new AssertionError("not a wrapper type: "+type);
+	}
+
+	private void drainStaging() {
+		checkState(!closed, "%s is closed", this);
+		staging.flip();
+		try {
+			while (staging.hasRemaining())
+				channel.write(staging);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		staging.clear();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		drainStaging();
+		channel.force(false);
+	}
+
+	/**
+	 * Writes any staged data, truncates the file to the data written and
+	 * closes it.  Idempotent.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		try {
+			drainStaging();
+			channel.truncate(channel.position());
+		} finally {
+			closed = true;
+			channel.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "BinaryFileOutputBuffer("+path+", "+type.getSimpleName()+", "+staging.order()+")";
+	}
+}
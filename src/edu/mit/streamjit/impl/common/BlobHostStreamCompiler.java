@@ -60,10 +60,26 @@ import java.util.concurrent.TimeoutException;
  */
 public class BlobHostStreamCompiler implements StreamCompiler {
 	private final BlobFactory blobFactory;
+	private StreamRuntime runtime;
 	public BlobHostStreamCompiler(BlobFactory blobFactory) {
 		this.blobFactory = blobFactory;
 	}
 
+	/**
+	 * Hosts compiled streams on the given shared runtime rather than on
+	 * threads of their own.  The runtime only hosts single-core blobs.
+	 * @param runtime the runtime, or null to use dedicated threads
+	 * @return this
+	 */
+	public BlobHostStreamCompiler runtime(StreamRuntime runtime) {
+		this.runtime = runtime;
+		return this;
+	}
+
+	protected final StreamRuntime getRuntime() {
+		return runtime;
+	}
+
 	@Override
 	public <I, O> CompiledStream compile(OneToOneElement<I, O> stream, Input<I> input, Output<O> output) {
 		ConnectWorkersVisitor cwv = new ConnectWorkersVisitor();
@@ -81,34 +97,51 @@ public class BlobHostStreamCompiler implements StreamCompiler {
 			bufferMap.put(inputToken, inputBuffer);
 		if (outputBuffer != null)
 			bufferMap.put(outputToken, outputBuffer);
-		blob.installBuffers(bufferMap.build());
+		ImmutableMap<Token, Buffer> buffers = bufferMap.build();
+		blob.installBuffers(buffers);
 
-		Configuration.PermutationParameter<Integer> affinityParam = config.getParameter("$affinity", Configuration.PermutationParameter.class, Integer.class);
-		ImmutableList<? extends Integer> affinityList;
-		affinityList = affinityParam != null ? affinityParam.getUniverse() : ImmutableList.copyOf(Affinity.getMaximalAffinity());
-		ImmutableList.Builder<PollingCoreThread> threadsBuilder = ImmutableList.builder();
-		for (int i = 0; i < blob.getCoreCount(); ++i) {
-			PollingCoreThread thread = new PollingCoreThread(affinityList.get(i % affinityList.size()), blob.getCoreCode(i), blob.toString()+"-"+i);
-			threadsBuilder.add(thread);
+		final CompiledStream cs;
+		final Runnable drainer, starter;
+		if (runtime != null) {
+			StreamRuntime.HostedStream hosted = runtime.host(blob, buffers, outputBuffer);
+			cs = hosted;
+			drainer = hosted::drain;
+			starter = hosted::start;
+		} else {
+			BlobHostCompiledStream bhcs = makeCompiledStream(blob, config, outputBuffer);
+			cs = bhcs;
+			drainer = bhcs::drain;
+			starter = () -> bhcs.threads.forEach(Thread::start);
 		}
-		ImmutableList<PollingCoreThread> threads = threadsBuilder.build();
-
-		final BlobHostCompiledStream cs = new BlobHostCompiledStream(blob, threads);
 		if (input instanceof ManualInput)
 			InputBufferFactory.setManualInputDelegate((ManualInput<I>)input, new InputBufferFactory.AbstractManualInputDelegate<I>(inputBuffer) {
 				@Override
 				public void drain() {
-					cs.drain();
+					drainer.run();
 				}
 			});
 		else //Input provides all input, so immediately begin to drain.
-			cs.drain();
+			drainer.run();
 
-		for (Thread t : threads)
-			t.start();
+		starter.run();
 		return cs;
 	}
 
+	private BlobHostCompiledStream makeCompiledStream(Blob blob, Configuration config, Buffer outputBuffer) {
+		Configuration.PermutationParameter<Integer> affinityParam = config.getParameter("$affinity", Configuration.PermutationParameter.class, Integer.class);
+		ImmutableList<? extends Integer> affinityList;
+		affinityList = affinityParam != null ? affinityParam.getUniverse() : ImmutableList.copyOf(Affinity.getMaximalAffinity());
+		ImmutableList.Builder<PollingCoreThread> threadsBuilder = ImmutableList.builder();
+		for (int i = 0; i < blob.getCoreCount(); ++i) {
+			//Cores beyond the affinity list (e.g., Compiler2's pipelined I/O
+			//core) float over all the CPUs rather than doubling up on core 0.
+			ImmutableSet<Integer> cpus = i < affinityList.size() ? ImmutableSet.of(affinityList.get(i)) : ImmutableSet.copyOf(affinityList);
+			PollingCoreThread thread = new PollingCoreThread(cpus, blob.getCoreCode(i), blob.toString()+"-"+i);
+			threadsBuilder.add(thread);
+		}
+		return new BlobHostCompiledStream(blob, threadsBuilder.build(), outputBuffer);
+	}
+
 	protected Blob makeBlob(ImmutableSet<Worker<?, ?>> workers, Configuration configuration, Input<?> input, Output<?> output) {
 		return blobFactory.makeBlob(workers, configuration, getMaxNumCores(), null);
 	}
@@ -158,17 +191,26 @@ public class BlobHostStreamCompiler implements StreamCompiler {
 	private static final class BlobHostCompiledStream implements CompiledStream {
 		private final Blob blob;
 		private final ImmutableList<PollingCoreThread> threads;
+		/**
+		 * The overall output buffer if we created it (else null), to be closed
+		 * after draining.
+		 */
+		private final Buffer outputBuffer;
 		private final CountDownLatch latch;
-		private BlobHostCompiledStream(Blob blob, ImmutableList<PollingCoreThread> threads) {
+		private BlobHostCompiledStream(Blob blob, ImmutableList<PollingCoreThread> threads, Buffer outputBuffer) {
 			this.blob = blob;
 			this.threads = threads;
+			this.outputBuffer = outputBuffer;
 			this.latch = new CountDownLatch(this.threads.size());
 			for (PollingCoreThread t : this.threads)
 				t.latch = this.latch;
 		}
 
 		private void drain() {
-			blob.drain(() -> threads.forEach(PollingCoreThread::requestStop));
+			blob.drain(() -> {
+				Buffers.close(outputBuffer);
+				threads.forEach(PollingCoreThread::requestStop);
+			});
 		}
 
 		@Override
@@ -190,18 +232,18 @@ public class BlobHostStreamCompiler implements StreamCompiler {
 	}
 
 	private static final class PollingCoreThread extends Thread {
-		private final int cpu;
+		private final ImmutableSet<Integer> cpus;
 		private final Runnable coreCode;
 		private volatile boolean running = true;
 		private volatile CountDownLatch latch;
-		private PollingCoreThread(int cpu, Runnable target, String name) {
+		private PollingCoreThread(ImmutableSet<Integer> cpus, Runnable target, String name) {
 			super(name);
-			this.cpu = cpu;
+			this.cpus = cpus;
 			this.coreCode = target;
 		}
 		@Override
 		public void run() {
-			Affinity.setThreadAffinity(ImmutableSet.of(cpu));
+			Affinity.setThreadAffinity(cpus);
 			try {
 				while (running)
 					coreCode.run();
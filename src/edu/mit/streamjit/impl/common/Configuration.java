@@ -199,6 +199,16 @@ public final class Configuration {
 			return this;
 		}
 
+		/**
+		 * Returns the extra data with the given name in this builder, or null
+		 * if this builder doesn't contain extra data with that name.
+		 * @param name the name of the extra data to get
+		 * @return the extra data, or null
+		 */
+		public Object getExtraData(String name) {
+			return extraData.get(checkNotNull(Strings.emptyToNull(name)));
+		}
+
 		/**
 		 * Builds a new Configuration from the parameters and subconfigurations
 		 * added to this builder.  This builder is still valid and may be used
@@ -54,6 +54,13 @@ public abstract class InputBufferFactory {
 		public boolean offer(I input);
 		public int offer(I[] input, int offset, int length);
 		public void drain();
+		/**
+		 * Returns the buffer this delegate offers items to, which
+		 * ManualInput may write primitive items to directly if it's an
+		 * unboxed ring, or null if all offers must go through this delegate.
+		 * @return the buffer, or null
+		 */
+		public Buffer buffer();
 	}
 
 	public static abstract class AbstractManualInputDelegate<I> implements ManualInputDelegate<I> {
@@ -69,6 +76,10 @@ public abstract class InputBufferFactory {
 		public int offer(I[] input, int offset, int length) {
 			return buffer.write(input, offset, length);
 		}
+		@Override
+		public Buffer buffer() {
+			return buffer;
+		}
 	}
 
 	public static MethodHandles.Lookup INPUT_LOOKUP, MANUALINPUT_LOOKUP;
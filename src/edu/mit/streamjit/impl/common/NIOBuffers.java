@@ -24,7 +24,7 @@ package edu.mit.streamjit.impl.common;
 import com.google.common.collect.ImmutableList;
 import edu.mit.streamjit.impl.blob.AbstractReadOnlyBuffer;
 import edu.mit.streamjit.impl.blob.Buffer;
-import edu.mit.streamjit.impl.blob.PeekableBuffer;
+import edu.mit.streamjit.impl.blob.NIOBackedBuffer;
 import edu.mit.streamjit.util.Template;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
@@ -68,7 +68,7 @@ public final class NIOBuffers {
 			);
 
 	private static final String BUFFER_TEMPLATE =
-			"	private static final class ${buffer}Buffer extends AbstractReadOnlyBuffer implements PeekableBuffer{\n"+
+			"	private static final class ${buffer}Buffer extends AbstractReadOnlyBuffer implements NIOBackedBuffer {\n"+
 			"		private final ${buffer} buffer;\n"+
 			"		private ${buffer}Buffer(${buffer} buffer) {\n"+
 			"			this.buffer = buffer;\n"+
@@ -93,6 +93,10 @@ public final class NIOBuffers {
 			"		public void consume(int items) {\n"+
 			"			buffer.position(buffer.position() + items);\n"+
 			"		}\n"+
+			"		@Override\n"+
+			"		public ${buffer} nioBuffer() {\n"+
+			"			return buffer;\n"+
+			"		}\n"+
 			"	}\n";
 	private static final String WRAP_HEADER =
 			"	public static Buffer wrap(ByteBuffer buffer, Class<?> type) {\n";
@@ -128,7 +132,7 @@ public final class NIOBuffers {
 		if (type == Double.class) return new DoubleBufferBuffer(buffer.asDoubleBuffer());
 		throw new AssertionError("not a wrapper type: "+type);
 	}
-	private static final class ByteBufferBuffer extends AbstractReadOnlyBuffer implements PeekableBuffer{
+	private static final class ByteBufferBuffer extends AbstractReadOnlyBuffer implements NIOBackedBuffer {
 		private final ByteBuffer buffer;
 		private ByteBufferBuffer(ByteBuffer buffer) {
 			this.buffer = buffer;
@@ -153,8 +157,12 @@ public final class NIOBuffers {
 		public void consume(int items) {
 			buffer.position(buffer.position() + items);
 		}
+		@Override
+		public ByteBuffer nioBuffer() {
+			return buffer;
+		}
 	}
-	private static final class ShortBufferBuffer extends AbstractReadOnlyBuffer implements PeekableBuffer{
+	private static final class ShortBufferBuffer extends AbstractReadOnlyBuffer implements NIOBackedBuffer {
 		private final ShortBuffer buffer;
 		private ShortBufferBuffer(ShortBuffer buffer) {
 			this.buffer = buffer;
@@ -179,8 +187,12 @@ public final class NIOBuffers {
 		public void consume(int items) {
 			buffer.position(buffer.position() + items);
 		}
+		@Override
+		public ShortBuffer nioBuffer() {
+			return buffer;
+		}
 	}
-	private static final class CharBufferBuffer extends AbstractReadOnlyBuffer implements PeekableBuffer{
+	private static final class CharBufferBuffer extends AbstractReadOnlyBuffer implements NIOBackedBuffer {
 		private final CharBuffer buffer;
 		private CharBufferBuffer(CharBuffer buffer) {
 			this.buffer = buffer;
@@ -205,8 +217,12 @@ public final class NIOBuffers {
 		public void consume(int items) {
 			buffer.position(buffer.position() + items);
 		}
+		@Override
+		public CharBuffer nioBuffer() {
+			return buffer;
+		}
 	}
-	private static final class IntBufferBuffer extends AbstractReadOnlyBuffer implements PeekableBuffer{
+	private static final class IntBufferBuffer extends AbstractReadOnlyBuffer implements NIOBackedBuffer {
 		private final IntBuffer buffer;
 		private IntBufferBuffer(IntBuffer buffer) {
 			this.buffer = buffer;
@@ -231,8 +247,12 @@ public final class NIOBuffers {
 		public void consume(int items) {
 			buffer.position(buffer.position() + items);
 		}
+		@Override
+		public IntBuffer nioBuffer() {
+			return buffer;
+		}
 	}
-	private static final class LongBufferBuffer extends AbstractReadOnlyBuffer implements PeekableBuffer{
+	private static final class LongBufferBuffer extends AbstractReadOnlyBuffer implements NIOBackedBuffer {
 		private final LongBuffer buffer;
 		private LongBufferBuffer(LongBuffer buffer) {
 			this.buffer = buffer;
@@ -257,8 +277,12 @@ public final class NIOBuffers {
 		public void consume(int items) {
 			buffer.position(buffer.position() + items);
 		}
+		@Override
+		public LongBuffer nioBuffer() {
+			return buffer;
+		}
 	}
-	private static final class FloatBufferBuffer extends AbstractReadOnlyBuffer implements PeekableBuffer{
+	private static final class FloatBufferBuffer extends AbstractReadOnlyBuffer implements NIOBackedBuffer {
 		private final FloatBuffer buffer;
 		private FloatBufferBuffer(FloatBuffer buffer) {
 			this.buffer = buffer;
@@ -283,8 +307,12 @@ public final class NIOBuffers {
 		public void consume(int items) {
 			buffer.position(buffer.position() + items);
 		}
+		@Override
+		public FloatBuffer nioBuffer() {
+			return buffer;
+		}
 	}
-	private static final class DoubleBufferBuffer extends AbstractReadOnlyBuffer implements PeekableBuffer{
+	private static final class DoubleBufferBuffer extends AbstractReadOnlyBuffer implements NIOBackedBuffer {
 		private final DoubleBuffer buffer;
 		private DoubleBufferBuffer(DoubleBuffer buffer) {
 			this.buffer = buffer;
@@ -309,6 +337,10 @@ public final class NIOBuffers {
 		public void consume(int items) {
 			buffer.position(buffer.position() + items);
 		}
+		@Override
+		public DoubleBuffer nioBuffer() {
+			return buffer;
+		}
 	}
 	//</editor-fold>
 }
@@ -0,0 +1,439 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.common;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import edu.mit.streamjit.api.CompiledStream;
+import edu.mit.streamjit.impl.blob.AbstractSPSCRingBuffer;
+import edu.mit.streamjit.impl.blob.Blob;
+import edu.mit.streamjit.impl.blob.Blob.Token;
+import edu.mit.streamjit.impl.blob.Buffer;
+import edu.mit.streamjit.impl.blob.Buffers;
+import edu.mit.streamjit.util.affinity.Affinity;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts many single-core blobs on a fixed pool of core-pinned threads, so a
+ * JVM can run hundreds of small streams without a spinning thread per blob
+ * core.  Each stream's core code runs as a task on a work-stealing pool in
+ * FIFO mode: a task runs the core code a bounded number of times, then
+ * requeues itself behind the other streams.
+ * <p/>
+ * A stream only runs while each of its input buffers holds, and each of its
+ * output buffers has room for, the blob's minimum buffer capacity -- enough
+ * for one steady-state iteration -- so its core code doesn't spin inside the
+ * blob.  Otherwise the stream parks without a thread until a buffer signals
+ * (see {@link AbstractSPSCRingBuffer#onWrite(Runnable)}) or a backed-off
+ * timeout elapses, so idle streams cost next to nothing.  Once draining, a
+ * stream runs unconditionally until drained.
+ * <p/>
+ * If a stream's blob throws, the stream stops, and isDrained() and
+ * awaitDrained() throw a CompletionException with the blob's exception as
+ * its cause rather than report a normal drain.
+ * <p/>
+ * Pass a StreamRuntime to {@link BlobHostStreamCompiler#runtime(StreamRuntime)}
+ * to host the compiled streams on it.  Streams made of several blobs (see
+ * {@link #host(Collection, Map, Buffer)}) host each blob separately.
+ * @since 10/17/2026
+ */
+public final class StreamRuntime implements AutoCloseable {
+	/**
+	 * The number of times a task runs its core code before requeueing.
+	 */
+	private static final int QUANTUM = 16;
+	/**
+	 * Parked streams recheck their buffers after a delay doubling from the
+	 * minimum to the maximum, in case a buffer doesn't signal.
+	 */
+	private static final long MIN_RECHECK_NANOS = TimeUnit.MICROSECONDS.toNanos(50), MAX_RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+	private final ForkJoinPool pool;
+	private final ScheduledExecutorService timer;
+	/**
+	 * Creates a StreamRuntime with one thread per available CPU.
+	 */
+	public StreamRuntime() {
+		this(Affinity.getMaximalAffinity().size());
+	}
+
+	/**
+	 * Creates a StreamRuntime with the given number of threads, pinned
+	 * round-robin to the available CPUs.
+	 * @param parallelism the number of threads
+	 */
+	public StreamRuntime(int parallelism) {
+		checkArgument(parallelism > 0, parallelism);
+		ImmutableList<Integer> cpus = ImmutableList.copyOf(Affinity.getMaximalAffinity());
+		AtomicInteger nextCpu = new AtomicInteger();
+		this.pool = new ForkJoinPool(parallelism, p -> {
+			int cpu = cpus.get(nextCpu.getAndIncrement() % cpus.size());
+			ForkJoinWorkerThread t = new ForkJoinWorkerThread(p) {
+				@Override
+				protected void onStart() {
+					super.onStart();
+					Affinity.setThreadAffinity(ImmutableSet.of(cpu));
+				}
+			};
+			t.setName("StreamRuntime-"+cpu+"-"+t.getPoolIndex());
+			return t;
+		}, null, true);
+		ScheduledThreadPoolExecutor timerExecutor = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread t = new Thread(r, "StreamRuntime-timer");
+			t.setDaemon(true);
+			return t;
+		});
+		timerExecutor.setRemoveOnCancelPolicy(true);
+		this.timer = timerExecutor;
+	}
+
+	/**
+	 * Creates a stream running the given blob, which must have buffers
+	 * installed.  The stream doesn't run until started.
+	 * @param blob a single-core blob
+	 * @param buffers the buffers installed in the blob
+	 * @param outputBuffer the overall output buffer to close after draining,
+	 * or null
+	 * @return the hosted stream
+	 */
+	HostedStream host(Blob blob, Map<Token, Buffer> buffers, Buffer outputBuffer) {
+		checkArgument(blob.getCoreCount() == 1, "StreamRuntime can only host single-core blobs, not %s", blob);
+		return new HostedStream(blob, buffers, outputBuffer);
+	}
+
+	/**
+	 * Creates a stream running the given blobs, which must have buffers
+	 * installed, connected by those buffers into an acyclic graph.  Each blob
+	 * is hosted as by {@link #host(Blob, Map, Buffer)}; draining drains each
+	 * blob once the blobs writing its input buffers have drained.  The
+	 * stream doesn't run until started.
+	 * @param blobs single-core blobs
+	 * @param buffers the buffers installed in the blobs
+	 * @param outputBuffer the overall output buffer to close after draining,
+	 * or null
+	 * @return the hosted stream
+	 */
+	public HostedGraph host(Collection<Blob> blobs, Map<Token, Buffer> buffers, Buffer outputBuffer) {
+		for (Blob b : blobs)
+			checkArgument(b.getCoreCount() == 1, "StreamRuntime can only host single-core blobs, not %s", b);
+		return new HostedGraph(blobs, buffers, outputBuffer);
+	}
+
+	/**
+	 * Stops this runtime's threads.  Streams still running are abandoned.
+	 */
+	@Override
+	public void close() {
+		pool.shutdownNow();
+		timer.shutdownNow();
+	}
+
+	final class HostedStream implements CompiledStream {
+		private final Blob blob;
+		private final Runnable coreCode;
+		private final ImmutableList<Buffer> inputs, outputs;
+		private final int[] inputMinimums, outputMinimums;
+		private final Buffer outputBuffer;
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private final AtomicBoolean parked = new AtomicBoolean();
+		private final Runnable wakeup = this::wake;
+		private volatile boolean draining, finished;
+		/**
+		 * The exception thrown by the blob, if it failed; set before the
+		 * latch is counted down.
+		 */
+		private volatile Throwable failure;
+		/**
+		 * Run once the stream finishes or fails, or null.
+		 */
+		private Runnable onFinished;
+		/**
+		 * The number of consecutive parks; only accessed by the running task.
+		 */
+		private int parks;
+		private HostedStream(Blob blob, Map<Token, Buffer> buffers, Buffer outputBuffer) {
+			this.blob = blob;
+			this.coreCode = blob.getCoreCode(0);
+			this.outputBuffer = outputBuffer;
+			ImmutableList.Builder<Buffer> inputsBuilder = ImmutableList.builder(), outputsBuilder = ImmutableList.builder();
+			ImmutableList.Builder<Integer> inputMins = ImmutableList.builder(), outputMins = ImmutableList.builder();
+			for (Token t : blob.getInputs())
+				if (buffers.containsKey(t)) {
+					inputsBuilder.add(buffers.get(t));
+					inputMins.add(Math.min(blob.getMinimumBufferCapacity(t), buffers.get(t).capacity()));
+				}
+			for (Token t : blob.getOutputs())
+				if (buffers.containsKey(t)) {
+					outputsBuilder.add(buffers.get(t));
+					outputMins.add(Math.min(blob.getMinimumBufferCapacity(t), buffers.get(t).capacity()));
+				}
+			this.inputs = inputsBuilder.build();
+			this.outputs = outputsBuilder.build();
+			this.inputMinimums = inputMins.build().stream().mapToInt(Integer::intValue).toArray();
+			this.outputMinimums = outputMins.build().stream().mapToInt(Integer::intValue).toArray();
+			//Note that this replaces any signal the blob's idle strategy set.
+			for (Buffer b : inputs)
+				if (b instanceof AbstractSPSCRingBuffer)
+					((AbstractSPSCRingBuffer)b).onWrite(wakeup);
+			for (Buffer b : outputs)
+				if (b instanceof AbstractSPSCRingBuffer)
+					((AbstractSPSCRingBuffer)b).onRead(wakeup);
+		}
+
+		void start() {
+			pool.execute(this::runQuantum);
+		}
+
+		void drain() {
+			blob.drain(() -> {
+				Buffers.close(outputBuffer);
+				finished = true;
+			});
+			draining = true;
+			wake();
+		}
+
+		private boolean ready() {
+			if (draining)
+				return true;
+			for (int i = 0; i < inputs.size(); ++i)
+				if (inputs.get(i).size() < inputMinimums[i])
+					return false;
+			for (int i = 0; i < outputs.size(); ++i) {
+				Buffer b = outputs.get(i);
+				if (b.capacity() - b.size() < outputMinimums[i])
+					return false;
+			}
+			return true;
+		}
+
+		private void runQuantum() {
+			try {
+				for (int i = 0; i < QUANTUM && !finished; ++i) {
+					if (!ready()) {
+						park();
+						return;
+					}
+					coreCode.run();
+					parks = 0;
+				}
+			} catch (Throwable ex) {
+				failure = ex;
+				finished = true;
+			}
+			if (finished) {
+				latch.countDown();
+				if (onFinished != null)
+					onFinished.run();
+			} else
+				pool.execute(this::runQuantum);
+		}
+
+		private void park() {
+			parked.set(true);
+			//Recheck in case a buffer signalled before we set parked.
+			if (ready())
+				wake();
+			else {
+				long delay = MIN_RECHECK_NANOS << Math.min(parks++, 63 - Long.numberOfLeadingZeros(MAX_RECHECK_NANOS / MIN_RECHECK_NANOS));
+				timer.schedule(wakeup, Math.min(delay, MAX_RECHECK_NANOS), TimeUnit.NANOSECONDS);
+			}
+		}
+
+		private void wake() {
+			if (parked.compareAndSet(true, false))
+				pool.execute(this::runQuantum);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @throws CompletionException if the blob threw an exception, which
+		 * is its cause
+		 */
+		@Override
+		public boolean isDrained() {
+			if (latch.getCount() != 0)
+				return false;
+			checkFailure();
+			return true;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @throws CompletionException if the blob threw an exception, which
+		 * is its cause
+		 */
+		@Override
+		public void awaitDrained() throws InterruptedException {
+			latch.await();
+			checkFailure();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @throws CompletionException if the blob threw an exception, which
+		 * is its cause
+		 */
+		@Override
+		public void awaitDrained(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+			if (!latch.await(timeout, unit))
+				throw new TimeoutException();
+			checkFailure();
+		}
+
+		private void checkFailure() {
+			Throwable t = failure;
+			if (t != null)
+				throw new CompletionException("stream failed", t);
+		}
+	}
+
+	/**
+	 * A graph of hosted streams drained in topological order.  If any blob
+	 * throws, the graph stops reporting progress: isDrained() and
+	 * awaitDrained() throw a CompletionException with the blob's exception as
+	 * its cause.
+	 */
+	public final class HostedGraph implements CompiledStream {
+		private final ImmutableList<HostedStream> streams;
+		/**
+		 * The streams reading each stream's output buffers.
+		 */
+		private final ImmutableListMultimap<HostedStream, HostedStream> successors;
+		/**
+		 * The number of each stream's predecessors that haven't drained.
+		 */
+		private final Map<HostedStream, AtomicInteger> undrainedPredecessors = new HashMap<>();
+		private final AtomicInteger running;
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private volatile Throwable failure;
+		private HostedGraph(Collection<Blob> blobs, Map<Token, Buffer> buffers, Buffer outputBuffer) {
+			Map<Token, HostedStream> writers = new HashMap<>();
+			ImmutableList.Builder<HostedStream> streamsBuilder = ImmutableList.builder();
+			for (Blob b : blobs) {
+				boolean writesOutput = false;
+				for (Token t : b.getOutputs())
+					writesOutput |= outputBuffer != null && buffers.get(t) == outputBuffer;
+				HostedStream s = new HostedStream(b, buffers, writesOutput ? outputBuffer : null);
+				s.onFinished = () -> finished(s);
+				streamsBuilder.add(s);
+				undrainedPredecessors.put(s, new AtomicInteger());
+				for (Token t : b.getOutputs())
+					writers.put(t, s);
+			}
+			this.streams = streamsBuilder.build();
+			ImmutableListMultimap.Builder<HostedStream, HostedStream> successorsBuilder = ImmutableListMultimap.builder();
+			for (HostedStream s : streams)
+				for (Token t : s.blob.getInputs()) {
+					HostedStream writer = writers.get(t);
+					if (writer != null) {
+						successorsBuilder.put(writer, s);
+						undrainedPredecessors.get(s).incrementAndGet();
+					}
+				}
+			this.successors = successorsBuilder.build();
+			this.running = new AtomicInteger(streams.size());
+		}
+
+		public void start() {
+			streams.forEach(HostedStream::start);
+		}
+
+		/**
+		 * Drains the blobs reading the overall input; the others drain as
+		 * their predecessors finish.
+		 */
+		public void drain() {
+			for (HostedStream s : streams)
+				if (undrainedPredecessors.get(s).get() == 0)
+					s.drain();
+		}
+
+		private void finished(HostedStream s) {
+			if (s.failure != null) {
+				failure = s.failure;
+				latch.countDown();
+				return;
+			}
+			for (HostedStream t : successors.get(s))
+				if (undrainedPredecessors.get(t).decrementAndGet() == 0)
+					t.drain();
+			if (running.decrementAndGet() == 0)
+				latch.countDown();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @throws CompletionException if a blob threw an exception, which is
+		 * its cause
+		 */
+		@Override
+		public boolean isDrained() {
+			if (latch.getCount() != 0)
+				return false;
+			checkFailure();
+			return true;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @throws CompletionException if a blob threw an exception, which is
+		 * its cause
+		 */
+		@Override
+		public void awaitDrained() throws InterruptedException {
+			latch.await();
+			checkFailure();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @throws CompletionException if a blob threw an exception, which is
+		 * its cause
+		 */
+		@Override
+		public void awaitDrained(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+			if (!latch.await(timeout, unit))
+				throw new TimeoutException();
+			checkFailure();
+		}
+
+		private void checkFailure() {
+			Throwable t = failure;
+			if (t != null)
+				throw new CompletionException("stream failed", t);
+		}
+	}
+}
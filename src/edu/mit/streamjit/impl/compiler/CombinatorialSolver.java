@@ -0,0 +1,448 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler;
+
+import static com.google.common.math.LongMath.checkedAdd;
+import static com.google.common.math.LongMath.checkedMultiply;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.math.LongMath;
+import com.google.common.primitives.Ints;
+import edu.mit.streamjit.util.Fraction;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pure-Java solver for the integer programs built by {@link Schedule}.
+ * <p/>
+ * All of Schedule's constraints are monotone two-variable inequalities (each
+ * equality is a pair of them): raising one side can only require raising the
+ * other.  The integer solutions are thus closed under componentwise minimum,
+ * so there is a unique least solution above the execution lower bounds.
+ * <p/>
+ * Systems consisting only of homogeneous balance equations (steady-state
+ * schedules) are solved exactly with rational arithmetic: every solution is a
+ * multiple of the primitive repetition vector of each connected component,
+ * and since the objective is nonnegative on those vectors, the optimum is the
+ * smallest multiple satisfying the execution constraints.
+ * <p/>
+ * Other systems (init schedules) start from the least solution, found by
+ * propagating lower bounds along constraints until a fixpoint.  The least
+ * solution is optimal when no thing's objective coefficient is negative.  When
+ * excess buffering is costed, things that consume more than they produce have
+ * negative coefficients; we then repeatedly apply the best improving
+ * "raise one thing, propagate the consequences" move, which is a local search
+ * and may stop short of the ILP optimum on pathological graphs.
+ * <p/>
+ * Systems this class can't handle (zero rates on one side of an edge, or
+ * propagation that doesn't converge) cause an
+ * {@link UnsupportedSystemException} so the caller can fall back to the ILP.
+ * @since 10/17/2026
+ */
+final class CombinatorialSolver<T> {
+	/**
+	 * Bounds the number of constraint relaxations (per propagation) before we
+	 * give up and let the ILP handle the system.
+	 */
+	private static final int MAX_RELAXATIONS = 1 << 22;
+	/**
+	 * Bounds the number of improving moves in the local search.
+	 */
+	private static final int MAX_MOVES = 1 << 16;
+	private final ImmutableList<T> things;
+	private final Map<T, Integer> index = new HashMap<>();
+	private final int n;
+	private final int[] up, down;
+	private final long[] push, pop, delta;
+	private final Schedule.BufferingConstraint.Condition[] condition;
+	/**
+	 * For each thing, the constraints it participates in.
+	 */
+	private final int[][] incident;
+	private final long[] lower, cost;
+	private CombinatorialSolver(ImmutableSet<T> things,
+			ImmutableSet<Schedule.ExecutionConstraint<T>> executionConstraints,
+			ImmutableSet<Schedule.BufferingConstraint<T>> bufferingConstraints,
+			int fireCost, int excessBufferCost) {
+		this.things = things.asList();
+		this.n = things.size();
+		for (int i = 0; i < n; ++i)
+			index.put(this.things.get(i), i);
+
+		int m = bufferingConstraints.size();
+		this.up = new int[m];
+		this.down = new int[m];
+		this.push = new long[m];
+		this.pop = new long[m];
+		this.delta = new long[m];
+		this.condition = new Schedule.BufferingConstraint.Condition[m];
+		List<List<Integer>> incidentLists = new ArrayList<>(n);
+		for (int i = 0; i < n; ++i)
+			incidentLists.add(new ArrayList<Integer>());
+		this.cost = new long[n];
+		Arrays.fill(cost, fireCost);
+		int c = 0;
+		for (Schedule.BufferingConstraint<T> constraint : bufferingConstraints) {
+			if (constraint.pushRate == 0 || constraint.popRate == 0)
+				throw new UnsupportedSystemException("zero rate on one side of "+constraint);
+			up[c] = index.get(constraint.upstream);
+			down[c] = index.get(constraint.downstream);
+			push[c] = constraint.pushRate;
+			pop[c] = constraint.popRate;
+			delta[c] = constraint.bufferDelta;
+			condition[c] = constraint.condition;
+			incidentLists.get(up[c]).add(c);
+			if (down[c] != up[c])
+				incidentLists.get(down[c]).add(c);
+			cost[up[c]] = checkedAdd(cost[up[c]], checkedMultiply(excessBufferCost, push[c]));
+			cost[down[c]] = checkedAdd(cost[down[c]], -checkedMultiply(excessBufferCost, pop[c]));
+			++c;
+		}
+		this.incident = new int[n][];
+		for (int i = 0; i < n; ++i)
+			incident[i] = Ints.toArray(incidentLists.get(i));
+
+		this.lower = new long[n];
+		for (Schedule.ExecutionConstraint<T> constraint : executionConstraints) {
+			int i = index.get(constraint.thing);
+			lower[i] = Math.max(lower[i], constraint.minExecutions);
+		}
+	}
+
+	/**
+	 * Solves the given system.
+	 * @param exactOnly if true, throw UnsupportedSystemException rather than
+	 * use the local search
+	 * @return the number of times each thing fires (before applying the
+	 * multiplier)
+	 * @throws UnsupportedSystemException if this solver can't handle the
+	 * system, or can't solve it exactly and exactOnly is true
+	 */
+	static <T> ImmutableMap<T, Integer> solve(ImmutableSet<T> things,
+			ImmutableSet<Schedule.ExecutionConstraint<T>> executionConstraints,
+			ImmutableSet<Schedule.BufferingConstraint<T>> bufferingConstraints,
+			int fireCost, int excessBufferCost, boolean exactOnly) {
+		CombinatorialSolver<T> solver;
+		long[] solution;
+		try {
+			solver = new CombinatorialSolver<>(things, executionConstraints, bufferingConstraints, fireCost, excessBufferCost);
+			if (solver.isBalanceSystem())
+				solution = solver.solveBalance();
+			else if (exactOnly && solver.needsLocalSearch())
+				throw new UnsupportedSystemException("costed excess buffering requires local search");
+			else
+				solution = solver.solveInequalities();
+		} catch (ArithmeticException ex) {
+			throw new UnsupportedSystemException("overflow: "+ex.getMessage());
+		}
+		ImmutableMap.Builder<T, Integer> builder = ImmutableMap.builder();
+		for (int i = 0; i < solver.n; ++i) {
+			if (solution[i] > Integer.MAX_VALUE)
+				throw new UnsupportedSystemException("overflow: "+solution[i]);
+			builder.put(solver.things.get(i), (int)solution[i]);
+		}
+		return builder.build();
+	}
+
+	private boolean isBalanceSystem() {
+		for (int c = 0; c < condition.length; ++c)
+			if (condition[c] != Schedule.BufferingConstraint.Condition.EQUAL || delta[c] != 0)
+				return false;
+		return true;
+	}
+
+	private long[] solveBalance() {
+		Fraction[] rate = new Fraction[n];
+		int[] component = new int[n];
+		Arrays.fill(component, -1);
+		List<List<Integer>> components = new ArrayList<>();
+		for (int root = 0; root < n; ++root) {
+			if (component[root] != -1) continue;
+			List<Integer> members = new ArrayList<>();
+			int id = components.size();
+			components.add(members);
+			rate[root] = Fraction.ONE;
+			component[root] = id;
+			ArrayDeque<Integer> worklist = new ArrayDeque<>();
+			worklist.add(root);
+			while (!worklist.isEmpty()) {
+				int v = worklist.remove();
+				members.add(v);
+				for (int c : incident[v]) {
+					//push * x_up == pop * x_down
+					int other;
+					Fraction otherRate;
+					if (v == up[c]) {
+						other = down[c];
+						otherRate = rate[v].mul(new Fraction(push[c], pop[c]));
+					} else {
+						other = up[c];
+						otherRate = rate[v].mul(new Fraction(pop[c], push[c]));
+					}
+					if (component[other] == -1) {
+						component[other] = id;
+						rate[other] = otherRate;
+						worklist.add(other);
+					} else if (!rate[other].equals(otherRate))
+						//Only the zero solution exists for this component.  That's
+						//rare enough to leave to the ILP, which will also report
+						//infeasibility if any member must execute.
+						throw new UnsupportedSystemException("inconsistent rates at "+things.get(other));
+				}
+			}
+		}
+
+		long[] solution = new long[n];
+		long[] multiple = new long[components.size()];
+		long[] componentCost = new long[components.size()];
+		long[] repetitions = new long[n];
+		for (int id = 0; id < components.size(); ++id) {
+			List<Integer> members = components.get(id);
+			long denominatorLcm = 1;
+			for (int v : members)
+				denominatorLcm = lcm(denominatorLcm, rate[v].denom());
+			long numeratorGcd = 0;
+			for (int v : members) {
+				repetitions[v] = checkedMultiply(rate[v].num(), denominatorLcm / rate[v].denom());
+				numeratorGcd = LongMath.gcd(numeratorGcd, repetitions[v]);
+			}
+			for (int v : members) {
+				repetitions[v] /= numeratorGcd;
+				multiple[id] = Math.max(multiple[id], LongMath.divide(lower[v], repetitions[v], RoundingMode.CEILING));
+				componentCost[id] = checkedAdd(componentCost[id], checkedMultiply(cost[v], repetitions[v]));
+			}
+		}
+
+		//At least one thing must fire; pick the cheapest component.
+		boolean anyFires = false;
+		for (long k : multiple)
+			anyFires |= k > 0;
+		if (!anyFires) {
+			int cheapest = 0;
+			for (int id = 1; id < components.size(); ++id)
+				if (componentCost[id] < componentCost[cheapest])
+					cheapest = id;
+			multiple[cheapest] = 1;
+		}
+
+		for (int v = 0; v < n; ++v)
+			solution[v] = checkedMultiply(repetitions[v], multiple[component[v]]);
+		return solution;
+	}
+
+	/**
+	 * Returns true if some thing's objective coefficient is negative, so the
+	 * least solution may not be optimal and solveInequalities() falls back to
+	 * local search.
+	 */
+	private boolean needsLocalSearch() {
+		for (long c : cost)
+			if (c < 0)
+				return true;
+		return false;
+	}
+
+	private long[] solveInequalities() {
+		long[] x = lower.clone();
+		ArrayDeque<Integer> worklist = new ArrayDeque<>();
+		for (int v = 0; v < n; ++v)
+			worklist.add(v);
+		propagate(x, worklist);
+
+		if (needsLocalSearch())
+			improve(x);
+
+		//At least one thing must fire.
+		boolean anyFires = false;
+		for (long v : x)
+			anyFires |= v > 0;
+		if (!anyFires) {
+			long[] best = null;
+			long bestCost = Long.MAX_VALUE;
+			for (int v = 0; v < n; ++v) {
+				long[] candidate = raise(x, v, 1);
+				if (candidate == null) continue;
+				long candidateCost = objective(candidate);
+				if (candidateCost < bestCost) {
+					best = candidate;
+					bestCost = candidateCost;
+				}
+			}
+			if (best == null)
+				throw new UnsupportedSystemException("couldn't make anything fire");
+			x = best;
+		}
+		return x;
+	}
+
+	/**
+	 * Local search: repeatedly applies the most improving single-thing raise
+	 * (with its consequences) until no raise improves the objective.
+	 */
+	private void improve(long[] x) {
+		long current = objective(x);
+		for (int moves = 0; moves < MAX_MOVES; ) {
+			int bestThing = -1;
+			long[] best = null;
+			long bestCost = current;
+			for (int v = 0; v < n; ++v) {
+				long[] candidate = raise(x, v, 1);
+				if (candidate == null) continue;
+				long candidateCost = objective(candidate);
+				if (candidateCost < bestCost) {
+					bestThing = v;
+					best = candidate;
+					bestCost = candidateCost;
+				}
+			}
+			if (best == null)
+				return;
+			//Keep raising the same thing while it keeps paying off; this makes
+			//consuming a large slack cost one scan instead of one per item.
+			do {
+				System.arraycopy(best, 0, x, 0, n);
+				current = bestCost;
+				++moves;
+				best = raise(x, bestThing, 1);
+				bestCost = best != null ? objective(best) : Long.MAX_VALUE;
+			} while (bestCost < current && moves < MAX_MOVES);
+		}
+	}
+
+	/**
+	 * Returns a copy of x with thing v raised by amount and the consequences
+	 * propagated, or null if propagation didn't converge.
+	 */
+	private long[] raise(long[] x, int v, long amount) {
+		long[] y = x.clone();
+		y[v] = checkedAdd(y[v], amount);
+		ArrayDeque<Integer> worklist = new ArrayDeque<>();
+		worklist.add(v);
+		try {
+			propagate(y, worklist);
+		} catch (UnsupportedSystemException ex) {
+			return null;
+		}
+		return y;
+	}
+
+	/**
+	 * Raises values in x until all constraints incident on things reachable
+	 * from the worklist are satisfied.  Every raise is forced, so if x was
+	 * below the least solution, it still is (or equals it) afterwards.
+	 */
+	private void propagate(long[] x, ArrayDeque<Integer> worklist) {
+		boolean[] queued = new boolean[n];
+		for (int v : worklist)
+			queued[v] = true;
+		int relaxations = 0;
+		while (!worklist.isEmpty()) {
+			int v = worklist.remove();
+			queued[v] = false;
+			for (int c : incident[v]) {
+				if (++relaxations > MAX_RELAXATIONS)
+					throw new UnsupportedSystemException("propagation did not converge");
+				int raised = -1;
+				switch (condition[c]) {
+					case GREATER_THAN_EQUAL:
+						raised = raiseUpstream(x, c);
+						break;
+					case LESS_THAN_EQUAL:
+						raised = raiseDownstream(x, c);
+						break;
+					case EQUAL:
+						raised = raiseUpstream(x, c);
+						int other = raiseDownstream(x, c);
+						if (other != -1) {
+							//We may have to come back to upstream, but the
+							//worklist will take care of that.
+							if (raised != -1 && !queued[raised]) {
+								queued[raised] = true;
+								worklist.add(raised);
+							}
+							raised = other;
+						}
+						break;
+					default:
+						throw new AssertionError(condition[c]);
+				}
+				if (raised != -1 && !queued[raised]) {
+					queued[raised] = true;
+					worklist.add(raised);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Enforces push*x[up] - pop*x[down] >= delta by raising x[up].
+	 * @return up if it was raised, else -1
+	 */
+	private int raiseUpstream(long[] x, int c) {
+		long needed = LongMath.divide(checkedAdd(delta[c], checkedMultiply(pop[c], x[down[c]])), push[c], RoundingMode.CEILING);
+		if (needed > x[up[c]]) {
+			x[up[c]] = needed;
+			return up[c];
+		}
+		return -1;
+	}
+
+	/**
+	 * Enforces push*x[up] - pop*x[down] <= delta by raising x[down].
+	 * @return down if it was raised, else -1
+	 */
+	private int raiseDownstream(long[] x, int c) {
+		long needed = LongMath.divide(checkedAdd(checkedMultiply(push[c], x[up[c]]), -delta[c]), pop[c], RoundingMode.CEILING);
+		if (needed > x[down[c]]) {
+			x[down[c]] = needed;
+			return down[c];
+		}
+		return -1;
+	}
+
+	private long objective(long[] x) {
+		long sum = 0;
+		for (int v = 0; v < n; ++v)
+			sum = checkedAdd(sum, checkedMultiply(cost[v], x[v]));
+		return sum;
+	}
+
+	private static long lcm(long a, long b) {
+		return checkedMultiply(a / LongMath.gcd(a, b), b);
+	}
+
+	/**
+	 * Thrown when this solver can't handle a system that the ILP solver might.
+	 */
+	static final class UnsupportedSystemException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		UnsupportedSystemException(String message) {
+			super(message);
+		}
+	}
+}
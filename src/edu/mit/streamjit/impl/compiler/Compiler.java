@@ -793,7 +793,7 @@ public final class Compiler {
 		scheduleBuilder.addAll(nodes);
 		for (StreamNode n : nodes)
 			n.constrainExternalSchedule(scheduleBuilder);
-		scheduleBuilder.multiply(multiplier);
+		scheduleBuilder.multiply(multiplier).solver(Schedule.Solver.AUTO);
 
 		try {
 			schedule = scheduleBuilder.build();
@@ -900,6 +900,7 @@ public final class Compiler {
 						.pop(info.downstream().getPopRates().get(info.getDownstreamChannelIndex()).max())
 						.peek(info.downstream().getPeekRates().get(info.getDownstreamChannelIndex()).max())
 						.bufferExactly(0);
+			scheduleBuilder.solver(Schedule.Solver.AUTO);
 			try {
 				this.internalSchedule = scheduleBuilder.build();
 			} catch (Schedule.ScheduleException ex) {
@@ -26,6 +26,7 @@ import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.math.IntMath;
 import edu.mit.streamjit.util.ilpsolve.ILPSolver;
 import edu.mit.streamjit.util.ilpsolve.SolverException;
 import java.util.HashMap;
@@ -49,6 +50,31 @@ public final class Schedule<T> {
 		this.schedule = schedule;
 	}
 	private static <T> Schedule<T> schedule(ImmutableSet<T> things,
+			ImmutableSet<ExecutionConstraint<T>> executionConstraints,
+			ImmutableSet<BufferingConstraint<T>> bufferingConstraints,
+			int multiplier, int fireCost, int excessBufferCost, Solver solverKind) {
+		if (solverKind != Solver.ILP) {
+			try {
+				ImmutableMap<T, Integer> solution = CombinatorialSolver.solve(things, executionConstraints, bufferingConstraints,
+						fireCost, excessBufferCost, solverKind == Solver.AUTO);
+				ImmutableMap.Builder<T, Integer> schedule = ImmutableMap.builder();
+				for (Map.Entry<T, Integer> e : solution.entrySet())
+					schedule.put(e.getKey(), IntMath.checkedMultiply(e.getValue(), multiplier));
+				return new Schedule<>(things, bufferingConstraints, schedule.build());
+			} catch (CombinatorialSolver.UnsupportedSystemException | ArithmeticException ex) {
+				if (solverKind == Solver.COMBINATORIAL)
+					throw new ScheduleException(ex);
+				//else fall back to the ILP
+			}
+		}
+		return ilpSchedule(things, executionConstraints, bufferingConstraints, multiplier, fireCost, excessBufferCost);
+	}
+
+	/**
+	 * Solves the scheduling problem with lp_solve.  Kept separate from
+	 * schedule() so that the native library is only loaded if we need it.
+	 */
+	private static <T> Schedule<T> ilpSchedule(ImmutableSet<T> things,
 			ImmutableSet<ExecutionConstraint<T>> executionConstraints,
 			ImmutableSet<BufferingConstraint<T>> bufferingConstraints,
 			int multiplier, int fireCost, int excessBufferCost) {
@@ -120,11 +146,39 @@ public final class Schedule<T> {
 		return new Builder<>();
 	}
 
+	/**
+	 * Selects how a Builder solves its constraints.  The default is ILP.  The
+	 * combinatorial solver is exact for steady-state schedules and for init
+	 * schedules without buffering costs, but its local search may return a
+	 * costlier (though still feasible) init schedule than the ILP when excess
+	 * buffering is costed.  AUTO uses it only where it's exact, so it gives
+	 * the same schedules as the ILP without loading lp_solve.
+	 */
+	public static enum Solver {
+		/**
+		 * Solve with the lp_solve ILP solver (requires the native library).
+		 * This is the default.
+		 */
+		ILP,
+		/**
+		 * Solve with the pure-Java {@link CombinatorialSolver}, throwing
+		 * ScheduleException if it can't handle the system.
+		 */
+		COMBINATORIAL,
+		/**
+		 * Solve with the CombinatorialSolver where it's exact, falling back
+		 * to the ILP solver for costed init schedules and systems it can't
+		 * handle.
+		 */
+		AUTO
+	}
+
 	public static final class Builder<T> {
 		private final Set<T> things = new HashSet<>();
 		private final Set<ExecutionConstraint<T>> executionConstraints = new HashSet<>();
 		private final Set<BufferingConstraint<T>> bufferingConstraints = new HashSet<>();
 		private int multiplier = 1, fireCost = 1, excessBufferCost = 0;
+		private Solver solver = Solver.ILP;
 		private Builder() {}
 
 		public Builder<T> add(T thing) {
@@ -233,8 +287,13 @@ public final class Schedule<T> {
 			return this;
 		}
 
+		public Builder<T> solver(Solver solver) {
+			this.solver = checkNotNull(solver);
+			return this;
+		}
+
 		public Schedule<T> build() {
-			return schedule(ImmutableSet.copyOf(things), ImmutableSet.copyOf(executionConstraints), ImmutableSet.copyOf(bufferingConstraints), multiplier, fireCost, excessBufferCost);
+			return schedule(ImmutableSet.copyOf(things), ImmutableSet.copyOf(executionConstraints), ImmutableSet.copyOf(bufferingConstraints), multiplier, fireCost, excessBufferCost, solver);
 		}
 
 		@Override
@@ -243,14 +302,14 @@ public final class Schedule<T> {
 		}
 	}
 
-	private static class BufferingConstraint<T> {
-		private static enum Condition {
+	static class BufferingConstraint<T> {
+		static enum Condition {
 			LESS_THAN, LESS_THAN_EQUAL, EQUAL, GREATER_THAN_EQUAL, GREATER_THAN;
 		};
-		private final T upstream, downstream;
-		private final int pushRate, popRate, excessPeeks;
-		private final Condition condition;
-		private final int bufferDelta;
+		final T upstream, downstream;
+		final int pushRate, popRate, excessPeeks;
+		final Condition condition;
+		final int bufferDelta;
 		private BufferingConstraint(T upstream, T downstream, int pushRate, int popRate, int peekRate, Condition condition, int bufferDelta) {
 			this.upstream = upstream;
 			this.downstream = downstream;
@@ -269,9 +328,9 @@ public final class Schedule<T> {
 		}
 	}
 
-	private static class ExecutionConstraint<T> {
-		private final T thing;
-		private final int minExecutions; //we can use the Condition enum if we ever want exact/less
+	static class ExecutionConstraint<T> {
+		final T thing;
+		final int minExecutions; //we can use the Condition enum if we ever want exact/less
 		private ExecutionConstraint(T thing, int minExecutions) {
 			this.thing = thing;
 			this.minExecutions = minExecutions;
@@ -23,14 +23,20 @@ package edu.mit.streamjit.impl.compiler2;
 
 import static com.google.common.base.Preconditions.*;
 import com.google.common.base.Predicates;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.Sets;
 import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import edu.mit.streamjit.api.Filter;
 import edu.mit.streamjit.api.Joiner;
 import edu.mit.streamjit.api.Splitter;
@@ -81,6 +87,8 @@ import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Contains information about a Worker subclass, detached from any particular
@@ -92,6 +100,20 @@ import java.util.Map;
  * @since 9/20/2013
  */
 public class ActorArchetype {
+	/**
+	 * Generated code, keyed by worker class and the set of (input, output)
+	 * work method signatures (the unboxing decisions), shared between
+	 * compilations.  The generated code doesn't depend on any particular
+	 * worker instance, so recompiling the same graph (e.g., during tuning)
+	 * need not rewrite bytecode and load fresh classes.
+	 *
+	 * Values are weakly held.  Compiled blobs hold the Code they use (see
+	 * Compiler2BlobHost), so an entry (with its Module and class loader) is
+	 * evicted once no blob references it.
+	 */
+	private static final Cache<Pair<Class<?>, ImmutableSet<Pair<Class<?>, Class<?>>>>, Code> CODE_CACHE
+			= CacheBuilder.newBuilder().weakValues().build();
+	private static final AtomicInteger PACKAGE_NUMBER = new AtomicInteger();
 	private final Class<? extends Worker<?, ?>> workerClass;
 	/**
 	 * The worker's nonstatic fields, final and nonfinal, including inherited
@@ -102,12 +124,18 @@ public class ActorArchetype {
 	 */
 	private final ImmutableList<java.lang.reflect.Field> fields;
 	/**
-	 * The Klass corresponding to the worker class.
+	 * The Klass corresponding to the worker class, in the Module code is being
+	 * generated into.  Only valid while generating code.
 	 */
-	private final Klass workerKlass;
-	private MethodHandle constructStateHolder;
-	private ImmutableMap<Pair<Class<?>, Class<?>>, MethodHandle> workMethods;
-	public ActorArchetype(Class<? extends Worker<?, ?>> workerClass, Module module) {
+	private Klass workerKlass;
+	private Code code;
+	/**
+	 * Code specialized for particular instances (see
+	 * generateSpecializedCode()).  Not cached, as it depends on the instance's
+	 * field values.
+	 */
+	private final Map<WorkerActor, Code> specializedCode = new HashMap<>();
+	public ActorArchetype(Class<? extends Worker<?, ?>> workerClass) {
 		this.workerClass = workerClass;
 		ImmutableList.Builder<java.lang.reflect.Field> fieldsBuilder = ImmutableList.builder();
 		for (Class<?> c = this.workerClass; c != Filter.class && c != Splitter.class && c != Joiner.class; c = c.getSuperclass()) {
@@ -118,7 +146,6 @@ public class ActorArchetype {
 				}
 		}
 		this.fields = fieldsBuilder.build();
-		this.workerKlass = module.getKlass(workerClass);
 	}
 
 	public Class<? extends Worker<?, ?>> workerClass() {
@@ -155,11 +182,88 @@ public class ActorArchetype {
 		return ReflectionUtils.getAllSupertypes(workerClass()).contains(StatefulFilter.class);
 	}
 
-	public void generateCode(String packageName, ModuleClassLoader loader, Iterable<WorkerActor> actors) {
-		assert workMethods == null : "already generated code for "+this;
+	/**
+	 * Generates (or retrieves from the cache) work methods for the given
+	 * actors, which must be instances of this archetype.
+	 * @param actors the actors to generate code for
+	 */
+	public void generateCode(Iterable<WorkerActor> actors) {
+		assert code == null : "already generated code for "+this;
 		//If we've removed all instances of this archetype, don't spin an empty class.
 		if (Iterables.isEmpty(actors)) return;
 
+		ImmutableSet.Builder<Pair<Class<?>, Class<?>>> signaturesBuilder = ImmutableSet.builder();
+		for (WorkerActor a : actors)
+			signaturesBuilder.add(new Pair<Class<?>, Class<?>>(a.inputType().getRawType(), a.outputType().getRawType()));
+		ImmutableSet<Pair<Class<?>, Class<?>>> signatures = signaturesBuilder.build();
+		try {
+			this.code = CODE_CACHE.get(new Pair<Class<?>, ImmutableSet<Pair<Class<?>, Class<?>>>>(workerClass, signatures),
+					() -> spinCode(signatures));
+		} catch (ExecutionException | UncheckedExecutionException | ExecutionError ex) {
+			Throwables.propagateIfPossible(ex.getCause());
+			throw new AssertionError(ex.getCause());
+		}
+	}
+
+	/**
+	 * Generates work methods specialized for the given actor, which must be an
+	 * instance of this archetype.  The actor's final instance fields become
+	 * static final fields of a per-instance state holder class, which the JVM
+	 * treats as constants when compiling the work method: loop trip counts
+	 * over final int fields or final array lengths become constant, so the
+	 * JIT can fully or partially unroll those loops and fold the values into
+	 * the loop bodies.  The cost is a class per instance (and less sharing of
+	 * JIT-compiled code), so this is optional.
+	 * @param a the actor to generate code for
+	 */
+	public void generateSpecializedCode(WorkerActor a) {
+		checkArgument(a.archetype() == this);
+		assert !specializedCode.containsKey(a) : "already generated code for "+a;
+		ImmutableSet<Pair<Class<?>, Class<?>>> signatures = ImmutableSet.of(
+				new Pair<Class<?>, Class<?>>(a.inputType().getRawType(), a.outputType().getRawType()));
+		Module module = new Module();
+		ModuleClassLoader loader = new ModuleClassLoader(module);
+		String packageName = "specialized"+PACKAGE_NUMBER.getAndIncrement();
+		this.workerKlass = module.getKlass(workerClass);
+		try {
+			specializedCode.put(a, spinCode(packageName, loader, signatures, a.worker()));
+		} finally {
+			this.workerKlass = null;
+		}
+	}
+
+	/**
+	 * Returns the generated code used by this archetype, or null if no code
+	 * was generated because there were no instances.
+	 * @return the generated code, or null
+	 */
+	Code code() {
+		return code;
+	}
+
+	private Code spinCode(ImmutableSet<Pair<Class<?>, Class<?>>> signatures) {
+		Module module = new Module();
+		ModuleClassLoader loader = new ModuleClassLoader(module);
+		String packageName = "archetype"+PACKAGE_NUMBER.getAndIncrement();
+		this.workerKlass = module.getKlass(workerClass);
+		try {
+			return spinCode(packageName, loader, signatures, null);
+		} finally {
+			//Don't keep the Module alive.
+			this.workerKlass = null;
+		}
+	}
+
+	/**
+	 * Generates the state holder and work methods.
+	 * @param packageName the package to generate classes in
+	 * @param loader the class loader for the module
+	 * @param signatures the (input, output) work method signatures
+	 * @param instance the instance to specialize for, or null to generate
+	 * code for any instance
+	 * @return the generated code
+	 */
+	private Code spinCode(String packageName, ModuleClassLoader loader, ImmutableSet<Pair<Class<?>, Class<?>>> signatures, Worker<?, ?> instance) {
 		Module module = workerKlass.getParent();
 		TypeFactory types = module.types();
 		//We need to resolve work before making the state holder class so we
@@ -167,7 +271,7 @@ public class ActorArchetype {
 		Method oldWork = workerKlass.getMethodByVirtual("work", types.getMethodType(types.getVoidType(), types.getRegularType(workerKlass)));
 		oldWork.resolve();
 
-		Klass stateHolderKlass = makeStateHolderKlass(packageName);
+		Klass stateHolderKlass = makeStateHolderKlass(packageName, instance != null);
 		Klass archetypeKlass = new Klass(packageName + "." + workerKlass.getName()+"Archetype",
 				module.getKlass(Object.class),
 				ImmutableList.<Klass>of(),
@@ -175,10 +279,8 @@ public class ActorArchetype {
 		archetypeKlass.modifiers().addAll(EnumSet.of(Modifier.PUBLIC, Modifier.FINAL));
 
 		Map<Pair<Class<?>, Class<?>>, Method> methods = new HashMap<>();
-		for (WorkerActor a : actors) {
-			Class<?> inputType = a.inputType().getRawType(), outputType = a.outputType().getRawType();
-			Pair<Class<?>, Class<?>> key = new Pair<Class<?>, Class<?>>(inputType, outputType);
-			if (methods.containsKey(key)) continue;
+		for (Pair<Class<?>, Class<?>> key : signatures) {
+			Class<?> inputType = key.first, outputType = key.second;
 
 			//We modify rwork while remapping so we need a fresh clone.
 			Method rwork = makeRwork(archetypeKlass, stateHolderKlass);
@@ -204,9 +306,12 @@ public class ActorArchetype {
 		}
 
 		ImmutableMap.Builder<Pair<Class<?>, Class<?>>, MethodHandle> workMethodsBuilder = ImmutableMap.builder();
+		MethodHandle constructStateHolder;
 		try {
+			if (instance != null)
+				initFieldHelper(loader.loadClass(fieldHelperName(packageName)), instance);
 			Class<?> stateHolderClass = loader.loadClass(stateHolderKlass.getName());
-			this.constructStateHolder = findConstructor(stateHolderClass);
+			constructStateHolder = findConstructor(stateHolderClass);
 			Class<?> archetypeClass = loader.loadClass(archetypeKlass.getName());
 			ImmutableListMultimap<String, java.lang.reflect.Method> methodsByName
 					= Multimaps.index(Arrays.asList(archetypeClass.getMethods()), java.lang.reflect.Method::getName);
@@ -218,23 +323,45 @@ public class ActorArchetype {
 		} catch (ClassNotFoundException | IllegalAccessException ex) {
 			throw new AssertionError(ex);
 		}
-		this.workMethods = workMethodsBuilder.build();
+		return new Code(constructStateHolder, workMethodsBuilder.build());
 	}
 
-	private Klass makeStateHolderKlass(String packageName) {
+	/**
+	 * Makes the state holder class.  If specializing, final instance fields
+	 * become static final fields, initialized from a field helper class whose
+	 * (nonfinal) fields are set reflectively before the state holder is
+	 * initialized.
+	 * @param packageName the package to generate classes in
+	 * @param specialize whether we're specializing for an instance
+	 * @return the state holder class
+	 */
+	private Klass makeStateHolderKlass(String packageName, boolean specialize) {
 		Module module = workerKlass.getParent();
 		Klass stateHolder = new Klass(packageName + "." + workerKlass.getName() + "StateHolder",
 				module.getKlass(StateHolder.class),
 				ImmutableList.<Klass>of(),
 				module);
 		stateHolder.modifiers().add(Modifier.PUBLIC);
+		Klass fieldHelper = null;
+		if (specialize) {
+			fieldHelper = new Klass(fieldHelperName(packageName),
+					module.getKlass(Object.class),
+					ImmutableList.<Klass>of(),
+					module);
+			fieldHelper.modifiers().addAll(EnumSet.of(Modifier.PUBLIC, Modifier.FINAL));
+		}
 
-		Map<Field, Field> workerToHolder = new HashMap<>();
+		Map<Field, Field> workerToHolder = new HashMap<>(), holderToHelper = new HashMap<>();
 		for (Klass k = workerKlass; k.getBackingClass() != Filter.class && k.getBackingClass() != Splitter.class && k.getBackingClass() != Joiner.class; k = k.getSuperclass())
 			for (Field wf : k.fields()) {
 				//Don't bother with unused fields.
 				if (FluentIterable.from(wf.users()).filter(LoadInst.class).isEmpty()) continue;
-				Field hf = new Field(wf.getType().getFieldType(), wf.getName(), wf.modifiers(), stateHolder);
+				Field hf;
+				if (specialize && !wf.isStatic() && wf.modifiers().contains(Modifier.FINAL)) {
+					hf = new Field(wf.getType().getFieldType(), wf.getName(), EnumSet.of(Modifier.STATIC, Modifier.FINAL), stateHolder);
+					holderToHelper.put(hf, new Field(wf.getType().getFieldType(), wf.getName(), EnumSet.of(Modifier.PUBLIC, Modifier.STATIC), fieldHelper));
+				} else
+					hf = new Field(wf.getType().getFieldType(), wf.getName(), wf.modifiers(), stateHolder);
 				hf.setAccess(Access.PUBLIC);
 				workerToHolder.put(wf, hf);
 			}
@@ -257,7 +384,14 @@ public class ActorArchetype {
 
 		for (Map.Entry<Field, Field> e : workerToHolder.entrySet()) {
 			Field wf = e.getKey(), hf = e.getValue();
-			(hf.isStatic() ? clinitBlock : initBlock).instructions().addAll(initStateHolderField(wf, hf, worker, holder));
+			Field helper = holderToHelper.get(hf);
+			if (helper != null) {
+				LoadInst li = new LoadInst(helper);
+				StoreInst si = new StoreInst(hf, li);
+				clinitBlock.instructions().add(li);
+				clinitBlock.instructions().add(si);
+			} else
+				(hf.isStatic() ? clinitBlock : initBlock).instructions().addAll(initStateHolderField(wf, hf, worker, holder));
 		}
 
 		initBlock.instructions().add(new ReturnInst(types.getVoidType()));
@@ -306,6 +440,25 @@ public class ActorArchetype {
 		return builder.add(field, access, get, cast, store).build();
 	}
 
+	private String fieldHelperName(String packageName) {
+		return packageName + "." + workerKlass.getName() + "FieldHelper";
+	}
+
+	/**
+	 * Copies the given instance's field values into the field helper's
+	 * fields of the same names.
+	 */
+	private static void initFieldHelper(Class<?> fieldHelperClass, Worker<?, ?> instance) {
+		for (java.lang.reflect.Field helper : fieldHelperClass.getFields())
+			try {
+				java.lang.reflect.Field f = ReflectionUtils.getFieldByName(instance, helper.getName());
+				f.setAccessible(true);
+				helper.set(null, f.get(instance));
+			} catch (IllegalAccessException ex) {
+				throw new AssertionError(ex);
+			}
+	}
+
 	private static String makeWorkMethodName(Class<?> inputType, Class<?> outputType) {
 		return "work"+inputType.getSimpleName()+outputType.getSimpleName();
 	}
@@ -688,7 +841,7 @@ public class ActorArchetype {
 	public StateHolder makeStateHolder(WorkerActor a) {
 		checkArgument(a.archetype() == this);
 		try {
-			return (StateHolder)constructStateHolder.invoke(a.worker());
+			return (StateHolder)code(a).constructStateHolder.invoke(a.worker());
 		} catch (Throwable ex) {
 			throw new AssertionError(ex);
 		}
@@ -705,7 +858,26 @@ public class ActorArchetype {
 	 */
 	public MethodHandle specialize(WorkerActor a) {
 		checkArgument(a.archetype() == this);
-		MethodHandle handle = workMethods.get(new Pair<>(a.inputType().getRawType(), a.outputType().getRawType()));
+		MethodHandle handle = code(a).workMethods.get(new Pair<>(a.inputType().getRawType(), a.outputType().getRawType()));
 		return handle.bindTo(a.stateHolder());
 	}
+
+	private Code code(WorkerActor a) {
+		Code specialized = specializedCode.get(a);
+		return specialized != null ? specialized : code;
+	}
+
+	/**
+	 * The generated state holder constructor and work methods for one worker
+	 * class and set of work method signatures.  Opaque outside this class;
+	 * holding a reference keeps the cache entry (and its classes) alive.
+	 */
+	public static final class Code {
+		private final MethodHandle constructStateHolder;
+		private final ImmutableMap<Pair<Class<?>, Class<?>>, MethodHandle> workMethods;
+		private Code(MethodHandle constructStateHolder, ImmutableMap<Pair<Class<?>, Class<?>>, MethodHandle> workMethods) {
+			this.constructStateHolder = constructStateHolder;
+			this.workMethods = workMethods;
+		}
+	}
 }
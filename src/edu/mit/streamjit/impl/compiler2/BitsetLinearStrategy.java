@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import edu.mit.streamjit.api.DuplicateSplitter;
+import edu.mit.streamjit.api.Filter;
+import edu.mit.streamjit.api.RoundrobinJoiner;
+import edu.mit.streamjit.api.RoundrobinSplitter;
+import edu.mit.streamjit.api.StatefulFilter;
+import edu.mit.streamjit.api.WeightedRoundrobinJoiner;
+import edu.mit.streamjit.api.WeightedRoundrobinSplitter;
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.impl.common.Workers;
+import java.util.Set;
+
+/**
+ * A linear strategy using a set of boolean parameters.  Combination is off by
+ * default because it reassociates floating-point arithmetic.  The frequency
+ * parameters only matter for actors that are (or result from combining)
+ * linear filters with their linear parameter set.
+ * @since 10/17/2026
+ */
+public final class BitsetLinearStrategy implements LinearStrategy {
+	@Override
+	public void makeParameters(Set<Worker<?, ?>> workers, Configuration.Builder builder) {
+		for (Worker<?, ?> w : workers) {
+			if (w instanceof Filter && !(w instanceof StatefulFilter)) {
+				builder.addParameter(Configuration.SwitchParameter.create("linear"+Workers.getIdentifier(w), false));
+				builder.addParameter(Configuration.SwitchParameter.create("frequency"+Workers.getIdentifier(w), false));
+			} else if (w instanceof DuplicateSplitter || w instanceof RoundrobinSplitter || w instanceof WeightedRoundrobinSplitter) {
+				builder.addParameter(Configuration.SwitchParameter.create("linear"+Workers.getIdentifier(w), false));
+				//A combined splitjoin takes its splitter's identifier.
+				builder.addParameter(Configuration.SwitchParameter.create("frequency"+Workers.getIdentifier(w), false));
+			} else if (w instanceof RoundrobinJoiner || w instanceof WeightedRoundrobinJoiner)
+				builder.addParameter(Configuration.SwitchParameter.create("linear"+Workers.getIdentifier(w), false));
+		}
+	}
+
+	@Override
+	public boolean combine(WorkerActor a, Configuration config) {
+		Configuration.SwitchParameter<Boolean> param = config.getParameter("linear"+a.id(), Configuration.SwitchParameter.class, Boolean.class);
+		return param != null && param.getValue();
+	}
+
+	@Override
+	public boolean useFrequencyDomain(WorkerActor a, Configuration config) {
+		Configuration.SwitchParameter<Boolean> param = config.getParameter("frequency"+a.id(), Configuration.SwitchParameter.class, Boolean.class);
+		return param != null && param.getValue();
+	}
+}
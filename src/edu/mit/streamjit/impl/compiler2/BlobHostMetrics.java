@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import com.google.common.collect.ImmutableMap;
+import edu.mit.streamjit.impl.blob.Blob.Token;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters for a running Compiler2BlobHost.  The blob host updates these once
+ * per steady-state iteration (not per item), and all but the per-core barrier
+ * wait times are updated only in the barrier action, so they never contend.
+ * Any thread may read them at any time; reads are a consistent-enough view
+ * for monitoring, not an atomic snapshot.
+ * <p/>
+ * If the blob's configuration requests it, the host registers its metrics as
+ * an MXBean named {@code edu.mit.streamjit:type=Compiler2BlobHost,id=N} until
+ * the blob drains.
+ * @since 10/17/2026
+ */
+public final class BlobHostMetrics implements BlobHostMetricsMXBean {
+	/**
+	 * The extra data key enabling MXBean registration.
+	 */
+	public static final String EXTRA_DATA_KEY = "metrics";
+	private static final AtomicInteger NEXT_ID = new AtomicInteger();
+	/**
+	 * Items per steady-state iteration for each input or output token.
+	 */
+	private final ImmutableMap<Token, Integer> inputRates, outputRates;
+	private final AtomicLongArray barrierWaitNanos;
+	private volatile long steadyStateStartNanos = Long.MIN_VALUE;
+	private volatile long iterations, loads, adjustNanos, readStarvations, writeBlocks, drainNanos;
+	private ObjectName objectName;
+
+	BlobHostMetrics(ImmutableMap<Token, Integer> inputRates, ImmutableMap<Token, Integer> outputRates, int cores) {
+		this.inputRates = inputRates;
+		this.outputRates = outputRates;
+		this.barrierWaitNanos = new AtomicLongArray(cores);
+	}
+
+	/* recording; called by the blob host */
+
+	void steadyStateStarted() {
+		steadyStateStartNanos = System.nanoTime();
+	}
+
+	/**
+	 * Records a steady-state barrier action: the previous iteration's output
+	 * was written, and (unless draining) the next iteration's input was read.
+	 */
+	void adjusted(long nanos, boolean loaded) {
+		iterations = iterations + 1;
+		if (loaded)
+			loads = loads + 1;
+		adjustNanos = adjustNanos + nanos;
+	}
+
+	void waited(int core, long nanos) {
+		//Each core is the only writer of its element.
+		barrierWaitNanos.lazySet(core, barrierWaitNanos.get(core) + nanos);
+	}
+
+	void readStarved() {
+		readStarvations = readStarvations + 1;
+	}
+
+	void writeBlocked() {
+		writeBlocks = writeBlocks + 1;
+	}
+
+	void drained(long nanos) {
+		drainNanos = nanos;
+	}
+
+	/* MXBean */
+
+	@Override
+	public long getSteadyStateIterations() {
+		return iterations;
+	}
+
+	@Override
+	public double getIterationsPerSecond() {
+		long start = steadyStateStartNanos;
+		if (start == Long.MIN_VALUE)
+			return 0;
+		long elapsed = System.nanoTime() - start;
+		return elapsed > 0 ? iterations * 1e9 / elapsed : 0;
+	}
+
+	@Override
+	public Map<String, Long> getItemsIn() {
+		//Reads for iteration i happen at the end of iteration i-1, so count
+		//completed loads rather than completed iterations.
+		long loads = this.loads;
+		ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+		inputRates.forEach((t, r) -> builder.put(t.toString(), loads * r));
+		return builder.build();
+	}
+
+	@Override
+	public Map<String, Long> getItemsOut() {
+		long iterations = this.iterations;
+		ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+		outputRates.forEach((t, r) -> builder.put(t.toString(), iterations * r));
+		return builder.build();
+	}
+
+	@Override
+	public long getAdjustNanos() {
+		return adjustNanos;
+	}
+
+	@Override
+	public long[] getBarrierWaitNanos() {
+		long[] r = new long[barrierWaitNanos.length()];
+		for (int i = 0; i < r.length; ++i)
+			r[i] = barrierWaitNanos.get(i);
+		return r;
+	}
+
+	@Override
+	public long getReadStarvations() {
+		return readStarvations;
+	}
+
+	@Override
+	public long getWriteBlocks() {
+		return writeBlocks;
+	}
+
+	@Override
+	public long getDrainNanos() {
+		return drainNanos;
+	}
+
+	synchronized void register() {
+		if (objectName != null) return;
+		try {
+			ObjectName name = new ObjectName("edu.mit.streamjit:type=Compiler2BlobHost,id="+NEXT_ID.getAndIncrement());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+			objectName = name;
+		} catch (JMException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	synchronized void unregister() {
+		if (objectName == null) return;
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.unregisterMBean(objectName);
+		} catch (JMException ex) {
+			//already gone; nothing to do
+		}
+		objectName = null;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d iterations (%.1f/s), %d ns adjusting, %d read starvations, %d write blocks",
+				getSteadyStateIterations(), getIterationsPerSecond(), getAdjustNanos(), getReadStarvations(), getWriteBlocks());
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import java.util.Map;
+
+/**
+ * The JMX view of a Compiler2BlobHost's BlobHostMetrics.  All counts are
+ * cumulative since the blob was created.
+ * @since 10/17/2026
+ */
+public interface BlobHostMetricsMXBean {
+	/**
+	 * Returns the number of completed steady-state iterations.
+	 * @return the number of completed steady-state iterations
+	 */
+	public long getSteadyStateIterations();
+	/**
+	 * Returns the average steady-state iterations per second since the init
+	 * schedule completed, or 0 if it hasn't.
+	 * @return steady-state iterations per second
+	 */
+	public double getIterationsPerSecond();
+	/**
+	 * Returns the number of items read from each input token's buffer, keyed
+	 * by the token's string form.
+	 * @return items read per input token
+	 */
+	public Map<String, Long> getItemsIn();
+	/**
+	 * Returns the number of items written to each output token's buffer, keyed
+	 * by the token's string form.
+	 * @return items written per output token
+	 */
+	public Map<String, Long> getItemsOut();
+	/**
+	 * Returns the total time spent in the barrier action between steady-state
+	 * iterations (writing output, adjusting storage and reading input).
+	 * @return total adjust time in nanoseconds
+	 */
+	public long getAdjustNanos();
+	/**
+	 * Returns the total time each core spent waiting at the barrier, including
+	 * the barrier action itself.  Element i is core i.
+	 * @return per-core barrier wait time in nanoseconds
+	 */
+	public long[] getBarrierWaitNanos();
+	/**
+	 * Returns the number of times a read instruction found too few items in
+	 * its buffer and had to idle.
+	 * @return the number of read starvations
+	 */
+	public long getReadStarvations();
+	/**
+	 * Returns the number of times a round of write instructions made no
+	 * progress (all output buffers full) and had to idle.
+	 * @return the number of write blocks
+	 */
+	public long getWriteBlocks();
+	/**
+	 * Returns the time taken to drain (from running out of input while
+	 * draining to writing the last output), or 0 if the blob hasn't drained.
+	 * @return drain time in nanoseconds
+	 */
+	public long getDrainNanos();
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.util.Pair;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An on-disk cache of Compiler2 schedules, keyed by a hash of the stream graph
+ * (as fused into groups), its rates and initial data, and the configuration's
+ * parameters.  Restarting a stream with a known configuration then skips the
+ * schedule solves.  Entries are small properties files, one per key, written
+ * atomically so concurrent compilers sharing a directory are safe.
+ * <p/>
+ * The cache is enabled by putting a directory (a Path or String) in the
+ * configuration's extra data under {@link #EXTRA_DATA_KEY}.
+ * @since 10/17/2026
+ */
+final class CompilationCache {
+	public static final String EXTRA_DATA_KEY = "compilationCache";
+	/**
+	 * Bumped when the key or entry format changes, so old entries are ignored.
+	 */
+	private static final int VERSION = 1;
+	private final Path directory;
+	private CompilationCache(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Returns the cache the given configuration asks for, or null if it
+	 * doesn't ask for one.
+	 * @param config a configuration
+	 * @return a cache, or null
+	 */
+	public static CompilationCache fromConfiguration(Configuration config) {
+		Object dir = config.getExtraData(EXTRA_DATA_KEY);
+		if (dir == null)
+			return null;
+		return new CompilationCache(dir instanceof Path ? (Path)dir : Paths.get(dir.toString()));
+	}
+
+	/**
+	 * Computes the cache key for the given fused graph and configuration.
+	 * Extra data isn't part of the key, as it doesn't affect scheduling.
+	 * @param config the configuration
+	 * @param groups the actor groups, after fusion
+	 * @param storage the storage between actors
+	 * @return the cache key
+	 */
+	public String key(Configuration config, Set<ActorGroup> groups, Set<Storage> storage) {
+		Hasher hasher = Hashing.sha256().newHasher();
+		hasher.putInt(VERSION);
+		//Parameters only, in name order.
+		new TreeMap<>(config.getParametersMap()).forEach((name, p) ->
+				hasher.putString(name, StandardCharsets.UTF_8).putString(Configuration.builder().addParameter(p).build().toJson(), StandardCharsets.UTF_8));
+		new TreeMap<>(config.getSubconfigurationsMap()).forEach((name, c) ->
+				hasher.putString(name, StandardCharsets.UTF_8).putString(c.toJson(), StandardCharsets.UTF_8));
+		groups.stream().sorted(Comparator.comparingInt(ActorGroup::id)).forEachOrdered(g -> {
+			hasher.putInt(g.id());
+			g.actors().stream().sorted().forEachOrdered(a -> {
+				hasher.putInt(a.id());
+				hasher.putString(a instanceof WorkerActor ? ((WorkerActor)a).worker().getClass().getName() : a.toString(), StandardCharsets.UTF_8);
+			});
+		});
+		storage.stream().sorted().forEachOrdered(s -> {
+			hasher.putString(s.id().toString(), StandardCharsets.UTF_8);
+			s.upstream().forEach(a -> hasher.putInt(a.id()));
+			s.downstream().forEach(a -> hasher.putInt(a.id()));
+			hasher.putInt(s.push()).putInt(s.peek()).putInt(s.pop());
+			for (Pair<ImmutableList<Object>, IndexFunction> p : s.initialData())
+				hasher.putInt(p.first.size());
+		});
+		return hasher.hash().toString();
+	}
+
+	/**
+	 * Returns the entry for the given key, or null if there isn't one or it
+	 * can't be read.  The cache is only an optimization, so I/O errors are
+	 * treated as misses.
+	 * @param key the key
+	 * @return the entry, or null
+	 */
+	public Map<String, Integer> get(String key) {
+		Properties p = new Properties();
+		try (Reader r = Files.newBufferedReader(file(key), StandardCharsets.UTF_8)) {
+			p.load(r);
+		} catch (IOException | IllegalArgumentException ex) {
+			return null; //missing, unreadable or malformed
+		}
+		ImmutableMap.Builder<String, Integer> entry = ImmutableMap.builder();
+		try {
+			for (String name : p.stringPropertyNames())
+				entry.put(name, Integer.parseInt(p.getProperty(name)));
+		} catch (NumberFormatException ex) {
+			return null; //corrupt; treat as a miss and overwrite it
+		}
+		return entry.build();
+	}
+
+	/**
+	 * Stores an entry for the given key, replacing any existing entry.  If the
+	 * entry can't be written, the store is skipped (and the cache misses next
+	 * time).
+	 * @param key the key
+	 * @param entry the entry
+	 */
+	public void put(String key, Map<String, Integer> entry) {
+		Properties p = new Properties();
+		entry.forEach((name, value) -> p.setProperty(name, value.toString()));
+		Path temp = null;
+		try {
+			Files.createDirectories(directory);
+			temp = Files.createTempFile(directory, key, ".tmp");
+			try (Writer w = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				p.store(w, null);
+			}
+			Files.move(temp, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ex) {
+			if (temp != null)
+				try {
+					Files.deleteIfExists(temp);
+				} catch (IOException ignored) {}
+		}
+	}
+
+	private Path file(String key) {
+		return directory.resolve(key + ".schedule");
+	}
+
+	@Override
+	public String toString() {
+		return "CompilationCache in "+directory;
+	}
+}
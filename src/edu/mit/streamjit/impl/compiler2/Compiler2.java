@@ -22,6 +22,7 @@
 package edu.mit.streamjit.impl.compiler2;
 
 import com.google.common.base.Function;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.HashBasedTable;
@@ -40,6 +41,7 @@ import com.google.common.primitives.Primitives;
 import com.google.common.reflect.TypeResolver;
 import com.google.common.reflect.TypeToken;
 import edu.mit.streamjit.api.DuplicateSplitter;
+import edu.mit.streamjit.api.Filter;
 import edu.mit.streamjit.api.IllegalStreamGraphException;
 import edu.mit.streamjit.api.Input;
 import edu.mit.streamjit.api.Joiner;
@@ -56,6 +58,7 @@ import edu.mit.streamjit.impl.blob.Blob;
 import edu.mit.streamjit.impl.blob.Blob.Token;
 import edu.mit.streamjit.impl.blob.Buffer;
 import edu.mit.streamjit.impl.blob.DrainData;
+import edu.mit.streamjit.impl.blob.NIOBackedBuffer;
 import edu.mit.streamjit.impl.blob.PeekableBuffer;
 import edu.mit.streamjit.impl.common.Configuration;
 import edu.mit.streamjit.impl.common.Configuration.IntParameter;
@@ -72,21 +75,24 @@ import edu.mit.streamjit.test.Benchmarker;
 import edu.mit.streamjit.test.apps.fmradio.FMRadio;
 import edu.mit.streamjit.util.CollectionUtils;
 import edu.mit.streamjit.util.GeneralBinarySearch;
+import edu.mit.streamjit.util.NIOBufferUtils;
 import edu.mit.streamjit.util.bytecode.methodhandles.Combinators;
+import static edu.mit.streamjit.util.bytecode.methodhandles.LookupUtils.findVirtual;
 import edu.mit.streamjit.util.Pair;
 import edu.mit.streamjit.util.ReflectionUtils;
-import edu.mit.streamjit.util.bytecode.Module;
-import edu.mit.streamjit.util.bytecode.ModuleClassLoader;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import static java.lang.invoke.MethodType.methodType;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -94,7 +100,6 @@ import java.util.NavigableSet;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -106,20 +111,30 @@ public class Compiler2 {
 			RoundrobinSplitter.class, WeightedRoundrobinSplitter.class, DuplicateSplitter.class,
 			RoundrobinJoiner.class, WeightedRoundrobinJoiner.class);
 	public static final ImmutableSet<IndexFunctionTransformer> INDEX_FUNCTION_TRANSFORMERS = ImmutableSet.<IndexFunctionTransformer>of(
-			new IdentityIndexFunctionTransformer()
-//			new ArrayifyIndexFunctionTransformer(false),
-//			new ArrayifyIndexFunctionTransformer(true)
+			new IdentityIndexFunctionTransformer(),
+			new ArrayifyIndexFunctionTransformer(false),
+			new ArrayifyIndexFunctionTransformer(true)
 	);
 	public static final RemovalStrategy REMOVAL_STRATEGY = new BitsetRemovalStrategy();
 	public static final FusionStrategy FUSION_STRATEGY = new BitsetFusionStrategy();
 	public static final UnboxingStrategy UNBOXING_STRATEGY = new BitsetUnboxingStrategy();
-	public static final AllocationStrategy ALLOCATION_STRATEGY = new SubsetBiasAllocationStrategy(8);
+	public static final AllocationStrategy ALLOCATION_STRATEGY = new PipelinedAllocationStrategy(new SubsetBiasAllocationStrategy(8));
 	public static final StorageStrategy INTERNAL_STORAGE_STRATEGY = new TuneInternalStorageStrategy();
 	public static final StorageStrategy EXTERNAL_STORAGE_STRATEGY = new TuneExternalStorageStrategy();
 	public static final SwitchingStrategy SWITCHING_STRATEGY = SwitchingStrategy.tunePerWorker();
-	private static final AtomicInteger PACKAGE_NUMBER = new AtomicInteger();
+	public static final LinearStrategy LINEAR_STRATEGY = new BitsetLinearStrategy();
+	/**
+	 * The minimum number of taps for which we'll compute a FIR filter in the
+	 * frequency domain.  (Below this, the transforms cost more than they save.)
+	 */
+	private static final int MIN_FREQUENCY_TAPS = 64;
+	/**
+	 * Prefix (followed by a worker id) of the per-worker switch enabling code
+	 * specialized for that worker's final fields.
+	 */
+	static final String SPECIALIZATION_PARAMETER_PREFIX = "specialize";
 	private final ImmutableSet<Worker<?, ?>> workers;
-	private final ImmutableSet<ActorArchetype> archetypes;
+	private ImmutableSet<ActorArchetype> archetypes;
 	private final NavigableSet<Actor> actors;
 	private ImmutableSortedSet<ActorGroup> groups;
 	private ImmutableSortedSet<WorkerActor> actorsToBeRemoved;
@@ -139,9 +154,6 @@ public class Compiler2 {
 	private final ImmutableMap<Token, ImmutableList<Object>> initialStateDataMap;
 	private final Set<Storage> storage;
 	private ImmutableMap<ActorGroup, Integer> externalSchedule;
-	private final Module module = new Module();
-	private final ModuleClassLoader classloader = new ModuleClassLoader(module);
-	private final String packageName = "compiler"+PACKAGE_NUMBER.getAndIncrement();
 	private ImmutableMap<ActorGroup, Integer> initSchedule;
 	/**
 	 * For each token in the blob, the number of items live on that edge after
@@ -172,9 +184,14 @@ public class Compiler2 {
 	 */
 	private ImmutableList<MethodHandle> steadyStateCode;
 	private final List<ReadInstruction> initReadInstructions = new ArrayList<>();
+	private final List<DynamicAllocation> dynamicAllocations = new ArrayList<>();
 	private final List<WriteInstruction> initWriteInstructions = new ArrayList<>();
 	private final List<Runnable> migrationInstructions = new ArrayList<>();
 	private final List<ReadInstruction> readInstructions = new ArrayList<>();
+	/**
+	 * Items read or written per steady-state iteration, for each token.
+	 */
+	private final ImmutableMap.Builder<Token, Integer> steadyStateRates = ImmutableMap.builder();
 	private final List<WriteInstruction> writeInstructions = new ArrayList<>();
 	private final List<DrainInstruction> drainInstructions = new ArrayList<>();
 	public Compiler2(Set<Worker<?, ?>> workers, Configuration config, int maxNumCores, DrainData initialState, Input<?> input, Output<?> output) {
@@ -185,7 +202,7 @@ public class Compiler2 {
 			@SuppressWarnings("unchecked")
 			Class<? extends Worker<?, ?>> wClass = (Class<? extends Worker<?, ?>>)w.getClass();
 			if (archetypesBuilder.get(wClass) == null)
-				archetypesBuilder.put(wClass, new ActorArchetype(wClass, module));
+				archetypesBuilder.put(wClass, new ActorArchetype(wClass));
 			WorkerActor actor = new WorkerActor(w, archetypesBuilder.get(wClass));
 			workerActors.put(w, actor);
 		}
@@ -228,6 +245,7 @@ public class Compiler2 {
 	}
 
 	public Blob compile() {
+		combineLinear();
 		findRemovals();
 		fuse();
 		schedule();
@@ -246,6 +264,146 @@ public class Compiler2 {
 		return instantiateBlob();
 	}
 
+	/**
+	 * Replaces linear filters, and pipelines and splitjoins of them, with
+	 * combined LinearFilters as directed by the configuration, then replaces
+	 * long linear FIR filters with FrequencyLinearFilters if so directed.
+	 * This runs before removal and fusion, so the graph is still one actor per
+	 * worker.
+	 *
+	 * A combined actor computes the same outputs as the actors it replaces,
+	 * but leaves no items on the internal edges, so we don't combine across
+	 * edges with initial data.  When draining, the items left on its input
+	 * are given to the first replaced worker, which (being stateless)
+	 * recomputes the items that would have been on the internal edges.
+	 */
+	private void combineLinear() {
+		Map<WorkerActor, LinearRepresentation> linear = new HashMap<>();
+		for (WorkerActor a : Iterables.filter(actors, WorkerActor.class)) {
+			if (!(a.worker() instanceof Filter) || a.archetype().isStateful() || !LINEAR_STRATEGY.combine(a, config))
+				continue;
+			LinearRepresentation rep = LinearAnalyzer.analyze((Filter<?, ?>)a.worker());
+			if (rep != null)
+				linear.put(a, rep);
+		}
+		if (linear.isEmpty()) return;
+
+		just_combined: do {
+			for (WorkerActor a : ImmutableSortedSet.copyOf(linear.keySet())) {
+				if (a.outputs().size() != 1) continue;
+				Storage s = a.outputs().get(0);
+				Actor downstream = Iterables.getOnlyElement(s.downstream());
+				if (!linear.containsKey(downstream) || downstream.inputs().size() != 1 || !s.initialData().isEmpty())
+					continue;
+				LinearRepresentation rep = linear.get(a).then(linear.get((WorkerActor)downstream));
+				if (rep == null) continue;
+				WorkerActor combined = replaceLinear(ImmutableList.of(a, (WorkerActor)downstream), new LinearFilter(rep));
+				linear.keySet().removeAll(ImmutableList.of(a, downstream));
+				linear.put(combined, rep);
+				continue just_combined;
+			}
+
+			try_splitjoin: for (WorkerActor splitter : ImmutableList.copyOf(Iterables.filter(actors, WorkerActor.class))) {
+				Worker<?, ?> w = splitter.worker();
+				boolean duplicate = w instanceof DuplicateSplitter;
+				if (!(duplicate || w instanceof RoundrobinSplitter || w instanceof WeightedRoundrobinSplitter)
+						|| !LINEAR_STRATEGY.combine(splitter, config))
+					continue;
+				int[] splitWeights = new int[splitter.outputs().size()];
+				for (int i = 0; i < splitWeights.length; ++i)
+					splitWeights[i] = splitter.push(i);
+				List<WorkerActor> replaced = new ArrayList<>();
+				replaced.add(splitter);
+				List<LinearRepresentation> branches = new ArrayList<>();
+				Actor joiner = null;
+				for (int i = 0; i < splitter.outputs().size(); ++i) {
+					Storage s = splitter.outputs().get(i);
+					Actor branch = Iterables.getOnlyElement(s.downstream());
+					if (!linear.containsKey(branch) || branch.inputs().size() != 1 || branch.outputs().size() != 1
+							|| !s.initialData().isEmpty() || !branch.outputs().get(0).initialData().isEmpty())
+						continue try_splitjoin;
+					Actor branchJoiner = Iterables.getOnlyElement(branch.outputs().get(0).downstream());
+					if (joiner == null)
+						joiner = branchJoiner;
+					if (!joiner.equals(branchJoiner) || !joiner.inputs().get(i).equals(branch.outputs().get(0)))
+						continue try_splitjoin;
+					LinearRepresentation rep = linear.get((WorkerActor)branch);
+					if (!duplicate)
+						rep = LinearRepresentation.roundrobinOutput(splitWeights, i).then(rep);
+					if (rep == null)
+						continue try_splitjoin;
+					branches.add(rep);
+					replaced.add((WorkerActor)branch);
+				}
+				if (!(joiner instanceof WorkerActor) || joiner.inputs().size() != branches.size()
+						|| !LINEAR_STRATEGY.combine((WorkerActor)joiner, config))
+					continue try_splitjoin;
+				Worker<?, ?> jw = ((WorkerActor)joiner).worker();
+				if (!(jw instanceof RoundrobinJoiner || jw instanceof WeightedRoundrobinJoiner))
+					continue try_splitjoin;
+				int[] joinWeights = new int[joiner.inputs().size()];
+				for (int i = 0; i < joinWeights.length; ++i)
+					joinWeights[i] = joiner.pop(i);
+				LinearRepresentation rep = LinearRepresentation.splitjoin(branches, joinWeights);
+				if (rep == null) continue try_splitjoin;
+				replaced.add((WorkerActor)joiner);
+				WorkerActor combined = replaceLinear(replaced, new LinearFilter(rep));
+				linear.keySet().removeAll(replaced);
+				linear.put(combined, rep);
+				continue just_combined;
+			}
+			break;
+		} while (true);
+
+		for (Map.Entry<WorkerActor, LinearRepresentation> e : ImmutableList.copyOf(linear.entrySet())) {
+			LinearRepresentation rep = e.getValue();
+			if (rep.isFIR() && rep.peek() >= MIN_FREQUENCY_TAPS && LINEAR_STRATEGY.useFrequencyDomain(e.getKey(), config))
+				replaceLinear(ImmutableList.of(e.getKey()), new FrequencyLinearFilter(rep));
+		}
+	}
+
+	/**
+	 * Replaces the given actors, which must form a single-input,
+	 * single-output subgraph in topological order, with a WorkerActor for the
+	 * given filter.  The new actor takes the least identifier of the replaced
+	 * actors, so it uses their parameters.
+	 * @param replaced the actors to replace
+	 * @param filter the filter replacing them
+	 * @return the new actor
+	 */
+	private WorkerActor replaceLinear(List<WorkerActor> replaced, Filter<?, ?> filter) {
+		WorkerActor first = replaced.get(0), last = replaced.get(replaced.size()-1);
+		Storage input = Iterables.getOnlyElement(first.inputs()), output = Iterables.getOnlyElement(last.outputs());
+		Workers.setIdentifier(filter, Collections.min(replaced).id());
+		@SuppressWarnings("unchecked")
+		Class<? extends Worker<?, ?>> filterClass = (Class<? extends Worker<?, ?>>)filter.getClass();
+		ActorArchetype archetype = null;
+		for (ActorArchetype a : archetypes)
+			if (a.workerClass().equals(filterClass))
+				archetype = a;
+		if (archetype == null) {
+			archetype = new ActorArchetype(filterClass);
+			archetypes = ImmutableSet.<ActorArchetype>builder().addAll(archetypes).add(archetype).build();
+		}
+
+		for (WorkerActor a : replaced) {
+			actors.remove(a);
+			for (Storage s : a.outputs())
+				if (s != output)
+					storage.remove(s);
+		}
+		WorkerActor actor = new WorkerActor(filter, archetype);
+		actor.inputs().add(input);
+		input.downstream().set(input.downstream().indexOf(first), actor);
+		actor.outputs().add(output);
+		output.upstream().set(output.upstream().indexOf(last), actor);
+		actor.inputIndexFunctions().add(IndexFunction.identity());
+		actor.outputIndexFunctions().add(IndexFunction.identity());
+		actors.add(actor);
+		assert consistency();
+		return actor;
+	}
+
 	private void findRemovals() {
 		ImmutableSortedSet.Builder<WorkerActor> builder = ImmutableSortedSet.naturalOrder();
 		next_worker: for (WorkerActor a : Iterables.filter(actors, WorkerActor.class)) {
@@ -322,10 +480,64 @@ public class Compiler2 {
 	 * Computes each group's internal schedule and the external schedule.
 	 */
 	private void schedule() {
-		for (ActorGroup g : groups)
-			internalSchedule(g);
-		externalSchedule();
-		initSchedule();
+		CompilationCache cache = CompilationCache.fromConfiguration(config);
+		String key = cache != null ? cache.key(config, groups, storage) : null;
+		if (cache == null || !restoreSchedules(cache.get(key))) {
+			for (ActorGroup g : groups)
+				internalSchedule(g);
+			externalSchedule();
+			initSchedule();
+			if (cache != null)
+				cache.put(key, saveSchedules());
+		} else
+			initSchedule();
+	}
+
+	/**
+	 * Returns the internal, external and init schedules in the form stored
+	 * by the CompilationCache.
+	 */
+	private Map<String, Integer> saveSchedules() {
+		Map<String, Integer> entry = new HashMap<>();
+		for (ActorGroup g : groups) {
+			for (Map.Entry<Actor, Integer> e : g.schedule().entrySet())
+				entry.put(String.format("internal.%d.%d", g.id(), e.getKey().id()), e.getValue());
+			entry.put("external."+g.id(), externalSchedule.get(g));
+			entry.put("init."+g.id(), initSchedule.get(g));
+		}
+		return entry;
+	}
+
+	/**
+	 * Restores the schedules from a CompilationCache entry, if the entry
+	 * covers every group and actor.
+	 * @param entry the cache entry, or null
+	 * @return true iff the schedules were restored
+	 */
+	private boolean restoreSchedules(Map<String, Integer> entry) {
+		if (entry == null)
+			return false;
+		Map<ActorGroup, ImmutableMap<Actor, Integer>> internal = new HashMap<>();
+		ImmutableMap.Builder<ActorGroup, Integer> external = ImmutableMap.builder(), init = ImmutableMap.builder();
+		for (ActorGroup g : groups) {
+			ImmutableMap.Builder<Actor, Integer> schedule = ImmutableMap.builder();
+			for (Actor a : g.actors()) {
+				Integer executions = entry.get(String.format("internal.%d.%d", g.id(), a.id()));
+				if (executions == null)
+					return false;
+				schedule.put(a, executions);
+			}
+			internal.put(g, schedule.build());
+			Integer externalExecutions = entry.get("external."+g.id()), initExecutions = entry.get("init."+g.id());
+			if (externalExecutions == null || initExecutions == null)
+				return false;
+			external.put(g, externalExecutions);
+			init.put(g, initExecutions);
+		}
+		internal.forEach(ActorGroup::setSchedule);
+		this.externalSchedule = external.build();
+		this.initSchedule = init.build();
+		return true;
 	}
 
 	private void externalSchedule() {
@@ -346,7 +558,7 @@ public class Compiler2 {
 			}
 		}
 		int multiplier = config.getParameter("multiplier", IntParameter.class).getValue();
-		scheduleBuilder.multiply(multiplier);
+		scheduleBuilder.multiply(multiplier).solver(Schedule.Solver.AUTO);
 		try {
 			externalSchedule = scheduleBuilder.build().getSchedule();
 		} catch (Schedule.ScheduleException ex) {
@@ -369,6 +581,7 @@ public class Compiler2 {
 					.peek(s.peek())
 					.bufferExactly(0);
 		}
+		scheduleBuilder.solver(Schedule.Solver.AUTO);
 
 		try {
 			Schedule<Actor> schedule = scheduleBuilder.build();
@@ -378,7 +591,47 @@ public class Compiler2 {
 		}
 	}
 
+	/**
+	 * Computes the init schedule (unless restored from the compilation
+	 * cache), then the liveness of items after it runs.
+	 */
 	private void initSchedule() {
+		if (initSchedule == null)
+			solveInitSchedule();
+
+		ImmutableMap.Builder<Token, Integer> postInitLivenessBuilder = ImmutableMap.builder();
+		for (Storage s : storage) {
+			if (s.isInternal()) continue;
+			Actor upstream = Iterables.getOnlyElement(s.upstream()), downstream = Iterables.getOnlyElement(s.downstream());
+			int upstreamExecutions = upstream.group().schedule().get(upstream) * initSchedule.get(upstream.group());
+			int downstreamExecutions = downstream.group().schedule().get(downstream) * initSchedule.get(downstream.group());
+			int liveItems = s.push() * upstreamExecutions - s.pop() * downstreamExecutions + s.initialDataIndices().size();
+			assert liveItems >= 0 : s;
+
+			int index = downstream.inputs().indexOf(s);
+			assert index != -1;
+			//Not derived from the downstream worker's predecessors, as linear
+			//combination may have replaced it.
+			Token token = s.id();
+			StorageSlotList inputSlots = downstream.inputSlots(index);
+			inputSlots.ensureCapacity(liveItems);
+			for (int i = 0; i < liveItems; ++i)
+				inputSlots.add(token, i);
+			postInitLivenessBuilder.put(token, liveItems);
+		}
+		this.postInitLiveness = postInitLivenessBuilder.build();
+
+		int initScheduleSize = 0;
+		for (int i : initSchedule.values())
+			initScheduleSize += i;
+//		System.out.println("init schedule size "+initScheduleSize);
+		int totalBuffering = 0;
+		for (int i : postInitLiveness.values())
+			totalBuffering += i;
+//		System.out.println("total items buffered "+totalBuffering);
+	}
+
+	private void solveInitSchedule() {
 		Schedule.Builder<ActorGroup> scheduleBuilder = Schedule.builder();
 		scheduleBuilder.addAll(groups);
 		for (Storage s : storage) {
@@ -404,6 +657,8 @@ public class Compiler2 {
 
 		IntParameter initBufferingCostParam = config.getParameter("InitBufferingCost", IntParameter.class);
 		int initBufferCost = initBufferingCostParam.getValue(), fireCost = initBufferingCostParam.getMax() - initBufferCost;
+		//Costed excess buffering makes this a job for the (default) ILP; the
+		//combinatorial solver would fall back to a local search.
 		scheduleBuilder.costs(fireCost, initBufferCost);
 		try {
 			Schedule<ActorGroup> schedule = scheduleBuilder.build();
@@ -411,41 +666,6 @@ public class Compiler2 {
 		} catch (Schedule.ScheduleException ex) {
 			throw new StreamCompilationFailedException("couldn't find init schedule", ex);
 		}
-
-		ImmutableMap.Builder<Token, Integer> postInitLivenessBuilder = ImmutableMap.builder();
-		for (Storage s : storage) {
-			if (s.isInternal()) continue;
-			Actor upstream = Iterables.getOnlyElement(s.upstream()), downstream = Iterables.getOnlyElement(s.downstream());
-			int upstreamExecutions = upstream.group().schedule().get(upstream) * initSchedule.get(upstream.group());
-			int downstreamExecutions = downstream.group().schedule().get(downstream) * initSchedule.get(downstream.group());
-			int liveItems = s.push() * upstreamExecutions - s.pop() * downstreamExecutions + s.initialDataIndices().size();
-			assert liveItems >= 0 : s;
-
-			int index = downstream.inputs().indexOf(s);
-			assert index != -1;
-			Token token;
-			if (downstream instanceof WorkerActor) {
-				Worker<?, ?> w = ((WorkerActor)downstream).worker();
-				token = downstream.id() == 0 ? Token.createOverallInputToken(w) :
-						new Token(Workers.getPredecessors(w).get(index), w);
-			} else
-				token = ((TokenActor)downstream).token();
-			StorageSlotList inputSlots = downstream.inputSlots(index);
-			inputSlots.ensureCapacity(liveItems);
-			for (int i = 0; i < liveItems; ++i)
-				inputSlots.add(token, i);
-			postInitLivenessBuilder.put(token, liveItems);
-		}
-		this.postInitLiveness = postInitLivenessBuilder.build();
-
-		int initScheduleSize = 0;
-		for (int i : initSchedule.values())
-			initScheduleSize += i;
-//		System.out.println("init schedule size "+initScheduleSize);
-		int totalBuffering = 0;
-		for (int i : postInitLiveness.values())
-			totalBuffering += i;
-//		System.out.println("total items buffered "+totalBuffering);
 	}
 
 	private void splitterRemoval() {
@@ -609,36 +829,15 @@ public class Compiler2 {
 		//index into that window.
 		ImmutableList.Builder<IndexFunction> transfer = ImmutableList.builder();
 		for (int x = 0; x < weights.length; ++x) {
-			//don't capture the array in the lambda
 			int weight = weights[x], prefixSum = weightPrefixSum[x];
-			transfer.add(new RoundrobinTransferIndexFunction(weight, prefixSum, N));
+			//A zero-weight channel carries no items; give it a constant
+			//function (its empty window's position) rather than the formula
+			//above, which would divide by zero.
+			transfer.add(weight > 0 ? PeriodicIndexFunction.roundrobinTransfer(weight, prefixSum, N)
+					: PeriodicIndexFunction.affine(0, prefixSum));
 		}
 		return transfer.build();
 	}
-	private static int _roundrobinTransferFunction(int weight, int prefixSum, int N, int i) {
-		//assumes nonnegative indices
-		return N*(i/weight) + prefixSum + (i % weight);
-	}
-	private static final class RoundrobinTransferIndexFunction implements IndexFunction {
-		private final int weight, prefixSum, N;
-		private RoundrobinTransferIndexFunction(int weight, int prefixSum, int N) {
-			this.weight = weight;
-			this.prefixSum = prefixSum;
-			this.N = N;
-		}
-		@Override
-		public int applyAsInt(int operand) {
-			return _roundrobinTransferFunction(weight, prefixSum, N, operand);
-		}
-		@Override
-		public void applyBulk(int[] bulk) {
-			//TODO: is just a specialization point enough?
-			for (int i = 0; i < bulk.length; ++i)
-//				bulk[i] = applyAsInt(bulk[i]);
-				bulk[i] = _roundrobinTransferFunction(weight, prefixSum, N, bulk[i]);
-		}
-	}
-
 	/**
 	 * Removes an Actor from this compiler's data structures.  The Actor should
 	 * already have been unlinked from the graph (no incoming edges); this takes
@@ -839,12 +1038,25 @@ public class Compiler2 {
 			Iterable<WorkerActor> workerActors = FluentIterable.from(actors)
 					.filter(WorkerActor.class)
 					.filter(wa -> wa.archetype().equals(archetype));
-			archetype.generateCode(packageName, classloader, workerActors);
+			archetype.generateCode(Iterables.filter(workerActors, wa -> !specialize(wa)));
+			for (WorkerActor wa : workerActors)
+				if (specialize(wa))
+					archetype.generateSpecializedCode(wa);
 			for (WorkerActor wa : workerActors)
 				wa.setStateHolder(archetype.makeStateHolder(wa));
 		}
 	}
 
+	/**
+	 * Returns true if the configuration directs us to generate code specialized
+	 * for the given actor's final fields.  (This is a per-worker parameter
+	 * because specialization trades code size for speed.)
+	 */
+	private boolean specialize(WorkerActor a) {
+		SwitchParameter<Boolean> param = config.getParameter(SPECIALIZATION_PARAMETER_PREFIX+a.id(), SwitchParameter.class, Boolean.class);
+		return param != null && param.getValue();
+	}
+
 	/**
 	 * If we're compiling an entire graph, create the overall input and output
 	 * buffers now so we can take advantage of
@@ -933,35 +1145,19 @@ public class Compiler2 {
 		restoreOutputIndexFunctions(indexFxnBackup);
 	}
 
-	private static final class AdditionIndexFunction implements IndexFunction {
-		private final int addend;
-		private AdditionIndexFunction(int addend) {
-			this.addend = addend;
-		}
-		@Override
-		public int applyAsInt(int operand) {
-			return operand + addend;
-		}
-		@Override
-		public void applyBulk(int[] bulk) {
-			for (int i = 0; i < bulk.length; ++i)
-				bulk[i] += addend;
-		}
-	}
-
 	private void createSteadyStateCode() {
 		for (Actor a : actors) {
 			for (int i = 0; i < a.outputs().size(); ++i) {
 				Storage s = a.outputs().get(i);
 				if (s.isInternal()) continue;
 				int itemsWritten = a.push(i) * initSchedule.get(a.group()) * a.group().schedule().get(a);
-				a.outputIndexFunctions().set(i, a.outputIndexFunctions().get(i).compose(new AdditionIndexFunction(itemsWritten)));
+				a.outputIndexFunctions().set(i, a.outputIndexFunctions().get(i).compose(IndexFunction.add(itemsWritten)));
 			}
 			for (int i = 0; i < a.inputs().size(); ++i) {
 				Storage s = a.inputs().get(i);
 				if (s.isInternal()) continue;
 				int itemsRead = a.pop(i) * initSchedule.get(a.group()) * a.group().schedule().get(a);
-				a.inputIndexFunctions().set(i, a.inputIndexFunctions().get(i).compose(new AdditionIndexFunction(itemsRead)));
+				a.inputIndexFunctions().set(i, a.inputIndexFunctions().get(i).compose(IndexFunction.add(itemsRead)));
 			}
 		}
 
@@ -971,7 +1167,6 @@ public class Compiler2 {
 		ImmutableMap<Storage, ConcreteStorage> internalStorage = createStorage(true, INTERNAL_STORAGE_STRATEGY.asFactory(config));
 
 		List<Core> ssCores = new ArrayList<>(maxNumCores);
-		IndexFunctionTransformer ift = new IdentityIndexFunctionTransformer();
 		for (int i = 0; i < maxNumCores; ++i) {
 			ImmutableTable.Builder<Actor, Integer, IndexFunctionTransformer> inputTransformers = ImmutableTable.builder(),
 					outputTransformers = ImmutableTable.builder();
@@ -979,12 +1174,12 @@ public class Compiler2 {
 				for (int j = 0; j < a.inputs().size(); ++j) {
 //					String name = String.format("Core%dWorker%dInput%dIndexFxnTransformer", i, a.id(), j);
 //					SwitchParameter<IndexFunctionTransformer> param = config.getParameter(name, SwitchParameter.class, IndexFunctionTransformer.class);
-					inputTransformers.put(a, j, ift);
+					inputTransformers.put(a, j, indexFunctionTransformer(a.inputs().get(j)));
 				}
 				for (int j = 0; j < a.outputs().size(); ++j) {
 //					String name = String.format("Core%dWorker%dOutput%dIndexFxnTransformer", i, a.id(), j);
 //					SwitchParameter<IndexFunctionTransformer> param = config.getParameter(name, SwitchParameter.class, IndexFunctionTransformer.class);
-					outputTransformers.put(a, j, ift);
+					outputTransformers.put(a, j, indexFunctionTransformer(a.outputs().get(j)));
 				}
 			}
 
@@ -1008,6 +1203,7 @@ public class Compiler2 {
 				assert g.schedule().get(ta) == 1;
 				ConcreteStorage storage = steadyStateStorage.get(Iterables.getOnlyElement(ta.isInput() ? g.outputs() : g.inputs()));
 				int executions = externalSchedule.get(g);
+				steadyStateRates.put(ta.token(), executions);
 				if (ta.isInput())
 					readInstructions.add(makeReadInstruction(ta, storage, executions));
 				else {
@@ -1015,6 +1211,9 @@ public class Compiler2 {
 					throughputPerSteadyState += executions;
 				}
 			}
+		SwitchParameter<Boolean> dynamicParam = config.getParameter(DynamicAllocation.PARAMETER, SwitchParameter.class, Boolean.class);
+		if (dynamicParam != null && dynamicParam.getValue())
+			allocateDynamically(ssCores);
 		ImmutableList.Builder<MethodHandle> steadyStateCodeBuilder = ImmutableList.builder();
 		for (Core c : ssCores)
 			if (!c.isEmpty())
@@ -1036,6 +1235,48 @@ public class Compiler2 {
 		}
 	}
 
+	/**
+	 * Returns the IndexFunctionTransformer for index functions into the given
+	 * storage.  Index functions compute with straight-line arithmetic where
+	 * possible (see PeriodicIndexFunction), but a precomputed array may still
+	 * be cheaper for complicated functions, so the tuner chooses per storage.
+	 */
+	private IndexFunctionTransformer indexFunctionTransformer(Storage s) {
+		SwitchParameter<IndexFunctionTransformer> param = config.getParameter("IndexFunctionTransformer"+s.id(), SwitchParameter.class, IndexFunctionTransformer.class);
+		return param != null ? param.getValue() : INDEX_FUNCTION_TRANSFORMERS.asList().get(0);
+	}
+
+	/**
+	 * Replaces the static allocations of stateless groups with dynamic
+	 * allocations run by every core that has steady-state code, so cores
+	 * claim chunks of iterations at runtime.
+	 */
+	private void allocateDynamically(List<Core> ssCores) {
+		List<Core> activeCores = new ArrayList<>();
+		for (Core c : ssCores)
+			if (!c.isEmpty())
+				activeCores.add(c);
+		if (activeCores.size() < 2)
+			return;
+		for (ActorGroup g : groups) {
+			if (g.isTokenGroup() || g.isStateful()) continue;
+			Range<Integer> iterations = Range.closedOpen(0, externalSchedule.get(g));
+			if (iterations.upperEndpoint() < 2) continue;
+			List<Range<Integer>> allocated = new ArrayList<>();
+			for (Core c : ssCores)
+				allocated.addAll(c.deallocate(g));
+			assert allocated.stream().mapToInt(r -> r.upperEndpoint() - r.lowerEndpoint()).sum() == iterations.upperEndpoint()
+					: g + " allocated " + allocated;
+			List<MethodHandle> chunks = new ArrayList<>();
+			for (Range<Integer> chunk : DynamicAllocation.split(iterations, DynamicAllocation.CHUNKS_PER_CORE * activeCores.size()))
+				chunks.add(activeCores.get(0).specialize(g, chunk));
+			DynamicAllocation allocation = new DynamicAllocation(g, chunks);
+			dynamicAllocations.add(allocation);
+			for (Core c : activeCores)
+				c.allocate(allocation);
+		}
+	}
+
 	private ReadInstruction makeReadInstruction(TokenActor a, ConcreteStorage cs, int count) {
 		assert a.isInput();
 		Storage s = Iterables.getOnlyElement(a.outputs());
@@ -1045,6 +1286,8 @@ public class Compiler2 {
 			retval = new NopReadInstruction(a.token());
 		else if (cs instanceof PeekableBufferConcreteStorage)
 			retval = new PeekReadInstruction(a, count);
+		else if (NIOReadInstruction.canRead(s.type(), precreatedBuffers.get(a.token())))
+			retval = new NIOReadInstruction(a, cs, count);
 		else if (!s.type().isPrimitive() &&
 				cs instanceof BulkWritableConcreteStorage &&
 				contiguouslyIncreasing(idxFxn, 0, count)) {
@@ -1181,7 +1424,7 @@ public class Compiler2 {
 				for (int check = 0; check < 100; ++check)
 					assert !liveIndices.contains(a.translateOutputIndex(i, offset + check)) : check;
 				final int finalOffset = offset;
-				a.outputIndexFunctions().set(i, a.outputIndexFunctions().get(i).compose(new AdditionIndexFunction(finalOffset)));
+				a.outputIndexFunctions().set(i, a.outputIndexFunctions().get(i).compose(IndexFunction.add(finalOffset)));
 			}
 		}
 		return backup.build();
@@ -1380,6 +1623,74 @@ public class Compiler2 {
 		}
 	}
 
+	/**
+	 * NIOReadInstruction copies from an NIO-backed buffer (e.g., from
+	 * Input.fromBinaryFile) into primitive storage through the storage's write
+	 * handle, without boxing each element into an Object[] first.
+	 */
+	private static final class NIOReadInstruction implements ReadInstruction {
+		private final Token token;
+		private final ConcreteStorage storage;
+		private final int[] indices;
+		private PeekableBuffer buffer;
+		/**
+		 * (int storageIndex, int bufferIndex)void, copying one element.
+		 */
+		private MethodHandle copy;
+		private NIOReadInstruction(TokenActor a, ConcreteStorage storage, int count) {
+			assert a.isInput() : a;
+			this.token = a.token();
+			this.storage = storage;
+			this.indices = new int[count];
+			Arrays.setAll(indices, i -> i);
+			Iterables.getOnlyElement(a.outputIndexFunctions()).applyBulk(indices);
+		}
+		private static boolean canRead(Class<?> type, Buffer buffer) {
+			if (!type.isPrimitive() || type.equals(boolean.class) || !(buffer instanceof NIOBackedBuffer))
+				return false;
+			return NIOBufferUtils.bufferForPrimitive(type).isInstance(((NIOBackedBuffer)buffer).nioBuffer());
+		}
+		@Override
+		public void init(Map<Token, Buffer> buffers) {
+			if (!buffers.containsKey(token)) return;
+			if (buffer != null)
+				checkState(buffers.get(token) == buffer, "reassigning %s from %s to %s", token, buffer, buffers.get(token));
+			Buffer b = buffers.get(token);
+			checkArgument(canRead(storage.type(), b), "%s can't read %s from %s", this, storage.type(), b);
+			this.buffer = (PeekableBuffer)b;
+			java.nio.Buffer nio = ((NIOBackedBuffer)b).nioBuffer();
+			Class<?> type = storage.type();
+			MethodHandle get = findVirtual(NIOBufferUtils.bufferForPrimitive(type), "get", methodType(type, int.class)).bindTo(nio);
+			this.copy = MethodHandles.filterArguments(storage.writeHandle().asType(methodType(void.class, int.class, type)), 1, get);
+		}
+		@Override
+		public Map<Token, Integer> getMinimumBufferCapacity() {
+			return ImmutableMap.of(token, indices.length);
+		}
+		@Override
+		public boolean load() {
+			if (buffer.size() < indices.length)
+				return false;
+			int position = ((NIOBackedBuffer)buffer).nioBuffer().position();
+			try {
+				for (int i = 0; i < indices.length; ++i)
+					copy.invokeExact(indices[i], position + i);
+			} catch (Throwable ex) {
+				throw new AssertionError(String.format("%s.load()", this), ex);
+			}
+			buffer.consume(indices.length);
+			storage.sync();
+			return true;
+		}
+		@Override
+		public Map<Token, Object[]> unload() {
+			Object[] data = new Object[indices.length];
+			for (int i = 0; i < data.length; ++i)
+				data[i] = storage.read(indices[i]);
+			return ImmutableMap.of(token, data);
+		}
+	}
+
 	/**
 	 * TODO: consider using read/write handles instead of read(), write()?
 	 */
@@ -1575,9 +1886,9 @@ public class Compiler2 {
 	 * There's only one of these per blob because it returns all the data, and
 	 * it should be the first initReadInstruction.
 	 */
-	private static final class InitDataReadInstruction implements ReadInstruction {
-		private final ImmutableMap<ConcreteStorage, ImmutableList<Pair<ImmutableList<Object>, IndexFunction>>> toWrite;
-		private final ImmutableMap<Token, ImmutableList<Object>> initialStateDataMap;
+	static final class InitDataReadInstruction implements ReadInstruction {
+		private ImmutableMap<ConcreteStorage, ImmutableList<Pair<ImmutableList<Object>, IndexFunction>>> toWrite;
+		private ImmutableMap<Token, ImmutableList<Object>> initialStateDataMap;
 		private InitDataReadInstruction(Map<Storage, ConcreteStorage> initStorage, ImmutableMap<Token, ImmutableList<Object>> initialStateDataMap) {
 			ImmutableMap.Builder<ConcreteStorage, ImmutableList<Pair<ImmutableList<Object>, IndexFunction>>> toWriteBuilder = ImmutableMap.builder();
 			for (Map.Entry<Storage, ConcreteStorage> e : initStorage.entrySet()) {
@@ -1618,6 +1929,37 @@ public class Compiler2 {
 				r.put(e.getKey(), e.getValue().toArray());
 			return r;
 		}
+		/**
+		 * Replaces the initial data with the given data, which must have
+		 * exactly as many items on each edge as the data we were compiled
+		 * with.  (Compilation depends only on the number of items.)  Must be
+		 * called before the blob starts running.
+		 * @param data the new initial data
+		 */
+		void rebind(DrainData data) {
+			Map<ImmutableList<Object>, ImmutableList<Object>> replacements = new IdentityHashMap<>();
+			ImmutableMap.Builder<Token, ImmutableList<Object>> newDataMap = ImmutableMap.builder();
+			for (Map.Entry<Token, ImmutableList<Object>> e : initialStateDataMap.entrySet()) {
+				ImmutableList<Object> replacement = data.getData(e.getKey());
+				checkArgument(replacement != null && replacement.size() == e.getValue().size(),
+						"%s: expected %s items, got %s", e.getKey(), e.getValue().size(), replacement);
+				replacements.put(e.getValue(), replacement);
+				newDataMap.put(e.getKey(), replacement);
+			}
+			for (Map.Entry<Token, ImmutableList<Object>> e : data.getData().entrySet())
+				checkArgument(e.getValue().isEmpty() || initialStateDataMap.containsKey(e.getKey()),
+						"%s: unexpected data %s", e.getKey(), e.getValue());
+
+			ImmutableMap.Builder<ConcreteStorage, ImmutableList<Pair<ImmutableList<Object>, IndexFunction>>> toWriteBuilder = ImmutableMap.builder();
+			for (Map.Entry<ConcreteStorage, ImmutableList<Pair<ImmutableList<Object>, IndexFunction>>> e : toWrite.entrySet()) {
+				ImmutableList.Builder<Pair<ImmutableList<Object>, IndexFunction>> pairs = ImmutableList.builder();
+				for (Pair<ImmutableList<Object>, IndexFunction> p : e.getValue())
+					pairs.add(Pair.make(replacements.getOrDefault(p.first, p.first), p.second));
+				toWriteBuilder.put(e.getKey(), pairs.build());
+			}
+			this.toWrite = toWriteBuilder.build();
+			this.initialStateDataMap = newDataMap.build();
+		}
 	}
 
 	private static final class ReportThroughputInstruction implements ReadInstruction, WriteInstruction {
@@ -1678,18 +2020,29 @@ public class Compiler2 {
 	public Blob instantiateBlob() {
 		ImmutableSortedSet.Builder<Token> inputTokens = ImmutableSortedSet.naturalOrder(),
 				outputTokens = ImmutableSortedSet.naturalOrder();
-		for (TokenActor ta : Iterables.filter(actors, TokenActor.class))
+		ImmutableMap.Builder<Token, Class<?>> tokenTypes = ImmutableMap.builder();
+		for (TokenActor ta : Iterables.filter(actors, TokenActor.class)) {
 			(ta.isInput() ? inputTokens : outputTokens).add(ta.token());
+			Storage s = Iterables.getOnlyElement(ta.isInput() ? ta.outputs() : ta.inputs());
+			tokenTypes.put(ta.token(), s.type());
+		}
 		ImmutableList.Builder<MethodHandle> storageAdjusts = ImmutableList.builder();
 		for (ConcreteStorage s : steadyStateStorage.values())
 			storageAdjusts.add(s.adjustHandle());
+		for (DynamicAllocation d : dynamicAllocations)
+			storageAdjusts.add(d.resetHandle());
+		ImmutableSet.Builder<ActorArchetype.Code> archetypeCode = ImmutableSet.builder();
+		for (ActorArchetype archetype : archetypes)
+			if (archetype.code() != null)
+				archetypeCode.add(archetype.code());
 		return new Compiler2BlobHost(workers, config,
-				inputTokens.build(), outputTokens.build(),
+				inputTokens.build(), outputTokens.build(), tokenTypes.build(),
+				steadyStateRates.build(),
 				initCode, steadyStateCode,
 				storageAdjusts.build(),
 				initReadInstructions, initWriteInstructions, migrationInstructions,
 				readInstructions, writeInstructions, drainInstructions,
-				precreatedBuffers);
+				precreatedBuffers, archetypeCode.build());
 	}
 
 	private final Map<Integer, int[]> bulkCache = new HashMap<>();
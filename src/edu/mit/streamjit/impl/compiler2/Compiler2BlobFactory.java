@@ -26,6 +26,7 @@ import edu.mit.streamjit.impl.blob.Blob;
 import edu.mit.streamjit.impl.blob.BlobFactory;
 import edu.mit.streamjit.impl.blob.DrainData;
 import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.impl.common.IOInfo;
 import edu.mit.streamjit.impl.common.Workers;
 import edu.mit.streamjit.util.affinity.Affinity;
 import java.util.ArrayList;
@@ -55,6 +56,10 @@ public final class Compiler2BlobFactory implements BlobFactory {
 		Compiler2.INTERNAL_STORAGE_STRATEGY.makeParameters(workers, builder);
 		Compiler2.EXTERNAL_STORAGE_STRATEGY.makeParameters(workers, builder);
 		Compiler2.SWITCHING_STRATEGY.makeParameters(workers, builder);
+		Compiler2.LINEAR_STRATEGY.makeParameters(workers, builder);
+		for (IOInfo i : IOInfo.allEdges(workers))
+			builder.addParameter(new Configuration.SwitchParameter<>("IndexFunctionTransformer"+i.token(), IndexFunctionTransformer.class,
+					Compiler2.INDEX_FUNCTION_TRANSFORMERS.asList().get(0), Compiler2.INDEX_FUNCTION_TRANSFORMERS));
 		for (Worker<?, ?> w : workers)
 			for (int i = 0; i < Compiler2.ALLOCATION_STRATEGY.maxNumCores(); ++i) {
 				int id = Workers.getIdentifier(w);
@@ -71,7 +76,12 @@ public final class Compiler2BlobFactory implements BlobFactory {
 				builder.addParameter(new Configuration.IntParameter(String.format("UnrollCore%dGroup%d", i, id),
 						1, 1024, 1));
 			}
+		for (Worker<?, ?> w : workers)
+			builder.addParameter(Configuration.SwitchParameter.create(Compiler2.SPECIALIZATION_PARAMETER_PREFIX+Workers.getIdentifier(w), false));
 		builder.addParameter(Configuration.SwitchParameter.create("UsePeekableBuffer", true));
+		builder.addParameter(Configuration.SwitchParameter.create(Compiler2BlobHost.PIPELINED_PARAMETER, false));
+		builder.addParameter(Configuration.SwitchParameter.create(Compiler2BlobHost.COMPILED_DRAIN_PARAMETER, false));
+		builder.addParameter(Configuration.SwitchParameter.create(DynamicAllocation.PARAMETER, false));
 		//Init scheduling trades off between firings during the init schedule
 		//and resulting extra buffering.  My ILP solver interface only supports
 		//int coefficients so this is discretized in units of 100.
@@ -21,6 +21,7 @@
  */
 package edu.mit.streamjit.impl.compiler2;
 
+import static com.google.common.base.Preconditions.checkState;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.base.Stopwatch;
@@ -32,17 +33,28 @@ import com.google.common.collect.ImmutableTable;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Uninterruptibles;
 import edu.mit.streamjit.api.Worker;
 import edu.mit.streamjit.impl.blob.Blob;
 import edu.mit.streamjit.impl.blob.Buffer;
+import edu.mit.streamjit.impl.blob.Buffers;
+import edu.mit.streamjit.impl.blob.DoubleSPSCRingBuffer;
 import edu.mit.streamjit.impl.blob.DrainData;
+import edu.mit.streamjit.impl.blob.FloatSPSCRingBuffer;
+import edu.mit.streamjit.impl.blob.IdleStrategies;
+import edu.mit.streamjit.impl.blob.IdleStrategy;
+import edu.mit.streamjit.impl.blob.IntSPSCRingBuffer;
+import edu.mit.streamjit.impl.blob.PeekableBuffer;
 import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.impl.common.Configuration.IntParameter;
+import edu.mit.streamjit.impl.common.Configuration.SwitchParameter;
 import edu.mit.streamjit.impl.interp.Interpreter;
 import edu.mit.streamjit.util.CollectionUtils;
 import edu.mit.streamjit.util.bytecode.methodhandles.Combinators;
 import static edu.mit.streamjit.util.bytecode.methodhandles.LookupUtils.findConstructor;
 import static edu.mit.streamjit.util.bytecode.methodhandles.LookupUtils.findVirtual;
 import edu.mit.streamjit.util.NothrowCallable;
+import edu.mit.streamjit.util.affinity.Affinity;
 import edu.mit.streamjit.util.bytecode.Module;
 import edu.mit.streamjit.util.bytecode.ModuleClassLoader;
 import edu.mit.streamjit.util.bytecode.methodhandles.ProxyFactory;
@@ -53,13 +65,19 @@ import java.lang.invoke.SwitchPoint;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
 
 /**
  * The actual blob produced by a Compiler2.
@@ -75,12 +93,28 @@ public class Compiler2BlobHost implements Blob {
 			findConstructor(LOOKUP, AssertionError.class, MethodType.methodType(void.class, Object.class)),
 			MethodHandles.throwException(void.class, AssertionError.class));
 	private static final MethodHandle NOP = Combinators.nop();
-	private static final MethodHandle MAIN_LOOP_NOP = MethodHandles.insertArguments(MAIN_LOOP, 1, NOP);
+	private static final MethodHandle MAIN_LOOP_NOP = MethodHandles.insertArguments(MAIN_LOOP, 2, NOP);
+	/**
+	 * The name of the SwitchParameter<Boolean> selecting the pipelined
+	 * steady state, which overlaps external I/O with computation on an extra
+	 * core.  (The compute cores still synchronize at the barrier after every
+	 * iteration.)
+	 */
+	public static final String PIPELINED_PARAMETER = "PipelinedSteadyState";
+	/**
+	 * The name of the SwitchParameter<Boolean> selecting compiled draining.
+	 */
+	public static final String COMPILED_DRAIN_PARAMETER = "CompiledDrain";
 
 	/* provided by Compiler2 */
 	private final ImmutableSet<Worker<?, ?>> workers;
 	private final Configuration config;
 	private final ImmutableSortedSet<Token> inputTokens, outputTokens;
+	private final ImmutableMap<Token, Class<?>> tokenTypes;
+	/**
+	 * Items read or written per steady-state iteration, for each token.
+	 */
+	private final ImmutableMap<Token, Integer> steadyStateRates;
 	private final MethodHandle initCode;
 	private final ImmutableList<MethodHandle> steadyStateCode;
 	private final ImmutableList<MethodHandle> storageAdjusts;
@@ -116,11 +150,61 @@ public class Compiler2BlobHost implements Blob {
 	 */
 	private final ImmutableList<DrainInstruction> drainInstructions;
 	private final ImmutableMap<Token, Buffer> precreatedBuffers;
+	/**
+	 * The shared generated code our work methods came from.  We don't use it
+	 * directly, but holding it keeps it in ActorArchetype's code cache.
+	 */
+	@SuppressWarnings("unused")
+	private final ImmutableSet<ActorArchetype.Code> archetypeCode;
 	/* provided by the host */
 	private final boolean collectTimings;
+	private final IdleStrategy idleStrategy;
+	private final BlobHostMetrics metrics;
 	private final ImmutableMap<Token, Integer> minimumBufferCapacity;
 	private ImmutableMap<Token, Buffer> buffers;
 	private final ImmutableList<Runnable> coreCode;
+	/**
+	 * If true, external edges are double-buffered through staging rings that
+	 * an extra I/O core keeps filled (inputs) and emptied (outputs) while the
+	 * compute cores run, so the barrier action only copies between staging
+	 * rings and storage and never waits on another blob.  Only I/O is
+	 * overlapped; the compute cores still meet at the global barrier after
+	 * every steady-state iteration.
+	 */
+	private final boolean pipelined;
+	/**
+	 * If true, drain through a compiled single-multiplier blob before the
+	 * interpreter (see precompileDrainBlob()).
+	 */
+	private final boolean compiledDrain;
+	/**
+	 * The single-multiplier drain blob, compiled in the background once the
+	 * steady state starts, or null if we aren't draining through compiled
+	 * code (or drained during init).  Only accessed in the barrier action.
+	 */
+	private CompletableFuture<Compiler2BlobHost> precompiledDrainBlob;
+	/**
+	 * The number of items on each edge the drain blob was compiled with
+	 * (omitting empty edges).
+	 */
+	private ImmutableMap<Token, Integer> precompiledDrainShape;
+	/**
+	 * When pipelined, maps staged tokens to their staging rings; the read and
+	 * write instructions use these in place of the installed buffers.
+	 */
+	private ImmutableMap<Token, Buffer> stagingBuffers = ImmutableMap.of();
+	/**
+	 * The I/O core's transfers between the installed buffers and the staging
+	 * rings, each returning the number of items it moved.
+	 */
+	private ImmutableList<IntSupplier> pumpTransfers = ImmutableList.of();
+	private final IdleStrategy pumpIdleStrategy;
+	/**
+	 * Held by the I/O core while pumping, and taken by doDrain to stop it.
+	 */
+	private final ReentrantLock pumpLock = new ReentrantLock();
+	private boolean pumpStopped;
+	private int pumpIdleCount;
 	private final SwitchPoint sp1 = new SwitchPoint(), sp2 = new SwitchPoint();
 	private final Phaser barrier;
 	private volatile Runnable drainCallback;
@@ -130,6 +214,8 @@ public class Compiler2BlobHost implements Blob {
 			Configuration configuration,
 			ImmutableSortedSet<Token> inputTokens,
 			ImmutableSortedSet<Token> outputTokens,
+			ImmutableMap<Token, Class<?>> tokenTypes,
+			ImmutableMap<Token, Integer> steadyStateRates,
 			MethodHandle initCode,
 			ImmutableList<MethodHandle> steadyStateCode,
 			ImmutableList<MethodHandle> storageAdjusts,
@@ -139,11 +225,14 @@ public class Compiler2BlobHost implements Blob {
 			List<ReadInstruction> readInstructions,
 			List<WriteInstruction> writeInstructions,
 			List<DrainInstruction> drainInstructions,
-			ImmutableMap<Token, Buffer> precreatedBuffers) {
+			ImmutableMap<Token, Buffer> precreatedBuffers,
+			ImmutableSet<ActorArchetype.Code> archetypeCode) {
 		this.workers = workers;
 		this.config = configuration;
 		this.inputTokens = inputTokens;
 		this.outputTokens = outputTokens;
+		this.tokenTypes = tokenTypes;
+		this.steadyStateRates = steadyStateRates;
 		this.initCode = initCode;
 		this.steadyStateCode = steadyStateCode;
 		this.storageAdjusts = storageAdjusts;
@@ -154,8 +243,22 @@ public class Compiler2BlobHost implements Blob {
 		this.writeInstructions = ImmutableList.copyOf(writeInstructions);
 		this.drainInstructions = ImmutableList.copyOf(drainInstructions);
 		this.precreatedBuffers = precreatedBuffers;
+		this.archetypeCode = archetypeCode;
 
 		this.collectTimings = config.getExtraData("timings") != null ? (Boolean)config.getExtraData("timings") : false;
+		this.idleStrategy = IdleStrategies.fromConfiguration(config);
+		SwitchParameter<Boolean> pipelinedParam = config.getParameter(PIPELINED_PARAMETER, SwitchParameter.class, Boolean.class);
+		this.pipelined = pipelinedParam != null && pipelinedParam.getValue();
+		//The host pins the I/O core to a CPU of its own only if one is left
+		//over after the compute cores (see BlobHostStreamCompiler); otherwise
+		//it shares, so park between transfers rather than steal compute time.
+		boolean pumpHasOwnCpu = steadyStateCode.size() < Affinity.getMaximalAffinity().size();
+		this.pumpIdleStrategy = !pipelined ? null :
+				pumpHasOwnCpu ? IdleStrategies.fromConfiguration(config) : IdleStrategies.Kind.SIGNAL.create();
+		SwitchParameter<Boolean> compiledDrainParam = config.getParameter(COMPILED_DRAIN_PARAMETER, SwitchParameter.class, Boolean.class);
+		IntParameter multiplierParam = config.getParameter("multiplier", IntParameter.class);
+		this.compiledDrain = compiledDrainParam != null && compiledDrainParam.getValue()
+				&& multiplierParam != null && multiplierParam.getValue() > 1;
 
 		List<Map<Token, Integer>> capacityRequirements = new ArrayList<>();
 		for (ReadInstruction i : Iterables.concat(this.initReadInstructions, this.readInstructions))
@@ -172,10 +275,18 @@ public class Compiler2BlobHost implements Blob {
 		ImmutableList.Builder<Runnable> coreCodeRunnables = ImmutableList.builder();
 		for (int i = 0; i < this.steadyStateCode.size(); ++i) {
 			MethodHandle ssc = this.steadyStateCode.get(i);
-			MethodHandle code = sp1.guardWithTest(mainLoopNop, sp2.guardWithTest(mainLoop.bindTo(ssc), NOP));
+			MethodHandle code = sp1.guardWithTest(MethodHandles.insertArguments(mainLoopNop, 0, i),
+					sp2.guardWithTest(MethodHandles.insertArguments(mainLoop, 0, i, ssc), NOP));
 			coreCodeRunnables.add(pf.createProxy("Proxy"+i, ImmutableMap.of("run", code), Runnable.class));
 		}
 		this.coreCode = coreCodeRunnables.build();
+		this.metrics = new BlobHostMetrics(
+				ImmutableMap.copyOf(Maps.filterKeys(steadyStateRates, inputTokens::contains)),
+				ImmutableMap.copyOf(Maps.filterKeys(steadyStateRates, outputTokens::contains)),
+				coreCode.size());
+		Boolean registerMetrics = (Boolean)config.getExtraData(BlobHostMetrics.EXTRA_DATA_KEY);
+		if (registerMetrics != null && registerMetrics)
+			metrics.register();
 		MethodHandle throwAE = THROW_NEW_ASSERTION_ERROR.bindTo("Can't happen! Barrier action reached after draining?");
 		MethodHandle barrierAction = sp1.guardWithTest(doInit, sp2.guardWithTest(doAdjust, throwAE));
 		final Runnable onAdvanceRunnable = pf.createProxy("BarrierAction", ImmutableMap.of("run", barrierAction), Runnable.class);
@@ -210,6 +321,13 @@ public class Compiler2BlobHost implements Blob {
 		return minimumBufferCapacity.get(token);
 	}
 
+	@Override
+	public Class<?> getElementType(Token token) {
+		if (!inputTokens.contains(token) && !outputTokens.contains(token))
+			throw new IllegalArgumentException(token.toString()+" not an input or output of this blob");
+		return tokenTypes.get(token);
+	}
+
 	@Override
 	public void installBuffers(Map<Token, Buffer> buffers) {
 		if (this.buffers != null)
@@ -228,19 +346,50 @@ public class Compiler2BlobHost implements Blob {
 		}
 		this.buffers = builder.build();
 
+		Map<Token, Buffer> instructionBuffers = this.buffers;
+		if (pipelined) {
+			ImmutableMap.Builder<Token, Buffer> staging = ImmutableMap.builder();
+			ImmutableList.Builder<IntSupplier> transfers = ImmutableList.builder();
+			for (Token t : Sets.union(inputTokens, outputTokens)) {
+				//Peekable overall inputs are read in place, not copied.
+				if (inputTokens.contains(t) && precreatedBuffers.get(t) instanceof PeekableBuffer)
+					continue;
+				//Room for the iteration being loaded (or written) and the next.
+				Buffer b = Buffers.spscBuffer(tokenTypes.get(t), 2 * Math.max(getMinimumBufferCapacity(t), 1));
+				staging.put(t, b);
+				transfers.add(inputTokens.contains(t) ?
+						transfer(this.buffers.get(t), b, b.capacity()) :
+						transfer(b, this.buffers.get(t), b.capacity()));
+			}
+			this.stagingBuffers = staging.build();
+			this.pumpTransfers = transfers.build();
+			for (Token t : inputTokens)
+				pumpIdleStrategy.watchInput(this.buffers.get(t));
+			for (Token t : outputTokens)
+				pumpIdleStrategy.watchOutput(this.buffers.get(t));
+			instructionBuffers = new HashMap<>(this.buffers);
+			instructionBuffers.putAll(stagingBuffers);
+		}
+		for (Token t : inputTokens)
+			idleStrategy.watchInput(instructionBuffers.get(t));
+		for (Token t : outputTokens)
+			idleStrategy.watchOutput(instructionBuffers.get(t));
+
 		for (ReadInstruction i : Iterables.concat(this.initReadInstructions, this.readInstructions))
-			i.init(this.buffers);
+			i.init(instructionBuffers);
 		for (WriteInstruction i : Iterables.concat(this.initWriteInstructions, this.writeInstructions))
-			i.init(this.buffers);
+			i.init(instructionBuffers);
 	}
 
 	@Override
 	public int getCoreCount() {
-		return coreCode.size();
+		return coreCode.size() + (pipelined ? 1 : 0);
 	}
 
 	@Override
 	public Runnable getCoreCode(int core) {
+		if (pipelined && core == coreCode.size())
+			return this::pump;
 		return coreCode.get(core);
 	}
 
@@ -254,10 +403,48 @@ public class Compiler2BlobHost implements Blob {
 		return drainData;
 	}
 
-	private void mainLoop(MethodHandle coreCode) throws Throwable {
+	/**
+	 * Returns this blob's metrics, which may be polled at any time.
+	 * @return this blob's metrics
+	 */
+	public BlobHostMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Replaces the initial data this blob was compiled with by other data
+	 * with the same number of items on each edge, so a blob can be compiled
+	 * before the data it will start from is known.  Must be called before
+	 * this blob starts running.
+	 * @param initialData the data to start from
+	 * @throws IllegalArgumentException if the item counts differ
+	 */
+	void rebindInitialData(DrainData initialData) {
+		checkState(initReadInstructions != null, "already initialized");
+		for (ReadInstruction i : initReadInstructions)
+			if (i instanceof Compiler2.InitDataReadInstruction)
+				((Compiler2.InitDataReadInstruction)i).rebind(initialData);
+	}
+
+	/**
+	 * Reloads the workers' non-final fields into this blob's state holders,
+	 * which were filled when this blob was compiled, so a blob can be
+	 * compiled while the workers are still running elsewhere.  Must be called
+	 * before this blob starts running, while the workers aren't running.
+	 */
+	void refreshState() {
+		checkState(initReadInstructions != null, "already initialized");
+		for (DrainInstruction i : drainInstructions)
+			if (i instanceof StateHolder)
+				((StateHolder)i).refresh();
+	}
+
+	private void mainLoop(int core, MethodHandle coreCode) throws Throwable {
 		try {
 			coreCode.invokeExact();
+			long waitStart = System.nanoTime();
 			barrier.arriveAndAwaitAdvance();
+			metrics.waited(core, System.nanoTime() - waitStart);
 		} catch (Throwable ex) {
 			barrier.forceTermination();
 			SwitchPoint.invalidateAll(new SwitchPoint[]{sp1, sp2});
@@ -273,10 +460,14 @@ public class Compiler2BlobHost implements Blob {
 
 		for (int i = 0; i < initReadInstructions.size(); ++i) {
 			ReadInstruction inst = initReadInstructions.get(i);
-			while (!inst.load())
+			for (int idleCount = 1; !inst.load(); ++idleCount)
 				if (isDraining()) {
 					doDrain(initReadInstructions.subList(0, i), ImmutableList.<DrainInstruction>of());
 					return;
+				} else {
+					if (idleCount == 1)
+						metrics.readStarved();
+					idleStrategy.idle(idleCount);
 				}
 		}
 
@@ -287,12 +478,16 @@ public class Compiler2BlobHost implements Blob {
 		for (Runnable r : migrationInstructions)
 			r.run();
 
+		if (compiledDrain)
+			precompileDrainBlob();
+
 		//Show the GC we won't use these anymore.
 		initReadInstructions = null;
 		initWriteInstructions = null;
 		migrationInstructions = null;
 
-		readOrDrain();
+		if (readOrDrain())
+			metrics.steadyStateStarted();
 
 		SwitchPoint.invalidateAll(new SwitchPoint[]{sp1});
 
@@ -300,49 +495,159 @@ public class Compiler2BlobHost implements Blob {
 			System.out.println("init time: "+initTime.stop());
 	}
 
-	private final Stopwatch adjustTime = Stopwatch.createUnstarted();
-	private int adjustCount;
 	private void doAdjust() throws Throwable {
-		if (collectTimings) {
-			adjustTime.start();
-			++adjustCount;
-		}
+		long adjustStart = System.nanoTime();
 
 		doWrites(writeInstructions);
 
 		for (MethodHandle h : storageAdjusts)
 			h.invokeExact();
 
-		readOrDrain();
-
-		if (collectTimings)
-			adjustTime.stop();
+		boolean loaded = readOrDrain();
+		metrics.adjusted(System.nanoTime() - adjustStart, loaded);
 	}
 
 	/**
 	 * Handle short writes round-robin so other Blobs can make progress (thus
-	 * freeing up buffer space).
+	 * freeing up buffer space).  If a full round completes no write, idle.
 	 * @param writes the write instructions to execute
 	 */
-	private static void doWrites(List<? extends NothrowCallable<Boolean>> writeInstructions) {
+	private void doWrites(List<? extends NothrowCallable<Boolean>> writeInstructions) {
 		ArrayList<NothrowCallable<Boolean>> writes = new ArrayList<>(writeInstructions);
-		while (!writes.isEmpty())
+		int idleCount = 0;
+		while (!writes.isEmpty()) {
+			int before = writes.size();
 			for (Iterator<NothrowCallable<Boolean>> it = writes.iterator(); it.hasNext();) {
 				NothrowCallable<Boolean> write = it.next();
 				if (write.call())
 					it.remove();
 			}
+			if (writes.size() < before)
+				idleCount = 0;
+			else {
+				if (idleCount == 0)
+					metrics.writeBlocked();
+				idleStrategy.idle(++idleCount);
+			}
+		}
+	}
+
+	/**
+	 * The I/O core's code in the pipelined steady state: moves items from
+	 * input buffers into staging rings and from staging rings into output
+	 * buffers, idling when nothing moves.
+	 */
+	private void pump() {
+		boolean moved = false;
+		if (!pumpLock.tryLock())
+			return;
+		try {
+			if (pumpStopped)
+				return;
+			for (int i = 0; i < pumpTransfers.size(); ++i)
+				moved |= pumpTransfers.get(i).getAsInt() > 0;
+		} finally {
+			pumpLock.unlock();
+		}
+		if (moved)
+			pumpIdleCount = 0;
+		else
+			pumpIdleStrategy.idle(++pumpIdleCount);
+	}
+
+	/**
+	 * Returns a transfer that moves as many items as possible (up to chunk)
+	 * from one buffer to another without blocking, returning the number of
+	 * items moved.  Between unboxed rings of the same type the items are
+	 * copied through a primitive array, so they're never boxed.  The caller
+	 * must be the only reader of from and the only writer of to.
+	 */
+	private static IntSupplier transfer(Buffer from, Buffer to, int chunk) {
+		if (from instanceof IntSPSCRingBuffer && to instanceof IntSPSCRingBuffer) {
+			IntSPSCRingBuffer f = (IntSPSCRingBuffer)from, t = (IntSPSCRingBuffer)to;
+			int[] scratch = new int[chunk];
+			return () -> {
+				int read = f.read(scratch, 0, transferable(from, to, chunk));
+				return checkMoved(read, t.write(scratch, 0, read));
+			};
+		}
+		if (from instanceof FloatSPSCRingBuffer && to instanceof FloatSPSCRingBuffer) {
+			FloatSPSCRingBuffer f = (FloatSPSCRingBuffer)from, t = (FloatSPSCRingBuffer)to;
+			float[] scratch = new float[chunk];
+			return () -> {
+				int read = f.read(scratch, 0, transferable(from, to, chunk));
+				return checkMoved(read, t.write(scratch, 0, read));
+			};
+		}
+		if (from instanceof DoubleSPSCRingBuffer && to instanceof DoubleSPSCRingBuffer) {
+			DoubleSPSCRingBuffer f = (DoubleSPSCRingBuffer)from, t = (DoubleSPSCRingBuffer)to;
+			double[] scratch = new double[chunk];
+			return () -> {
+				int read = f.read(scratch, 0, transferable(from, to, chunk));
+				return checkMoved(read, t.write(scratch, 0, read));
+			};
+		}
+		Object[] scratch = new Object[chunk];
+		return () -> {
+			int count = transferable(from, to, chunk);
+			if (count == 0)
+				return 0;
+			int read = from.read(scratch, 0, count);
+			int written = to.write(scratch, 0, read);
+			Arrays.fill(scratch, 0, read, null);
+			return checkMoved(read, written);
+		};
 	}
 
-	private void readOrDrain() {
+	private static int transferable(Buffer from, Buffer to, int chunk) {
+		return Math.max(Math.min(Math.min(from.size(), to.capacity() - to.size()), chunk), 0);
+	}
+
+	private static int checkMoved(int read, int written) {
+		assert written == read : "lost items: read "+read+", wrote "+written;
+		return read;
+	}
+
+	/**
+	 * Stops the I/O core and returns the items still in the staging rings,
+	 * so doDrain can hand them to the interpreter.
+	 */
+	private Map<Token, Object[]> stopPump() {
+		pumpLock.lock();
+		try {
+			pumpStopped = true;
+		} finally {
+			pumpLock.unlock();
+		}
+		ImmutableMap.Builder<Token, Object[]> staged = ImmutableMap.builder();
+		for (Map.Entry<Token, Buffer> e : stagingBuffers.entrySet()) {
+			Object[] data = new Object[e.getValue().size()];
+			int read = e.getValue().read(data, 0, data.length);
+			assert read == data.length;
+			staged.put(e.getKey(), data);
+		}
+		return staged.build();
+	}
+
+	/**
+	 * Loads input for the next steady-state iteration, or drains if we run
+	 * out of input while draining.
+	 * @return true if all input was loaded, false if we drained instead
+	 */
+	private boolean readOrDrain() {
 		for (int i = 0; i < readInstructions.size(); ++i) {
 			ReadInstruction inst = readInstructions.get(i);
-			while (!inst.load())
+			for (int idleCount = 1; !inst.load(); ++idleCount)
 				if (isDraining()) {
 					doDrain(readInstructions.subList(0, i), drainInstructions);
-					return;
+					return false;
+				} else {
+					if (idleCount == 1)
+						metrics.readStarved();
+					idleStrategy.idle(idleCount);
 				}
 		}
+		return true;
 	}
 
 	/**
@@ -354,15 +659,18 @@ public class Compiler2BlobHost implements Blob {
 	 * empty list if we didn't complete init
 	 */
 	private void doDrain(List<ReadInstruction> reads, List<DrainInstruction> drains) {
-		Stopwatch drainTime = null;
-		if (collectTimings)
-			drainTime = Stopwatch.createStarted();
+		Stopwatch drainTime = Stopwatch.createStarted();
 
-		List<Map<Token, Object[]>> data = new ArrayList<>(reads.size() + drains.size());
+		List<Map<Token, Object[]>> data = new ArrayList<>(reads.size() + drains.size() + 2);
+		//Staged output precedes anything still in storage; staged input
+		//follows it.
+		Map<Token, Object[]> staged = stopPump();
+		data.add(Maps.filterKeys(staged, outputTokens::contains));
 		for (ReadInstruction i : reads)
 			data.add(i.unload());
 		for (DrainInstruction i : drains)
 			data.add(i.call());
+		data.add(Maps.filterKeys(staged, inputTokens::contains));
 		ImmutableMap<Token, List<Object>> mergedData = CollectionUtils.union((key, value) -> {
 			int size = 0;
 			for (Object[] v : value)
@@ -388,26 +696,142 @@ public class Compiler2BlobHost implements Blob {
 				//distributed will still see it.)
 				ImmutableTable.<Integer, String, Object>of());
 
-		Interpreter.InterpreterBlobFactory interpFactory = new Interpreter.InterpreterBlobFactory();
-		Blob interp = interpFactory.makeBlob(workers, interpFactory.getDefaultConfiguration(workers), 1, forInterp);
-		interp.installBuffers(buffers);
-		Runnable interpCode = interp.getCoreCode(0);
-		final AtomicBoolean interpFinished = new AtomicBoolean();
-		interp.drain(() -> interpFinished.set(true));
-		while (!interpFinished.get())
-			interpCode.run();
-		this.drainData = interp.getDrainData();
+		Blob drainBlob = takePrecompiledDrainBlob(forInterp);
+		if (drainBlob == null) {
+			Interpreter.InterpreterBlobFactory interpFactory = new Interpreter.InterpreterBlobFactory();
+			drainBlob = interpFactory.makeBlob(workers, interpFactory.getDefaultConfiguration(workers), 1, forInterp);
+			drainBlob.installBuffers(buffers);
+		}
+		runUntilDrained(drainBlob);
+		this.drainData = drainBlob.getDrainData();
 
 		SwitchPoint.invalidateAll(new SwitchPoint[]{sp1, sp2});
+		//All output has been written; release the overall output (if we
+		//created it) before reporting that we're drained.
+		precreatedBuffers.values().forEach(Buffers::close);
+		drainTime.stop();
+		metrics.drained(drainTime.elapsed(TimeUnit.NANOSECONDS));
+		metrics.unregister();
 		drainCallback.run();
 
 		if (collectTimings) {
-			drainTime.stop();
-			System.out.println("total adjust time: "+adjustTime+" over "+adjustCount+" adjusts");
+			System.out.println("total adjust time: "+TimeUnit.NANOSECONDS.toMillis(metrics.getAdjustNanos())+" ms over "+metrics.getSteadyStateIterations()+" adjusts");
 			System.out.println("drain time: "+drainTime);
 		}
 	}
 
+	/**
+	 * Starts compiling, in the background, a single-multiplier blob to
+	 * continue from where a drain will leave us, so the residual items (less
+	 * than one of our steady-state iterations) can be consumed by compiled
+	 * code on all our cores.  That blob drains to the interpreter in turn,
+	 * leaving it less than one unmultiplied iteration.
+	 * <p/>
+	 * Compiled code depends on the data in flight only through the number of
+	 * items on each edge (see rebindInitialData()).  After every steady-state
+	 * iteration our storage holds the same number of items as it does now,
+	 * at the end of init, so we compile from a snapshot of it; a drain that
+	 * also has items on our external edges (from a partly-loaded iteration,
+	 * a staging ring or a short write) doesn't match and uses the
+	 * interpreter.
+	 */
+	private void precompileDrainBlob() {
+		Map<Token, List<Object>> snapshot = new HashMap<>();
+		for (DrainInstruction i : drainInstructions)
+			//StateHolders would write into the workers, but we only want
+			//items; the drain blob's state is refreshed when we switch to it.
+			if (!(i instanceof StateHolder))
+				for (Map.Entry<Token, Object[]> e : i.call().entrySet())
+					snapshot.put(e.getKey(), Arrays.asList(e.getValue()));
+		DrainData initialState = new DrainData(snapshot, ImmutableTable.<Integer, String, Object>of());
+		this.precompiledDrainShape = shapeOf(initialState);
+
+		Configuration.Builder builder = Configuration.builder(config);
+		IntParameter multiplier = (IntParameter)builder.removeParameter("multiplier");
+		builder.addParameter(new IntParameter("multiplier", multiplier.getRange(), 1));
+		builder.removeParameter(PIPELINED_PARAMETER);
+		builder.addParameter(SwitchParameter.create(PIPELINED_PARAMETER, false));
+		builder.removeParameter(COMPILED_DRAIN_PARAMETER);
+		builder.addParameter(SwitchParameter.create(COMPILED_DRAIN_PARAMETER, false));
+		builder.putExtraData(BlobHostMetrics.EXTRA_DATA_KEY, false);
+		builder.putExtraData("reportThroughput", false);
+		Configuration drainConfig = builder.build();
+		int maxNumCores = coreCode.size();
+		this.precompiledDrainBlob = CompletableFuture.supplyAsync(() ->
+				(Compiler2BlobHost)new Compiler2(workers, drainConfig, maxNumCores, initialState, null, null).compile());
+	}
+
+	/**
+	 * Returns the precompiled drain blob, rebound to continue from the given
+	 * DrainData and with buffers installed, or null (so we use the
+	 * interpreter directly) if it isn't ready yet, failed to compile, doesn't
+	 * match the data or doesn't fit our buffers.  Nothing has been consumed
+	 * in any of those cases, so the interpreter can take over.
+	 * @param drainData the items left after our last iteration
+	 * @return a blob with buffers installed, or null
+	 */
+	private Blob takePrecompiledDrainBlob(DrainData drainData) {
+		if (precompiledDrainBlob == null || !precompiledDrainBlob.isDone()
+				|| precompiledDrainBlob.isCompletedExceptionally()
+				|| !shapeOf(drainData).equals(precompiledDrainShape))
+			return null;
+		Compiler2BlobHost blob = precompiledDrainBlob.join();
+		try {
+			//The state holders were filled from the workers while we ran;
+			//our StateHolders just put the current state back in them.
+			blob.refreshState();
+			blob.rebindInitialData(drainData);
+			blob.installBuffers(buffers);
+			return blob;
+		} catch (RuntimeException ex) {
+			return null;
+		}
+	}
+
+	private static ImmutableMap<Token, Integer> shapeOf(DrainData data) {
+		ImmutableMap.Builder<Token, Integer> shape = ImmutableMap.builder();
+		for (Map.Entry<Token, ImmutableList<Object>> e : data.getData().entrySet())
+			if (!e.getValue().isEmpty())
+				shape.put(e.getKey(), e.getValue().size());
+		return shape.build();
+	}
+
+	/**
+	 * Runs the given blob's cores (core 0 on this thread, the rest on
+	 * temporary threads) until it drains.
+	 * @param blob the blob to run, with buffers installed
+	 */
+	private static void runUntilDrained(Blob blob) {
+		final AtomicBoolean finished = new AtomicBoolean();
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		blob.drain(() -> finished.set(true));
+		List<Thread> helpers = new ArrayList<>();
+		for (int i = 1; i < blob.getCoreCount(); ++i) {
+			Runnable code = blob.getCoreCode(i);
+			Thread t = new Thread(() -> {
+				try {
+					while (!finished.get() && failure.get() == null)
+						code.run();
+				} catch (Throwable ex) {
+					failure.compareAndSet(null, ex);
+				}
+			}, blob.toString()+"-drain-"+i);
+			t.start();
+			helpers.add(t);
+		}
+		Runnable code = blob.getCoreCode(0);
+		try {
+			while (!finished.get() && failure.get() == null)
+				code.run();
+		} catch (Throwable ex) {
+			failure.compareAndSet(null, ex);
+		}
+		for (Thread t : helpers)
+			Uninterruptibles.joinUninterruptibly(t);
+		if (failure.get() != null)
+			throw new RuntimeException("failure while draining", failure.get());
+	}
+
 	private boolean isDraining() {
 		return drainCallback != null;
 	}
@@ -21,19 +21,27 @@
  */
 package edu.mit.streamjit.impl.compiler2;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import com.google.common.collect.ImmutableSet;
+import edu.mit.streamjit.api.CompiledStream;
 import edu.mit.streamjit.api.Input;
+import edu.mit.streamjit.api.OneToOneElement;
 import edu.mit.streamjit.api.Output;
 import edu.mit.streamjit.api.Worker;
 import edu.mit.streamjit.impl.blob.Blob;
 import edu.mit.streamjit.impl.blob.Buffer;
+import edu.mit.streamjit.impl.blob.IdleStrategies;
 import edu.mit.streamjit.impl.common.BlobHostStreamCompiler;
 import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.impl.common.ConnectWorkersVisitor;
+import edu.mit.streamjit.impl.common.StreamRuntime;
+import edu.mit.streamjit.impl.common.Workers;
 import edu.mit.streamjit.test.Datasets;
 import java.nio.file.Path;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -41,13 +49,21 @@ import java.util.Set;
  * @since 11/12/2013 (from CompilerStreamCompiler since 8/13/2013)
  */
 public final class Compiler2StreamCompiler extends BlobHostStreamCompiler {
+	/**
+	 * The minimum overall buffer capacity when tuning online.
+	 */
+	public static final int ONLINE_TUNING_BUFFER_CAPACITY = 1 << 16;
 	private Configuration config;
 	private int randomSeed = -1;
 	private int maxNumCores = Compiler2.ALLOCATION_STRATEGY.maxNumCores();
 	private int multiplier = 1;
 	private Path dumpFile;
+	private Path compilationCache;
 	private boolean timings = false;
 	private boolean throughput = false;
+	private boolean metrics = false;
+	private IdleStrategies.Kind idleStrategy;
+	private long tuningWindowMillis = -1;
 	public Compiler2StreamCompiler() {
 		super(new Compiler2BlobFactory());
 	}
@@ -79,6 +95,18 @@ public final class Compiler2StreamCompiler extends BlobHostStreamCompiler {
 		return this;
 	}
 
+	/**
+	 * Caches schedules in the given directory, so compiling the same graph
+	 * with the same configuration again (even in another JVM) skips the
+	 * schedule solves.
+	 * @param directory the cache directory (created if necessary)
+	 * @return this
+	 */
+	public Compiler2StreamCompiler compilationCache(Path directory) {
+		this.compilationCache = directory;
+		return this;
+	}
+
 	public Compiler2StreamCompiler timings() {
 		this.timings = true;
 		return this;
@@ -89,16 +117,171 @@ public final class Compiler2StreamCompiler extends BlobHostStreamCompiler {
 		return this;
 	}
 
+	/**
+	 * Registers the blob's BlobHostMetrics as a JMX MXBean while the stream
+	 * runs.
+	 * @return this
+	 */
+	public Compiler2StreamCompiler metrics() {
+		this.metrics = true;
+		return this;
+	}
+
+	/**
+	 * Sets what the blob does when its input is empty or its output is full.
+	 * The default is to busy-spin.
+	 * @param idleStrategy the idle strategy to use
+	 * @return this
+	 */
+	public Compiler2StreamCompiler idleStrategy(IdleStrategies.Kind idleStrategy) {
+		this.idleStrategy = idleStrategy;
+		return this;
+	}
+
+	/**
+	 * Tunes the configuration while the stream runs, measuring each
+	 * configuration's throughput over the given window.  The overall buffers
+	 * are created before any candidate is compiled, so they're made at least
+	 * {@link #ONLINE_TUNING_BUFFER_CAPACITY} items large; candidates needing
+	 * more are rejected.
+	 * @param window the measurement window
+	 * @param unit the window's unit
+	 * @return this
+	 * @see OnlineTuningBlob
+	 */
+	public Compiler2StreamCompiler onlineTuning(long window, TimeUnit unit) {
+		checkArgument(window > 0, window);
+		this.tuningWindowMillis = unit.toMillis(window);
+		return this;
+	}
+
+	/**
+	 * Tunes the configuration while the stream runs, with a five-second
+	 * measurement window.
+	 * @return this
+	 * @see #onlineTuning(long, java.util.concurrent.TimeUnit)
+	 */
+	public Compiler2StreamCompiler onlineTuning() {
+		return onlineTuning(5, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public <I, O> CompiledStream compile(OneToOneElement<I, O> stream, Input<I> input, Output<O> output) {
+		ConnectWorkersVisitor cwv = new ConnectWorkersVisitor();
+		stream.visit(cwv);
+		checkState(tuningWindowMillis <= 0 || getRuntime() == null, "can't tune online on a shared runtime");
+		//Compiler2 schedules statically, so compile static-rate islands
+		//around any dynamic-rate workers.
+		if (Workers.getAllWorkersInGraph(cwv.getSource()).stream().anyMatch(IslandStreamCompiler::isDynamic))
+			return new IslandStreamCompiler(this).compile(stream, input, output);
+		return super.compile(stream, input, output);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p/>
+	 * Blobs hosted on a runtime are compiled for a single core, without a
+	 * pipelined pump core.
+	 */
+	@Override
+	public Compiler2StreamCompiler runtime(StreamRuntime runtime) {
+		super.runtime(runtime);
+		return this;
+	}
+
 	@Override
 	protected final int getMaxNumCores() {
-		return maxNumCores;
+		return getRuntime() != null ? 1 : maxNumCores;
+	}
+
+	/**
+	 * Returns true if the overall buffers are created by BlobHostStreamCompiler
+	 * rather than by Compiler2 (because the blob will be replaced or its
+	 * buffers watched).
+	 */
+	private boolean externalBuffers() {
+		return tuningWindowMillis > 0 || getRuntime() != null;
 	}
 
 	@Override
 	protected final Configuration getConfiguration(Set<Worker<?, ?>> workers) {
+		return forRuntime(baseConfiguration(workers));
+	}
+
+	/**
+	 * Returns the configuration for one static-rate island of a graph with
+	 * dynamic-rate workers.  The island's parameters are taken, by name, from
+	 * the configuration given to this compiler where it has them, and from
+	 * the island's default configuration otherwise.
+	 */
+	Configuration islandConfiguration(Set<Worker<?, ?>> island) {
+		if (config == null)
+			return getConfiguration(island);
+		Configuration defaults = super.getConfiguration(island);
+		Configuration.Builder builder = Configuration.builder();
+		for (Configuration.Parameter p : defaults.getParametersMap().values()) {
+			Configuration.Parameter given = config.getParameter(p.getName());
+			builder.addParameter(fits(given, p) ? given : p);
+		}
+		config.getExtraDataMap().forEach(builder::putExtraData);
+		putOptions(builder);
+		return forRuntime(builder.build());
+	}
+
+	/**
+	 * Returns true if the given parameter can replace the island's default
+	 * parameter: it's of the same kind and, if an IntParameter, its value is
+	 * in the default's range (which may depend on the island's size).
+	 */
+	private static boolean fits(Configuration.Parameter given, Configuration.Parameter island) {
+		if (given == null || given.getClass() != island.getClass())
+			return false;
+		if (island instanceof Configuration.IntParameter)
+			return ((Configuration.IntParameter)island).getRange().contains(((Configuration.IntParameter)given).getValue());
+		return true;
+	}
+
+	/**
+	 * Makes the blob for one static-rate island of a graph with dynamic-rate
+	 * workers.
+	 */
+	Blob makeIslandBlob(Set<Worker<?, ?>> island, int cores) {
+		Configuration configuration = islandConfiguration(island);
+		if (tuningWindowMillis > 0)
+			return new OnlineTuningBlob(ImmutableSet.copyOf(island), configuration, cores, tuningWindowMillis, TimeUnit.MILLISECONDS);
+		return new Compiler2(island, configuration, cores, null, null, null).compile();
+	}
+
+	/**
+	 * Returns the runtime to host the islands on, or null.
+	 */
+	StreamRuntime islandRuntime() {
+		return getRuntime();
+	}
+
+	/**
+	 * Returns the smallest capacity of the buffers between islands.
+	 */
+	int islandBufferCapacity() {
+		return tuningWindowMillis > 0 ? ONLINE_TUNING_BUFFER_CAPACITY : 0;
+	}
+
+	/**
+	 * Blobs hosted on a runtime don't have a pipelined pump core.
+	 */
+	private Configuration forRuntime(Configuration configuration) {
+		if (getRuntime() == null || configuration.getParameter(Compiler2BlobHost.PIPELINED_PARAMETER) == null)
+			return configuration;
+		Configuration.Builder builder = Configuration.builder(configuration);
+		builder.removeParameter(Compiler2BlobHost.PIPELINED_PARAMETER);
+		builder.addParameter(Configuration.SwitchParameter.create(Compiler2BlobHost.PIPELINED_PARAMETER, false));
+		return builder.build();
+	}
+
+	private Configuration baseConfiguration(Set<Worker<?, ?>> workers) {
 		if (config != null) {
 			Configuration.Builder builder = Configuration.builder(config);
-			builder.putExtraData("reportThroughput", throughput);
+			putOptions(builder);
 			return builder.build();
 		}
 
@@ -113,26 +296,50 @@ public final class Compiler2StreamCompiler extends BlobHostStreamCompiler {
 		if (dumpFile != null)
 			builder.putExtraData("dumpFile", dumpFile);
 		builder.putExtraData("timings", timings);
-		builder.putExtraData("reportThroughput", throughput);
+		putOptions(builder);
 		return builder.build();
 	}
 
+	/**
+	 * Puts the options that apply even with a specific configuration.
+	 */
+	private void putOptions(Configuration.Builder builder) {
+		builder.putExtraData("reportThroughput", throughput);
+		builder.putExtraData(BlobHostMetrics.EXTRA_DATA_KEY, metrics);
+		if (compilationCache != null)
+			builder.putExtraData(CompilationCache.EXTRA_DATA_KEY, compilationCache);
+		if (idleStrategy != null)
+			builder.putExtraData(IdleStrategies.EXTRA_DATA_KEY, idleStrategy.name());
+	}
+
 	@Override
 	protected Blob makeBlob(ImmutableSet<Worker<?, ?>> workers, Configuration configuration, Input<?> input, Output<?> output) {
+		if (tuningWindowMillis > 0)
+			return new OnlineTuningBlob(workers, configuration, getMaxNumCores(), tuningWindowMillis, TimeUnit.MILLISECONDS);
 		//When reporting throughput, repeat the input as needed.
 		Boolean reportThroughput = (Boolean)configuration.getExtraData("reportThroughput");
 		if (reportThroughput != null && reportThroughput)
 			input = Datasets.cycle(input);
+		if (externalBuffers())
+			return new Compiler2(workers, configuration, getMaxNumCores(), null, null, null).compile();
 		return new Compiler2(workers, configuration, getMaxNumCores(), null, input, output).compile();
 	}
 
 	@Override
 	protected Buffer makeInputBuffer(Input<?> input, int minCapacity) {
+		if (tuningWindowMillis > 0)
+			return super.makeInputBuffer(input, Math.max(minCapacity, ONLINE_TUNING_BUFFER_CAPACITY));
+		if (getRuntime() != null)
+			return super.makeInputBuffer(input, minCapacity);
 		return null; //handled by Compiler2
 	}
 
 	@Override
 	protected Buffer makeOutputBuffer(Output<?> output, int minCapacity) {
+		if (tuningWindowMillis > 0)
+			return super.makeOutputBuffer(output, Math.max(minCapacity, ONLINE_TUNING_BUFFER_CAPACITY));
+		if (getRuntime() != null)
+			return super.makeOutputBuffer(output, minCapacity);
 		return null; //handled by Compiler2
 	}
 
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import java.util.Objects;
+
+/**
+ * An index function applying one index function, then another, used when
+ * their composition can't be represented symbolically.
+ * @since 10/17/2026
+ */
+final class CompoundIndexFunction implements IndexFunction {
+	private final IndexFunction before, after;
+	CompoundIndexFunction(IndexFunction before, IndexFunction after) {
+		this.before = Objects.requireNonNull(before);
+		this.after = Objects.requireNonNull(after);
+	}
+	@Override
+	public int applyAsInt(int operand) {
+		return after.applyAsInt(before.applyAsInt(operand));
+	}
+	@Override
+	public void applyBulk(int[] bulk) {
+		before.applyBulk(bulk);
+		after.applyBulk(bulk);
+	}
+}
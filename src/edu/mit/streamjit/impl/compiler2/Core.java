@@ -28,6 +28,7 @@ import edu.mit.streamjit.util.bytecode.methodhandles.Combinators;
 import edu.mit.streamjit.util.Pair;
 import java.lang.invoke.MethodHandle;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.function.BiFunction;
 
@@ -42,6 +43,7 @@ public class Core {
 	private final ImmutableMap<ActorGroup, Integer> unrollFactors;
 	private final ImmutableTable<Actor, Integer, IndexFunctionTransformer> inputTransformers, outputTransformers;
 	private final List<Pair<ActorGroup, Range<Integer>>> allocations = new ArrayList<>();
+	private final List<DynamicAllocation> dynamicAllocations = new ArrayList<>();
 	public Core(ImmutableMap<Storage, ConcreteStorage> storage,
 			BiFunction<MethodHandle[], WorkerActor, MethodHandle> switchFactory,
 			ImmutableMap<ActorGroup, Integer> unrollFactors,
@@ -59,12 +61,52 @@ public class Core {
 			allocations.add(Pair.make(group, iterations));
 	}
 
+	/**
+	 * Makes this core help run the given dynamic allocation after its static
+	 * allocations.
+	 * @param allocation the dynamic allocation
+	 */
+	public void allocate(DynamicAllocation allocation) {
+		dynamicAllocations.add(allocation);
+	}
+
+	/**
+	 * Removes and returns the iterations of the given group allocated to this
+	 * core.
+	 * @param group the group
+	 * @return the removed iteration ranges, possibly empty
+	 */
+	public List<Range<Integer>> deallocate(ActorGroup group) {
+		List<Range<Integer>> removed = new ArrayList<>();
+		for (Iterator<Pair<ActorGroup, Range<Integer>>> it = allocations.iterator(); it.hasNext();) {
+			Pair<ActorGroup, Range<Integer>> p = it.next();
+			if (p.first.equals(group)) {
+				removed.add(p.second);
+				it.remove();
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Returns code executing the given iterations of the given group with
+	 * this core's unroll factors and index function transformers.
+	 * @param group the group
+	 * @param iterations the iterations
+	 * @return code taking no arguments and returning void
+	 */
+	public MethodHandle specialize(ActorGroup group, Range<Integer> iterations) {
+		return group.specialize(iterations, storage, switchFactory, unrollFactors.get(group), inputTransformers, outputTransformers);
+	}
+
 	public MethodHandle code() {
 		//TODO: ActorGroup ordering parameters: accumulate a
 		//List<Pair<ActorGroup, MethodHandle>>, then sort before semicolon(code).
-		List<MethodHandle> code = new ArrayList<>(allocations.size());
+		List<MethodHandle> code = new ArrayList<>(allocations.size() + dynamicAllocations.size());
 		for (Pair<ActorGroup, Range<Integer>> p : allocations)
-			code.add(p.first.specialize(p.second, storage, switchFactory, unrollFactors.get(p.first), inputTransformers, outputTransformers));
+			code.add(specialize(p.first, p.second));
+		for (DynamicAllocation d : dynamicAllocations)
+			code.add(d.runHandle());
 		return Combinators.semicolon(code);
 	}
 
@@ -74,7 +116,7 @@ public class Core {
 	 * @return true iff this core is empty
 	 */
 	public boolean isEmpty() {
-		return allocations.isEmpty();
+		return allocations.isEmpty() && dynamicAllocations.isEmpty();
 	}
 
 	@Override
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static edu.mit.streamjit.util.bytecode.methodhandles.LookupUtils.findVirtual;
+import com.google.common.collect.Range;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stateless group's steady-state iterations, split into chunks that cores
+ * claim at runtime rather than being allocated to cores at compile time.  A
+ * preempted or throttled core then delays only the chunk it's running, while
+ * the other cores claim the rest.  Every core that runs steady-state code
+ * calls {@link #run()} after its statically-allocated work; the claim counter
+ * is reset with the storage adjusts at the barrier.
+ * <p/>
+ * Enabled by the {@link #PARAMETER} switch.
+ * @since 10/17/2026
+ */
+final class DynamicAllocation {
+	/**
+	 * The name of the switch parameter enabling dynamic allocation of
+	 * stateless groups.
+	 */
+	public static final String PARAMETER = "DynamicAllocation";
+	/**
+	 * The number of chunks per core, trading claim overhead for balance.
+	 */
+	public static final int CHUNKS_PER_CORE = 4;
+	private static final Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodHandle RUN = findVirtual(LOOKUP, "run");
+	private static final MethodHandle RESET = findVirtual(LOOKUP, "reset");
+	private final ActorGroup group;
+	private final MethodHandle[] chunks;
+	private final AtomicInteger next = new AtomicInteger();
+	private final MethodHandle runHandle, resetHandle;
+	/**
+	 * Creates a DynamicAllocation.
+	 * @param group the group
+	 * @param chunks the code for each chunk, each taking no arguments and
+	 * returning void
+	 */
+	DynamicAllocation(ActorGroup group, List<MethodHandle> chunks) {
+		checkArgument(!group.isStateful(), "stateful group %s", group);
+		this.group = group;
+		this.chunks = chunks.toArray(new MethodHandle[0]);
+		this.runHandle = RUN.bindTo(this);
+		this.resetHandle = RESET.bindTo(this);
+	}
+
+	/**
+	 * Splits the given iterations into at most the given number of chunks of
+	 * nearly equal size.
+	 * @param iterations the iterations to split
+	 * @param count the maximum number of chunks
+	 * @return the chunks, in order
+	 */
+	static List<Range<Integer>> split(Range<Integer> iterations, int count) {
+		int lower = iterations.lowerEndpoint(), size = iterations.upperEndpoint() - lower;
+		count = Math.max(1, Math.min(count, size));
+		List<Range<Integer>> ranges = new ArrayList<>(count);
+		for (int i = 0; i < count; ++i)
+			ranges.add(Range.closedOpen(lower + (int)((long)size * i / count), lower + (int)((long)size * (i+1) / count)));
+		return ranges;
+	}
+
+	public ActorGroup group() {
+		return group;
+	}
+
+	/**
+	 * Returns a handle that claims and runs chunks until none remain.
+	 * @return a handle taking no arguments and returning void
+	 */
+	public MethodHandle runHandle() {
+		return runHandle;
+	}
+
+	/**
+	 * Returns a handle that makes all chunks claimable again, to be run at
+	 * the barrier between steady-state iterations.
+	 * @return a handle taking no arguments and returning void
+	 */
+	public MethodHandle resetHandle() {
+		return resetHandle;
+	}
+
+	private void run() throws Throwable {
+		for (int i; (i = next.getAndIncrement()) < chunks.length;)
+			chunks[i].invokeExact();
+	}
+
+	private void reset() {
+		next.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("DynamicAllocation[%s, %d chunks]", group, chunks.length);
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import edu.mit.streamjit.api.Filter;
+
+/**
+ * Computes a long FIR filter in the frequency domain, producing a block of
+ * outputs per firing by overlap-save: each firing transforms a window of
+ * {@code size} (a power of two) items, multiplies by the transformed taps and
+ * transforms back, yielding {@code size - taps + 1} outputs.  This takes
+ * O(log size) operations per output rather than O(taps).
+ *
+ * The work method inlines a radix-2 FFT rather than calling helper methods
+ * because compiled archetype code can only call peek, pop and push on the
+ * worker.  The inverse transform reuses the forward one by conjugating.  Its
+ * scratch arrays are allocated once per thread rather than per firing; they
+ * can't be plain fields because a stateless filter may be data-parallelized,
+ * running on several cores at once.
+ *
+ * This class is public so compiled archetype code can use it like any other
+ * worker class, but it's only instantiated by the compiler.
+ * @since 10/17/2026
+ */
+public final class FrequencyLinearFilter extends Filter<Float, Float> {
+	/**
+	 * The transform size and the number of outputs per firing.
+	 */
+	private final int size, block;
+	/**
+	 * The transform of the taps (zero-padded to size).
+	 */
+	private final double[] responseReal, responseImag;
+	/**
+	 * cos and sin of 2*pi*k/size, for k in [0, size/2).
+	 */
+	private final double[] cosTable, sinTable;
+	private final int[] bitReverse;
+	private final float offset;
+	/**
+	 * The real and imaginary parts of the window's transform and of the
+	 * product, each of length size.
+	 */
+	private final ThreadLocal<double[][]> scratch;
+	FrequencyLinearFilter(LinearRepresentation rep) {
+		this(rep, Integer.highestOneBit(2 * rep.peek() - 1) << 1);
+	}
+
+	private FrequencyLinearFilter(LinearRepresentation rep, int size) {
+		super(size - rep.peek() + 1, size - rep.peek() + 1, size);
+		checkArgument(rep.isFIR(), "not a FIR filter: %s", rep);
+		this.size = size;
+		this.block = size - rep.peek() + 1;
+		this.offset = (float)rep.offset(0);
+		this.scratch = new Scratch(size);
+
+		this.cosTable = new double[size/2];
+		this.sinTable = new double[size/2];
+		for (int k = 0; k < size/2; ++k) {
+			cosTable[k] = Math.cos(2 * Math.PI * k / size);
+			sinTable[k] = Math.sin(2 * Math.PI * k / size);
+		}
+		this.bitReverse = new int[size];
+		int bits = Integer.numberOfTrailingZeros(size);
+		for (int i = 0; i < size; ++i)
+			bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+
+		//The constructor isn't performance-critical, so use a plain DFT.
+		this.responseReal = new double[size];
+		this.responseImag = new double[size];
+		for (int f = 0; f < size; ++f)
+			for (int k = 0; k < rep.peek(); ++k) {
+				double tap = rep.coefficient(0, k), angle = 2 * Math.PI * (((long)f * k) % size) / size;
+				responseReal[f] += tap * Math.cos(angle);
+				responseImag[f] -= tap * Math.sin(angle);
+			}
+	}
+
+	@Override
+	public void work() {
+		//Output t is the (circular) correlation of the window with the taps,
+		//which doesn't wrap for t < block.  We compute it as the inverse
+		//transform of X * conj(H), as conj(FFT(conj(X) * H)) / size.
+		double[][] arrays = scratch.get();
+		double[] real = arrays[0], imag = arrays[1], productReal = arrays[2], productImag = arrays[3];
+		for (int i = 0; i < size; ++i) {
+			real[bitReverse[i]] = peek(i);
+			imag[i] = 0;
+		}
+		for (int pass = 0; pass < 2; ++pass) {
+			for (int half = 1; half < size; half <<= 1) {
+				int stride = size / (2 * half);
+				for (int start = 0; start < size; start += 2 * half)
+					for (int k = 0; k < half; ++k) {
+						int a = start + k, b = a + half;
+						double wr = cosTable[k * stride], wi = -sinTable[k * stride];
+						double tr = wr * real[b] - wi * imag[b], ti = wr * imag[b] + wi * real[b];
+						real[b] = real[a] - tr;
+						imag[b] = imag[a] - ti;
+						real[a] += tr;
+						imag[a] += ti;
+					}
+			}
+			if (pass == 0) {
+				for (int i = 0; i < size; ++i) {
+					int j = bitReverse[i];
+					productReal[j] = real[i] * responseReal[i] + imag[i] * responseImag[i];
+					productImag[j] = real[i] * responseImag[i] - imag[i] * responseReal[i];
+				}
+				real = productReal;
+				imag = productImag;
+			}
+		}
+		for (int t = 0; t < block; ++t)
+			push((float)(real[t] / size) + offset);
+		for (int t = 0; t < block; ++t)
+			pop();
+	}
+
+	/**
+	 * Allocates a thread's scratch arrays on first use.  (A class rather than
+	 * a lambda so the compiler's bytecode parsing of this class doesn't meet
+	 * invokedynamic.)
+	 */
+	private static final class Scratch extends ThreadLocal<double[][]> {
+		private final int size;
+		private Scratch(int size) {
+			this.size = size;
+		}
+		@Override
+		protected double[][] initialValue() {
+			return new double[4][size];
+		}
+	}
+}
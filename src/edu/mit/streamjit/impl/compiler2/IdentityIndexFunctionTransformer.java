@@ -22,6 +22,7 @@
 package edu.mit.streamjit.impl.compiler2;
 
 import com.google.common.base.Supplier;
+import java.io.Serializable;
 import java.lang.invoke.MethodHandle;
 import java.util.NavigableSet;
 
@@ -30,7 +31,8 @@ import java.util.NavigableSet;
  * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
  * @since 12/8/2013
  */
-public class IdentityIndexFunctionTransformer implements IndexFunctionTransformer {
+public class IdentityIndexFunctionTransformer implements IndexFunctionTransformer, Serializable {
+	private static final long serialVersionUID = 1L;
 	@Override
 	public MethodHandle transform(MethodHandle fxn, Supplier<? extends NavigableSet<Integer>> domain) {
 		return fxn;
@@ -24,7 +24,6 @@ package edu.mit.streamjit.impl.compiler2;
 
 import edu.mit.streamjit.util.bytecode.methodhandles.LookupUtils;
 import java.lang.invoke.MethodHandle;
-import java.util.Objects;
 import java.util.function.IntUnaryOperator;
 
 /**
@@ -40,13 +39,13 @@ public interface IndexFunction extends IntUnaryOperator {
 
 	@Override
 	public default IndexFunction compose(IntUnaryOperator before) {
-		return before instanceof IndexFunction ? new CompoundIndexFunction((IndexFunction)before, this)
+		return before instanceof IndexFunction ? PeriodicIndexFunction.chain((IndexFunction)before, this)
 				: new CompoundIndexFunction(before::applyAsInt, this);
     }
 
 	@Override
 	public default IndexFunction andThen(IntUnaryOperator after) {
-		return after instanceof IndexFunction ? new CompoundIndexFunction(this, (IndexFunction)after)
+		return after instanceof IndexFunction ? PeriodicIndexFunction.chain(this, (IndexFunction)after)
 				: new CompoundIndexFunction(this, after::applyAsInt);
     }
 
@@ -58,6 +57,15 @@ public interface IndexFunction extends IntUnaryOperator {
 	public static IndexFunction identity() {
 		return IdentityIndexFunction.INSTANCE;
 	}
+
+	/**
+	 * Returns the index function f(i) = i + addend.
+	 * @param addend the addend
+	 * @return an index function adding addend
+	 */
+	public static IndexFunction add(int addend) {
+		return addend == 0 ? identity() : PeriodicIndexFunction.affine(1, addend);
+	}
 }
 
 final class IdentityIndexFunction implements IndexFunction {
@@ -72,20 +80,3 @@ final class IdentityIndexFunction implements IndexFunction {
 		//do nothing
 	}
 }
-
-final class CompoundIndexFunction implements IndexFunction {
-	private final IndexFunction before, after;
-	CompoundIndexFunction(IndexFunction before, IndexFunction after) {
-		this.before = Objects.requireNonNull(before);
-		this.after = Objects.requireNonNull(after);
-	}
-	@Override
-	public int applyAsInt(int operand) {
-		return after.applyAsInt(before.applyAsInt(operand));
-	}
-	@Override
-	public void applyBulk(int[] bulk) {
-		before.applyBulk(bulk);
-		after.applyBulk(bulk);
-	}
-}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import com.google.common.collect.Iterables;
+import edu.mit.streamjit.api.OneToOneElement;
+import edu.mit.streamjit.api.Rate;
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.blob.Blob;
+import edu.mit.streamjit.impl.common.MessageConstraint;
+import edu.mit.streamjit.impl.common.StreamRuntime;
+import edu.mit.streamjit.impl.common.Workers;
+import edu.mit.streamjit.impl.concurrent.ConcurrentStreamCompiler;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compiles graphs containing dynamic-rate workers by cutting them into
+ * static-rate islands, each compiled by Compiler2, with the dynamic-rate
+ * workers interpreted between them.  Blobs are connected by bounded SPSC
+ * buffers; each island runs its own compiled steady state whenever its
+ * input buffers hold enough items.
+ * <p/>
+ * Islands are the connected components of maximal runs of static-rate (or
+ * dynamic-rate) workers in topological (identifier) order.  Every edge between
+ * blobs thus goes from an earlier run to a later one, so the blob graph is
+ * acyclic even when a dynamic-rate worker sits in one branch of a splitjoin.
+ * <p/>
+ * Islands are compiled with the options of the Compiler2StreamCompiler this
+ * compiler is made from: its configuration (see
+ * {@link Compiler2StreamCompiler#islandConfiguration(Set)}), multiplier, idle
+ * strategy, metrics and online tuning.  If it has a runtime, every blob is
+ * hosted on the runtime with a single core.
+ * @since 10/17/2026
+ */
+public final class IslandStreamCompiler extends ConcurrentStreamCompiler {
+	private final Compiler2StreamCompiler options;
+	private int coresPerIsland = 1;
+	/**
+	 * @param maxNumCores the total number of cores to divide among the
+	 * compiled islands
+	 */
+	public IslandStreamCompiler(int maxNumCores) {
+		this(new Compiler2StreamCompiler().maxNumCores(maxNumCores));
+	}
+
+	/**
+	 * @param options the compiler whose options the islands are compiled
+	 * with; its cores are divided among the compiled islands
+	 */
+	IslandStreamCompiler(Compiler2StreamCompiler options) {
+		super(1);
+		this.options = options;
+	}
+
+	/**
+	 * Returns true if any of the given worker's rates is dynamic.
+	 * @param worker a worker
+	 * @return true iff the worker has a dynamic rate
+	 */
+	public static boolean isDynamic(Worker<?, ?> worker) {
+		for (Rate r : Iterables.concat(worker.getPeekRates(), worker.getPopRates(), worker.getPushRates()))
+			if (!r.isFixed())
+				return true;
+		return false;
+	}
+
+	@Override
+	protected <I, O> List<Set<Worker<?, ?>>> partition(OneToOneElement<I, O> stream, Worker<I, ?> source, Worker<?, O> sink) {
+		List<Worker<?, ?>> workers = new ArrayList<>(Workers.getAllWorkersInGraph(source));
+		workers.sort(Comparator.comparingInt(Workers::getIdentifier));
+
+		List<Set<Worker<?, ?>>> partitions = new ArrayList<>();
+		int staticIslands = 0;
+		for (int start = 0; start < workers.size();) {
+			boolean dynamic = isDynamic(workers.get(start));
+			int end = start + 1;
+			while (end < workers.size() && isDynamic(workers.get(end)) == dynamic)
+				++end;
+			List<Set<Worker<?, ?>>> components = components(new HashSet<>(workers.subList(start, end)));
+			partitions.addAll(components);
+			if (!dynamic)
+				staticIslands += components.size();
+			start = end;
+		}
+		this.coresPerIsland = Math.max(1, options.getMaxNumCores() / Math.max(1, staticIslands));
+		return partitions;
+	}
+
+	@Override
+	protected Blob makeBlob(Set<Worker<?, ?>> partition, List<MessageConstraint> constraints) {
+		if (isDynamic(partition.iterator().next()))
+			return super.makeBlob(partition, constraints);
+		return options.makeIslandBlob(partition, coresPerIsland);
+	}
+
+	@Override
+	protected StreamRuntime getRuntime() {
+		return options.islandRuntime();
+	}
+
+	@Override
+	protected int getMinimumBufferCapacity() {
+		return Math.max(super.getMinimumBufferCapacity(), options.islandBufferCapacity());
+	}
+
+	@Override
+	public String toString() {
+		return String.format("IslandStreamCompiler (%d cores)", options.getMaxNumCores());
+	}
+}
@@ -0,0 +1,832 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import edu.mit.streamjit.api.Filter;
+import edu.mit.streamjit.api.Rate;
+import edu.mit.streamjit.util.ReflectionUtils;
+import edu.mit.streamjit.util.bytecode.MethodNodeBuilder;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+/**
+ * Determines whether a filter is linear by symbolically executing one firing
+ * of its work method's bytecode, and if so, extracts its matrix and offsets.
+ *
+ * Peeked and popped items are symbolic; everything else (including control
+ * flow) must be concrete, so we read the filter instance's final fields and
+ * the arrays they refer to.  Arithmetic on symbolic values must be linear:
+ * addition, subtraction, negation, and multiplication or division by a
+ * concrete value.  Anything else (branching on an item, storing to a field or
+ * field array, calling methods other than peek/pop/push, boxing and Math
+ * methods on concrete arguments) makes the filter nonlinear.  Because the
+ * fields are final and control flow doesn't depend on the items, every firing
+ * takes the same path, so one firing describes them all.
+ *
+ * We only accept filters whose items are Floats, as that's what
+ * {@link LinearFilter} handles.
+ *
+ * We walk the ASM tree of the filter class's own work(), not the
+ * ActorArchetype's IR: by the time an archetype exists its work method has
+ * been rewritten to read from storage and a state holder, which hides the
+ * peek/pop/push calls and final field values this analysis depends on.
+ * @since 10/17/2026
+ */
+public final class LinearAnalyzer {
+	/**
+	 * The maximum number of instructions to interpret before giving up.
+	 */
+	private static final int MAX_INSTRUCTIONS = 1 << 20;
+	/**
+	 * Markers for the receiver, null, and the second slot of long and double
+	 * values.
+	 */
+	private static final Object THIS = new Object(), NULL = new Object(), TOP = new Object();
+	private final Filter<?, ?> filter;
+	private final MethodNode method;
+	private final int peek, pop, push;
+	private final Deque<Object> stack = new ArrayDeque<>();
+	private final Object[] locals;
+	private final List<Form> outputs = new ArrayList<>();
+	private int popped = 0;
+	private LinearAnalyzer(Filter<?, ?> filter, MethodNode method, int peek, int pop, int push) {
+		this.filter = filter;
+		this.method = method;
+		this.peek = peek;
+		this.pop = pop;
+		this.push = push;
+		this.locals = new Object[Math.max(method.maxLocals, 1)];
+		Arrays.fill(locals, TOP);
+		locals[0] = THIS;
+	}
+
+	/**
+	 * Returns the linear representation of the given filter, or null if the
+	 * filter isn't (provably) linear.
+	 * @param filter the filter to analyze
+	 * @return the filter's linear representation, or null
+	 */
+	public static LinearRepresentation analyze(Filter<?, ?> filter) {
+		Rate peekRate = filter.getPeekRates().get(0), popRate = filter.getPopRates().get(0), pushRate = filter.getPushRates().get(0);
+		if (!peekRate.isFixed() || !popRate.isFixed() || !pushRate.isFixed())
+			return null;
+		MethodNode mn;
+		try {
+			mn = MethodNodeBuilder.buildMethodNode(filter.getClass(), "work", "()V");
+		} catch (IOException | NoSuchMethodException ex) {
+			//e.g., work() is inherited, or we can't find the class file.
+			return null;
+		}
+		int pop = popRate.max(), peek = Math.max(peekRate.max(), pop);
+		try {
+			return new LinearAnalyzer(filter, mn, peek, pop, pushRate.max()).run();
+		} catch (NotLinearException | ArithmeticException | IndexOutOfBoundsException | NegativeArraySizeException ex) {
+			return null;
+		}
+	}
+
+	private LinearRepresentation run() {
+		AbstractInsnNode insn = method.instructions.getFirst();
+		for (int executed = 0; insn != null; ++executed) {
+			if (executed > MAX_INSTRUCTIONS)
+				throw new NotLinearException("too many instructions");
+			insn = execute(insn);
+		}
+		if (popped != pop || outputs.size() != push)
+			throw new NotLinearException(String.format("popped %d pushed %d", popped, outputs.size()));
+		double[][] matrix = new double[push][];
+		double[] offsets = new double[push];
+		for (int j = 0; j < push; ++j) {
+			matrix[j] = outputs.get(j).coefficients;
+			offsets[j] = outputs.get(j).constant;
+		}
+		return new LinearRepresentation(peek, pop, matrix, offsets);
+	}
+
+	/**
+	 * Executes the given instruction, returning the next instruction to
+	 * execute, or null if the method returned.
+	 */
+	private AbstractInsnNode execute(AbstractInsnNode insn) {
+		int op = insn.getOpcode();
+		if (op == -1) //labels, line numbers and frames
+			return insn.getNext();
+		if (op >= Opcodes.IADD && op <= Opcodes.DNEG) {
+			arithmetic(op);
+			return insn.getNext();
+		}
+		if (op >= Opcodes.ISHL && op <= Opcodes.LXOR) {
+			bitwise(op);
+			return insn.getNext();
+		}
+		if (op >= Opcodes.I2L && op <= Opcodes.I2S) {
+			convert(op);
+			return insn.getNext();
+		}
+		if (op >= Opcodes.IALOAD && op <= Opcodes.SALOAD) {
+			int index = intValue(pop(false));
+			Object array = pop(false);
+			Object value;
+			if (array instanceof LocalArray)
+				value = ((LocalArray)array).elements[index];
+			else if (array != NULL && array.getClass().isArray())
+				value = normalize(Array.get(array, index));
+			else
+				throw new NotLinearException("array load from "+array);
+			push(value, op == Opcodes.LALOAD || op == Opcodes.DALOAD);
+			return insn.getNext();
+		}
+		if (op >= Opcodes.IASTORE && op <= Opcodes.SASTORE) {
+			Object value = pop(op == Opcodes.LASTORE || op == Opcodes.DASTORE);
+			int index = intValue(pop(false));
+			Object array = pop(false);
+			//Storing to arrays reachable from fields would be state.
+			if (!(array instanceof LocalArray))
+				throw new NotLinearException("array store to "+array);
+			if (op == Opcodes.BASTORE)
+				value = (int)(byte)intValue(value);
+			else if (op == Opcodes.CASTORE)
+				value = (int)(char)intValue(value);
+			else if (op == Opcodes.SASTORE)
+				value = (int)(short)intValue(value);
+			((LocalArray)array).elements[index] = value;
+			return insn.getNext();
+		}
+		if (op >= Opcodes.IFEQ && op <= Opcodes.IF_ACMPNE || op == Opcodes.IFNULL || op == Opcodes.IFNONNULL)
+			return branch((JumpInsnNode)insn) ? ((JumpInsnNode)insn).label : insn.getNext();
+
+		switch (op) {
+			case Opcodes.NOP:
+				break;
+			case Opcodes.ACONST_NULL:
+				push(NULL, false);
+				break;
+			case Opcodes.ICONST_M1:
+			case Opcodes.ICONST_0:
+			case Opcodes.ICONST_1:
+			case Opcodes.ICONST_2:
+			case Opcodes.ICONST_3:
+			case Opcodes.ICONST_4:
+			case Opcodes.ICONST_5:
+				push(op - Opcodes.ICONST_0, false);
+				break;
+			case Opcodes.LCONST_0:
+			case Opcodes.LCONST_1:
+				push((long)(op - Opcodes.LCONST_0), true);
+				break;
+			case Opcodes.FCONST_0:
+			case Opcodes.FCONST_1:
+			case Opcodes.FCONST_2:
+				push((float)(op - Opcodes.FCONST_0), false);
+				break;
+			case Opcodes.DCONST_0:
+			case Opcodes.DCONST_1:
+				push((double)(op - Opcodes.DCONST_0), true);
+				break;
+			case Opcodes.BIPUSH:
+			case Opcodes.SIPUSH:
+				push(((IntInsnNode)insn).operand, false);
+				break;
+			case Opcodes.LDC:
+				Object constant = ((LdcInsnNode)insn).cst;
+				push(constant, constant instanceof Long || constant instanceof Double);
+				break;
+			case Opcodes.ILOAD:
+			case Opcodes.FLOAD:
+			case Opcodes.ALOAD:
+				push(locals[((VarInsnNode)insn).var], false);
+				break;
+			case Opcodes.LLOAD:
+			case Opcodes.DLOAD:
+				push(locals[((VarInsnNode)insn).var], true);
+				break;
+			case Opcodes.ISTORE:
+			case Opcodes.FSTORE:
+			case Opcodes.ASTORE:
+				locals[((VarInsnNode)insn).var] = pop(false);
+				break;
+			case Opcodes.LSTORE:
+			case Opcodes.DSTORE:
+				locals[((VarInsnNode)insn).var] = pop(true);
+				locals[((VarInsnNode)insn).var + 1] = TOP;
+				break;
+			case Opcodes.IINC:
+				IincInsnNode iinc = (IincInsnNode)insn;
+				locals[iinc.var] = intValue(locals[iinc.var]) + iinc.incr;
+				break;
+			case Opcodes.POP:
+				stack.pop();
+				break;
+			case Opcodes.POP2:
+				stack.pop();
+				stack.pop();
+				break;
+			case Opcodes.DUP:
+				stack.push(stack.peek());
+				break;
+			case Opcodes.DUP_X1:
+				dupX(1, 1);
+				break;
+			case Opcodes.DUP_X2:
+				dupX(1, 2);
+				break;
+			case Opcodes.DUP2:
+				dupX(2, 0);
+				break;
+			case Opcodes.DUP2_X1:
+				dupX(2, 1);
+				break;
+			case Opcodes.DUP2_X2:
+				dupX(2, 2);
+				break;
+			case Opcodes.SWAP:
+				Object first = stack.pop(), second = stack.pop();
+				stack.push(first);
+				stack.push(second);
+				break;
+			case Opcodes.LCMP:
+				long lb = longValue(pop(true)), la = longValue(pop(true));
+				push(Long.compare(la, lb), false);
+				break;
+			case Opcodes.FCMPL:
+			case Opcodes.FCMPG:
+			case Opcodes.DCMPL:
+			case Opcodes.DCMPG:
+				boolean wide = op == Opcodes.DCMPL || op == Opcodes.DCMPG;
+				double b = concrete(pop(wide)).doubleValue(), a = concrete(pop(wide)).doubleValue();
+				if (Double.isNaN(a) || Double.isNaN(b))
+					push(op == Opcodes.FCMPG || op == Opcodes.DCMPG ? 1 : -1, false);
+				else
+					push(Double.compare(a == 0 ? 0.0 : a, b == 0 ? 0.0 : b), false);
+				break;
+			case Opcodes.GOTO:
+				return ((JumpInsnNode)insn).label;
+			case Opcodes.TABLESWITCH:
+				TableSwitchInsnNode table = (TableSwitchInsnNode)insn;
+				int tableKey = intValue(pop(false));
+				if (tableKey < table.min || tableKey > table.max)
+					return table.dflt;
+				return table.labels.get(tableKey - table.min);
+			case Opcodes.LOOKUPSWITCH:
+				LookupSwitchInsnNode lookup = (LookupSwitchInsnNode)insn;
+				int lookupIndex = lookup.keys.indexOf(intValue(pop(false)));
+				return lookupIndex == -1 ? lookup.dflt : lookup.labels.get(lookupIndex);
+			case Opcodes.RETURN:
+				return null;
+			case Opcodes.GETSTATIC:
+			case Opcodes.GETFIELD:
+				getField((FieldInsnNode)insn);
+				break;
+			case Opcodes.INVOKEVIRTUAL:
+			case Opcodes.INVOKESPECIAL:
+			case Opcodes.INVOKESTATIC:
+			case Opcodes.INVOKEINTERFACE:
+				invoke((MethodInsnNode)insn);
+				break;
+			case Opcodes.NEWARRAY:
+				push(new LocalArray(intValue(pop(false)), ((IntInsnNode)insn).operand), false);
+				break;
+			case Opcodes.ANEWARRAY:
+				push(new LocalArray(intValue(pop(false)), -1), false);
+				break;
+			case Opcodes.ARRAYLENGTH:
+				Object array = pop(false);
+				if (array instanceof LocalArray)
+					push(((LocalArray)array).elements.length, false);
+				else if (array != NULL && array.getClass().isArray())
+					push(Array.getLength(array), false);
+				else
+					throw new NotLinearException("arraylength of "+array);
+				break;
+			case Opcodes.CHECKCAST:
+				checkcast((TypeInsnNode)insn);
+				break;
+			default:
+				//PUTFIELD, PUTSTATIC, NEW, INVOKEDYNAMIC, INSTANCEOF, ATHROW,
+				//monitors, JSR/RET, xRETURN, MULTIANEWARRAY
+				throw new NotLinearException("unsupported opcode "+op);
+		}
+		return insn.getNext();
+	}
+
+	private void arithmetic(int op) {
+		//IADD, LADD, FADD, DADD, ISUB, ... INEG, LNEG, FNEG, DNEG
+		int kind = (op - Opcodes.IADD) % 4, base = op - kind;
+		boolean wide = kind == 1 || kind == 3;
+		if (base == Opcodes.INEG) {
+			Object value = pop(wide);
+			push(value instanceof Form ? ((Form)value).scale(-1) : compute(Opcodes.IMUL, kind, -1, concrete(value)), wide);
+			return;
+		}
+		Object b = pop(wide), a = pop(wide);
+		if (!(a instanceof Form) && !(b instanceof Form)) {
+			push(compute(base, kind, concrete(a), concrete(b)), wide);
+			return;
+		}
+		//Only floating-point values can be symbolic.
+		assert kind >= 2 : op;
+		Form result;
+		if (base == Opcodes.IADD)
+			result = form(a).add(form(b), 1);
+		else if (base == Opcodes.ISUB)
+			result = form(a).add(form(b), -1);
+		else if (base == Opcodes.IMUL && !(a instanceof Form))
+			result = ((Form)b).scale(concrete(a).doubleValue());
+		else if (base == Opcodes.IMUL && !(b instanceof Form))
+			result = ((Form)a).scale(concrete(b).doubleValue());
+		else if (base == Opcodes.IDIV && !(b instanceof Form))
+			result = ((Form)a).scale(1 / concrete(b).doubleValue());
+		else
+			throw new NotLinearException("nonlinear arithmetic "+op);
+		push(result, wide);
+	}
+
+	/**
+	 * Computes a concrete arithmetic result in the given kind (int, long,
+	 * float, double).
+	 */
+	private static Number compute(int base, int kind, Number a, Number b) {
+		switch (kind) {
+			case 0:
+				int ia = a.intValue(), ib = b.intValue();
+				switch (base) {
+					case Opcodes.IADD: return ia + ib;
+					case Opcodes.ISUB: return ia - ib;
+					case Opcodes.IMUL: return ia * ib;
+					case Opcodes.IDIV: return ia / ib;
+					case Opcodes.IREM: return ia % ib;
+				}
+				break;
+			case 1:
+				long la = a.longValue(), lb = b.longValue();
+				switch (base) {
+					case Opcodes.IADD: return la + lb;
+					case Opcodes.ISUB: return la - lb;
+					case Opcodes.IMUL: return la * lb;
+					case Opcodes.IDIV: return la / lb;
+					case Opcodes.IREM: return la % lb;
+				}
+				break;
+			case 2:
+				float fa = a.floatValue(), fb = b.floatValue();
+				switch (base) {
+					case Opcodes.IADD: return fa + fb;
+					case Opcodes.ISUB: return fa - fb;
+					case Opcodes.IMUL: return fa * fb;
+					case Opcodes.IDIV: return fa / fb;
+					case Opcodes.IREM: return fa % fb;
+				}
+				break;
+			case 3:
+				double da = a.doubleValue(), db = b.doubleValue();
+				switch (base) {
+					case Opcodes.IADD: return da + db;
+					case Opcodes.ISUB: return da - db;
+					case Opcodes.IMUL: return da * db;
+					case Opcodes.IDIV: return da / db;
+					case Opcodes.IREM: return da % db;
+				}
+				break;
+		}
+		throw new AssertionError(base + " " + kind);
+	}
+
+	private void bitwise(int op) {
+		//ISHL, LSHL, ISHR, LSHR, IUSHR, LUSHR, IAND, LAND, IOR, LOR, IXOR, LXOR
+		boolean wide = (op - Opcodes.ISHL) % 2 == 1;
+		int base = wide ? op - 1 : op;
+		//long shifts take an int shift distance
+		boolean shift = base <= Opcodes.IUSHR;
+		long b = concrete(pop(wide && !shift)).longValue(), a = concrete(pop(wide)).longValue();
+		long result;
+		switch (base) {
+			case Opcodes.ISHL:
+				result = wide ? a << b : (int)a << b;
+				break;
+			case Opcodes.ISHR:
+				result = wide ? a >> b : (int)a >> b;
+				break;
+			case Opcodes.IUSHR:
+				result = wide ? a >>> b : (int)a >>> b;
+				break;
+			case Opcodes.IAND:
+				result = a & b;
+				break;
+			case Opcodes.IOR:
+				result = a | b;
+				break;
+			case Opcodes.IXOR:
+				result = a ^ b;
+				break;
+			default:
+				throw new AssertionError(op);
+		}
+		push(wide ? (Object)result : (Object)(int)result, wide);
+	}
+
+	private void convert(int op) {
+		//I2L, I2F, I2D, L2I, L2F, L2D, F2I, F2L, F2D, D2I, D2L, D2F, I2B, I2C, I2S
+		boolean fromWide = op >= Opcodes.L2I && op <= Opcodes.L2D || op >= Opcodes.D2I && op <= Opcodes.D2F;
+		boolean toWide = op == Opcodes.I2L || op == Opcodes.I2D || op == Opcodes.L2D
+				|| op == Opcodes.F2L || op == Opcodes.F2D || op == Opcodes.D2L;
+		Object value = pop(fromWide);
+		if (value instanceof Form) {
+			//We represent floats and doubles the same way.
+			if (op != Opcodes.F2D && op != Opcodes.D2F)
+				throw new NotLinearException("nonlinear conversion "+op);
+			push(value, toWide);
+			return;
+		}
+		Number n = concrete(value);
+		Object result;
+		switch (op) {
+			case Opcodes.I2L: case Opcodes.F2L: case Opcodes.D2L:
+				result = n.longValue();
+				break;
+			case Opcodes.I2F: case Opcodes.L2F: case Opcodes.D2F:
+				result = n.floatValue();
+				break;
+			case Opcodes.I2D: case Opcodes.L2D: case Opcodes.F2D:
+				result = n.doubleValue();
+				break;
+			case Opcodes.L2I: case Opcodes.F2I: case Opcodes.D2I:
+				result = n.intValue();
+				break;
+			case Opcodes.I2B:
+				result = (int)n.byteValue();
+				break;
+			case Opcodes.I2C:
+				result = (int)(char)n.intValue();
+				break;
+			case Opcodes.I2S:
+				result = (int)n.shortValue();
+				break;
+			default:
+				throw new AssertionError(op);
+		}
+		push(result, toWide);
+	}
+
+	private boolean branch(JumpInsnNode insn) {
+		int op = insn.getOpcode();
+		if (op == Opcodes.IFNULL || op == Opcodes.IFNONNULL) {
+			Object value = pop(false);
+			if (value instanceof Form)
+				throw new NotLinearException("branch on item");
+			return (value == NULL) == (op == Opcodes.IFNULL);
+		}
+		if (op == Opcodes.IF_ACMPEQ || op == Opcodes.IF_ACMPNE) {
+			Object b = pop(false), a = pop(false);
+			if (a instanceof Form || b instanceof Form || a instanceof Box || b instanceof Box)
+				throw new NotLinearException("branch on item");
+			return (a == b) == (op == Opcodes.IF_ACMPEQ);
+		}
+		int b = op >= Opcodes.IF_ICMPEQ ? intValue(pop(false)) : 0, a = intValue(pop(false));
+		switch (op) {
+			case Opcodes.IFEQ: case Opcodes.IF_ICMPEQ: return a == b;
+			case Opcodes.IFNE: case Opcodes.IF_ICMPNE: return a != b;
+			case Opcodes.IFLT: case Opcodes.IF_ICMPLT: return a < b;
+			case Opcodes.IFGE: case Opcodes.IF_ICMPGE: return a >= b;
+			case Opcodes.IFGT: case Opcodes.IF_ICMPGT: return a > b;
+			case Opcodes.IFLE: case Opcodes.IF_ICMPLE: return a <= b;
+			default: throw new AssertionError(op);
+		}
+	}
+
+	private void getField(FieldInsnNode insn) {
+		Object receiver = insn.getOpcode() == Opcodes.GETSTATIC ? null : pop(false);
+		if (receiver == THIS)
+			receiver = filter;
+		else if (receiver instanceof Form || receiver instanceof Box || receiver instanceof LocalArray || receiver == NULL)
+			throw new NotLinearException("getfield on "+receiver);
+		Field field;
+		try {
+			Class<?> owner = Class.forName(Type.getObjectType(insn.owner).getClassName(), false, filter.getClass().getClassLoader());
+			field = ReflectionUtils.getFieldByName(owner, insn.name);
+		} catch (ClassNotFoundException ex) {
+			throw new NotLinearException(ex.toString());
+		}
+		//Non-final fields are state (or at least might be).
+		if (field == null || !Modifier.isFinal(field.getModifiers()))
+			throw new NotLinearException("non-final field "+insn.name);
+		try {
+			field.setAccessible(true);
+			push(normalize(field.get(receiver)), Type.getType(insn.desc).getSize() == 2);
+		} catch (IllegalAccessException | RuntimeException ex) {
+			throw new NotLinearException(ex.toString());
+		}
+	}
+
+	private void invoke(MethodInsnNode insn) {
+		Type[] argTypes = Type.getArgumentTypes(insn.desc);
+		Type returnType = Type.getReturnType(insn.desc);
+		Object[] args = new Object[argTypes.length];
+		for (int i = args.length - 1; i >= 0; --i)
+			args[i] = pop(argTypes[i].getSize() == 2);
+		Object receiver = insn.getOpcode() == Opcodes.INVOKESTATIC ? null : pop(false);
+
+		Object result;
+		if (receiver == THIS)
+			result = invokeFilter(insn, args);
+		else if (insn.name.equals("valueOf") && (insn.owner.equals("java/lang/Float") || insn.owner.equals("java/lang/Double"))
+				&& args.length == 1 && args[0] instanceof Form)
+			result = new Box((Form)args[0], insn.owner.equals("java/lang/Float") ? Float.class : Double.class);
+		else if (receiver instanceof Box && (insn.name.equals("floatValue") || insn.name.equals("doubleValue"))) {
+			//We only accept Float items, but the checkcast is the check.
+			Box box = (Box)receiver;
+			if (box.type == null)
+				throw new NotLinearException("unboxing unchecked item");
+			result = box.form;
+		} else if (receiver instanceof Number && insn.name.endsWith("Value") && args.length == 0)
+			//intValue, floatValue, etc. on a concrete box
+			result = Conversions.cast(returnType, (Number)receiver);
+		else if (insn.getOpcode() == Opcodes.INVOKESTATIC && insn.name.equals("valueOf") && insn.owner.startsWith("java/lang/")
+				&& args.length == 1 && args[0] instanceof Number)
+			//boxing a concrete value; we don't distinguish boxes
+			result = args[0];
+		else if (insn.getOpcode() == Opcodes.INVOKESTATIC && (insn.owner.equals("java/lang/Math") || insn.owner.equals("java/lang/StrictMath")))
+			result = invokeMath(insn, argTypes, args);
+		else
+			throw new NotLinearException("call to "+insn.owner+"."+insn.name+insn.desc);
+
+		if (returnType.getSort() != Type.VOID)
+			push(result, returnType.getSize() == 2);
+	}
+
+	private Object invokeFilter(MethodInsnNode insn, Object[] args) {
+		if (insn.name.equals("peek") && insn.desc.equals("(I)Ljava/lang/Object;")) {
+			int index = intValue(args[0]);
+			if (index < 0)
+				throw new NotLinearException("negative peek index "+index);
+			return new Box(input(popped + index), null);
+		} else if (insn.name.equals("pop") && insn.desc.equals("()Ljava/lang/Object;")) {
+			return new Box(input(popped++), null);
+		} else if (insn.name.equals("push") && insn.desc.equals("(Ljava/lang/Object;)V")) {
+			Object item = args[0];
+			if (item instanceof Box && ((Box)item).type == Float.class)
+				outputs.add(((Box)item).form);
+			else if (item instanceof Float)
+				outputs.add(new Form(new double[peek], (Float)item));
+			else
+				throw new NotLinearException("pushing non-Float "+item);
+			if (outputs.size() > push)
+				throw new NotLinearException("pushed too many items");
+			return null;
+		}
+		throw new NotLinearException("call to "+insn.name+insn.desc);
+	}
+
+	private static Object invokeMath(MethodInsnNode insn, Type[] argTypes, Object[] args) {
+		Class<?>[] paramTypes = new Class<?>[argTypes.length];
+		for (int i = 0; i < args.length; ++i) {
+			if (!(args[i] instanceof Number))
+				throw new NotLinearException("nonlinear call to "+insn.owner+"."+insn.name);
+			paramTypes[i] = Conversions.of(argTypes[i]);
+			args[i] = Conversions.cast(argTypes[i], (Number)args[i]);
+		}
+		try {
+			Method m = (insn.owner.equals("java/lang/Math") ? Math.class : StrictMath.class).getMethod(insn.name, paramTypes);
+			return m.invoke(null, args);
+		} catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ex) {
+			throw new NotLinearException(ex.toString());
+		}
+	}
+
+	private void checkcast(TypeInsnNode insn) {
+		Object value = stack.peek();
+		if (!(value instanceof Box))
+			return; //concrete values were already checked by the JVM
+		Box box = (Box)value;
+		if (insn.desc.equals("java/lang/Number") || insn.desc.equals("java/lang/Object"))
+			return;
+		if (!insn.desc.equals("java/lang/Float"))
+			throw new NotLinearException("item cast to "+insn.desc);
+		stack.pop();
+		stack.push(new Box(box.form, Float.class));
+	}
+
+	/**
+	 * Duplicates the top count stack slots, inserting them below the next
+	 * depth slots.
+	 */
+	private void dupX(int count, int depth) {
+		Object[] top = new Object[count], below = new Object[depth];
+		for (int i = 0; i < count; ++i)
+			top[i] = stack.pop();
+		for (int i = 0; i < depth; ++i)
+			below[i] = stack.pop();
+		for (int i = count - 1; i >= 0; --i)
+			stack.push(top[i]);
+		for (int i = depth - 1; i >= 0; --i)
+			stack.push(below[i]);
+		for (int i = count - 1; i >= 0; --i)
+			stack.push(top[i]);
+	}
+
+	private Form input(int position) {
+		if (position >= peek)
+			throw new NotLinearException("peeked past declared rate: "+position);
+		double[] coefficients = new double[peek];
+		coefficients[position] = 1;
+		return new Form(coefficients, 0);
+	}
+
+	private Form form(Object value) {
+		if (value instanceof Form)
+			return (Form)value;
+		return new Form(new double[peek], concrete(value).doubleValue());
+	}
+
+	private void push(Object value, boolean wide) {
+		stack.push(value);
+		if (wide)
+			stack.push(TOP);
+	}
+
+	private Object pop(boolean wide) {
+		if (wide && stack.pop() != TOP)
+			throw new AssertionError("misaligned wide value");
+		return stack.pop();
+	}
+
+	private static Number concrete(Object value) {
+		if (value instanceof Number)
+			return (Number)value;
+		throw new NotLinearException("not a concrete number: "+value);
+	}
+
+	private static int intValue(Object value) {
+		if (value instanceof Integer)
+			return (Integer)value;
+		throw new NotLinearException("not a concrete int: "+value);
+	}
+
+	private static long longValue(Object value) {
+		if (value instanceof Long)
+			return (Long)value;
+		throw new NotLinearException("not a concrete long: "+value);
+	}
+
+	/**
+	 * Converts values read from fields or arrays to their stack
+	 * representations.
+	 */
+	private static Object normalize(Object value) {
+		if (value == null)
+			return NULL;
+		if (value instanceof Boolean)
+			return (Boolean)value ? 1 : 0;
+		if (value instanceof Character)
+			return (int)(Character)value;
+		if (value instanceof Byte || value instanceof Short)
+			return ((Number)value).intValue();
+		return value;
+	}
+
+	/**
+	 * A linear combination of the input window plus a constant.
+	 */
+	private static final class Form {
+		private final double[] coefficients;
+		private final double constant;
+		private Form(double[] coefficients, double constant) {
+			this.coefficients = coefficients;
+			this.constant = constant;
+		}
+		private Form add(Form other, double otherScale) {
+			double[] result = coefficients.clone();
+			for (int i = 0; i < result.length; ++i)
+				result[i] += otherScale * other.coefficients[i];
+			return new Form(result, constant + otherScale * other.constant);
+		}
+		private Form scale(double scale) {
+			double[] result = coefficients.clone();
+			for (int i = 0; i < result.length; ++i)
+				result[i] *= scale;
+			return new Form(result, constant * scale);
+		}
+	}
+
+	/**
+	 * A boxed symbolic item, with the type it was cast to (or null if not yet
+	 * cast).
+	 */
+	private static final class Box {
+		private final Form form;
+		private final Class<?> type;
+		private Box(Form form, Class<?> type) {
+			this.form = form;
+			this.type = type;
+		}
+	}
+
+	/**
+	 * An array allocated during the firing, which may hold symbolic values.
+	 */
+	private static final class LocalArray {
+		private final Object[] elements;
+		/**
+		 * @param length the array length
+		 * @param type a NEWARRAY type operand, or -1 for reference arrays
+		 */
+		private LocalArray(int length, int type) {
+			this.elements = new Object[length];
+			Object zero;
+			switch (type) {
+				case Opcodes.T_LONG:
+					zero = 0L;
+					break;
+				case Opcodes.T_FLOAT:
+					zero = 0f;
+					break;
+				case Opcodes.T_DOUBLE:
+					zero = 0d;
+					break;
+				case -1:
+					zero = NULL;
+					break;
+				default:
+					zero = 0;
+			}
+			Arrays.fill(elements, zero);
+		}
+	}
+
+	/**
+	 * Conversions between concrete Numbers and primitive Types.
+	 */
+	private static final class Conversions {
+		private Conversions() {}
+		private static Class<?> of(Type type) {
+			switch (type.getSort()) {
+				case Type.LONG: return long.class;
+				case Type.FLOAT: return float.class;
+				case Type.DOUBLE: return double.class;
+				case Type.INT: return int.class;
+				default: throw new NotLinearException("unsupported type "+type);
+			}
+		}
+		private static Number cast(Type type, Number value) {
+			switch (type.getSort()) {
+				case Type.LONG: return value.longValue();
+				case Type.FLOAT: return value.floatValue();
+				case Type.DOUBLE: return value.doubleValue();
+				case Type.INT: case Type.SHORT: case Type.BYTE: case Type.CHAR: case Type.BOOLEAN:
+					return value.intValue();
+				default: throw new NotLinearException("unsupported type "+type);
+			}
+		}
+	}
+
+	/**
+	 * Thrown when we find the filter isn't linear (or we can't prove it is).
+	 */
+	private static final class NotLinearException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		private NotLinearException(String message) {
+			super(message, null, false, false);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import edu.mit.streamjit.api.Filter;
+
+/**
+ * A filter computing a linear representation directly, replacing one or more
+ * linear workers combined by Compiler2.  Only the nonzero coefficients are
+ * stored (in compressed sparse row form), as combined representations tend to
+ * be banded.
+ *
+ * This class is public so compiled archetype code can use it like any other
+ * worker class, but it's only instantiated by the compiler.
+ * @since 10/17/2026
+ */
+public final class LinearFilter extends Filter<Float, Float> {
+	/**
+	 * The nonzero coefficients of output row j are at indices rowStart[j]
+	 * (inclusive) through rowStart[j+1] (exclusive) of columns and
+	 * coefficients.
+	 */
+	private final int[] rowStart, columns;
+	private final float[] coefficients, offsets;
+	private final int pops;
+	LinearFilter(LinearRepresentation rep) {
+		super(rep.pop(), rep.push(), rep.peek());
+		this.pops = rep.pop();
+		this.rowStart = new int[rep.push() + 1];
+		this.offsets = new float[rep.push()];
+		int nonzeros = 0;
+		for (int j = 0; j < rep.push(); ++j)
+			for (int i = 0; i < rep.peek(); ++i)
+				if (rep.coefficient(j, i) != 0)
+					++nonzeros;
+		this.columns = new int[nonzeros];
+		this.coefficients = new float[nonzeros];
+		int k = 0;
+		for (int j = 0; j < rep.push(); ++j) {
+			rowStart[j] = k;
+			for (int i = 0; i < rep.peek(); ++i)
+				if (rep.coefficient(j, i) != 0) {
+					columns[k] = i;
+					coefficients[k] = (float)rep.coefficient(j, i);
+					++k;
+				}
+			offsets[j] = (float)rep.offset(j);
+		}
+		rowStart[rep.push()] = k;
+	}
+
+	@Override
+	public void work() {
+		for (int j = 0; j < offsets.length; ++j) {
+			float sum = offsets[j];
+			for (int k = rowStart[j]; k < rowStart[j+1]; ++k)
+				sum += coefficients[k] * peek(columns[k]);
+			push(sum);
+		}
+		for (int i = 0; i < pops; ++i)
+			pop();
+	}
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import com.google.common.math.IntMath;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The linear representation of a filter: each firing peeks at a window of
+ * {@code peek} items, pops {@code pop} of them and pushes {@code push} items,
+ * where output item j is the dot product of row j of the matrix with the
+ * window, plus offset j.  (This is the transpose of StreamIt's convention, but
+ * it's the natural one for the bytecode analysis.)
+ *
+ * The peek rate here is always at least the pop rate, even if the filter
+ * declared a smaller peek rate.
+ *
+ * Instances are immutable; the combining methods return null rather than
+ * build a representation with more than {@link #MAX_ENTRIES} matrix entries.
+ * @since 10/17/2026
+ */
+public final class LinearRepresentation {
+	/**
+	 * The maximum number of (dense) matrix entries in a representation.
+	 */
+	private static final int MAX_ENTRIES = 1 << 20;
+	private final int peek, pop, push;
+	/**
+	 * matrix[j][i] is the coefficient of peek(i) in output item j.
+	 */
+	private final double[][] matrix;
+	private final double[] offsets;
+	LinearRepresentation(int peek, int pop, double[][] matrix, double[] offsets) {
+		checkArgument(peek >= pop && pop >= 0, "peek %s pop %s", peek, pop);
+		checkArgument(matrix.length == offsets.length, "%s rows but %s offsets", matrix.length, offsets.length);
+		for (double[] row : matrix)
+			checkArgument(row.length == peek, "row length %s, peek %s", row.length, peek);
+		this.peek = peek;
+		this.pop = pop;
+		this.push = matrix.length;
+		this.matrix = matrix;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * Returns the representation of the given output of a roundrobin splitter
+	 * with the given weights, which pops one round of items and pushes the
+	 * items in the given output's portion of the round.
+	 * @param weights the splitter's weights
+	 * @param output the output index
+	 * @return a representation selecting one output's items
+	 */
+	static LinearRepresentation roundrobinOutput(int[] weights, int output) {
+		int round = 0, start = 0;
+		for (int i = 0; i < weights.length; ++i) {
+			if (i == output)
+				start = round;
+			round += weights[i];
+		}
+		double[][] matrix = new double[weights[output]][round];
+		for (int j = 0; j < matrix.length; ++j)
+			matrix[j][start + j] = 1;
+		return new LinearRepresentation(round, round, matrix, new double[matrix.length]);
+	}
+
+	public int peek() {
+		return peek;
+	}
+
+	public int pop() {
+		return pop;
+	}
+
+	public int push() {
+		return push;
+	}
+
+	public double coefficient(int output, int peekIndex) {
+		return matrix[output][peekIndex];
+	}
+
+	public double offset(int output) {
+		return offsets[output];
+	}
+
+	/**
+	 * Returns true if this representation is a finite impulse response filter
+	 * (pops and pushes one item per firing).
+	 * @return true iff this is a FIR filter
+	 */
+	public boolean isFIR() {
+		return pop == 1 && push == 1;
+	}
+
+	/**
+	 * Returns the representation of this filter followed by the given filter,
+	 * firing each enough times to pass a whole number of firings' items
+	 * between them, or null if the rates are zero or the result is too large.
+	 * @param downstream the downstream filter
+	 * @return the combined representation, or null
+	 */
+	public LinearRepresentation then(LinearRepresentation downstream) {
+		if (push == 0 || pop == 0 || downstream.push == 0 || downstream.pop == 0)
+			return null;
+		int transfer = lcm(push, downstream.pop);
+		if (transfer < 0)
+			return null;
+		int upstreamFirings = transfer / push, downstreamFirings = transfer / downstream.pop;
+		//The downstream firings read more items than they pop, so we may need
+		//extra upstream firings (which we peek rather than pop).
+		long itemsRead = (long)(downstreamFirings - 1) * downstream.pop + downstream.peek;
+		long upstreamFiringsRead = (itemsRead + push - 1) / push;
+		long newPeek = (upstreamFiringsRead - 1) * pop + peek;
+		long newPush = (long)downstreamFirings * downstream.push;
+		if (newPeek * newPush > MAX_ENTRIES)
+			return null;
+
+		double[][] newMatrix = new double[(int)newPush][(int)newPeek];
+		double[] newOffsets = new double[(int)newPush];
+		for (int q = 0; q < newPush; ++q) {
+			int firing = q / downstream.push, row = q % downstream.push;
+			double[] result = newMatrix[q];
+			double offset = downstream.offsets[row];
+			for (int c = 0; c < downstream.peek; ++c) {
+				double d = downstream.matrix[row][c];
+				if (d == 0) continue;
+				//The intermediate item at index (firing * pop + c) was pushed
+				//by some upstream firing.
+				int item = firing * downstream.pop + c;
+				int upstreamFiring = item / push, upstreamRow = item % push;
+				int base = upstreamFiring * pop;
+				double[] u = matrix[upstreamRow];
+				for (int i = 0; i < peek; ++i)
+					result[base + i] += d * u[i];
+				offset += d * offsets[upstreamRow];
+			}
+			newOffsets[q] = offset;
+		}
+		return new LinearRepresentation((int)newPeek, upstreamFirings * pop, newMatrix, newOffsets);
+	}
+
+	/**
+	 * Returns the representation of a splitjoin with a duplicate splitter, the
+	 * given branches and a roundrobin joiner with the given weights, or null
+	 * if the branches can't be balanced or the result is too large.  (A
+	 * roundrobin splitter can be handled by pipelining each branch after
+	 * {@link #roundrobinOutput(int[], int)}.)
+	 * @param branches the branches, in joiner input order
+	 * @param joinWeights the joiner's weights
+	 * @return the combined representation, or null
+	 */
+	public static LinearRepresentation splitjoin(List<LinearRepresentation> branches, int[] joinWeights) {
+		checkArgument(branches.size() == joinWeights.length, "%s branches but %s weights", branches.size(), joinWeights.length);
+		//Find the least number of joiner firings consuming whole branch
+		//firings, then check each branch pops the same number of items.
+		int joinerFirings = 1;
+		for (int i = 0; i < branches.size(); ++i) {
+			LinearRepresentation b = branches.get(i);
+			if (b.push == 0 || b.pop == 0 || joinWeights[i] == 0)
+				return null;
+			joinerFirings = lcm(joinerFirings, b.push / IntMath.gcd(b.push, joinWeights[i]));
+			if (joinerFirings < 0)
+				return null;
+		}
+		long newPop = -1, newPeek = 0, newPush = 0;
+		int[] branchFirings = new int[branches.size()];
+		for (int i = 0; i < branches.size(); ++i) {
+			LinearRepresentation b = branches.get(i);
+			long firings = (long)joinerFirings * joinWeights[i] / b.push;
+			if (firings > Integer.MAX_VALUE)
+				return null;
+			branchFirings[i] = (int)firings;
+			long branchPop = firings * b.pop;
+			if (newPop == -1)
+				newPop = branchPop;
+			else if (newPop != branchPop)
+				return null;
+			newPeek = Math.max(newPeek, (firings - 1) * b.pop + b.peek);
+			newPush += (long)joinerFirings * joinWeights[i];
+		}
+		if (newPeek * newPush > MAX_ENTRIES)
+			return null;
+
+		double[][] newMatrix = new double[(int)newPush][];
+		double[] newOffsets = new double[(int)newPush];
+		int q = 0;
+		for (int t = 0; t < joinerFirings; ++t)
+			for (int i = 0; i < branches.size(); ++i) {
+				LinearRepresentation b = branches.get(i);
+				for (int k = 0; k < joinWeights[i]; ++k, ++q) {
+					int item = t * joinWeights[i] + k;
+					int firing = item / b.push, row = item % b.push;
+					newMatrix[q] = new double[(int)newPeek];
+					System.arraycopy(b.matrix[row], 0, newMatrix[q], firing * b.pop, b.peek);
+					newOffsets[q] = b.offsets[row];
+				}
+			}
+		return new LinearRepresentation((int)newPeek, (int)newPop, newMatrix, newOffsets);
+	}
+
+	/**
+	 * Returns the lcm of the given positive ints, or -1 on overflow.
+	 */
+	private static int lcm(int a, int b) {
+		long lcm = (long)a / IntMath.gcd(a, b) * b;
+		return lcm > Integer.MAX_VALUE ? -1 : (int)lcm;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == null || getClass() != obj.getClass())
+			return false;
+		final LinearRepresentation other = (LinearRepresentation)obj;
+		return peek == other.peek && pop == other.pop
+				&& Arrays.deepEquals(matrix, other.matrix)
+				&& Arrays.equals(offsets, other.offsets);
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 7;
+		hash = 41 * hash + peek;
+		hash = 41 * hash + pop;
+		hash = 41 * hash + Arrays.deepHashCode(matrix);
+		hash = 41 * hash + Arrays.hashCode(offsets);
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("linear[peek %d, pop %d, push %d]", peek, pop, push);
+	}
+}
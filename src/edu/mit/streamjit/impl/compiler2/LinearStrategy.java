@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.common.Configuration;
+import java.util.Set;
+
+/**
+ * A strategy for replacing linear filters, and pipelines and splitjoins of
+ * them, with combined linear filters.  Such a strategy involves making
+ * parameters and interpreting them.
+ * @since 10/17/2026
+ */
+public interface LinearStrategy {
+	/**
+	 * Adds parameters used by this strategy to the given builder.
+	 * @param workers the workers the configuration is being built for
+	 * @param builder the builder
+	 */
+	public void makeParameters(Set<Worker<?, ?>> workers, Configuration.Builder builder);
+
+	/**
+	 * Returns whether this WorkerActor may be combined with adjacent linear
+	 * actors.  Filters must also be proven linear; splitters and joiners must
+	 * also enclose linear branches.
+	 * @param a the actor to (maybe) combine
+	 * @param config the configuration (will contain parameters created in
+	 * makeParameters)
+	 * @return whether the actor may be combined
+	 */
+	public boolean combine(WorkerActor a, Configuration config);
+
+	/**
+	 * Returns whether this linear FIR WorkerActor (possibly the result of
+	 * combination) should be computed in the frequency domain.
+	 * @param a the actor
+	 * @param config the configuration (will contain parameters created in
+	 * makeParameters)
+	 * @return whether to use the frequency domain
+	 */
+	public boolean useFrequencyDomain(WorkerActor a, Configuration config);
+}
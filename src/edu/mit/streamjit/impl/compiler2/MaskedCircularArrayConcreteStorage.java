@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import static edu.mit.streamjit.util.bytecode.methodhandles.LookupUtils.findGetter;
+import static edu.mit.streamjit.util.bytecode.methodhandles.LookupUtils.findStatic;
+import static edu.mit.streamjit.util.bytecode.methodhandles.LookupUtils.findVirtual;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+
+/**
+ * A ConcreteStorage using a circular buffer whose capacity is rounded up to a
+ * power of two, so indexing is an add and a mask rather than the integer
+ * division in CircularArrayConcreteStorage.  This matters for peeking filters,
+ * which index storage in their innermost loops.  The cost is up to twice the
+ * memory.
+ * @since 10/17/2026
+ */
+public class MaskedCircularArrayConcreteStorage implements ConcreteStorage {
+	private static final Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodHandle INDEX = findStatic(LOOKUP, "index");
+	private static final MethodHandle ADJUST = findVirtual(LOOKUP, "adjust");
+	private static final MethodHandle HEAD_GETTER = findGetter(LOOKUP, "head");
+	/**
+	 * The largest steady-state capacity we can round up to a power of two.
+	 */
+	public static final int MAX_CAPACITY = 1 << 30;
+	private final Arrayish array;
+	private final int mask, throughput;
+	private int head;
+	private final MethodHandle readHandle, writeHandle, adjustHandle;
+	public MaskedCircularArrayConcreteStorage(Arrayish.Factory arrayFactory, Storage s) {
+		int capacity = s.steadyStateCapacity();
+		assert capacity > 0 : s + " has capacity "+capacity;
+		assert capacity <= MAX_CAPACITY : s + " has capacity "+capacity;
+		//Live items span at most the steady-state capacity, so any larger
+		//capacity works.
+		int maskedCapacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		this.array = arrayFactory.make(s.type(), maskedCapacity);
+		this.mask = maskedCapacity - 1;
+		this.throughput = s.throughput();
+		this.head = 0;
+
+		MethodHandle index = MethodHandles.insertArguments(INDEX, 0, mask);
+		index = MethodHandles.foldArguments(index, HEAD_GETTER.bindTo(this));
+		this.readHandle = MethodHandles.filterArguments(array.get(), 0, index);
+		this.writeHandle = MethodHandles.filterArguments(array.set(), 0, index);
+		this.adjustHandle = ADJUST.bindTo(this);
+	}
+
+	@Override
+	public Class<?> type() {
+		return array.type();
+	}
+
+	@Override
+	public void adjust() {
+		head = (head + throughput) & mask;
+	}
+
+	@Override
+	public void sync() {
+	}
+
+	@Override
+	public MethodHandle readHandle() {
+		return readHandle;
+	}
+
+	@Override
+	public MethodHandle writeHandle() {
+		return writeHandle;
+	}
+
+	@Override
+	public MethodHandle adjustHandle() {
+		return adjustHandle;
+	}
+
+	private static int index(int mask, int head, int physicalIndex) {
+		return (physicalIndex + head) & mask;
+	}
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.blob.Blob;
+import edu.mit.streamjit.impl.blob.Buffer;
+import edu.mit.streamjit.impl.blob.DrainData;
+import edu.mit.streamjit.impl.common.Configuration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A blob that tunes its Compiler2 configuration while running.  A background
+ * thread measures the compiled blob's output rate, then tries a neighboring
+ * configuration (a few parameters randomized) by draining the current blob
+ * into DrainData and resuming from it in a {@link TieredBlob} compiled with
+ * the candidate.  Candidates that don't beat the current configuration are
+ * swapped back out the same way, and the current configuration is measured
+ * again, so changing input or load is tracked over time.
+ * <p/>
+ * Every swap goes through drain and DrainData, so no items are dropped or
+ * reordered.  The stream keeps running (interpreted) while each candidate
+ * compiles.
+ * @since 10/17/2026
+ */
+final class OnlineTuningBlob implements Blob {
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	/**
+	 * The most parameters changed in one candidate.
+	 */
+	private static final int MAX_MUTATIONS = 3;
+	private final ImmutableSet<Worker<?, ?>> workers;
+	private final int maxNumCores;
+	private final long windowNanos;
+	private final Random rng = new Random();
+	private Map<Token, Buffer> buffers;
+	private volatile TieredBlob current;
+	private Configuration currentConfig;
+	/**
+	 * Guarded by this.  Set while the tuner is swapping blobs; a drain
+	 * requested meanwhile is applied to the new blob.
+	 */
+	private boolean swapping;
+	private Runnable drainCallback;
+	private volatile boolean drainRequested;
+	OnlineTuningBlob(ImmutableSet<Worker<?, ?>> workers, Configuration config, int maxNumCores, long window, TimeUnit unit) {
+		this.workers = workers;
+		this.maxNumCores = maxNumCores;
+		this.windowNanos = unit.toNanos(window);
+		this.currentConfig = config;
+		this.current = new TieredBlob(workers, config, maxNumCores, null);
+	}
+
+	@Override
+	public Set<Worker<?, ?>> getWorkers() {
+		return workers;
+	}
+
+	@Override
+	public Set<Token> getInputs() {
+		return current.getInputs();
+	}
+
+	@Override
+	public Set<Token> getOutputs() {
+		return current.getOutputs();
+	}
+
+	@Override
+	public int getMinimumBufferCapacity(Token token) {
+		return current.getMinimumBufferCapacity(token);
+	}
+
+	@Override
+	public void installBuffers(Map<Token, Buffer> buffers) {
+		this.buffers = ImmutableMap.copyOf(buffers);
+		current.installBuffers(buffers);
+		Thread tuner = new Thread(this::tune, this+"-tuner");
+		tuner.setDaemon(true);
+		tuner.start();
+	}
+
+	@Override
+	public int getCoreCount() {
+		//A candidate may add a pump core.
+		return maxNumCores + 1;
+	}
+
+	@Override
+	public Runnable getCoreCode(int core) {
+		checkElementIndex(core, getCoreCount());
+		return () -> {
+			TieredBlob blob = current;
+			if (core < blob.getCoreCount())
+				blob.getCoreCode(core).run();
+			else
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+		};
+	}
+
+	@Override
+	public synchronized void drain(Runnable callback) {
+		drainRequested = true;
+		drainCallback = callback;
+		if (!swapping)
+			current.drain(callback);
+	}
+
+	@Override
+	public DrainData getDrainData() {
+		return current.getDrainData();
+	}
+
+	private void tune() {
+		try {
+			double currentScore = measure();
+			while (!drainRequested) {
+				Configuration best = currentConfig;
+				Configuration candidate = mutate(best);
+				if (candidate == null || !swapTo(candidate))
+					return;
+				double score = measure();
+				if (score > currentScore) {
+					currentScore = score;
+					continue;
+				}
+				if (!swapTo(best))
+					return;
+				currentScore = measure();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Waits for the current blob to switch to compiled code, lets it warm up
+	 * for one window, then returns the items it outputs per second over the
+	 * next window.  Returns 0 if the candidate stays on the interpreter.
+	 */
+	private double measure() throws InterruptedException {
+		TieredBlob blob = current;
+		while (blob.compiledBlob() == null) {
+			if (blob.isAbandoned() || drainRequested)
+				return 0;
+			Thread.sleep(10);
+		}
+		BlobHostMetrics metrics = blob.compiledBlob().getMetrics();
+		TimeUnit.NANOSECONDS.sleep(windowNanos);
+		long startItems = itemsOut(metrics), startNanos = System.nanoTime();
+		TimeUnit.NANOSECONDS.sleep(windowNanos);
+		long items = itemsOut(metrics) - startItems, nanos = System.nanoTime() - startNanos;
+		return items * 1e9 / nanos;
+	}
+
+	private static long itemsOut(BlobHostMetrics metrics) {
+		return metrics.getItemsOut().values().stream().mapToLong(Long::longValue).sum();
+	}
+
+	/**
+	 * Returns a copy of the given configuration with a few parameters
+	 * randomized, or null if it has no parameters we can randomize.
+	 */
+	private Configuration mutate(Configuration config) {
+		Configuration randomized;
+		try {
+			randomized = Configuration.randomize(config, rng);
+		} catch (UnsupportedOperationException ex) {
+			return null;
+		}
+		List<String> names = new ArrayList<>(config.getParametersMap().keySet());
+		if (names.isEmpty())
+			return null;
+		Configuration.Builder builder = Configuration.builder(config);
+		int mutations = 1 + rng.nextInt(Math.min(MAX_MUTATIONS, names.size()));
+		for (int i = 0; i < mutations; ++i) {
+			String name = names.remove(rng.nextInt(names.size()));
+			builder.removeParameter(name);
+			builder.addParameter(randomized.getParameter(name));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Drains the current blob and resumes from its DrainData in a new blob
+	 * compiled with the given configuration.  Returns false if the stream is
+	 * draining.
+	 * <p/>
+	 * Draining moves the worker state out of the old blob's state holders
+	 * into the workers (and the DrainData).  The new blob's interpreter
+	 * resumes from there; its compiled blob's state holders are filled while
+	 * that interpreter runs, so TieredBlob reloads them from the workers when
+	 * it switches.
+	 */
+	private boolean swapTo(Configuration config) throws InterruptedException {
+		TieredBlob old;
+		synchronized (this) {
+			if (drainRequested)
+				return false;
+			swapping = true;
+			old = current;
+		}
+		CountDownLatch drained = new CountDownLatch(1);
+		old.drain(drained::countDown);
+		drained.await();
+
+		TieredBlob next = new TieredBlob(workers, config, maxNumCores, old.getDrainData());
+		next.installBuffers(buffers);
+		synchronized (this) {
+			current = next;
+			currentConfig = config;
+			swapping = false;
+			if (drainRequested)
+				next.drain(drainCallback);
+		}
+		return !drainRequested;
+	}
+
+	@Override
+	public String toString() {
+		return "OnlineTuningBlob@"+Integer.toHexString(hashCode());
+	}
+}
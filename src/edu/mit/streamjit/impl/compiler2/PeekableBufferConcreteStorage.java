@@ -24,22 +24,32 @@ package edu.mit.streamjit.impl.compiler2;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Maps;
+import com.google.common.primitives.Primitives;
 import edu.mit.streamjit.impl.blob.Blob.Token;
+import edu.mit.streamjit.impl.blob.NIOBackedBuffer;
 import edu.mit.streamjit.impl.blob.PeekableBuffer;
+import edu.mit.streamjit.util.NIOBufferUtils;
 import edu.mit.streamjit.util.bytecode.methodhandles.Combinators;
+import static edu.mit.streamjit.util.bytecode.methodhandles.LookupUtils.findStatic;
 import static edu.mit.streamjit.util.bytecode.methodhandles.LookupUtils.findVirtual;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.Map;
 
 /**
- * A read-only ConcreteStorage implementation wrapping an PeekableBuffer.
+ * A read-only ConcreteStorage implementation wrapping an PeekableBuffer.  If
+ * the buffer is backed by an NIO buffer of the storage's (unwrapped) type, as
+ * for Input.fromBinaryFile, reads go straight to the NIO buffer's absolute
+ * get, so primitive storage is read in place without boxing.
  * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
  * @since 2/18/2014
  */
 public final class PeekableBufferConcreteStorage implements ConcreteStorage {
 	private static final MethodHandle IRB_PEEK = findVirtual(PeekableBuffer.class, "peek");
 	private static final MethodHandle IRB_CONSUME = findVirtual(PeekableBuffer.class, "consume");
+	private static final MethodHandle NIO_POSITION = findVirtual(java.nio.Buffer.class, "position", MethodType.methodType(int.class));
+	private static final MethodHandle ADD = findStatic(MethodHandles.lookup(), "add");
 	private final Class<?> type;
 	private final int throughput, minReadIndex;
 	private final PeekableBuffer buffer;
@@ -49,10 +59,37 @@ public final class PeekableBufferConcreteStorage implements ConcreteStorage {
 		this.throughput = throughput;
 		this.minReadIndex = minReadIndex;
 		this.buffer = buffer;
-		this.readHandle = MethodHandles.filterArguments(IRB_PEEK.bindTo(buffer), 0, Combinators.adder(-minReadIndex));
+		MethodHandle nioRead = nioReadHandle(type, buffer);
+		this.readHandle = MethodHandles.filterArguments(nioRead != null ? nioRead : IRB_PEEK.bindTo(buffer),
+				0, Combinators.adder(-minReadIndex));
 		this.adjustHandle = MethodHandles.insertArguments(IRB_CONSUME, 0, buffer, throughput);
 	}
 
+	/**
+	 * Returns a handle of type int -> prim reading the given index relative
+	 * to the NIO buffer's current position, or null if the buffer isn't backed
+	 * by an NIO buffer of the given type.
+	 */
+	private static MethodHandle nioReadHandle(Class<?> type, PeekableBuffer buffer) {
+		if (!(buffer instanceof NIOBackedBuffer))
+			return null;
+		Class<?> prim = Primitives.unwrap(type);
+		if (!prim.isPrimitive() || prim.equals(boolean.class) || prim.equals(void.class))
+			return null;
+		java.nio.Buffer nio = ((NIOBackedBuffer)buffer).nioBuffer();
+		Class<? extends java.nio.Buffer> bufferType = NIOBufferUtils.bufferForPrimitive(prim);
+		if (!bufferType.isInstance(nio))
+			return null;
+		MethodHandle get = findVirtual(bufferType, "get", MethodType.methodType(prim, int.class)).bindTo(nio);
+		//index + nio.position()
+		MethodHandle index = MethodHandles.foldArguments(ADD, NIO_POSITION.bindTo(nio));
+		return MethodHandles.filterArguments(get, 0, index);
+	}
+
+	private static int add(int a, int b) {
+		return a + b;
+	}
+
 	@Override
 	public Class<?> type() {
 		return type;
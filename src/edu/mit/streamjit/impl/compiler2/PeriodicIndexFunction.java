@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import com.google.common.math.IntMath;
+import edu.mit.streamjit.util.bytecode.methodhandles.Combinators;
+import static edu.mit.streamjit.util.bytecode.methodhandles.LookupUtils.findStatic;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.util.Arrays;
+
+/**
+ * An IndexFunction of the form f(i) = scale*(i/period) + table[i%period].
+ * This covers affine functions (period 1, as created by offsetting index
+ * functions) and the transfer functions of round-robin splitters and joiners
+ * (table[r] = prefixSum + r), and is closed under composition, so the index
+ * functions built up by splitter and joiner removal stay in this form instead
+ * of nesting CompoundIndexFunctions.
+ *
+ * The handles returned by {@link #asHandle()} compute the function with
+ * straight-line arithmetic (and a table lookup only when the table isn't
+ * itself affine) rather than calling applyAsInt.
+ * @since 10/17/2026
+ */
+final class PeriodicIndexFunction implements IndexFunction {
+	private static final Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodHandle AFFINE = findStatic(LOOKUP, "_affine");
+	private static final MethodHandle STRIDED = findStatic(LOOKUP, "_strided");
+	private static final MethodHandle STRIDED_POW2 = findStatic(LOOKUP, "_stridedPow2");
+	private static final MethodHandle TABLE = findStatic(LOOKUP, "_table");
+	/**
+	 * The largest period composition will create; beyond this we fall back to
+	 * CompoundIndexFunction rather than build huge tables.
+	 */
+	private static final int MAX_PERIOD = 4096;
+	private final int scale, period;
+	private final int[] table;
+	/**
+	 * If the table is affine in its index, table[r] = tableScale*r + table[0].
+	 */
+	private final boolean tableAffine;
+	private final int tableScale;
+	private PeriodicIndexFunction(int scale, int period, int[] table) {
+		assert period >= 1 && table.length == period;
+		this.scale = scale;
+		this.period = period;
+		this.table = table;
+		int s = period > 1 ? table[1] - table[0] : 0;
+		boolean affine = true;
+		for (int r = 0; r < period && affine; ++r)
+			affine = table[r] == s*r + table[0];
+		this.tableAffine = affine;
+		this.tableScale = affine ? s : 0;
+	}
+
+	/**
+	 * Returns the function f(i) = scale*i + offset.
+	 */
+	static PeriodicIndexFunction affine(int scale, int offset) {
+		return new PeriodicIndexFunction(scale, 1, new int[]{offset});
+	}
+
+	/**
+	 * Returns the transfer function of one input or output of a round-robin
+	 * splitter or joiner, f(i) = N*(i/weight) + prefixSum + (i%weight).
+	 */
+	static PeriodicIndexFunction roundrobinTransfer(int weight, int prefixSum, int N) {
+		checkArgument(weight > 0, weight);
+		int[] table = new int[weight];
+		for (int r = 0; r < weight; ++r)
+			table[r] = prefixSum + r;
+		return new PeriodicIndexFunction(N, weight, table).reduce();
+	}
+
+	/**
+	 * Returns an index function equivalent to applying before, then after,
+	 * composing them symbolically when possible.
+	 */
+	static IndexFunction chain(IndexFunction before, IndexFunction after) {
+		if (before == IndexFunction.identity())
+			return after;
+		if (after == IndexFunction.identity())
+			return before;
+		if (before instanceof PeriodicIndexFunction && after instanceof PeriodicIndexFunction) {
+			PeriodicIndexFunction composed = ((PeriodicIndexFunction)before).andThen((PeriodicIndexFunction)after);
+			if (composed != null)
+				return composed;
+		}
+		return new CompoundIndexFunction(before, after);
+	}
+
+	/**
+	 * Returns after(this(i)), or null if it isn't representable within our
+	 * limits.
+	 */
+	private PeriodicIndexFunction andThen(PeriodicIndexFunction after) {
+		//Our derivation requires this function's values be nonnegative, so
+		//integer division and remainder are floor and mod.
+		if (scale < 0 || Arrays.stream(table).anyMatch(x -> x < 0))
+			return null;
+		try {
+			//Extend our period so our scale is a multiple of after's period.
+			//Then after(this(i)) = after.scale*(extScale/after.period)*q +
+			//after(extTable[r]), where q = i/extPeriod and r = i%extPeriod.
+			int k = after.period / IntMath.gcd(scale, after.period);
+			int extPeriod = IntMath.checkedMultiply(period, k);
+			if (extPeriod > MAX_PERIOD)
+				return null;
+			int extScale = IntMath.checkedMultiply(scale, k);
+			int[] newTable = new int[extPeriod];
+			for (int r = 0; r < extPeriod; ++r) {
+				int x = IntMath.checkedAdd(IntMath.checkedMultiply(scale, r / period), table[r % period]);
+				newTable[r] = IntMath.checkedAdd(IntMath.checkedMultiply(after.scale, x / after.period), after.table[x % after.period]);
+			}
+			int newScale = IntMath.checkedMultiply(after.scale, extScale / after.period);
+			return new PeriodicIndexFunction(newScale, extPeriod, newTable).reduce();
+		} catch (ArithmeticException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns an equivalent function with the smallest period.
+	 */
+	private PeriodicIndexFunction reduce() {
+		for (int p = 1; p < period; ++p) {
+			if (period % p != 0) continue;
+			int step = table[p] - table[0];
+			if ((long)step * (period / p) != scale) continue;
+			boolean ok = true;
+			for (int r = p; r < period && ok; ++r)
+				ok = table[r] == table[r - p] + step;
+			if (ok)
+				return new PeriodicIndexFunction(step, p, Arrays.copyOf(table, p));
+		}
+		return this;
+	}
+
+	@Override
+	public int applyAsInt(int operand) {
+		if (period == 1)
+			return scale*operand + table[0];
+		return scale*(operand/period) + table[operand%period];
+	}
+
+	@Override
+	public void applyBulk(int[] bulk) {
+		if (period == 1) {
+			int offset = table[0];
+			for (int i = 0; i < bulk.length; ++i)
+				bulk[i] = scale*bulk[i] + offset;
+		} else
+			for (int i = 0; i < bulk.length; ++i)
+				bulk[i] = scale*(bulk[i]/period) + table[bulk[i]%period];
+	}
+
+	@Override
+	public MethodHandle asHandle() {
+		if (period == 1) {
+			if (scale == 1)
+				return table[0] == 0 ? MethodHandles.identity(int.class) : Combinators.adder(table[0]);
+			return MethodHandles.insertArguments(AFFINE, 0, scale, table[0]);
+		}
+		if (tableAffine) {
+			if (Integer.bitCount(period) == 1)
+				return MethodHandles.insertArguments(STRIDED_POW2, 0, scale, Integer.numberOfTrailingZeros(period), period - 1, tableScale, table[0]);
+			return MethodHandles.insertArguments(STRIDED, 0, scale, period, tableScale, table[0]);
+		}
+		return MethodHandles.insertArguments(TABLE, 0, scale, period, table);
+	}
+
+	private static int _affine(int scale, int offset, int i) {
+		return scale*i + offset;
+	}
+
+	private static int _strided(int scale, int period, int tableScale, int offset, int i) {
+		return scale*(i/period) + tableScale*(i%period) + offset;
+	}
+
+	private static int _stridedPow2(int scale, int shift, int mask, int tableScale, int offset, int i) {
+		//assumes nonnegative indices
+		return scale*(i >> shift) + tableScale*(i & mask) + offset;
+	}
+
+	private static int _table(int scale, int period, int[] table, int i) {
+		return scale*(i/period) + table[i%period];
+	}
+
+	@Override
+	public String toString() {
+		if (period == 1)
+			return String.format("%d*i + %d", scale, table[0]);
+		if (tableAffine)
+			return String.format("%d*(i/%d) + %d*(i%%%d) + %d", scale, period, tableScale, period, table[0]);
+		return String.format("%d*(i/%d) + %s[i%%%d]", scale, period, Arrays.toString(table), period);
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.Range;
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.impl.common.Configuration.IntParameter;
+import edu.mit.streamjit.impl.common.Configuration.SwitchParameter;
+import edu.mit.streamjit.impl.common.Workers;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An AllocationStrategy that can assign each group wholly to one core (its
+ * stage), pipelining groups across steady-state iterations rather than
+ * data-parallelizing them within one.  When the pipelined switch is off, groups
+ * are allocated by a wrapped strategy.
+ *
+ * No additional storage is required for pipelining: the init schedule buffers
+ * a full steady-state iteration's worth of items between every pair of groups,
+ * so within a steady-state iteration each group consumes items produced in the
+ * previous iteration.  Thus the core owning stage k is working on iteration i
+ * while the core owning stage k+1 is working on iteration i-1, and graphs
+ * dominated by stateful groups (which cannot be data-parallelized) can still
+ * use as many cores as they have stages.
+ * @since 10/17/2026
+ */
+public final class PipelinedAllocationStrategy implements AllocationStrategy {
+	/**
+	 * The name of the switch parameter enabling pipelined allocation.
+	 */
+	public static final String PARAMETER = "PipelinedAllocation";
+	private final AllocationStrategy fallback;
+	public PipelinedAllocationStrategy(AllocationStrategy fallback) {
+		this.fallback = checkNotNull(fallback);
+	}
+
+	@Override
+	public int maxNumCores() {
+		return fallback.maxNumCores();
+	}
+
+	@Override
+	public void makeParameters(Set<Worker<?, ?>> workers, Configuration.Builder builder) {
+		fallback.makeParameters(workers, builder);
+		builder.addParameter(SwitchParameter.create(PARAMETER, false));
+
+		//By default, cut the graph into contiguous blocks of identifiers, one
+		//per core, so adjacent workers share a stage.
+		int[] ids = new int[workers.size()];
+		int n = 0;
+		for (Worker<?, ?> w : workers)
+			ids[n++] = Workers.getIdentifier(w);
+		Arrays.sort(ids);
+		for (int i = 0; i < ids.length; ++i) {
+			int id = ids[i];
+			IntParameter stage = new IntParameter("Group"+id+"Stage", 0, maxNumCores()-1,
+					(int)((long)i * maxNumCores() / ids.length));
+			builder.addParameter(stage);
+			String[] oldNames = (String[])builder.getExtraData("AllocationParamNames"+id);
+			List<String> names = new ArrayList<>(oldNames != null ? Arrays.asList(oldNames) : Arrays.<String>asList());
+			names.add(stage.getName());
+			builder.putExtraData("AllocationParamNames"+id, names.toArray(new String[names.size()]));
+		}
+	}
+
+	@Override
+	public void allocateGroup(ActorGroup group, Range<Integer> iterations, List<Core> cores, Configuration config) {
+		SwitchParameter<Boolean> pipelined = config.getParameter(PARAMETER, SwitchParameter.class, Boolean.class);
+		if (pipelined == null || !pipelined.getValue()) {
+			fallback.allocateGroup(group, iterations, cores, config);
+			return;
+		}
+		int stage = config.getParameter("Group"+group.id()+"Stage", IntParameter.class).getValue();
+		cores.get(stage % cores.size()).allocate(group, iterations);
+	}
+}
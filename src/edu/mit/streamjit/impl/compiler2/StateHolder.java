@@ -62,4 +62,22 @@ public abstract class StateHolder implements DrainInstruction {
 		}
 		return ImmutableMap.of();
 	}
+
+	/**
+	 * The inverse of {@link #call()}: copies the worker's non-final fields
+	 * into this holder, for when the worker has run (e.g., in the
+	 * interpreter) since this holder was created.
+	 */
+	public void refresh() {
+		for (Field hf : getClass().getDeclaredFields()) {
+			Field wf = ReflectionUtils.getFieldByName(worker, hf.getName());
+			if (!Modifier.isFinal(wf.getModifiers()))
+				try {
+					wf.setAccessible(true);
+					hf.set(this, wf.get(worker));
+				} catch (IllegalAccessException ex) {
+					throw new AssertionError(ex);
+				}
+		}
+	}
 }
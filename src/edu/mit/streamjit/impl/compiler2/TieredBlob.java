@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableTable;
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.blob.Blob;
+import edu.mit.streamjit.impl.blob.Buffer;
+import edu.mit.streamjit.impl.blob.DrainData;
+import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.impl.common.Configuration.SwitchParameter;
+import edu.mit.streamjit.impl.common.IOInfo;
+import edu.mit.streamjit.impl.interp.Interpreter;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A blob that runs its workers on the interpreter while Compiler2 compiles
+ * them in the background, then switches to the compiled blob between
+ * interpreter runs.
+ * <p/>
+ * Compiled code depends on the data in flight only through the number of
+ * items on each edge, so we compile from a snapshot of the interpreter's
+ * state and switch when the interpreter next has the same number of items on
+ * every edge, handing the actual items to the compiled blob as its initial
+ * data (as when migrating via DrainData).  If that doesn't happen soon after
+ * compilation finishes, we stop the interpreter and compile again from its
+ * current state.
+ * <p/>
+ * Worker state is copied into the compiled blob's state holders during
+ * compilation, while the interpreter is still changing it, so when we switch
+ * (on core 0, between interpreter runs) we reload it from the workers.
+ * <p/>
+ * If we can't switch (compilation fails or the compiled blob doesn't fit our
+ * cores or buffers), we stay on the interpreter; {@link #getAbandonCause()}
+ * says why.
+ * @since 10/17/2026
+ */
+final class TieredBlob implements Blob {
+	/**
+	 * How long after compilation finishes we wait for the interpreter to
+	 * match the snapshot before recompiling from its current state.
+	 */
+	private static final long SWITCH_PATIENCE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	private final ImmutableSet<Worker<?, ?>> workers;
+	private final Configuration config;
+	private final int maxNumCores, coreCount;
+	private final Blob interpreter;
+	private final Runnable interpreterCore;
+	/**
+	 * The edges whose item counts must match the snapshot.
+	 */
+	private final ImmutableList<IOInfo> edges;
+	private Map<Token, Buffer> buffers;
+	/**
+	 * The background compilation, or null before we take the snapshot.
+	 * Only accessed from core 0.
+	 */
+	private CompletableFuture<Compiler2BlobHost> pending;
+	private int[] snapshotSizes;
+	private long switchDeadline = Long.MIN_VALUE;
+	/**
+	 * Set (to the reason) if we've given up on switching.
+	 */
+	private volatile Throwable abandonCause;
+	private volatile boolean drainRequested;
+	private volatile Blob compiled;
+	private volatile ImmutableList<Runnable> compiledCores;
+	/**
+	 * Creates a TieredBlob.
+	 * @param workers the workers
+	 * @param config the Compiler2 configuration to switch to
+	 * @param maxNumCores the maximum number of cores for the compiled blob
+	 * @param initialState the state to start from, or null
+	 */
+	TieredBlob(ImmutableSet<Worker<?, ?>> workers, Configuration config, int maxNumCores, DrainData initialState) {
+		this.workers = workers;
+		this.config = config;
+		this.maxNumCores = maxNumCores;
+		SwitchParameter<Boolean> pipelinedParam = config.getParameter(Compiler2BlobHost.PIPELINED_PARAMETER, SwitchParameter.class, Boolean.class);
+		this.coreCount = maxNumCores + (pipelinedParam != null && pipelinedParam.getValue() ? 1 : 0);
+		Interpreter.InterpreterBlobFactory interpFactory = new Interpreter.InterpreterBlobFactory();
+		this.interpreter = interpFactory.makeBlob(workers, interpFactory.getDefaultConfiguration(workers), 1, initialState);
+		this.interpreterCore = interpreter.getCoreCode(0);
+		this.edges = ImmutableList.copyOf(IOInfo.allEdges(workers));
+	}
+
+	/**
+	 * Returns the compiled blob, or null if we haven't switched to it yet.
+	 * @return the compiled blob, or null
+	 */
+	Compiler2BlobHost compiledBlob() {
+		return (Compiler2BlobHost)compiled;
+	}
+
+	/**
+	 * Returns true if we've given up on switching to the compiled blob
+	 * (because it failed to compile or doesn't fit our buffers).
+	 * @return true iff we'll stay on the interpreter
+	 */
+	boolean isAbandoned() {
+		return abandonCause != null;
+	}
+
+	/**
+	 * Returns why we've given up on switching to the compiled blob, or null
+	 * if we haven't.
+	 * @return the reason we'll stay on the interpreter, or null
+	 */
+	Throwable getAbandonCause() {
+		return abandonCause;
+	}
+
+	@Override
+	public Set<Worker<?, ?>> getWorkers() {
+		return workers;
+	}
+
+	@Override
+	public Set<Token> getInputs() {
+		return interpreter.getInputs();
+	}
+
+	@Override
+	public Set<Token> getOutputs() {
+		return interpreter.getOutputs();
+	}
+
+	@Override
+	public int getMinimumBufferCapacity(Token token) {
+		return interpreter.getMinimumBufferCapacity(token);
+	}
+
+	@Override
+	public void installBuffers(Map<Token, Buffer> buffers) {
+		this.buffers = ImmutableMap.copyOf(buffers);
+		interpreter.installBuffers(buffers);
+	}
+
+	@Override
+	public int getCoreCount() {
+		return coreCount;
+	}
+
+	@Override
+	public Runnable getCoreCode(int core) {
+		checkElementIndex(core, getCoreCount());
+		return () -> {
+			ImmutableList<Runnable> cores = compiledCores;
+			if (cores != null) {
+				if (core < cores.size())
+					cores.get(core).run();
+				else
+					LockSupport.parkNanos(IDLE_PARK_NANOS);
+			} else if (core == 0) {
+				interpreterCore.run();
+				if (abandonCause == null && !drainRequested)
+					maybeSwitch();
+			} else
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+		};
+	}
+
+	/**
+	 * Called on core 0 between interpreter runs to start compilation or
+	 * switch to the compiled blob.
+	 */
+	private void maybeSwitch() {
+		if (pending == null) {
+			DrainData snapshot = itemsOnly(interpreter.getDrainData());
+			snapshotSizes = edges.stream().mapToInt(e -> e.channel().size()).toArray();
+			pending = CompletableFuture.supplyAsync(() -> compile(snapshot));
+			return;
+		}
+		if (!pending.isDone())
+			return;
+
+		Compiler2BlobHost blob;
+		try {
+			blob = pending.join();
+		} catch (CompletionException ex) {
+			abandon(ex.getCause());
+			return;
+		}
+		if (switchDeadline == Long.MIN_VALUE)
+			switchDeadline = System.nanoTime() + SWITCH_PATIENCE_NANOS;
+		boolean matches = true;
+		for (int i = 0; i < edges.size() && matches; ++i)
+			matches = edges.get(i).channel().size() == snapshotSizes[i];
+		if (!matches && System.nanoTime() < switchDeadline)
+			return;
+
+		DrainData current = itemsOnly(interpreter.getDrainData());
+		if (!matches) {
+			try {
+				blob = compile(current);
+			} catch (RuntimeException ex) {
+				abandon(ex);
+				return;
+			}
+		}
+		switchTo(blob, current);
+	}
+
+	private Compiler2BlobHost compile(DrainData initialState) {
+		return (Compiler2BlobHost)new Compiler2(workers, config, maxNumCores, initialState, null, null).compile();
+	}
+
+	/**
+	 * Strips the worker state from the interpreter's DrainData.  The state is
+	 * in the workers themselves; switchTo() reloads it into the compiled
+	 * blob's state holders.
+	 */
+	private static DrainData itemsOnly(DrainData data) {
+		return new DrainData(data.getData(), ImmutableTable.<Integer, String, Object>of());
+	}
+
+	private void switchTo(Compiler2BlobHost blob, DrainData initialData) {
+		if (blob.getCoreCount() > getCoreCount()) {
+			abandon(new IllegalStateException("compiled blob needs "+blob.getCoreCount()+" cores"));
+			return;
+		}
+		for (Token t : ImmutableSet.<Token>builder().addAll(blob.getInputs()).addAll(blob.getOutputs()).build()) {
+			Buffer buffer = buffers.get(t);
+			if (buffer != null && buffer.capacity() < blob.getMinimumBufferCapacity(t)) {
+				abandon(new IllegalStateException(String.format(
+						"buffer for %s has capacity %d, but compiled blob needs %d",
+						t, buffer.capacity(), blob.getMinimumBufferCapacity(t))));
+				return;
+			}
+		}
+		synchronized (this) {
+			if (drainRequested)
+				return;
+			//The state holders were filled from the workers on the compiling
+			//thread while the interpreter ran (so stale or torn); core 0 is
+			//between interpreter runs now, so the workers are current.
+			blob.refreshState();
+			blob.rebindInitialData(initialData);
+			blob.installBuffers(buffers);
+			ImmutableList.Builder<Runnable> cores = ImmutableList.builder();
+			for (int i = 0; i < blob.getCoreCount(); ++i)
+				cores.add(blob.getCoreCode(i));
+			this.compiled = blob;
+			this.compiledCores = cores.build();
+		}
+	}
+
+	private void abandon(Throwable cause) {
+		abandonCause = cause;
+	}
+
+	@Override
+	public synchronized void drain(Runnable callback) {
+		drainRequested = true;
+		(compiled != null ? compiled : interpreter).drain(callback);
+	}
+
+	@Override
+	public DrainData getDrainData() {
+		Blob blob = compiled;
+		return (blob != null ? blob : interpreter).getDrainData();
+	}
+
+	@Override
+	public String toString() {
+		return "TieredBlob@"+Integer.toHexString(hashCode());
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import com.google.common.collect.ImmutableSet;
+import edu.mit.streamjit.api.CompiledStream;
+import edu.mit.streamjit.api.Input;
+import edu.mit.streamjit.api.OneToOneElement;
+import edu.mit.streamjit.api.Output;
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.blob.Blob;
+import edu.mit.streamjit.impl.blob.Buffer;
+import edu.mit.streamjit.impl.common.BlobHostStreamCompiler;
+import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.impl.common.ConnectWorkersVisitor;
+import edu.mit.streamjit.impl.common.Workers;
+import java.util.Set;
+
+/**
+ * A StreamCompiler that starts the stream on the interpreter immediately while
+ * Compiler2 compiles the given (or default) configuration in the background,
+ * then switches to the compiled blob.  See {@link TieredBlob}.
+ * <p/>
+ * Graphs with dynamic-rate workers are compiled as by
+ * {@link Compiler2StreamCompiler}, in static-rate islands.  Compiler2 doesn't
+ * deliver teleport messages, so graphs with message constraints should use
+ * {@link edu.mit.streamjit.impl.interp.InterpreterStreamCompiler} (or
+ * {@link edu.mit.streamjit.impl.concurrent.ConcurrentStreamCompiler}, which
+ * interprets the workers involved).
+ * @since 10/17/2026
+ */
+public final class TieredStreamCompiler extends BlobHostStreamCompiler {
+	private Configuration config;
+	private int maxNumCores = Compiler2.ALLOCATION_STRATEGY.maxNumCores();
+	private int bufferCapacity = 1 << 14;
+	public TieredStreamCompiler() {
+		super(new Compiler2BlobFactory());
+	}
+
+	/**
+	 * Sets the configuration to compile in the background.  By default, we
+	 * compile Compiler2's default configuration.
+	 * @param config the configuration
+	 * @return this
+	 */
+	public TieredStreamCompiler configuration(Configuration config) {
+		this.config = config;
+		return this;
+	}
+
+	public TieredStreamCompiler maxNumCores(int maxNumCores) {
+		checkState(config == null, "can't specify when using a specific configuration");
+		this.maxNumCores = maxNumCores;
+		return this;
+	}
+
+	/**
+	 * Sets the minimum capacity of the overall input and output buffers.
+	 * These buffers are created before compilation begins, so if the
+	 * compiled blob needs larger buffers, the stream stays on the
+	 * interpreter.
+	 * @param bufferCapacity the minimum buffer capacity
+	 * @return this
+	 */
+	public TieredStreamCompiler bufferCapacity(int bufferCapacity) {
+		checkArgument(bufferCapacity > 0, bufferCapacity);
+		this.bufferCapacity = bufferCapacity;
+		return this;
+	}
+
+	@Override
+	public <I, O> CompiledStream compile(OneToOneElement<I, O> stream, Input<I> input, Output<O> output) {
+		ConnectWorkersVisitor cwv = new ConnectWorkersVisitor();
+		stream.visit(cwv);
+		if (Workers.getAllWorkersInGraph(cwv.getSource()).stream().anyMatch(IslandStreamCompiler::isDynamic)) {
+			Compiler2StreamCompiler compiler = new Compiler2StreamCompiler();
+			if (config != null)
+				compiler.configuration(config);
+			else
+				compiler.maxNumCores(maxNumCores);
+			return compiler.compile(stream, input, output);
+		}
+		return super.compile(stream, input, output);
+	}
+
+	@Override
+	protected int getMaxNumCores() {
+		return maxNumCores;
+	}
+
+	@Override
+	protected Configuration getConfiguration(Set<Worker<?, ?>> workers) {
+		return config != null ? config : super.getConfiguration(workers);
+	}
+
+	@Override
+	protected Blob makeBlob(ImmutableSet<Worker<?, ?>> workers, Configuration configuration, Input<?> input, Output<?> output) {
+		return new TieredBlob(workers, configuration, getMaxNumCores(), null);
+	}
+
+	@Override
+	protected Buffer makeInputBuffer(Input<?> input, int minCapacity) {
+		return super.makeInputBuffer(input, Math.max(minCapacity, bufferCapacity));
+	}
+
+	@Override
+	protected Buffer makeOutputBuffer(Output<?> output, int minCapacity) {
+		return super.makeOutputBuffer(output, Math.max(minCapacity, bufferCapacity));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("TieredStreamCompiler (%d cores)", maxNumCores);
+	}
+}
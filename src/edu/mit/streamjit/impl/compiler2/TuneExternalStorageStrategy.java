@@ -43,6 +43,7 @@ public final class TuneExternalStorageStrategy implements StorageStrategy {
 		for (IOInfo i : IOInfo.allEdges(workers)) {
 			builder.addParameter(new Configuration.SwitchParameter<>("ExternalArrayish"+i.token(), Arrayish.Factory.class, ARRAYISH_FACTORIES.get(0), ARRAYISH_FACTORIES));
 			builder.addParameter(Configuration.SwitchParameter.create("UseDoubleBuffers"+i.token(), true));
+			builder.addParameter(Configuration.SwitchParameter.create("UseMaskedIndexing"+i.token(), false));
 		}
 	}
 	@Override
@@ -59,6 +60,10 @@ public final class TuneExternalStorageStrategy implements StorageStrategy {
 					&& storage.isFullyExternal() //no reads of writes before adjust
 					)
 				return new DoubleArrayConcreteStorage(factory, storage);
+			Configuration.SwitchParameter<Boolean> useMaskedIndexingParam = config.getParameter("UseMaskedIndexing"+storage.id(), Configuration.SwitchParameter.class, Boolean.class);
+			if (useMaskedIndexingParam != null && useMaskedIndexingParam.getValue()
+					&& storage.steadyStateCapacity() <= MaskedCircularArrayConcreteStorage.MAX_CAPACITY)
+				return new MaskedCircularArrayConcreteStorage(factory, storage);
 			return new CircularArrayConcreteStorage(factory.make(storage.type(), storage.steadyStateCapacity()), storage);
 		};
 	}
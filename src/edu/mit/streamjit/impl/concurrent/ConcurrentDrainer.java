@@ -29,6 +29,8 @@ import com.google.common.collect.ImmutableMap;
 
 import edu.mit.streamjit.impl.blob.Blob;
 import edu.mit.streamjit.impl.blob.Blob.Token;
+import edu.mit.streamjit.impl.blob.Buffer;
+import edu.mit.streamjit.impl.blob.Buffers;
 import edu.mit.streamjit.impl.common.AbstractDrainer;
 import edu.mit.streamjit.impl.common.BlobThread;
 import edu.mit.streamjit.impl.distributed.common.Utils;
@@ -52,15 +54,23 @@ public final class ConcurrentDrainer extends AbstractDrainer {
 	 */
 	ImmutableMap<Blob, Set<BlobThread>> threadMap;
 
+	/**
+	 * The overall output buffer, closed after final draining.
+	 */
+	private final Buffer outputBuffer;
+
 	public ConcurrentDrainer(BlobGraph blobGraph,
-			Map<Blob, Set<BlobThread>> threadMap) {
+			Map<Blob, Set<BlobThread>> threadMap, Buffer outputBuffer) {
 		setBlobGraph(blobGraph);
 		blobMap = buildBlobMap(threadMap.keySet());
 		this.threadMap = ImmutableMap.copyOf(threadMap);
+		this.outputBuffer = outputBuffer;
 	}
 
 	@Override
 	protected void drainingDone(boolean isFinal) {
+		if (isFinal)
+			Buffers.close(outputBuffer);
 		System.out.println("Draining Finished");
 	}
 
@@ -21,9 +21,11 @@
  */
 package edu.mit.streamjit.impl.concurrent;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -32,6 +34,8 @@ import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import com.google.common.collect.Iterables;
+
 import edu.mit.streamjit.api.CompiledStream;
 import edu.mit.streamjit.api.Input;
 import edu.mit.streamjit.api.Input.ManualInput;
@@ -43,7 +47,7 @@ import edu.mit.streamjit.api.Worker;
 import edu.mit.streamjit.impl.blob.Blob;
 import edu.mit.streamjit.impl.blob.Blob.Token;
 import edu.mit.streamjit.impl.blob.Buffer;
-import edu.mit.streamjit.impl.blob.ConcurrentArrayBuffer;
+import edu.mit.streamjit.impl.blob.Buffers;
 import edu.mit.streamjit.impl.common.AbstractDrainer;
 import edu.mit.streamjit.impl.common.AbstractDrainer.BlobGraph;
 import edu.mit.streamjit.impl.common.BlobThread;
@@ -55,7 +59,11 @@ import edu.mit.streamjit.impl.common.InputBufferFactory;
 import edu.mit.streamjit.impl.common.MessageConstraint;
 import edu.mit.streamjit.impl.common.OutputBufferFactory;
 import edu.mit.streamjit.impl.common.Portals;
+import edu.mit.streamjit.impl.common.StreamRuntime;
 import edu.mit.streamjit.impl.common.VerifyStreamGraph;
+import edu.mit.streamjit.impl.common.Workers;
+import edu.mit.streamjit.impl.compiler2.Compiler2BlobFactory;
+import edu.mit.streamjit.impl.compiler2.IslandStreamCompiler;
 import edu.mit.streamjit.impl.interp.ChannelFactory;
 import edu.mit.streamjit.impl.interp.Interpreter;
 import edu.mit.streamjit.partitioner.HorizontalPartitioner;
@@ -64,12 +72,47 @@ import edu.mit.streamjit.partitioner.Partitioner;
 /**
  * A stream compiler that partitions a streamgraph into multiple blobs and
  * execute it on multiple threads.
+ * <p/>
+ * When constructed from a {@link Configuration} (see
+ * {@link #getDefaultConfiguration(Set, int)}), the partitioning, the kind of
+ * blob and the inter-blob buffer sizes are all taken from the configuration's
+ * parameters, so they can be tuned.
  * 
  * @author Sumanan sumanan@mit.edu
  * @since Apr 8, 2013
  */
 public class ConcurrentStreamCompiler implements StreamCompiler {
+	/**
+	 * The name of the IntParameter giving the number of blobs.
+	 */
+	public static final String THREAD_COUNT_PARAMETER = "threadCount";
+	/**
+	 * The name of the IntParameter giving each inter-blob buffer's capacity
+	 * as a multiple of the larger of its reader's and writer's minimum
+	 * capacities.
+	 */
+	public static final String BUFFER_FACTOR_PARAMETER = "bufferFactor";
+	/**
+	 * The name of the SwitchParameter selecting Compiler2 blobs (true) or
+	 * Interpreter blobs (false).
+	 */
+	public static final String COMPILED_BLOBS_PARAMETER = "compiledBlobs";
+	/**
+	 * The name of the IntParameter giving the number of cores for each
+	 * Compiler2 blob.
+	 */
+	public static final String CORES_PER_BLOB_PARAMETER = "coresPerBlob";
+	/**
+	 * By default, buffers are never smaller than this. Interpreter blobs report minimum
+	 * capacities of only a few items, which would make them synchronize on
+	 * nearly every item.
+	 */
+	private static final int MIN_BUFFER_CAPACITY = 1000;
 	int noOfBlobs;
+	/**
+	 * The configuration this compiler was constructed with, or null.
+	 */
+	private final Configuration config;
 
 	/**
 	 * @param Patrions
@@ -81,17 +124,65 @@ public class ConcurrentStreamCompiler implements StreamCompiler {
 			throw new IllegalArgumentException(
 					"noOfBlobs should be 1 or greater");
 		this.noOfBlobs = noOfBlobs;
+		this.config = null;
 	}
 
 	public ConcurrentStreamCompiler(Configuration cfg) {
 
-		IntParameter threadCount = cfg.getParameter("threadCount",
+		IntParameter threadCount = cfg.getParameter(THREAD_COUNT_PARAMETER,
 				IntParameter.class);
 		this.noOfBlobs = threadCount.getValue();
 		if (noOfBlobs < 1)
 			throw new IllegalArgumentException(
 					"noOfBlobs should be 1 or greater");
 		this.noOfBlobs = noOfBlobs;
+		this.config = cfg;
+	}
+
+	/**
+	 * Returns a configuration for compiling a graph with the given workers
+	 * into up to maxThreads blobs. The partitioning is given by one
+	 * IntParameter per worker naming its blob; the default divides the
+	 * workers into maxThreads contiguous blocks of identifiers, as
+	 * HorizontalPartitioner does. Blobs are compiled with Compiler2 by default.
+	 * 
+	 * @param workers
+	 *            all the workers in the stream graph
+	 * @param maxThreads
+	 *            the maximum number of blobs (and thus threads)
+	 * @return a default configuration
+	 */
+	public static Configuration getDefaultConfiguration(
+			Set<Worker<?, ?>> workers, int maxThreads) {
+		if (maxThreads < 1)
+			throw new IllegalArgumentException(
+					"maxThreads should be 1 or greater");
+		Configuration.Builder builder = Configuration.builder();
+		builder.addParameter(new IntParameter(THREAD_COUNT_PARAMETER, 1,
+				maxThreads, maxThreads));
+		builder.addParameter(new IntParameter(BUFFER_FACTOR_PARAMETER, 1, 64,
+				2));
+		builder.addParameter(SwitchParameter.create(COMPILED_BLOBS_PARAMETER,
+				true));
+		builder.addParameter(new IntParameter(CORES_PER_BLOB_PARAMETER, 1,
+				maxThreads, 1));
+		List<Worker<?, ?>> sorted = sortByIdentifier(workers);
+		for (int i = 0; i < sorted.size(); ++i)
+			builder.addParameter(new IntParameter(
+					partitionParameterName(sorted.get(i)), 0, maxThreads - 1,
+					(int) ((long) i * maxThreads / sorted.size())));
+		return builder.build();
+	}
+
+	private static String partitionParameterName(Worker<?, ?> worker) {
+		return "Worker" + Workers.getIdentifier(worker) + "Blob";
+	}
+
+	private static List<Worker<?, ?>> sortByIdentifier(
+			Set<Worker<?, ?>> workers) {
+		List<Worker<?, ?>> sorted = new ArrayList<>(workers);
+		sorted.sort(Comparator.comparingInt(Workers::getIdentifier));
+		return sorted;
 	}
 
 	@Override
@@ -109,9 +200,7 @@ public class ConcurrentStreamCompiler implements StreamCompiler {
 		VerifyStreamGraph verifier = new VerifyStreamGraph();
 		stream.visit(verifier);
 
-		Partitioner<I, O> horzPartitioner = new HorizontalPartitioner<>();
-		List<Set<Worker<?, ?>>> tempList = horzPartitioner.partitionEqually(
-				stream, source, sink, this.noOfBlobs);
+		List<Set<Worker<?, ?>>> tempList = partition(stream, source, sink);
 
 		List<Set<Worker<?, ?>>> partitionList = new ArrayList<>();
 		for (Set<Worker<?, ?>> blob : tempList) {
@@ -131,19 +220,28 @@ public class ConcurrentStreamCompiler implements StreamCompiler {
 
 		Set<Blob> blobSet = new HashSet<>();
 		for (Set<Worker<?, ?>> partition : partitionList) {
-			blobSet.add(new Interpreter(partition, constraints, makeConfig(),
-					null));
+			blobSet.add(makeBlob(partition, constraints));
 		}
 
 		BlobGraph bg = new BlobGraph(partitionList);
 
 		Map<Token, Buffer> bufferMap = createBufferMap(blobSet);
 
-		// TODO: derive a algorithm to find good buffer size and use here.
+		int inputCapacity = 0, outputCapacity = 0;
+		for (Blob b : blobSet) {
+			if (b.getInputs().contains(inputToken))
+				inputCapacity = Math.max(inputCapacity,
+						b.getMinimumBufferCapacity(inputToken));
+			if (b.getOutputs().contains(outputToken))
+				outputCapacity = Math.max(outputCapacity,
+						b.getMinimumBufferCapacity(outputToken));
+		}
+		inputCapacity = bufferCapacity(inputCapacity);
+		outputCapacity = bufferCapacity(outputCapacity);
 		Buffer inputBuffer = InputBufferFactory.unwrap(input)
-				.createReadableBuffer(1000);
+				.createReadableBuffer(inputCapacity);
 		Buffer outputBuffer = OutputBufferFactory.unwrap(output)
-				.createWritableBuffer(1000);
+				.createWritableBuffer(outputCapacity);
 
 		assert !bufferMap.containsKey(inputToken) : "Overall input buffer is already created.";
 		assert !bufferMap.containsKey(outputToken) : "Overall output buffer is already created.";
@@ -155,8 +253,21 @@ public class ConcurrentStreamCompiler implements StreamCompiler {
 			b.installBuffers(bufferMap);
 		}
 
-		final ConcurrentCompiledStream cs = new ConcurrentCompiledStream(bg,
-				blobSet);
+		final CompiledStream cs;
+		final Runnable drainer;
+		StreamRuntime runtime = getRuntime();
+		if (runtime != null) {
+			StreamRuntime.HostedGraph hosted = runtime.host(blobSet,
+					bufferMap, outputBuffer);
+			hosted.start();
+			cs = hosted;
+			drainer = hosted::drain;
+		} else {
+			ConcurrentCompiledStream ccs = new ConcurrentCompiledStream(bg,
+					blobSet, outputBuffer);
+			cs = ccs;
+			drainer = ccs::drain;
+		}
 
 		if (input instanceof ManualInput)
 			InputBufferFactory.setManualInputDelegate((ManualInput<I>) input,
@@ -164,16 +275,207 @@ public class ConcurrentStreamCompiler implements StreamCompiler {
 							inputBuffer) {
 						@Override
 						public void drain() {
-							cs.drain();
+							drainer.run();
 						}
 					});
 		else
-			cs.drain();
+			drainer.run();
 		return cs;
 	}
 
-	// TODO: Buffer sizes, including head and tail buffers, must be optimized.
-	// consider adding some tuning factor.
+	/**
+	 * Returns the runtime to host the blobs on, or null to run each blob core
+	 * on a thread of its own. Blobs hosted on a runtime must be single-core.
+	 * 
+	 * @return the runtime, or null
+	 */
+	protected StreamRuntime getRuntime() {
+		return null;
+	}
+
+	/**
+	 * Returns the smallest capacity of any buffer this compiler creates.
+	 * 
+	 * @return the minimum buffer capacity
+	 */
+	protected int getMinimumBufferCapacity() {
+		return MIN_BUFFER_CAPACITY;
+	}
+
+	/**
+	 * Partitions the stream graph into the worker sets that become blobs. The
+	 * blob graph formed by the partitions must be acyclic and have a single
+	 * source blob.
+	 * 
+	 * @param stream
+	 *            the stream graph
+	 * @param source
+	 *            the first worker in the stream graph
+	 * @param sink
+	 *            the last worker in the stream graph
+	 * @return the partitions (empty partitions are ignored)
+	 */
+	protected <I, O> List<Set<Worker<?, ?>>> partition(
+			OneToOneElement<I, O> stream, Worker<I, ?> source,
+			Worker<?, O> sink) {
+		List<Worker<?, ?>> workers = sortByIdentifier(Workers
+				.getAllWorkersInGraph(source));
+		if (config == null
+				|| config.getParameter(partitionParameterName(source)) == null) {
+			Partitioner<I, O> horzPartitioner = new HorizontalPartitioner<>();
+			List<Set<Worker<?, ?>>> partitions = horzPartitioner
+					.partitionEqually(stream, source, sink, this.noOfBlobs);
+			if (!compiledBlobs())
+				return partitions;
+			// Workers that must be interpreted get their own blobs.
+			List<Set<Worker<?, ?>>> split = new ArrayList<>();
+			List<MessageConstraint> constraints = MessageConstraint
+					.findConstraints(source);
+			for (Set<Worker<?, ?>> p : partitions) {
+				List<Worker<?, ?>> run = new ArrayList<>(workers);
+				run.retainAll(p);
+				split.addAll(splitRuns(run, constraints));
+			}
+			return split;
+		}
+
+		// Blob indices are made nondecreasing in identifier order, so every
+		// edge between blobs goes forward and the blob graph is acyclic.
+		List<Set<Worker<?, ?>>> partitions = new ArrayList<>();
+		List<MessageConstraint> constraints = MessageConstraint
+				.findConstraints(source);
+		List<Worker<?, ?>> run = new ArrayList<>();
+		int runBlob = 0;
+		for (Worker<?, ?> w : workers) {
+			int blob = Math.max(runBlob, Math.min(noOfBlobs - 1, config
+					.getParameter(partitionParameterName(w),
+							IntParameter.class).getValue()));
+			if (blob != runBlob) {
+				partitions.addAll(splitRuns(run, constraints));
+				run.clear();
+				runBlob = blob;
+			}
+			run.add(w);
+		}
+		partitions.addAll(splitRuns(run, constraints));
+		return partitions;
+	}
+
+	/**
+	 * When compiling blobs, splits the given workers (in identifier order)
+	 * into maximal runs of workers that can or must be interpreted, then
+	 * splits each run into connected components.
+	 */
+	private List<Set<Worker<?, ?>>> splitRuns(List<Worker<?, ?>> workers,
+			List<MessageConstraint> constraints) {
+		List<Set<Worker<?, ?>>> partitions = new ArrayList<>();
+		if (!compiledBlobs()) {
+			partitions.addAll(components(new HashSet<>(workers)));
+			return partitions;
+		}
+		for (int start = 0; start < workers.size();) {
+			boolean interpreted = mustInterpret(workers.get(start),
+					constraints);
+			int end = start + 1;
+			while (end < workers.size()
+					&& mustInterpret(workers.get(end), constraints) == interpreted)
+				++end;
+			partitions.addAll(components(new HashSet<>(workers.subList(start,
+					end))));
+			start = end;
+		}
+		return partitions;
+	}
+
+	/**
+	 * Returns true if the given worker can't be compiled by Compiler2: it has
+	 * a dynamic rate, or sends or receives teleport messages.
+	 */
+	private static boolean mustInterpret(Worker<?, ?> worker,
+			List<MessageConstraint> constraints) {
+		if (IslandStreamCompiler.isDynamic(worker))
+			return true;
+		for (MessageConstraint c : constraints)
+			if (c.getSender() == worker || c.getRecipient() == worker)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Splits the given workers into connected components.
+	 * 
+	 * @param workers
+	 *            a set of workers
+	 * @return the connected components of the subgraph induced by the workers
+	 */
+	protected static List<Set<Worker<?, ?>>> components(
+			Set<Worker<?, ?>> workers) {
+		List<Set<Worker<?, ?>>> components = new ArrayList<>();
+		Set<Worker<?, ?>> unvisited = new HashSet<>(workers);
+		while (!unvisited.isEmpty()) {
+			Set<Worker<?, ?>> component = new HashSet<>();
+			Deque<Worker<?, ?>> frontier = new ArrayDeque<>();
+			frontier.add(unvisited.iterator().next());
+			while (!frontier.isEmpty()) {
+				Worker<?, ?> w = frontier.pop();
+				if (!unvisited.remove(w))
+					continue;
+				component.add(w);
+				for (Worker<?, ?> n : Iterables.concat(
+						Workers.getPredecessors(w), Workers.getSuccessors(w)))
+					if (unvisited.contains(n))
+						frontier.push(n);
+			}
+			components.add(component);
+		}
+		return components;
+	}
+
+	/**
+	 * Creates the blob for one partition. All of the blob's cores will be run
+	 * on their own threads.
+	 * 
+	 * @param partition
+	 *            the workers in the blob
+	 * @param constraints
+	 *            the message constraints of the whole stream graph
+	 * @return a blob
+	 */
+	protected Blob makeBlob(Set<Worker<?, ?>> partition,
+			List<MessageConstraint> constraints) {
+		boolean compile = compiledBlobs();
+		for (Worker<?, ?> w : partition)
+			compile &= !mustInterpret(w, constraints);
+		if (!compile)
+			return new Interpreter(partition, constraints, makeConfig(), null);
+		IntParameter coresParam = config.getParameter(
+				CORES_PER_BLOB_PARAMETER, IntParameter.class);
+		Compiler2BlobFactory factory = new Compiler2BlobFactory();
+		return factory.makeBlob(partition,
+				factory.getDefaultConfiguration(partition),
+				coresParam != null ? coresParam.getValue() : 1, null);
+	}
+
+	private boolean compiledBlobs() {
+		if (config == null)
+			return false;
+		SwitchParameter<Boolean> compiledParam = config.getParameter(
+				COMPILED_BLOBS_PARAMETER, SwitchParameter.class, Boolean.class);
+		return compiledParam != null && compiledParam.getValue();
+	}
+
+	/**
+	 * Returns the capacity of a buffer whose reader and writer need at least
+	 * the given capacity.
+	 */
+	private int bufferCapacity(int minimumCapacity) {
+		IntParameter factorParam = config != null ? config.getParameter(
+				BUFFER_FACTOR_PARAMETER, IntParameter.class) : null;
+		int factor = factorParam != null ? factorParam.getValue() : 1;
+		return (int) Math.min(Integer.MAX_VALUE - 8, Math.max(
+				getMinimumBufferCapacity(), (long) minimumCapacity * factor));
+	}
+
 	/**
 	 * Only create buffers for inter worker communication. No global input or
 	 * global output buffer is created.
@@ -187,64 +489,54 @@ public class ConcurrentStreamCompiler implements StreamCompiler {
 
 		Map<Token, Integer> minInputBufCapaciy = new HashMap<>();
 		Map<Token, Integer> minOutputBufCapaciy = new HashMap<>();
+		Map<Token, Class<?>> elementTypes = new HashMap<>();
 
 		for (Blob b : blobList) {
 			Set<Blob.Token> inputs = b.getInputs();
 			for (Token t : inputs) {
 				minInputBufCapaciy.put(t, b.getMinimumBufferCapacity(t));
+				elementTypes.merge(t, b.getElementType(t), Buffers::edgeElementType);
 			}
 
 			Set<Blob.Token> outputs = b.getOutputs();
 			for (Token t : outputs) {
 				minOutputBufCapaciy.put(t, b.getMinimumBufferCapacity(t));
+				elementTypes.merge(t, b.getElementType(t), Buffers::edgeElementType);
 			}
 		}
 
 		for (Token t : minInputBufCapaciy.keySet()) {
-			int bufSize;
 			if (minOutputBufCapaciy.containsKey(t)) {
-				bufSize = lcm(minInputBufCapaciy.get(t),
-						minOutputBufCapaciy.get(t));
-
-				// TODO: Just to increase the performance. Change it later
-				bufSize = Math.max(1000, bufSize);
+				int bufSize = bufferCapacity(Math.max(
+						minInputBufCapaciy.get(t), minOutputBufCapaciy.get(t)));
 
-				Buffer buf = new ConcurrentArrayBuffer(bufSize);
+				// Each edge has one writer blob and one reader blob.
+				Buffer buf = Buffers.spscBuffer(elementTypes.get(t), bufSize);
 				bufferMap.put(t, buf);
 			}
 		}
 		return bufferMap;
 	}
 
-	private int gcd(int a, int b) {
-		while (true) {
-			if (a == 0)
-				return b;
-			b %= a;
-			if (b == 0)
-				return a;
-			a %= b;
-		}
-	}
-
-	private int lcm(int a, int b) {
-		int val = gcd(a, b);
-		return val != 0 ? ((a * b) / val) : 0;
-	}
-
 	public static class ConcurrentCompiledStream implements CompiledStream {
 
 		private Map<Blob, Set<BlobThread>> threadMap = new HashMap<>();
 		private final AbstractDrainer drainer;
 
-		public ConcurrentCompiledStream(BlobGraph blobGraph, Set<Blob> blobSet) {
+		public ConcurrentCompiledStream(BlobGraph blobGraph, Set<Blob> blobSet,
+				Buffer outputBuffer) {
 			List<Thread> blobThreads = new ArrayList<>(blobSet.size());
 			for (final Blob b : blobSet) {
-				BlobThread t = new BlobThread(b.getCoreCode(0));
-				blobThreads.add(t);
-				threadMap.put(b, Collections.singleton(t));
+				Set<BlobThread> threads = new HashSet<>();
+				for (int i = 0; i < b.getCoreCount(); ++i) {
+					BlobThread t = new BlobThread(b.getCoreCode(i));
+					blobThreads.add(t);
+					threads.add(t);
+				}
+				threadMap.put(b, threads);
 			}
-			this.drainer = new ConcurrentDrainer(blobGraph, threadMap);
+			this.drainer = new ConcurrentDrainer(blobGraph, threadMap,
+					outputBuffer);
 			start(blobThreads);
 		}
 
@@ -290,6 +582,8 @@ public class ConcurrentStreamCompiler implements StreamCompiler {
 				.addParameter(
 						new SwitchParameter<>("channelFactory",
 								ChannelFactory.class, universe.get(0), universe))
+				.addParameter(SwitchParameter.create(
+						Interpreter.PHASE_SCHEDULE_PARAMETER, true))
 				.build();
 		return config;
 	}
@@ -32,6 +32,7 @@ import com.google.common.collect.ImmutableMap;
 import edu.mit.streamjit.api.CompiledStream;
 import edu.mit.streamjit.api.Worker;
 import edu.mit.streamjit.impl.blob.Buffer;
+import edu.mit.streamjit.impl.blob.Buffers;
 import edu.mit.streamjit.impl.blob.DrainData;
 import edu.mit.streamjit.impl.blob.Blob.Token;
 import edu.mit.streamjit.impl.common.AbstractDrainer;
@@ -267,6 +268,10 @@ public class StreamJitAppManager {
 		if (isFinal) {
 			this.status = AppStatus.STOPPED;
 			tailChannel.reset();
+			// The tail thread has delivered everything; flush and close the
+			// overall output (e.g., a binary file) as the other compilers do.
+			Buffers.close(app.bufferMap.get(Token
+					.createOverallOutputToken(app.sink)));
 			controller.closeAll();
 		}
 		isRunning = false;
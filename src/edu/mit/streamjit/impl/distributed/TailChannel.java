@@ -55,8 +55,9 @@ public class TailChannel extends TCPInputChannel {
 
 	@Override
 	public void receiveData() {
+		int before = receivedCount();
 		super.receiveData();
-		count++;
+		count += receivedCount() - before;
 		// System.err.println(count);
 		if (count > limit)
 			latch.countDown();
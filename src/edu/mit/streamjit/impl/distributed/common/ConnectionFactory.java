@@ -22,8 +22,11 @@
 package edu.mit.streamjit.impl.distributed.common;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 import edu.mit.streamjit.impl.distributed.runtimer.ListenerSocket;
 
@@ -100,4 +103,70 @@ public class ConnectionFactory {
 		else
 			return new TCPConnection(socket);
 	}
+
+	/**
+	 * Data plane counterpart of
+	 * {@link #getConnection(String, int, boolean)}.
+	 * 
+	 * @param serverAddress
+	 * @param portNo
+	 * @return
+	 * @throws IOException
+	 */
+	public static DataConnection getDataConnection(String serverAddress,
+			int portNo) throws IOException {
+		Ipv4Validator validator = Ipv4Validator.getInstance();
+		System.out.println("Trying to make a data connection with - "
+				+ serverAddress + "/" + portNo);
+		if (!validator.isValid(serverAddress))
+			throw new IllegalArgumentException("Invalid Server IP address");
+
+		if (!validator.isValid(portNo))
+			throw new IllegalArgumentException("Invalid port No");
+
+		int maxTryAttempts = 10;
+		for (int i = 0; i < maxTryAttempts; i++) {
+			try {
+				SocketChannel channel = SocketChannel
+						.open(new InetSocketAddress(serverAddress, portNo));
+				return new DataConnection(channel);
+			} catch (IOException ioe) {
+				System.out.println("IO Connection failed - " + serverAddress
+						+ "/" + portNo);
+				if (i == maxTryAttempts - 1)
+					throw ioe;
+				System.out.println("Reattempting...." + i);
+			}
+			try {
+				Thread.sleep((i + 1) * 2000);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		throw new IOException("Connection creation failed.");
+	}
+
+	/**
+	 * Data plane counterpart of {@link #getConnection(int, int, boolean)}.
+	 * 
+	 * @param portNo
+	 * @param timeOut
+	 *            in milliseconds. If zero, no timeout. See {@link ServerSocket}
+	 *            .setSoTimeout().
+	 * @return
+	 * @throws IOException
+	 */
+	public static DataConnection getDataConnection(int portNo, int timeOut)
+			throws IOException {
+		System.out.println("Listening at - " + portNo);
+		try (ServerSocketChannel server = ServerSocketChannel.open()) {
+			server.socket().setReuseAddress(true);
+			server.bind(new InetSocketAddress(portNo));
+			// The socket adaptor's accept() honours SO_TIMEOUT, unlike
+			// ServerSocketChannel.accept().
+			server.socket().setSoTimeout(timeOut);
+			Socket socket = server.socket().accept();
+			return new DataConnection(socket.getChannel());
+		}
+	}
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.distributed.common;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes batches of stream items into the binary payload of a
+ * {@link DataConnection} frame and decodes them on the other side.
+ * <p>
+ * Both nodes of a connection must agree on the codec for an id. The built-in
+ * codecs are in {@link DataCodecs}; additional codecs are found with
+ * {@link java.util.ServiceLoader}, so implementations must have a public
+ * no-arg constructor and must use an id not reserved by {@link DataCodecs}.
+ * </p>
+ * 
+ * @since Oct 17, 2026
+ */
+public interface DataCodec {
+
+	/**
+	 * @return the id written into each frame header encoded by this codec.
+	 */
+	byte id();
+
+	/**
+	 * @return true iff this codec can encode every item in
+	 *         data[offset, offset+length).
+	 */
+	boolean canEncode(Object[] data, int offset, int length);
+
+	/**
+	 * Appends the encoded form of data[offset, offset+length) to dst.
+	 * 
+	 * @return dst or, if dst did not have enough room, a larger buffer that
+	 *         holds the contents of dst followed by the encoded items. See
+	 *         {@link DataCodecs#ensureRemaining(ByteBuffer, int)}.
+	 * @throws ObjectStreamException
+	 *             if an item can't be encoded (e.g., a
+	 *             {@link java.io.NotSerializableException}). Nothing has been
+	 *             sent, and retrying won't help.
+	 */
+	ByteBuffer encode(Object[] data, int offset, int length, ByteBuffer dst)
+			throws ObjectStreamException;
+
+	/**
+	 * Decodes length items from src into dst[offset, offset+length).
+	 * 
+	 * @throws IOException
+	 *             if src does not hold a valid encoding.
+	 */
+	void decode(ByteBuffer src, Object[] dst, int offset, int length)
+			throws IOException;
+}
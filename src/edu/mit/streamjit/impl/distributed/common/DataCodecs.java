@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.distributed.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.nio.ByteBuffer;
+import java.util.ServiceLoader;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.mit.streamjit.util.SkipMissingServicesIterator;
+
+/**
+ * Built-in {@link DataCodec}s and codec lookup.
+ * <p>
+ * Batches whose items are all {@link Integer}s, {@link Float}s,
+ * {@link Double}s or {@link Byte}s are packed as raw primitive arrays. Other
+ * batches use the first custom codec (found with {@link ServiceLoader}) that
+ * accepts them, falling back to Java serialization of the whole batch.
+ * </p>
+ * 
+ * @since Oct 17, 2026
+ */
+public final class DataCodecs {
+
+	private DataCodecs() {
+		// No instantiation...
+	}
+
+	/**
+	 * Ids below this value are reserved for the built-in codecs.
+	 */
+	public static final byte FIRST_CUSTOM_ID = 16;
+
+	public static final DataCodec INT = new IntCodec();
+	public static final DataCodec FLOAT = new FloatCodec();
+	public static final DataCodec DOUBLE = new DoubleCodec();
+	public static final DataCodec BYTE = new ByteCodec();
+	public static final DataCodec SERIALIZED = new SerializedCodec();
+
+	private static final ImmutableList<DataCodec> BUILTIN = ImmutableList.of(
+			INT, FLOAT, DOUBLE, BYTE);
+
+	private static final ImmutableList<DataCodec> CUSTOM = loadCustomCodecs();
+
+	/**
+	 * Indexed by (unsigned) codec id.
+	 */
+	private static final DataCodec[] BY_ID = new DataCodec[256];
+	static {
+		for (DataCodec c : BUILTIN)
+			BY_ID[c.id() & 0xFF] = c;
+		BY_ID[SERIALIZED.id() & 0xFF] = SERIALIZED;
+		for (DataCodec c : CUSTOM) {
+			if (BY_ID[c.id() & 0xFF] != null)
+				throw new IllegalStateException(String.format(
+						"codec id %d of %s is already used by %s", c.id(), c,
+						BY_ID[c.id() & 0xFF]));
+			BY_ID[c.id() & 0xFF] = c;
+		}
+	}
+
+	private static ImmutableList<DataCodec> loadCustomCodecs() {
+		ImmutableList.Builder<DataCodec> builder = ImmutableList.builder();
+		SkipMissingServicesIterator<DataCodec> it = new SkipMissingServicesIterator<>(
+				ServiceLoader.load(DataCodec.class).iterator());
+		while (it.hasNext()) {
+			DataCodec c = it.next();
+			if ((c.id() & 0xFF) < FIRST_CUSTOM_ID)
+				throw new IllegalStateException(String.format(
+						"%s uses reserved codec id %d", c, c.id()));
+			builder.add(c);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @return the most compact codec that can encode every item in
+	 *         data[offset, offset+length).
+	 */
+	public static DataCodec forBatch(Object[] data, int offset, int length) {
+		for (DataCodec c : BUILTIN)
+			if (c.canEncode(data, offset, length))
+				return c;
+		for (DataCodec c : CUSTOM)
+			if (c.canEncode(data, offset, length))
+				return c;
+		return SERIALIZED;
+	}
+
+	/**
+	 * @return the codec with the given id.
+	 * @throws IOException
+	 *             if no codec has the given id.
+	 */
+	public static DataCodec forId(byte id) throws IOException {
+		DataCodec c = BY_ID[id & 0xFF];
+		if (c == null)
+			throw new IOException("Unknown data codec id " + id);
+		return c;
+	}
+
+	/**
+	 * Returns buf if it has at least needed bytes remaining, or a new direct
+	 * buffer with room for them holding buf's contents up to its position.
+	 */
+	public static ByteBuffer ensureRemaining(ByteBuffer buf, int needed) {
+		if (buf.remaining() >= needed)
+			return buf;
+		int capacity = Math.max(buf.capacity() * 2, buf.position() + needed);
+		ByteBuffer bigger = ByteBuffer.allocateDirect(capacity).order(
+				buf.order());
+		buf.flip();
+		bigger.put(buf);
+		return bigger;
+	}
+
+	private static boolean allInstances(Class<?> klass, Object[] data,
+			int offset, int length) {
+		for (int i = offset; i < offset + length; ++i)
+			if (data[i] == null || data[i].getClass() != klass)
+				return false;
+		return true;
+	}
+
+	private static final class IntCodec implements DataCodec {
+		@Override
+		public byte id() {
+			return 0;
+		}
+
+		@Override
+		public boolean canEncode(Object[] data, int offset, int length) {
+			return allInstances(Integer.class, data, offset, length);
+		}
+
+		@Override
+		public ByteBuffer encode(Object[] data, int offset, int length,
+				ByteBuffer dst) {
+			dst = ensureRemaining(dst, length * Integer.BYTES);
+			for (int i = offset; i < offset + length; ++i)
+				dst.putInt((Integer) data[i]);
+			return dst;
+		}
+
+		@Override
+		public void decode(ByteBuffer src, Object[] dst, int offset, int length) {
+			for (int i = offset; i < offset + length; ++i)
+				dst[i] = src.getInt();
+		}
+	}
+
+	private static final class FloatCodec implements DataCodec {
+		@Override
+		public byte id() {
+			return 1;
+		}
+
+		@Override
+		public boolean canEncode(Object[] data, int offset, int length) {
+			return allInstances(Float.class, data, offset, length);
+		}
+
+		@Override
+		public ByteBuffer encode(Object[] data, int offset, int length,
+				ByteBuffer dst) {
+			dst = ensureRemaining(dst, length * Float.BYTES);
+			for (int i = offset; i < offset + length; ++i)
+				dst.putFloat((Float) data[i]);
+			return dst;
+		}
+
+		@Override
+		public void decode(ByteBuffer src, Object[] dst, int offset, int length) {
+			for (int i = offset; i < offset + length; ++i)
+				dst[i] = src.getFloat();
+		}
+	}
+
+	private static final class DoubleCodec implements DataCodec {
+		@Override
+		public byte id() {
+			return 2;
+		}
+
+		@Override
+		public boolean canEncode(Object[] data, int offset, int length) {
+			return allInstances(Double.class, data, offset, length);
+		}
+
+		@Override
+		public ByteBuffer encode(Object[] data, int offset, int length,
+				ByteBuffer dst) {
+			dst = ensureRemaining(dst, length * Double.BYTES);
+			for (int i = offset; i < offset + length; ++i)
+				dst.putDouble((Double) data[i]);
+			return dst;
+		}
+
+		@Override
+		public void decode(ByteBuffer src, Object[] dst, int offset, int length) {
+			for (int i = offset; i < offset + length; ++i)
+				dst[i] = src.getDouble();
+		}
+	}
+
+	private static final class ByteCodec implements DataCodec {
+		@Override
+		public byte id() {
+			return 3;
+		}
+
+		@Override
+		public boolean canEncode(Object[] data, int offset, int length) {
+			return allInstances(Byte.class, data, offset, length);
+		}
+
+		@Override
+		public ByteBuffer encode(Object[] data, int offset, int length,
+				ByteBuffer dst) {
+			dst = ensureRemaining(dst, length);
+			for (int i = offset; i < offset + length; ++i)
+				dst.put((Byte) data[i]);
+			return dst;
+		}
+
+		@Override
+		public void decode(ByteBuffer src, Object[] dst, int offset, int length) {
+			for (int i = offset; i < offset + length; ++i)
+				dst[i] = src.get();
+		}
+	}
+
+	/**
+	 * Serializes the whole batch through one {@link ObjectOutputStream}, so
+	 * the stream header and class descriptors are paid once per batch rather
+	 * than once per item.
+	 */
+	private static final class SerializedCodec implements DataCodec {
+		@Override
+		public byte id() {
+			return 15;
+		}
+
+		@Override
+		public boolean canEncode(Object[] data, int offset, int length) {
+			return true;
+		}
+
+		@Override
+		public ByteBuffer encode(Object[] data, int offset, int length,
+				ByteBuffer dst) throws ObjectStreamException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+				for (int i = offset; i < offset + length; ++i)
+					oos.writeObject(data[i]);
+			} catch (ObjectStreamException e) {
+				// e.g., NotSerializableException.
+				throw e;
+			} catch (IOException e) {
+				// ByteArrayOutputStream doesn't throw.
+				throw new AssertionError(e);
+			}
+			dst = ensureRemaining(dst, bytes.size());
+			dst.put(bytes.toByteArray());
+			return dst;
+		}
+
+		@Override
+		public void decode(ByteBuffer src, Object[] dst, int offset, int length)
+				throws IOException {
+			byte[] bytes = new byte[src.remaining()];
+			src.get(bytes);
+			try (ObjectInputStream ois = new ObjectInputStream(
+					new ByteArrayInputStream(bytes))) {
+				for (int i = offset; i < offset + length; ++i)
+					dst[i] = ois.readObject();
+			} catch (ClassNotFoundException e) {
+				throw new IOException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.distributed.common;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Data plane connection between two nodes. Unlike {@link TCPConnection}, which
+ * sends one serialized object per {@link #writeObject(Object)} call, a
+ * DataConnection sends batches of stream items over a blocking
+ * {@link SocketChannel} in a compact binary framing. Control messages should
+ * keep using {@link Connection}.
+ * <p>
+ * Each frame is a 9 byte header followed by the payload:
+ * <ol>
+ * <li>int - number of items in the batch, or {@link #END_OF_SESSION}.
+ * <li>byte - {@link DataCodec#id()} of the codec that encoded the payload.
+ * <li>int - payload length in bytes.
+ * </ol>
+ * All values are big-endian.
+ * </p>
+ * <p>
+ * Not thread safe. A connection is expected to have exactly one writer at one
+ * end and exactly one reader at the other.
+ * </p>
+ * 
+ * @since Oct 17, 2026
+ */
+public final class DataConnection {
+
+	private static final int HEADER_SIZE = 9;
+
+	/**
+	 * Item count of the frame sent by {@link #softClose()}.
+	 */
+	private static final int END_OF_SESSION = -1;
+
+	private final SocketChannel channel;
+
+	private final ByteBuffer header;
+
+	private ByteBuffer sendBuffer;
+
+	private ByteBuffer receiveBuffer;
+
+	/**
+	 * The codec used for the previous batch. Streams are almost always
+	 * homogeneous, so we try it first.
+	 */
+	private DataCodec lastCodec;
+
+	private volatile boolean isconnected;
+
+	public DataConnection(SocketChannel channel) throws IOException {
+		this.channel = channel;
+		channel.configureBlocking(true);
+		channel.socket().setTcpNoDelay(true);
+		this.header = ByteBuffer.allocateDirect(HEADER_SIZE);
+		this.sendBuffer = ByteBuffer.allocateDirect(64 * 1024);
+		this.receiveBuffer = ByteBuffer.allocateDirect(64 * 1024);
+		this.isconnected = true;
+	}
+
+	/**
+	 * Sends data[offset, offset+length) as a single frame.
+	 * 
+	 * @throws ObjectStreamException
+	 *             if the batch can't be encoded. Nothing has been sent, so
+	 *             the connection is still usable.
+	 * @throws IOException
+	 */
+	public void writeBatch(Object[] data, int offset, int length)
+			throws IOException {
+		if (!isconnected)
+			throw new IOException("DataConnection: Socket is not connected");
+		DataCodec codec = lastCodec;
+		if (codec == null || !codec.canEncode(data, offset, length))
+			lastCodec = codec = DataCodecs.forBatch(data, offset, length);
+
+		sendBuffer.clear();
+		sendBuffer.position(HEADER_SIZE);
+		sendBuffer = codec.encode(data, offset, length, sendBuffer);
+		sendBuffer.putInt(0, length);
+		sendBuffer.put(4, codec.id());
+		sendBuffer.putInt(5, sendBuffer.position() - HEADER_SIZE);
+		sendBuffer.flip();
+		writeFully(sendBuffer);
+	}
+
+	/**
+	 * Blocks until a frame is received.
+	 * 
+	 * @return the items of the received batch, or null if the other side
+	 *         called {@link #softClose()}.
+	 * @throws EOFException
+	 *             if the other side closed the connection.
+	 * @throws IOException
+	 */
+	public Object[] readBatch() throws IOException {
+		if (!isconnected)
+			throw new IOException("DataConnection: Socket is not connected");
+		header.clear();
+		readFully(header);
+		header.flip();
+		int count = header.getInt();
+		byte codecId = header.get();
+		int payloadSize = header.getInt();
+		if (count == END_OF_SESSION)
+			return null;
+
+		if (receiveBuffer.capacity() < payloadSize)
+			receiveBuffer = ByteBuffer.allocateDirect(Math.max(payloadSize,
+					receiveBuffer.capacity() * 2));
+		receiveBuffer.clear();
+		receiveBuffer.limit(payloadSize);
+		readFully(receiveBuffer);
+		receiveBuffer.flip();
+
+		Object[] items = new Object[count];
+		DataCodecs.forId(codecId).decode(receiveBuffer, items, 0, count);
+		return items;
+	}
+
+	/**
+	 * Do not close the underlying channel. Instead inform the other side that
+	 * the current communication session is over; its {@link #readBatch()}
+	 * returns null. See {@link Connection#softClose()}.
+	 * 
+	 * @throws IOException
+	 */
+	public void softClose() throws IOException {
+		header.clear();
+		header.putInt(END_OF_SESSION).put((byte) 0).putInt(0);
+		header.flip();
+		writeFully(header);
+	}
+
+	public void closeConnection() {
+		isconnected = false;
+		try {
+			channel.close();
+		} catch (IOException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	public boolean isStillConnected() {
+		return isconnected;
+	}
+
+	public InetAddress getInetAddress() {
+		return channel.socket().getInetAddress();
+	}
+
+	private void writeFully(ByteBuffer buf) throws IOException {
+		try {
+			while (buf.hasRemaining())
+				channel.write(buf);
+		} catch (IOException ex) {
+			isconnected = false;
+			throw ex;
+		}
+	}
+
+	private void readFully(ByteBuffer buf) throws IOException {
+		try {
+			while (buf.hasRemaining())
+				if (channel.read(buf) < 0) {
+					isconnected = false;
+					throw new EOFException(
+							"DataConnection: Other side closed the connection");
+				}
+		} catch (IOException ex) {
+			isconnected = false;
+			throw ex;
+		}
+	}
+}
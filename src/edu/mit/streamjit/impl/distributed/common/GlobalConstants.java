@@ -23,6 +23,7 @@ package edu.mit.streamjit.impl.distributed.common;
 
 import edu.mit.streamjit.impl.common.AbstractDrainer;
 import edu.mit.streamjit.impl.distributed.TailChannel;
+import edu.mit.streamjit.impl.distributed.common.BoundaryChannel.BoundaryOutputChannel;
 import edu.mit.streamjit.impl.distributed.node.StreamNode;
 import edu.mit.streamjit.impl.distributed.runtimer.StreamNodeAgent;
 import edu.mit.streamjit.tuner.TCPTuner;
@@ -120,6 +121,13 @@ public final class GlobalConstants {
 	 */
 	public static final boolean saveAllConfigurations = true;
 
+	/**
+	 * Maximum number of stream items a {@link BoundaryOutputChannel} packs into
+	 * a single {@link DataConnection} frame. Larger batches amortise the frame
+	 * header and system call overhead, smaller batches reduce latency.
+	 */
+	public static final int dataBatchSize = 4096;
+
 	static {
 
 	}
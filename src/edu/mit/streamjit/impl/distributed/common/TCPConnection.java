@@ -253,6 +253,8 @@ public class TCPConnection implements Connection {
 
 		private ConcurrentMap<TCPConnectionInfo, TCPConnection> allConnections;
 
+		private ConcurrentMap<TCPConnectionInfo, DataConnection> allDataConnections;
+
 		private final int myNodeID;
 
 		private final Map<Integer, InetAddress> iNetAddressMap;
@@ -263,6 +265,7 @@ public class TCPConnection implements Connection {
 			this.myNodeID = myNodeID;
 			this.iNetAddressMap = iNetAddressMap;
 			this.allConnections = new ConcurrentHashMap<>();
+			this.allDataConnections = new ConcurrentHashMap<>();
 		}
 
 		/**
@@ -316,10 +319,62 @@ public class TCPConnection implements Connection {
 			return con;
 		}
 
+		/**
+		 * See {@link #getDataConnection(TCPConnectionInfo, int)}.
+		 * 
+		 * @param conInfo
+		 * @return
+		 * @throws IOException
+		 */
+		public DataConnection getDataConnection(TCPConnectionInfo conInfo)
+				throws IOException {
+			return getDataConnection(conInfo, 0);
+		}
+
+		/**
+		 * Data plane counterpart of
+		 * {@link #getConnection(TCPConnectionInfo, int)}. Data connections
+		 * are kept separately from the {@link TCPConnection}s, so a token
+		 * must consistently use one or the other.
+		 *
+		 * @param conInfo - Information that uniquely identifies a connection.
+		 * @param timeOut - Time out only valid if making connection needs to be
+		 * 			done through a listener socket. i.e, conInfo.getSrcID() == myNodeID.
+		 * @return
+		 * @throws SocketTimeoutException
+		 * @throws IOException
+		 */
+		public DataConnection getDataConnection(TCPConnectionInfo conInfo,
+				int timeOut) throws SocketTimeoutException, IOException {
+			DataConnection con = allDataConnections.get(conInfo);
+			if (con != null) {
+				if (con.isStillConnected())
+					return con;
+				allDataConnections.remove(conInfo, con);
+			}
+
+			if (conInfo.getSrcID() == myNodeID) {
+				con = ConnectionFactory.getDataConnection(conInfo.getPortNo(),
+						timeOut);
+			} else if (conInfo.getDstID() == myNodeID) {
+				InetAddress ipAddress = iNetAddressMap.get(conInfo.getSrcID());
+				if (ipAddress.isLoopbackAddress())
+					ipAddress = iNetAddressMap.get(0);
+
+				con = ConnectionFactory.getDataConnection(
+						ipAddress.getHostAddress(), conInfo.getPortNo());
+			}
+			allDataConnections.put(conInfo, con);
+			return con;
+		}
+
 		public void closeAllConnections() {
 			for (TCPConnection con : allConnections.values()) {
 				con.closeConnection();
 			}
+			for (DataConnection con : allDataConnections.values()) {
+				con.closeConnection();
+			}
 		}
 	}
 }
\ No newline at end of file
@@ -35,7 +35,7 @@ import com.google.common.collect.Sets;
 import edu.mit.streamjit.api.Worker;
 import edu.mit.streamjit.impl.blob.Blob;
 import edu.mit.streamjit.impl.blob.Buffer;
-import edu.mit.streamjit.impl.blob.ConcurrentArrayBuffer;
+import edu.mit.streamjit.impl.blob.Buffers;
 import edu.mit.streamjit.impl.blob.Blob.Token;
 import edu.mit.streamjit.impl.blob.DrainData;
 import edu.mit.streamjit.impl.common.BlobThread;
@@ -129,16 +129,21 @@ public class BlobsManagerImpl implements BlobsManager {
 
 		Map<Token, Integer> minInputBufCapaciy = new HashMap<>();
 		Map<Token, Integer> minOutputBufCapaciy = new HashMap<>();
+		Map<Token, Class<?>> elementTypes = new HashMap<>();
 
 		for (Blob b : blobSet) {
 			Set<Blob.Token> inputs = b.getInputs();
 			for (Token t : inputs) {
 				minInputBufCapaciy.put(t, b.getMinimumBufferCapacity(t));
+				elementTypes.merge(t, b.getElementType(t),
+						Buffers::edgeElementType);
 			}
 
 			Set<Blob.Token> outputs = b.getOutputs();
 			for (Token t : outputs) {
 				minOutputBufCapaciy.put(t, b.getMinimumBufferCapacity(t));
+				elementTypes.merge(t, b.getElementType(t),
+						Buffers::edgeElementType);
 			}
 		}
 
@@ -152,17 +157,17 @@ public class BlobsManagerImpl implements BlobsManager {
 		for (Token t : localTokens) {
 			int bufSize = lcm(minInputBufCapaciy.get(t),
 					minOutputBufCapaciy.get(t));
-			addBuffer(t, bufSize, bufferMapBuilder);
+			addBuffer(t, bufSize, elementTypes.get(t), bufferMapBuilder);
 		}
 
 		for (Token t : globalInputTokens) {
 			int bufSize = minInputBufCapaciy.get(t);
-			addBuffer(t, bufSize, bufferMapBuilder);
+			addBuffer(t, bufSize, elementTypes.get(t), bufferMapBuilder);
 		}
 
 		for (Token t : globalOutputTokens) {
 			int bufSize = minOutputBufCapaciy.get(t);
-			addBuffer(t, bufSize, bufferMapBuilder);
+			addBuffer(t, bufSize, elementTypes.get(t), bufferMapBuilder);
 		}
 		return bufferMapBuilder.build();
 	}
@@ -172,13 +177,16 @@ public class BlobsManagerImpl implements BlobsManager {
 	 * 
 	 * @param t
 	 * @param minSize
+	 * @param elementType
 	 * @param bufferMapBuilder
 	 */
-	private void addBuffer(Token t, int minSize,
+	private void addBuffer(Token t, int minSize, Class<?> elementType,
 			ImmutableMap.Builder<Token, Buffer> bufferMapBuilder) {
 		// TODO: Just to increase the performance. Change it later
 		int bufSize = Math.max(1000, minSize);
-		bufferMapBuilder.put(t, new ConcurrentArrayBuffer(bufSize));
+		// Every edge has a single writer (a blob or a boundary input channel)
+		// and a single reader (a blob or a boundary output channel).
+		bufferMapBuilder.put(t, Buffers.spscBuffer(elementType, bufSize));
 	}
 
 	private int gcd(int a, int b) {
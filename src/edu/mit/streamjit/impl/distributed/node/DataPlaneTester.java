@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.distributed.node;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+
+import edu.mit.streamjit.impl.blob.Buffer;
+import edu.mit.streamjit.impl.blob.ConcurrentArrayBuffer;
+import edu.mit.streamjit.impl.distributed.common.ConnectionFactory;
+import edu.mit.streamjit.impl.distributed.common.DataCodec;
+import edu.mit.streamjit.impl.distributed.common.DataCodecs;
+import edu.mit.streamjit.impl.distributed.common.DataConnection;
+import edu.mit.streamjit.impl.distributed.common.GlobalConstants;
+import edu.mit.streamjit.impl.distributed.common.TCPConnection.TCPConnectionInfo;
+import edu.mit.streamjit.impl.distributed.common.TCPConnection.TCPConnectionProvider;
+
+/**
+ * Loopback tests of the data plane: sends items through a
+ * {@link TCPOutputChannel} and {@link TCPInputChannel} pair (or a bare
+ * {@link DataConnection}) and checks that they arrive intact and in order.
+ * Covers the primitive, custom and serialized codecs, reconnecting with a
+ * pending batch, and a batch that can't be encoded.
+ * <p>
+ * The custom codec is registered through a services file in a temporary
+ * directory put on the context class loader, so it must be run before
+ * anything else touches {@link DataCodecs}.
+ * 
+ * @since Oct 17, 2026
+ */
+public class DataPlaneTester {
+
+	private static final String LOOPBACK = "127.0.0.1";
+
+	private static final long TIMEOUT_MS = 60_000;
+
+	public static void main(String[] args) throws Exception {
+		registerPointCodec();
+
+		int n = 3 * GlobalConstants.dataBatchSize + 17;
+		List<Object> ints = new ArrayList<>(), floats = new ArrayList<>();
+		List<Object> doubles = new ArrayList<>(), bytes = new ArrayList<>();
+		List<Object> points = new ArrayList<>(), strings = new ArrayList<>();
+		for (int i = 0; i < n; ++i) {
+			ints.add(i * 31 - 7);
+			floats.add(i * 0.5f);
+			doubles.add(i / 3.0);
+			bytes.add((byte) i);
+			points.add(new Point(i, -i));
+			strings.add("item " + i);
+		}
+
+		roundTrip(ints, DataCodecs.INT);
+		roundTrip(floats, DataCodecs.FLOAT);
+		roundTrip(doubles, DataCodecs.DOUBLE);
+		roundTrip(bytes, DataCodecs.BYTE);
+		roundTrip(points, DataCodecs.forId((byte) PointCodec.ID));
+		roundTrip(strings, DataCodecs.SERIALIZED);
+		reconnectWithPendingBatch();
+		unencodableBatch();
+		System.out.println("DataPlaneTester: all tests passed");
+	}
+
+	/**
+	 * Sends items from an output channel to an input channel and checks that
+	 * they arrive unchanged, using the expected codec.
+	 */
+	private static void roundTrip(List<Object> items, DataCodec expected)
+			throws Exception {
+		Object[] array = items.toArray();
+		check(DataCodecs.forBatch(array, 0, array.length) == expected,
+				"expected %s, got %s", expected,
+				DataCodecs.forBatch(array, 0, array.length));
+
+		Map<Integer, InetAddress> addrs = loopbackAddresses();
+		TCPConnectionProvider server = new TCPConnectionProvider(0, addrs);
+		TCPConnectionProvider client = new TCPConnectionProvider(1, addrs);
+		TCPConnectionInfo conInfo = new TCPConnectionInfo(0, 1, freePort());
+
+		Buffer outBuffer = new ConcurrentArrayBuffer(array.length);
+		final Buffer inBuffer = new ConcurrentArrayBuffer(array.length);
+		check(outBuffer.write(array, 0, array.length) == array.length,
+				"couldn't fill the output buffer");
+		TCPOutputChannel out = new TCPOutputChannel(outBuffer, server,
+				conInfo, "roundTrip", 0);
+		TCPInputChannel in = new TCPInputChannel(inBuffer, client, conInfo,
+				"roundTrip", 0);
+		Thread outThread = new Thread(out.getRunnable(), out.name());
+		Thread inThread = new Thread(in.getRunnable(), in.name());
+		outThread.start();
+		inThread.start();
+
+		await(() -> inBuffer.size() == array.length, "items to arrive");
+		out.stop(true);
+		in.stop(1);
+		outThread.join(TIMEOUT_MS);
+		inThread.join(TIMEOUT_MS);
+		check(!outThread.isAlive() && !inThread.isAlive(),
+				"channels didn't stop");
+		check(out.getUnprocessedData().isEmpty(), "unsent items");
+
+		Object[] received = new Object[inBuffer.size()];
+		inBuffer.readAll(received);
+		check(Arrays.equals(array, received), "%s round trip mismatch",
+				expected);
+		server.closeAllConnections();
+		client.closeAllConnections();
+		System.out.println("roundTrip "
+				+ expected.getClass().getSimpleName() + ": ok");
+	}
+
+	/**
+	 * Resets the output channel's connection before it sends anything, so
+	 * its first batch fails and stays pending; then checks that a new
+	 * connection receives every item, in order.
+	 */
+	private static void reconnectWithPendingBatch() throws Exception {
+		int port = freePort();
+		TCPConnectionProvider server = new TCPConnectionProvider(0,
+				loopbackAddresses());
+		int n = 2 * GlobalConstants.dataBatchSize + 5;
+		Buffer buffer = new ConcurrentArrayBuffer(n);
+		TCPOutputChannel out = new TCPOutputChannel(buffer, server,
+				new TCPConnectionInfo(0, 1, port), "reconnect", 0);
+		Thread outThread = new Thread(out.getRunnable(), out.name());
+		outThread.start();
+
+		SocketChannel doomed = connect(port);
+		// Close with RST rather than FIN, so the channel's next write fails.
+		doomed.socket().setSoLinger(true, 0);
+		doomed.close();
+		Thread.sleep(500);
+
+		for (int i = 0; i < n; ++i)
+			check(buffer.write(i), "couldn't fill the output buffer");
+
+		DataConnection con = ConnectionFactory.getDataConnection(LOOPBACK,
+				port);
+		List<Object> received = new ArrayList<>();
+		while (received.size() < n) {
+			Object[] items = con.readBatch();
+			check(items != null, "session ended after %d items",
+					received.size());
+			received.addAll(Arrays.asList(items));
+		}
+		for (int i = 0; i < n; ++i)
+			check(received.get(i).equals(i), "item %d is %s", i,
+					received.get(i));
+
+		out.stop(true);
+		check(con.readBatch() == null, "expected the end of the session");
+		outThread.join(TIMEOUT_MS);
+		check(!outThread.isAlive(), "output channel didn't stop");
+		check(out.getUnprocessedData().isEmpty(), "unsent items");
+		con.closeConnection();
+		server.closeAllConnections();
+		System.out.println("reconnectWithPendingBatch: ok");
+	}
+
+	/**
+	 * A batch that can't be serialized stops the output channel without
+	 * sending anything or losing the batch.
+	 */
+	private static void unencodableBatch() throws Exception {
+		int port = freePort();
+		TCPConnectionProvider server = new TCPConnectionProvider(0,
+				loopbackAddresses());
+		Object[] items = {"first", new Object(), "last"};
+		Buffer buffer = new ConcurrentArrayBuffer(items.length);
+		check(buffer.write(items, 0, items.length) == items.length,
+				"couldn't fill the output buffer");
+		TCPOutputChannel out = new TCPOutputChannel(buffer, server,
+				new TCPConnectionInfo(0, 1, port), "unencodable", 0);
+		Thread outThread = new Thread(out.getRunnable(), out.name());
+		outThread.start();
+
+		DataConnection con = ConnectionFactory.getDataConnection(LOOPBACK,
+				port);
+		outThread.join(TIMEOUT_MS);
+		check(!outThread.isAlive(), "output channel didn't stop");
+		check(out.isEncodingFailed(), "expected an encoding failure");
+		check(con.readBatch() == null, "expected the end of the session");
+		check(Arrays.equals(items, out.getUnprocessedData().toArray()),
+				"unprocessed data is %s", out.getUnprocessedData());
+		con.closeConnection();
+		server.closeAllConnections();
+		System.out.println("unencodableBatch: ok");
+	}
+
+	private static Map<Integer, InetAddress> loopbackAddresses()
+			throws IOException {
+		Map<Integer, InetAddress> addrs = new HashMap<>();
+		addrs.put(0, InetAddress.getByName(LOOPBACK));
+		addrs.put(1, InetAddress.getByName(LOOPBACK));
+		return addrs;
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket s = new ServerSocket(0)) {
+			return s.getLocalPort();
+		}
+	}
+
+	/**
+	 * Connects to a port the output channel may not be listening on yet.
+	 */
+	private static SocketChannel connect(int port) throws Exception {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+		while (true) {
+			try {
+				return SocketChannel.open(new InetSocketAddress(LOOPBACK,
+						port));
+			} catch (IOException e) {
+				if (System.currentTimeMillis() > deadline)
+					throw e;
+				Thread.sleep(100);
+			}
+		}
+	}
+
+	private static void await(BooleanSupplier condition, String what)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+		while (!condition.getAsBoolean()) {
+			check(System.currentTimeMillis() < deadline,
+					"timed out waiting for %s", what);
+			Thread.sleep(10);
+		}
+	}
+
+	private static void check(boolean condition, String format,
+			Object... args) {
+		if (!condition)
+			throw new AssertionError(String.format(format, args));
+	}
+
+	/**
+	 * Makes {@link PointCodec} visible to {@link DataCodecs}'s
+	 * ServiceLoader.
+	 */
+	private static void registerPointCodec() throws IOException {
+		Path dir = Files.createTempDirectory("DataPlaneTester");
+		Path services = dir.resolve("META-INF/services/"
+				+ DataCodec.class.getName());
+		Files.createDirectories(services.getParent());
+		Files.write(services,
+				PointCodec.class.getName().getBytes(StandardCharsets.UTF_8));
+		dir.toFile().deleteOnExit();
+		Thread.currentThread().setContextClassLoader(
+				new URLClassLoader(new URL[]{dir.toUri().toURL()},
+						DataPlaneTester.class.getClassLoader()));
+		// Load the codecs while the class loader is in place.
+		DataCodecs.forBatch(new Object[0], 0, 0);
+		check(DataCodecs.forId((byte) PointCodec.ID) instanceof PointCodec,
+				"PointCodec wasn't registered");
+	}
+
+	private static final class Point implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final int x, y;
+		private Point(int x, int y) {
+			this.x = x;
+			this.y = y;
+		}
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Point))
+				return false;
+			Point other = (Point) obj;
+			return x == other.x && y == other.y;
+		}
+		@Override
+		public int hashCode() {
+			return Objects.hash(x, y);
+		}
+		@Override
+		public String toString() {
+			return "(" + x + ", " + y + ")";
+		}
+	}
+
+	public static final class PointCodec implements DataCodec {
+		private static final int ID = 100;
+		@Override
+		public byte id() {
+			return (byte) ID;
+		}
+		@Override
+		public boolean canEncode(Object[] data, int offset, int length) {
+			for (int i = offset; i < offset + length; ++i)
+				if (!(data[i] instanceof Point))
+					return false;
+			return true;
+		}
+		@Override
+		public ByteBuffer encode(Object[] data, int offset, int length,
+				ByteBuffer dst) {
+			dst = DataCodecs.ensureRemaining(dst, length * 2 * Integer.BYTES);
+			for (int i = offset; i < offset + length; ++i) {
+				Point p = (Point) data[i];
+				dst.putInt(p.x).putInt(p.y);
+			}
+			return dst;
+		}
+		@Override
+		public void decode(ByteBuffer src, Object[] dst, int offset,
+				int length) {
+			for (int i = offset; i < offset + length; ++i)
+				dst[i] = new Point(src.getInt(), src.getInt());
+		}	}
+}
@@ -24,7 +24,6 @@ package edu.mit.streamjit.impl.distributed.node;
 import java.io.EOFException;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.OptionalDataException;
 import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Queue;
@@ -35,7 +34,7 @@ import com.google.common.collect.ImmutableList;
 import edu.mit.streamjit.impl.blob.AbstractBuffer;
 import edu.mit.streamjit.impl.blob.Buffer;
 import edu.mit.streamjit.impl.distributed.common.BoundaryChannel.BoundaryInputChannel;
-import edu.mit.streamjit.impl.distributed.common.Connection;
+import edu.mit.streamjit.impl.distributed.common.DataConnection;
 import edu.mit.streamjit.impl.distributed.common.TCPConnection.TCPConnectionInfo;
 import edu.mit.streamjit.impl.distributed.common.TCPConnection.TCPConnectionProvider;
 
@@ -43,6 +42,10 @@ import edu.mit.streamjit.impl.distributed.common.TCPConnection.TCPConnectionProv
  * This is {@link BoundaryInputChannel} over TCP. Receive objects from TCP
  * connection and write them into the given {@link Buffer}.
  * <p>
+ * Data arrives in batches over a {@link DataConnection}; see
+ * {@link TCPOutputChannel}.
+ * </p>
+ * <p>
  * Note: TCPInputChannel acts as client when making TCP connection.
  * </p>
  * <p>
@@ -67,7 +70,7 @@ public class TCPInputChannel implements BoundaryInputChannel {
 
 	private final TCPConnectionInfo conInfo;
 
-	private Connection tcpConnection;
+	private DataConnection tcpConnection;
 
 	private final AtomicInteger stopType;
 
@@ -77,7 +80,7 @@ public class TCPInputChannel implements BoundaryInputChannel {
 
 	private boolean isClosed;
 
-	int count;
+	private int count;
 
 	private ImmutableList<Object> unProcessedData;
 
@@ -126,7 +129,7 @@ public class TCPInputChannel implements BoundaryInputChannel {
 			public void run() {
 				if (tcpConnection == null || !tcpConnection.isStillConnected()) {
 					try {
-						tcpConnection = conProvider.getConnection(conInfo);
+						tcpConnection = conProvider.getDataConnection(conInfo);
 					} catch (IOException e) {
 						// TODO: Need to handle this exception.
 						e.printStackTrace();
@@ -163,25 +166,22 @@ public class TCPInputChannel implements BoundaryInputChannel {
 
 	@Override
 	public void receiveData() {
-		int bufFullCount = 0;
 		try {
-			Object obj = tcpConnection.readObject();
-			count++;
-
-			if (debugPrint == 3) {
-				System.out.println(Thread.currentThread().getName() + " - "
-						+ obj.toString());
-			}
-
-			if (writer != null) {
-				writer.write(obj.toString());
-				writer.write('\n');
+			Object[] items = tcpConnection.readBatch();
+			if (items == null) {
+				softClosed = true;
+				return;
 			}
+			count += items.length;
+			log(items, "");
 
-			while (!this.buffer.write(obj)) {
+			int written = 0;
+			int bufFullCount = 0;
+			while ((written += this.buffer.write(items, written, items.length
+					- written)) < items.length) {
 				if (debugPrint == 3) {
 					System.out.println(Thread.currentThread().getName()
-							+ " Buffer FULL - " + obj.toString());
+							+ " Buffer FULL - " + items[written].toString());
 				}
 				if (writer != null) {
 					writer.write("receiveData:Buffer FULL");
@@ -195,7 +195,7 @@ public class TCPInputChannel implements BoundaryInputChannel {
 				}
 				if (stopType.get() > 1 && ++bufFullCount > 5) {
 					this.extraBuffer = new ExtraBuffer();
-					extraBuffer.write(obj);
+					extraBuffer.write(items, written, items.length - written);
 					System.err
 							.println("@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@");
 					System.err
@@ -207,14 +207,11 @@ public class TCPInputChannel implements BoundaryInputChannel {
 				}
 			}
 
-			if (count % 1000 == 0 && debugPrint == 2) {
+			if (count / 1000 != (count - items.length) / 1000
+					&& debugPrint == 2) {
 				System.out.println(Thread.currentThread().getName() + " - "
 						+ count + " no of items have been received");
 			}
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
-		} catch (OptionalDataException e) {
-			softClosed = true;
 		} catch (EOFException e) {
 			// Other side is closed.
 			System.out
@@ -232,6 +229,28 @@ public class TCPInputChannel implements BoundaryInputChannel {
 		}
 	}
 
+	/**
+	 * @return the number of items received over the life of this channel.
+	 */
+	protected final int receivedCount() {
+		return count;
+	}
+
+	private void log(Object[] items, String prefix) throws IOException {
+		if (debugPrint != 3 && writer == null)
+			return;
+		for (Object obj : items) {
+			if (debugPrint == 3) {
+				System.out.println(Thread.currentThread().getName() + " - "
+						+ prefix + obj.toString());
+			}
+			if (writer != null) {
+				writer.write(obj.toString());
+				writer.write('\n');
+			}
+		}
+	}
+
 	/**
 	 * Once this channel is asked to stop, we have to read all data that exists
 	 * in the kernel's TCP buffer. Otherwise those data will be lost forever.
@@ -248,26 +267,24 @@ public class TCPInputChannel implements BoundaryInputChannel {
 		do {
 			bufFullCount = 0;
 			try {
-				Object obj = tcpConnection.readObject();
-				count++;
-
-				if (debugPrint == 2) {
-					System.out.println(Thread.currentThread().getName()
-							+ " finalReceive - " + obj.toString());
-				}
-
-				if (writer != null) {
-					writer.write(obj.toString());
-					writer.write('\n');
+				Object[] items = tcpConnection.readBatch();
+				if (items == null) {
+					softClosed = true;
+					hasData = false;
+					continue;
 				}
+				count += items.length;
+				log(items, "finalReceive - ");
 
 				hasData = true;
 
-				while (!buffer.write(obj)) {
+				int written = 0;
+				while ((written += buffer.write(items, written, items.length
+						- written)) < items.length) {
 					if (debugPrint == 3) {
 						System.out.println(Thread.currentThread().getName()
 								+ " finalReceive:Buffer FULL - "
-								+ obj.toString());
+								+ items[written].toString());
 					}
 
 					if (writer != null) {
@@ -285,7 +302,6 @@ public class TCPInputChannel implements BoundaryInputChannel {
 						assert buffer != this.extraBuffer : "ExtraBuffer is full. This shouldn't be the case.";
 						assert this.extraBuffer == null : "Extra buffer has already been created.";
 						this.extraBuffer = new ExtraBuffer();
-						extraBuffer.write(obj);
 						buffer = extraBuffer;
 						System.err
 								.println("@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@");
@@ -297,17 +313,12 @@ public class TCPInputChannel implements BoundaryInputChannel {
 					}
 				}
 
-				if (count % 1000 == 0 && debugPrint == 2) {
+				if (count / 1000 != (count - items.length) / 1000
+						&& debugPrint == 2) {
 					System.out.println(Thread.currentThread().getName() + " - "
 							+ count + " no of items have been received");
 				}
 
-			} catch (ClassNotFoundException e) {
-				hasData = true;
-				e.printStackTrace();
-			} catch (OptionalDataException e) {
-				softClosed = true;
-				hasData = false;
 			} catch (IOException e) {
 				System.out
 						.println("finalReceive:Closing by IOException. Not by softClose.");
@@ -325,14 +336,9 @@ public class TCPInputChannel implements BoundaryInputChannel {
 		boolean hasData;
 		do {
 			try {
-				Object obj = tcpConnection.readObject();
-				hasData = true;
-			} catch (ClassNotFoundException e) {
-				hasData = true;
-				e.printStackTrace();
-			} catch (OptionalDataException e) {
-				softClosed = true;
-				hasData = false;
+				hasData = tcpConnection.readBatch() != null;
+				if (!hasData)
+					softClosed = true;
 			} catch (IOException e) {
 				System.out
 						.println("finalReceive:Closing by IOException. Not by softClose.");
@@ -346,7 +352,7 @@ public class TCPInputChannel implements BoundaryInputChannel {
 			try {
 				System.out.println("TCPInputChannel : Reconnecting...");
 				this.tcpConnection.closeConnection();
-				tcpConnection = conProvider.getConnection(conInfo);
+				tcpConnection = conProvider.getDataConnection(conInfo);
 				return;
 			} catch (IOException e) {
 				try {
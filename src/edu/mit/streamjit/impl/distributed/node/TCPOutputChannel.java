@@ -23,14 +23,17 @@ package edu.mit.streamjit.impl.distributed.node;
 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.ObjectStreamException;
 import java.net.SocketTimeoutException;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.google.common.collect.ImmutableList;
 
 import edu.mit.streamjit.impl.blob.Buffer;
 import edu.mit.streamjit.impl.distributed.common.BoundaryChannel.BoundaryOutputChannel;
-import edu.mit.streamjit.impl.distributed.common.Connection;
+import edu.mit.streamjit.impl.distributed.common.DataConnection;
+import edu.mit.streamjit.impl.distributed.common.GlobalConstants;
 import edu.mit.streamjit.impl.distributed.common.TCPConnection.TCPConnectionInfo;
 import edu.mit.streamjit.impl.distributed.common.TCPConnection.TCPConnectionProvider;
 
@@ -38,6 +41,11 @@ import edu.mit.streamjit.impl.distributed.common.TCPConnection.TCPConnectionProv
  * This is {@link BoundaryOutputChannel} over TCP. Reads data from the given
  * {@link Buffer} and send them over the TCP connection.
  * <p>
+ * Data is sent in batches of up to {@link GlobalConstants#dataBatchSize}
+ * items over a {@link DataConnection}, rather than one serialized object at a
+ * time.
+ * </p>
+ * <p>
  * Note: TCPOutputChannel acts as server when making TCP connection.
  * </p>
  * <p>
@@ -58,7 +66,26 @@ public class TCPOutputChannel implements BoundaryOutputChannel {
 
 	private final TCPConnectionInfo conInfo;
 
-	private Connection tcpConnection;
+	private DataConnection tcpConnection;
+
+	/**
+	 * Items read from {@link #buffer} for the current batch.
+	 */
+	private final Object[] batch;
+
+	/**
+	 * Number of items in {@link #batch} that have been read from
+	 * {@link #buffer} but not yet sent. A batch whose send failed is kept
+	 * here and resent after reconnecting, before reading more items.
+	 */
+	private int pending;
+
+	/**
+	 * How many times {@link #finalSend()} tries to reconnect after a failed
+	 * send before giving up and leaving the remaining items as unprocessed
+	 * data.
+	 */
+	private static final int FINAL_SEND_RECONNECT_ATTEMPTS = 10;
 
 	private final AtomicBoolean stopFlag;
 
@@ -66,6 +93,8 @@ public class TCPOutputChannel implements BoundaryOutputChannel {
 
 	private volatile boolean isFinal;
 
+	private volatile boolean encodingFailed;
+
 	private int count;
 
 	protected ImmutableList<Object> unProcessedData;
@@ -80,6 +109,8 @@ public class TCPOutputChannel implements BoundaryOutputChannel {
 		this.name = "TCPOutputChannel - " + bufferTokenName;
 		this.debugPrint = debugPrint;
 		this.unProcessedData = null;
+		this.batch = new Object[GlobalConstants.dataBatchSize];
+		this.pending = 0;
 		count = 0;
 
 		FileWriter w = null;
@@ -114,7 +145,7 @@ public class TCPOutputChannel implements BoundaryOutputChannel {
 			public void run() {
 				if (tcpConnection == null || !tcpConnection.isStillConnected()) {
 					try {
-						tcpConnection = conProvider.getConnection(conInfo);
+						tcpConnection = conProvider.getDataConnection(conInfo);
 					} catch (IOException e) {
 						e.printStackTrace();
 					}
@@ -122,7 +153,7 @@ public class TCPOutputChannel implements BoundaryOutputChannel {
 				while (!stopFlag.get())
 					sendData();
 
-				if (isFinal)
+				if (isFinal && !encodingFailed)
 					finalSend();
 
 				try {
@@ -152,30 +183,55 @@ public class TCPOutputChannel implements BoundaryOutputChannel {
 	}
 
 	public final void sendData() {
-		while (this.buffer.size() > 0 && !stopFlag.get()) {
+		while ((pending > 0 || this.buffer.size() > 0) && !stopFlag.get()) {
 			try {
-				Object obj = buffer.read();
-				tcpConnection.writeObject(obj);
-				count++;
-
-				if (debugPrint == 3) {
-					System.out.println(Thread.currentThread().getName() + " - "
-							+ obj.toString());
-				}
-
-				if (writer != null) {
-					writer.write(obj.toString());
-					writer.write('\n');
-				}
+				sendBatch();
+			} catch (ObjectStreamException e) {
+				encodingFailed(e);
 			} catch (IOException e) {
 				System.err
 						.println("TCP Output Channel. WriteObject exception.");
 				reConnect();
 			}
-			if (count % 1000 == 0 && debugPrint == 2) {
+		}
+	}
+
+	/**
+	 * Sends the pending batch, first reading up to a batch of items from
+	 * {@link #buffer} if there is no pending batch. If the send fails, the
+	 * batch stays pending so it can be resent after reconnecting.
+	 */
+	private void sendBatch() throws IOException {
+		if (pending == 0)
+			pending = buffer.read(batch, 0, batch.length);
+		if (pending == 0)
+			return;
+		int read = pending;
+		tcpConnection.writeBatch(batch, 0, read);
+		pending = 0;
+		try {
+			int before = count;
+			count += read;
+
+			if (debugPrint == 3 || writer != null) {
+				for (int i = 0; i < read; ++i) {
+					if (debugPrint == 3)
+						System.out.println(Thread.currentThread().getName()
+								+ " - " + batch[i].toString());
+					if (writer != null) {
+						writer.write(batch[i].toString());
+						writer.write('\n');
+					}
+				}
+			}
+
+			if (count / 1000 != before / 1000 && debugPrint == 2) {
 				System.out.println(Thread.currentThread().getName() + " - "
 						+ count + " items have been sent");
 			}
+		} finally {
+			// Don't keep items reachable after they have been sent.
+			Arrays.fill(batch, 0, read, null);
 		}
 	}
 
@@ -198,50 +254,74 @@ public class TCPOutputChannel implements BoundaryOutputChannel {
 	 * configurations. Shouldn't be called when autotuner tunes.
 	 */
 	private void finalSend() {
-		while (this.buffer.size() > 0) {
+		int attempts = 0;
+		while (pending > 0 || this.buffer.size() > 0) {
 			try {
-				Object o = buffer.read();
-				tcpConnection.writeObject(o);
-				count++;
-
-				if (debugPrint == 3) {
-					System.out.println(Thread.currentThread().getName()
-							+ " FinalSend - " + o.toString());
-				}
-
-				if (writer != null) {
-					writer.write(o.toString());
-					writer.write('\n');
-				}
-
+				sendBatch();
+				attempts = 0;
+			} catch (ObjectStreamException e) {
+				encodingFailed(e);
+				return;
 			} catch (IOException e) {
 				System.err.println("TCP Output Channel. finalSend exception.");
-			}
-			if (count % 1000 == 0 && debugPrint == 2) {
-				System.out.println(Thread.currentThread().getName()
-						+ " FinalSend - " + count
-						+ " no of items have been sent");
+				// stopFlag is already set, so reConnect() wouldn't retry.
+				// Retry a bounded number of times instead of spinning on a
+				// dead connection; whatever is left becomes unprocessed data.
+				boolean connected = false;
+				while (!connected && attempts++ < FINAL_SEND_RECONNECT_ATTEMPTS)
+					connected = tryConnect();
+				if (!connected)
+					return;
 			}
 		}
 	}
 
+	/**
+	 * The pending batch can't be encoded, so sending it again won't help.
+	 * Stops this channel, leaving the batch and everything after it as
+	 * unprocessed data.
+	 */
+	private void encodingFailed(ObjectStreamException e) {
+		System.err.println(name + " : can't encode a batch. Stopping.");
+		e.printStackTrace();
+		encodingFailed = true;
+		stopFlag.set(true);
+	}
+
+	/**
+	 * @return true if this channel stopped because a batch couldn't be
+	 *         encoded.
+	 */
+	public final boolean isEncodingFailed() {
+		return encodingFailed;
+	}
+
 	private void reConnect() {
+		while (!stopFlag.get()) {
+			if (tryConnect())
+				return;
+		}
+	}
+
+	/**
+	 * Closes the current connection and makes one attempt to establish a new
+	 * one.
+	 * 
+	 * @return true if a new connection was established
+	 */
+	private boolean tryConnect() {
+		this.tcpConnection.closeConnection();
+		System.out.println("TCPOutputChannel : Reconnecting...");
 		try {
-			this.tcpConnection.closeConnection();
-			while (!stopFlag.get()) {
-				System.out.println("TCPOutputChannel : Reconnecting...");
-				try {
-					this.tcpConnection = conProvider.getConnection(conInfo,
-							1000);
-					return;
-				} catch (SocketTimeoutException stex) {
-					// We make this exception to recheck the stopFlag. Otherwise
-					// thread will get struck at server.accept().
-				}
-			}
+			this.tcpConnection = conProvider.getDataConnection(conInfo, 1000);
+			return true;
+		} catch (SocketTimeoutException stex) {
+			// We make this exception to recheck the stopFlag. Otherwise
+			// thread will get struck at server.accept().
 		} catch (IOException e1) {
 			e1.printStackTrace();
 		}
+		return false;
 	}
 
 	@Override
@@ -252,8 +332,12 @@ public class TCPOutputChannel implements BoundaryOutputChannel {
 	// TODO: Huge data copying is happening in this code twice. Need to optimise
 	// this.
 	protected void fillUnprocessedData() {
-		Object[] obArray = new Object[buffer.size()];
-		buffer.readAll(obArray);
+		// A batch whose send failed precedes whatever is still in the buffer.
+		Object[] obArray = new Object[pending + buffer.size()];
+		System.arraycopy(batch, 0, obArray, 0, pending);
+		Arrays.fill(batch, 0, pending, null);
+		buffer.readAll(obArray, pending);
+		pending = 0;
 		assert buffer.size() == 0 : String.format(
 				"buffer size is %d. But 0 is expected", buffer.size());
 		this.unProcessedData = ImmutableList.copyOf(obArray);
@@ -27,6 +27,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableTable;
 import com.google.common.collect.Iterables;
+import com.google.common.math.LongMath;
 import edu.mit.streamjit.api.IllegalStreamGraphException;
 import edu.mit.streamjit.api.Rate;
 import edu.mit.streamjit.api.StatefulFilter;
@@ -35,11 +36,14 @@ import edu.mit.streamjit.impl.blob.Blob;
 import edu.mit.streamjit.impl.blob.BlobFactory;
 import edu.mit.streamjit.impl.blob.Buffer;
 import edu.mit.streamjit.impl.blob.DrainData;
+import edu.mit.streamjit.impl.blob.IdleStrategies;
+import edu.mit.streamjit.impl.blob.IdleStrategy;
 import edu.mit.streamjit.impl.common.Configuration;
 import edu.mit.streamjit.impl.common.Configuration.SwitchParameter;
 import edu.mit.streamjit.impl.common.IOInfo;
 import edu.mit.streamjit.impl.common.MessageConstraint;
 import edu.mit.streamjit.impl.common.Workers;
+import edu.mit.streamjit.util.Fraction;
 import edu.mit.streamjit.util.ReflectionUtils;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
@@ -47,7 +51,9 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.List;
@@ -78,10 +84,21 @@ import java.util.concurrent.atomic.AtomicReference;
  * offer() it to input channels. It's tempting to put the send/receive in the
  * channel implementations themselves, but this may block the interpreter on
  * I/O, and makes implementing peek() on the receiving side tricky.
+ *
+ * If the {@link #PHASE_SCHEDULE_PARAMETER} switch is set and the section has
+ * only fixed rates and no message constraints, the Interpreter instead
+ * computes the section's steady-state repetitions once and executes phases:
+ * each worker, in topological order, fires up to its repetition count as its
+ * channels allow, and external buffers are transferred in bulk.  This mode
+ * does not allocate once the channels have grown to their steady-state size.
  * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
  * @since 3/22/2013
  */
 public class Interpreter implements Blob {
+	/**
+	 * The name of the switch parameter selecting phase-schedule execution.
+	 */
+	public static final String PHASE_SCHEDULE_PARAMETER = "phaseSchedule";
 	private final ImmutableSet<Worker<?, ?>> workers, sinks;
 	private final Configuration config;
 	private final ImmutableSet<Token> inputs, outputs;
@@ -103,6 +120,20 @@ public class Interpreter implements Blob {
 	 * can't fire a source.
 	 */
 	private ImmutableMap<Channel<?>, Buffer> inputBuffers, outputBuffers;
+	/**
+	 * What to do when interpret() can't fire any sinks.
+	 */
+	private final IdleStrategy idleStrategy;
+	/**
+	 * The phase schedule, in topological order, or null if we're running a
+	 * pull schedule.
+	 */
+	private final PhaseStep[] phaseSchedule;
+	/**
+	 * Scratch space for bulk transfers between buffers and channels in the
+	 * phase schedule.
+	 */
+	private Object[] transferScratch;
 	public Interpreter(Iterable<Worker<?, ?>> workersIter, Iterable<MessageConstraint> constraintsIter, Configuration config) {
 		this(workersIter, constraintsIter, config, null);
 	}
@@ -110,6 +141,7 @@ public class Interpreter implements Blob {
 		this.workers = ImmutableSet.copyOf(workersIter);
 		this.sinks = Workers.getBottommostWorkers(workers);
 		this.config = config;
+		this.idleStrategy = IdleStrategies.fromConfiguration(config);
 
 		//Validate constraints.
 		for (MessageConstraint mc : constraintsIter)
@@ -198,6 +230,112 @@ public class Interpreter implements Blob {
 		this.outputs = outputTokens.build();
 		this.minimumBufferSizes = minimumBufferSize.build();
 		this.ioinfo = IOInfo.externalEdges(workers);
+
+		SwitchParameter<Boolean> phaseParam = config.getParameter(PHASE_SCHEDULE_PARAMETER, SwitchParameter.class, Boolean.class);
+		this.phaseSchedule = phaseParam != null && phaseParam.getValue() && constraintsForRecipient.isEmpty()
+				? makePhaseSchedule() : null;
+	}
+
+	/**
+	 * One worker's part of the phase schedule.  Buffer entries are null for
+	 * internal channels; caps are the most items we let accumulate on an
+	 * internal output channel.
+	 */
+	private static final class PhaseStep {
+		private final Worker<?, ?> worker;
+		private final int repetitions;
+		private final Channel<?>[] inputs, outputs;
+		private final int[] peeks, pops, pushes, caps;
+		private final Buffer[] inputBuffers, outputBuffers;
+		private PhaseStep(Worker<?, ?> worker, int repetitions) {
+			this.worker = worker;
+			this.repetitions = repetitions;
+			this.inputs = Workers.getInputChannels(worker).toArray(new Channel<?>[0]);
+			this.outputs = Workers.getOutputChannels(worker).toArray(new Channel<?>[0]);
+			this.peeks = worker.getPeekRates().stream().mapToInt(Rate::max).toArray();
+			this.pops = worker.getPopRates().stream().mapToInt(Rate::max).toArray();
+			this.pushes = worker.getPushRates().stream().mapToInt(Rate::max).toArray();
+			this.caps = new int[outputs.length];
+			this.inputBuffers = new Buffer[inputs.length];
+			this.outputBuffers = new Buffer[outputs.length];
+		}
+		/**
+		 * Returns the number of items this worker needs on the given input
+		 * channel to fire the given number of times.
+		 */
+		private int required(int input, int firings) {
+			return (firings - 1) * pops[input] + Math.max(peeks[input], pops[input]);
+		}
+	}
+
+	/**
+	 * Computes the steady-state repetitions of our workers and builds a phase
+	 * schedule, or returns null if we have dynamic rates or our rates are
+	 * inconsistent (in which case we fall back to the pull schedule).
+	 */
+	private PhaseStep[] makePhaseSchedule() {
+		for (Worker<?, ?> w : workers)
+			for (Rate r : Iterables.concat(w.getPeekRates(), w.getPopRates(), w.getPushRates()))
+				if (!r.isFixed())
+					return null;
+
+		//Solve the balance equations over internal edges; each connected
+		//component starts at one repetition of its first worker.
+		Map<Worker<?, ?>, Fraction> fractions = new HashMap<>();
+		ImmutableSet<IOInfo> internalEdges = IOInfo.internalEdges(workers);
+		for (Worker<?, ?> root : workers) {
+			if (fractions.containsKey(root)) continue;
+			fractions.put(root, Fraction.ONE);
+			Deque<Worker<?, ?>> frontier = new ArrayDeque<>();
+			frontier.push(root);
+			while (!frontier.isEmpty()) {
+				Worker<?, ?> w = frontier.pop();
+				for (IOInfo edge : internalEdges) {
+					boolean up = edge.upstream() == w;
+					if (!up && edge.downstream() != w) continue;
+					int push = edge.upstream().getPushRates().get(edge.getUpstreamChannelIndex()).max();
+					int pop = edge.downstream().getPopRates().get(edge.getDownstreamChannelIndex()).max();
+					if (push == 0 || pop == 0)
+						return null;
+					Worker<?, ?> other = up ? edge.downstream() : edge.upstream();
+					Fraction otherReps = up ? fractions.get(w).mul(new Fraction(push, pop))
+							: fractions.get(w).mul(new Fraction(pop, push));
+					Fraction existing = fractions.putIfAbsent(other, otherReps);
+					if (existing == null)
+						frontier.push(other);
+					else if (!existing.equals(otherReps))
+						return null;
+				}
+			}
+		}
+		long lcm = 1, gcd = 0;
+		for (Fraction f : fractions.values())
+			lcm = lcm / LongMath.gcd(lcm, f.denom()) * f.denom();
+		for (Fraction f : fractions.values())
+			gcd = LongMath.gcd(gcd, f.num() * (lcm / f.denom()));
+
+		List<Worker<?, ?>> order = new ArrayList<>(workers);
+		order.sort(Comparator.comparingInt(Workers::getIdentifier));
+		PhaseStep[] schedule = new PhaseStep[order.size()];
+		for (int i = 0; i < schedule.length; ++i) {
+			Fraction f = fractions.get(order.get(i));
+			long reps = f.num() * (lcm / f.denom()) / gcd;
+			if (reps > Integer.MAX_VALUE)
+				return null;
+			schedule[i] = new PhaseStep(order.get(i), (int)reps);
+		}
+		//Let each internal channel hold one phase of its producer's output
+		//plus enough for one more consumer firing, so a consumer waiting on
+		//a partial firing can't block its producer.
+		for (PhaseStep step : schedule)
+			for (IOInfo edge : internalEdges)
+				if (edge.upstream() == step.worker) {
+					int down = edge.getDownstreamChannelIndex();
+					Worker<?, ?> consumer = edge.downstream();
+					step.caps[edge.getUpstreamChannelIndex()] = step.repetitions * step.pushes[edge.getUpstreamChannelIndex()]
+							+ Math.max(consumer.getPeekRates().get(down).max(), consumer.getPopRates().get(down).max());
+				}
+		return schedule;
 	}
 
 	@Override
@@ -231,6 +369,25 @@ public class Interpreter implements Blob {
 		}
 		this.inputBuffers = inputBufferBuilder.build();
 		this.outputBuffers = outputBufferBuilder.build();
+		inputBuffers.values().forEach(idleStrategy::watchInput);
+		outputBuffers.values().forEach(idleStrategy::watchOutput);
+
+		if (phaseSchedule != null) {
+			int scratchSize = 1;
+			for (PhaseStep step : phaseSchedule) {
+				for (int i = 0; i < step.inputs.length; ++i) {
+					step.inputBuffers[i] = inputBuffers.get(step.inputs[i]);
+					if (step.inputBuffers[i] != null)
+						scratchSize = Math.max(scratchSize, step.required(i, step.repetitions));
+				}
+				for (int i = 0; i < step.outputs.length; ++i) {
+					step.outputBuffers[i] = outputBuffers.get(step.outputs[i]);
+					if (step.outputBuffers[i] != null)
+						scratchSize = Math.max(scratchSize, step.repetitions * step.pushes[i]);
+				}
+			}
+			this.transferScratch = new Object[scratchSize];
+		}
 	}
 
 	@Override
@@ -247,12 +404,16 @@ public class Interpreter implements Blob {
 	public Runnable getCoreCode(int core) {
 		checkElementIndex(core, getCoreCount());
 		return new Runnable() {
+			private int idleCount;
 			@Override
 			public void run() {
 				Runnable callback = Interpreter.this.callback.get();
-				if (callback == null)
-					interpret();
-				else {
+				if (callback == null) {
+					if (interpret())
+						idleCount = 0;
+					else
+						idleStrategy.idle(++idleCount);
+				} else {
 					//Do any remaining work.
 					interpret();
 					//Run the callback (which may be empty).
@@ -326,7 +487,9 @@ public class Interpreter implements Blob {
 			Configuration.SwitchParameter<ChannelFactory> facParam
 					= new Configuration.SwitchParameter<>("channelFactory",
 					ChannelFactory.class, channelFactories.get(0), channelFactories);
-			return Configuration.builder().addParameter(facParam).build();
+			return Configuration.builder().addParameter(facParam)
+					.addParameter(SwitchParameter.create(PHASE_SCHEDULE_PARAMETER, true))
+					.build();
 		}
 		@Override
 		public boolean equals(Object o) {
@@ -349,6 +512,8 @@ public class Interpreter implements Blob {
 	 * @return true iff progress was made
 	 */
 	public boolean interpret() {
+		if (phaseSchedule != null)
+			return interpretPhases();
 		//Fire each sink once if possible, then repeat until we can't fire any
 		//sinks.
 		boolean fired, everFired = false;
@@ -368,6 +533,85 @@ public class Interpreter implements Blob {
 		return everFired;
 	}
 
+	/**
+	 * Runs phases until no worker can fire.
+	 * @return true iff any worker fired
+	 */
+	private boolean interpretPhases() {
+		boolean fired, everFired = false;
+		do {
+			fired = false;
+			for (PhaseStep step : phaseSchedule) {
+				int firings = firings(step);
+				for (int i = 0; i < firings; ++i) {
+					Workers.doWork(step.worker);
+					afterFire(step.worker);
+				}
+				for (int i = 0; i < step.outputs.length; ++i)
+					if (step.outputBuffers[i] != null)
+						flush(step.outputs[i], step.outputBuffers[i]);
+				fired |= firings > 0;
+			}
+			everFired |= fired;
+		} while (fired);
+		return everFired;
+	}
+
+	/**
+	 * Tops up the given step's external input channels and returns how many
+	 * times (up to its repetition count) its worker can fire given its input
+	 * items and output space.
+	 */
+	private int firings(PhaseStep step) {
+		int firings = step.repetitions;
+		for (int i = 0; i < step.inputs.length && firings > 0; ++i) {
+			Channel<?> channel = step.inputs[i];
+			if (step.inputBuffers[i] != null)
+				fill(channel, step.inputBuffers[i], step.required(i, firings) - channel.size());
+			int size = channel.size(), required = step.required(i, 1);
+			if (size < required)
+				firings = 0;
+			else if (step.pops[i] > 0)
+				firings = Math.min(firings, (size - required) / step.pops[i] + 1);
+		}
+		for (int i = 0; i < step.outputs.length && firings > 0; ++i) {
+			if (step.pushes[i] == 0) continue;
+			Buffer buffer = step.outputBuffers[i];
+			//External outputs may always hold one firing's items, so tiny
+			//output buffers can't deadlock us.
+			int cap = buffer != null ? Math.max(buffer.capacity() - buffer.size(), step.pushes[i]) : step.caps[i];
+			firings = Math.min(firings, Math.max(0, cap - step.outputs[i].size()) / step.pushes[i]);
+		}
+		return firings;
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private void fill(Channel channel, Buffer buffer, int count) {
+		while (count > 0) {
+			int read = buffer.read(transferScratch, 0, Math.min(count, transferScratch.length));
+			if (read == 0)
+				return;
+			for (int i = 0; i < read; ++i) {
+				channel.push(transferScratch[i]);
+				transferScratch[i] = null;
+			}
+			count -= read;
+		}
+	}
+
+	private void flush(Channel<?> channel, Buffer buffer) {
+		int count = Math.min(buffer.capacity() - buffer.size(), channel.size());
+		while (count > 0) {
+			int chunk = Math.min(count, transferScratch.length);
+			for (int i = 0; i < chunk; ++i)
+				transferScratch[i] = channel.pop();
+			for (int written = 0; written < chunk;)
+				written += buffer.write(transferScratch, written, chunk - written);
+			Arrays.fill(transferScratch, 0, chunk, null);
+			count -= chunk;
+		}
+	}
+
 	private Set<Worker<?, ?>> pushOutputs() {
 		//Flush in a round-robin manner to avoid deadlocks where our consumer is
 		//blocked on another one of our channels.
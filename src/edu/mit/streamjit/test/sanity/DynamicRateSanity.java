@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.test.sanity;
+
+import com.google.common.base.Supplier;
+import com.jeffreybosboom.serviceproviderprocessor.ServiceProvider;
+import edu.mit.streamjit.api.Filter;
+import edu.mit.streamjit.api.OneToOneElement;
+import edu.mit.streamjit.api.Pipeline;
+import edu.mit.streamjit.api.Rate;
+import edu.mit.streamjit.api.StreamCompiler;
+import edu.mit.streamjit.impl.compiler2.Compiler2StreamCompiler;
+import edu.mit.streamjit.impl.interp.InterpreterStreamCompiler;
+import edu.mit.streamjit.test.AbstractBenchmark;
+import edu.mit.streamjit.test.Benchmark;
+import edu.mit.streamjit.test.Benchmark.Dataset;
+import edu.mit.streamjit.test.BenchmarkProvider;
+import edu.mit.streamjit.test.Benchmarker;
+import edu.mit.streamjit.test.Datasets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Tests graphs with dynamic-rate filters between static-rate multirate
+ * pipelines, which Compiler2StreamCompiler compiles as Compiler2 islands
+ * around interpreted dynamic-rate blobs, checked against the interpreter.
+ * @since 10/17/2026
+ */
+@ServiceProvider(BenchmarkProvider.class)
+public final class DynamicRateSanity implements BenchmarkProvider {
+	public DynamicRateSanity() {}
+
+	public static void main(String[] args) {
+		StreamCompiler sc = new Compiler2StreamCompiler().multiplier(4);
+		for (Benchmarker.Result r : Benchmarker.runBenchmarks(new DynamicRateSanity(), sc))
+			r.print(System.out);
+	}
+
+	@Override
+	public Iterator<Benchmark> iterator() {
+		Benchmark[] b = {
+			create("DynamicPushBetweenPipelines", new Supplier<OneToOneElement<Integer, Integer>>() {
+				@Override
+				public OneToOneElement<Integer, Integer> get() {
+					return new Pipeline<>(
+							new Pipeline<>(new WindowFilter(1, 2, 1), new WindowFilter(2, 1, 3)),
+							new RepeatFilter(),
+							new Pipeline<>(new WindowFilter(3, 2, 4), new WindowFilter(1, 1, 2)));
+				}
+			}),
+			create("DynamicPopBetweenPipelines", new Supplier<OneToOneElement<Integer, Integer>>() {
+				@Override
+				public OneToOneElement<Integer, Integer> get() {
+					return new Pipeline<>(
+							new Pipeline<>(new WindowFilter(2, 3, 2), new WindowFilter(1, 1, 3)),
+							new SkipFilter(),
+							new Pipeline<>(new WindowFilter(1, 2, 1), new WindowFilter(4, 1, 5)));
+				}
+			}),
+			create("TwoDynamicFilters", new Supplier<OneToOneElement<Integer, Integer>>() {
+				@Override
+				public OneToOneElement<Integer, Integer> get() {
+					return new Pipeline<>(
+							new WindowFilter(1, 2, 1),
+							new RepeatFilter(),
+							new Pipeline<>(new WindowFilter(2, 1, 3), new WindowFilter(1, 3, 1)),
+							new SkipFilter(),
+							new WindowFilter(3, 2, 3));
+				}
+			}),
+		};
+		return Arrays.asList(b).iterator();
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static Benchmark create(String name, final Supplier<OneToOneElement<Integer, Integer>> graph) {
+		Dataset dataset = Datasets.allIntsInRange(0, 100_000);
+		dataset = dataset.withOutput(Datasets.outputOf(new InterpreterStreamCompiler(), (OneToOneElement)graph.get(), dataset.input()));
+		return new AbstractBenchmark(name, dataset) {
+			@Override
+			public OneToOneElement<Object, Object> instantiate() {
+				return (OneToOneElement)graph.get();
+			}
+		};
+	}
+
+	/**
+	 * Pushes weighted sums of its peek window, so the output depends on every
+	 * item it peeks at and on their order.
+	 */
+	private static final class WindowFilter extends Filter<Integer, Integer> {
+		private final int pops, pushes, peeks;
+		private WindowFilter(int pop, int push, int peek) {
+			super(pop, push, peek);
+			this.pops = pop;
+			this.pushes = push;
+			this.peeks = peek;
+		}
+		@Override
+		public void work() {
+			int sum = 0;
+			for (int i = 0; i < peeks; ++i)
+				sum += (i + 1) * peek(i);
+			for (int i = 0; i < pushes; ++i)
+				push(sum + i);
+			for (int i = 0; i < pops; ++i)
+				pop();
+		}
+	}
+
+	/**
+	 * Pushes between zero and three copies of each item, depending on its
+	 * value.
+	 */
+	private static final class RepeatFilter extends Filter<Integer, Integer> {
+		private RepeatFilter() {
+			super(Rate.create(1), Rate.create(0, 3), Rate.create(0));
+		}
+		@Override
+		public void work() {
+			int x = pop();
+			for (int i = 0; i < Math.floorMod(x, 4); ++i)
+				push(x + i);
+		}
+	}
+
+	/**
+	 * Pushes the sum of a run of one to four items, whose length depends on
+	 * the run's first item.
+	 */
+	private static final class SkipFilter extends Filter<Integer, Integer> {
+		private SkipFilter() {
+			super(Rate.create(1, 4), Rate.create(1), Rate.create(1, 4));
+		}
+		@Override
+		public void work() {
+			int length = 1 + Math.floorMod(peek(0), 4);
+			int sum = 0;
+			for (int i = 0; i < length; ++i)
+				sum += pop();
+			push(sum);
+		}
+	}
+}
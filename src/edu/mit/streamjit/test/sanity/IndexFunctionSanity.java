@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.test.sanity;
+
+import com.google.common.base.Supplier;
+import com.jeffreybosboom.serviceproviderprocessor.ServiceProvider;
+import edu.mit.streamjit.api.Filter;
+import edu.mit.streamjit.api.Identity;
+import edu.mit.streamjit.api.OneToOneElement;
+import edu.mit.streamjit.api.Pipeline;
+import edu.mit.streamjit.api.Splitjoin;
+import edu.mit.streamjit.api.StreamCompiler;
+import edu.mit.streamjit.api.WeightedRoundrobinJoiner;
+import edu.mit.streamjit.api.WeightedRoundrobinSplitter;
+import edu.mit.streamjit.impl.compiler2.Compiler2StreamCompiler;
+import edu.mit.streamjit.impl.interp.InterpreterStreamCompiler;
+import edu.mit.streamjit.test.AbstractBenchmark;
+import edu.mit.streamjit.test.Benchmark;
+import edu.mit.streamjit.test.Benchmark.Dataset;
+import edu.mit.streamjit.test.BenchmarkProvider;
+import edu.mit.streamjit.test.Benchmarker;
+import edu.mit.streamjit.test.Datasets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Tests Compiler2's composition of index functions when removing nested
+ * splitjoins, checked against the interpreter.  Each level's first branch is
+ * the next level, so removing the splitters chains their transfer functions.
+ * @since 10/17/2026
+ */
+@ServiceProvider(BenchmarkProvider.class)
+public final class IndexFunctionSanity implements BenchmarkProvider {
+	public IndexFunctionSanity() {}
+
+	public static void main(String[] args) {
+		StreamCompiler sc = new Compiler2StreamCompiler();
+		for (Benchmarker.Result r : Benchmarker.runBenchmarks(new IndexFunctionSanity(), sc))
+			r.print(System.out);
+	}
+
+	@Override
+	public Iterator<Benchmark> iterator() {
+		Benchmark[] b = {
+			nested(new int[]{1, 2}, new int[]{3, 1}, new int[]{2, 5}),
+			nested(new int[]{3, 6, 12}, new int[]{1, 2}),
+			//power-of-two weights use the shift-and-mask form
+			nested(new int[]{2, 4, 8}, new int[]{64, 16}),
+			//periods 64 and 97 are coprime, so the composition's period is too
+			//long to represent and it isn't composed symbolically
+			nested(new int[]{64, 3}, new int[]{5, 97}),
+			//zero-weight channels have constant transfer functions
+			nested(new int[]{3, 0, 2}, new int[]{4, 1}),
+		};
+		return Arrays.asList(b).iterator();
+	}
+
+	/**
+	 * Creates a benchmark of nested splitjoins with the given splitter
+	 * weights, outermost first.  Branches with zero weight contain a source
+	 * pushing -1 instead of an identity.
+	 */
+	private static Benchmark nested(final int[]... levels) {
+		final Supplier<OneToOneElement<Object, Object>> graph = new Supplier<OneToOneElement<Object, Object>>() {
+			@Override
+			@SuppressWarnings({"unchecked", "rawtypes"})
+			public OneToOneElement<Object, Object> get() {
+				OneToOneElement<Integer, Integer> inner = new Identity<>();
+				for (int level = levels.length-1; level >= 0; --level) {
+					int[] weights = levels[level], joinWeights = weights.clone();
+					for (int i = 0; i < weights.length; ++i)
+						if (weights[i] == 0)
+							joinWeights[i] = 1;
+					Splitjoin<Integer, Integer> sj = new Splitjoin<>(new WeightedRoundrobinSplitter<Integer>(weights), new WeightedRoundrobinJoiner<Integer>(joinWeights));
+					for (int i = 0; i < weights.length; ++i)
+						sj.add(i == 0 ? inner : weights[i] == 0 ? new ConstantIntSource(-1) : new Identity<Integer>());
+					inner = sj;
+				}
+				return new Pipeline(new Identity<>(), inner, new Identity<>());
+			}
+		};
+		Dataset dataset = Datasets.allIntsInRange(0, 100_000);
+		dataset = dataset.withOutput(Datasets.outputOf(new InterpreterStreamCompiler(), graph.get(), dataset.input()));
+		String name = "IndexFunction "+Arrays.deepToString(levels);
+		return new AbstractBenchmark(name, dataset) {
+			@Override
+			public OneToOneElement<Object, Object> instantiate() {
+				return graph.get();
+			}
+		};
+	}
+
+	private static final class ConstantIntSource extends Filter<Integer, Integer> {
+		private final int x;
+		private ConstantIntSource(int x) {
+			super(0, 1);
+			this.x = x;
+		}
+		@Override
+		public void work() {
+			push(x);
+		}
+	}
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.test.sanity;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.math.DoubleMath;
+import com.jeffreybosboom.serviceproviderprocessor.ServiceProvider;
+import edu.mit.streamjit.api.CompiledStream;
+import edu.mit.streamjit.api.DuplicateSplitter;
+import edu.mit.streamjit.api.Filter;
+import edu.mit.streamjit.api.Input;
+import edu.mit.streamjit.api.OneToOneElement;
+import edu.mit.streamjit.api.Output;
+import edu.mit.streamjit.api.Pipeline;
+import edu.mit.streamjit.api.RoundrobinJoiner;
+import edu.mit.streamjit.api.RoundrobinSplitter;
+import edu.mit.streamjit.api.Splitjoin;
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.blob.Blob;
+import edu.mit.streamjit.impl.blob.Blob.Token;
+import edu.mit.streamjit.impl.blob.BlobFactory;
+import edu.mit.streamjit.impl.blob.Buffer;
+import edu.mit.streamjit.impl.blob.Buffers;
+import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.impl.common.ConnectWorkersVisitor;
+import edu.mit.streamjit.impl.common.Workers;
+import edu.mit.streamjit.impl.compiler2.Compiler2BlobFactory;
+import edu.mit.streamjit.impl.compiler2.Compiler2StreamCompiler;
+import edu.mit.streamjit.impl.compiler2.LinearAnalyzer;
+import edu.mit.streamjit.impl.compiler2.LinearRepresentation;
+import edu.mit.streamjit.impl.interp.InterpreterStreamCompiler;
+import edu.mit.streamjit.test.Benchmark;
+import edu.mit.streamjit.test.Benchmarker;
+import edu.mit.streamjit.test.Datasets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests Compiler2's linear filter combination on pipelines and splitjoins of
+ * FIR filters.  The benchmarks check against the interpreter's output (with
+ * the Benchmarker's floating-point tolerance); main() first checks
+ * LinearAnalyzer's results on individual filters, then runs each benchmark
+ * with the linear switches off and on, with the frequency switches on for long
+ * FIR filters, and drains a combined blob mid-stream and resumes it from its
+ * DrainData.
+ * @since 10/17/2026
+ */
+public final class LinearSanity {
+	private static final int ITEMS = 10000;
+	private LinearSanity() {}
+
+	public static final class FIR extends Filter<Float, Float> {
+		private final float[] taps;
+		public FIR(float[] taps) {
+			super(1, 1, taps.length);
+			this.taps = taps.clone();
+		}
+		@Override
+		public void work() {
+			float sum = 0;
+			for (int i = 0; i < taps.length; ++i)
+				sum += taps[i] * peek(i);
+			push(sum);
+			pop();
+		}
+	}
+
+	public static final class ScaleAndOffset extends Filter<Float, Float> {
+		public ScaleAndOffset() {
+			super(1, 1);
+		}
+		@Override
+		public void work() {
+			push(2 * pop() + 1);
+		}
+	}
+
+	/**
+	 * Not linear: its control flow depends on the item.
+	 */
+	public static final class BranchOnItem extends Filter<Float, Float> {
+		public BranchOnItem() {
+			super(1, 1);
+		}
+		@Override
+		public void work() {
+			float x = pop();
+			push(x > 0.5f ? x : -x);
+		}
+	}
+
+	/**
+	 * Not provably linear: it stores into an array held in a final field.
+	 */
+	public static final class StoreToFieldArray extends Filter<Float, Float> {
+		private final float[] last = new float[1];
+		public StoreToFieldArray() {
+			super(1, 1);
+		}
+		@Override
+		public void work() {
+			last[0] = peek(0);
+			push(2 * pop());
+		}
+	}
+
+	/**
+	 * Not provably linear: it reads a non-final field, which may change
+	 * between firings.
+	 */
+	public static final class NonFinalField extends Filter<Float, Float> {
+		private float gain = 3;
+		public NonFinalField() {
+			super(1, 1);
+		}
+		@Override
+		public void work() {
+			push(gain * pop());
+		}
+	}
+
+	private static FIR fir(int taps, int seed) {
+		float[] t = new float[taps];
+		for (int i = 0; i < taps; ++i)
+			t[i] = ((i * seed) % 5 - 2) / 8f;
+		return new FIR(t);
+	}
+
+	private static List<Float> inputItems() {
+		List<Float> items = new ArrayList<>(ITEMS);
+		for (int i = 0; i < ITEMS; ++i)
+			items.add((i % 101) / 101f);
+		return items;
+	}
+
+	private abstract static class LinearBenchmark implements Benchmark {
+		@Override
+		public List<Dataset> inputs() {
+			Dataset ds = Datasets.fromIterable("floats", inputItems());
+			return Collections.singletonList(ds.withOutput(Datasets.outputOf(new InterpreterStreamCompiler(), instantiate(), ds.input())));
+		}
+		@Override
+		public String toString() {
+			return "Linear "+getClass().getSimpleName();
+		}
+	}
+
+	@ServiceProvider(Benchmark.class)
+	public static final class FIRPipeline extends LinearBenchmark {
+		@Override
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		public OneToOneElement<Object, Object> instantiate() {
+			return new Pipeline(fir(4, 1), fir(5, 2), fir(3, 3));
+		}
+	}
+
+	@ServiceProvider(Benchmark.class)
+	public static final class FIRDuplicateSplitjoin extends LinearBenchmark {
+		@Override
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		public OneToOneElement<Object, Object> instantiate() {
+			return new Pipeline(fir(3, 1),
+					new Splitjoin(new DuplicateSplitter(), new RoundrobinJoiner(), fir(4, 2), fir(6, 3), fir(2, 4)));
+		}
+	}
+
+	@ServiceProvider(Benchmark.class)
+	public static final class FIRRoundrobinSplitjoin extends LinearBenchmark {
+		@Override
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		public OneToOneElement<Object, Object> instantiate() {
+			return new Splitjoin(new RoundrobinSplitter(2), new RoundrobinJoiner(2), fir(3, 2), fir(5, 3));
+		}
+	}
+
+	/**
+	 * An affine filter between FIR filters, so the combination carries an
+	 * offset.
+	 */
+	@ServiceProvider(Benchmark.class)
+	public static final class AffinePipeline extends LinearBenchmark {
+		@Override
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		public OneToOneElement<Object, Object> instantiate() {
+			return new Pipeline(fir(4, 1), new ScaleAndOffset(), fir(3, 2));
+		}
+	}
+
+	/**
+	 * Nonlinear filters between FIR filters, which must not be combined.
+	 */
+	@ServiceProvider(Benchmark.class)
+	public static final class NonlinearPipeline extends LinearBenchmark {
+		@Override
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		public OneToOneElement<Object, Object> instantiate() {
+			return new Pipeline(fir(4, 1), new BranchOnItem(), new StoreToFieldArray(), new NonFinalField(), fir(3, 2));
+		}
+	}
+
+	/**
+	 * An FIR filter long enough for the frequency domain to pay off.
+	 */
+	@ServiceProvider(Benchmark.class)
+	public static final class LongFIR extends LinearBenchmark {
+		@Override
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		public OneToOneElement<Object, Object> instantiate() {
+			return new Pipeline(fir(80, 3));
+		}
+	}
+
+	/**
+	 * Returns Compiler2's default configuration for the given benchmark with
+	 * every linear switch (and, if frequency is true, every frequency switch)
+	 * turned on.
+	 */
+	private static Configuration linearConfiguration(Benchmark benchmark, boolean frequency) {
+		ConnectWorkersVisitor cwv = new ConnectWorkersVisitor();
+		benchmark.instantiate().visit(cwv);
+		Configuration config = new Compiler2BlobFactory().getDefaultConfiguration(Workers.getAllWorkersInGraph(cwv.getSource()));
+		Configuration.Builder builder = Configuration.builder(config);
+		for (String name : config.getParametersMap().keySet())
+			if (name.startsWith("linear") || (frequency && name.startsWith("frequency"))) {
+				builder.removeParameter(name);
+				builder.addParameter(Configuration.SwitchParameter.create(name, true));
+			}
+		return builder.build();
+	}
+
+	/**
+	 * Runs the benchmark's graph on a combined blob that drains halfway
+	 * through the input, then on a second blob compiled from the first's
+	 * DrainData, and checks the output against the interpreter's.  Items the
+	 * combined filter peeked but never wrote intermediate results for must be
+	 * recomputed from the DrainData.
+	 */
+	private static void drainRoundTrip(Benchmark benchmark) throws InterruptedException {
+		List<Float> items = inputItems();
+		List<Object> expected = new ArrayList<>();
+		CompiledStream reference = new InterpreterStreamCompiler().compile(benchmark.instantiate(), Input.fromIterable(items), Output.toCollection(expected));
+		reference.awaitDrained();
+
+		ConnectWorkersVisitor cwv = new ConnectWorkersVisitor();
+		benchmark.instantiate().visit(cwv);
+		ImmutableSet<Worker<?, ?>> workers = Workers.getAllWorkersInGraph(cwv.getSource());
+		Configuration config = linearConfiguration(benchmark, false);
+		BlobFactory factory = new Compiler2BlobFactory();
+		Blob first = factory.makeBlob(workers, config, 1, null);
+		Buffer input = Buffers.queueBuffer(new ArrayDeque<>(), Integer.MAX_VALUE),
+				output = Buffers.queueBuffer(new ArrayDeque<>(), Integer.MAX_VALUE);
+		Map<Token, Buffer> buffers = ImmutableMap.of(
+				Iterables.getOnlyElement(first.getInputs()), input,
+				Iterables.getOnlyElement(first.getOutputs()), output);
+		for (Float f : items.subList(0, items.size() / 2))
+			input.write(f);
+		runUntilDrained(first, buffers);
+		Blob second = factory.makeBlob(workers, config, 1, first.getDrainData());
+		for (Float f : items.subList(items.size() / 2, items.size()))
+			input.write(f);
+		runUntilDrained(second, buffers);
+
+		List<Object> actual = new ArrayList<>();
+		while (output.size() > 0)
+			actual.add(output.read());
+		if (actual.size() != expected.size())
+			throw new AssertionError(String.format("%s: expected %d items, got %d", benchmark, expected.size(), actual.size()));
+		for (int i = 0; i < actual.size(); ++i)
+			if (!DoubleMath.fuzzyEquals((Float)expected.get(i), (Float)actual.get(i), 0.0001))
+				throw new AssertionError(String.format("%s: item %d: expected %s, got %s", benchmark, i, expected.get(i), actual.get(i)));
+		System.out.println(benchmark+": drain round trip OK");
+	}
+
+	/**
+	 * Runs the given single-core blob until it runs out of input and drains.
+	 */
+	private static void runUntilDrained(Blob blob, Map<Token, Buffer> buffers) throws InterruptedException {
+		if (blob.getCoreCount() != 1)
+			throw new AssertionError("expected one core, got "+blob.getCoreCount());
+		blob.installBuffers(buffers);
+		CountDownLatch drained = new CountDownLatch(1);
+		blob.drain(drained::countDown);
+		Runnable core = blob.getCoreCode(0);
+		while (drained.getCount() > 0)
+			core.run();
+	}
+
+	/**
+	 * Checks LinearAnalyzer extracts the taps of an FIR filter and the
+	 * offset of an affine filter, and rejects the nonlinear filters.
+	 */
+	private static void checkAnalyzer() {
+		float[] taps = new float[70];
+		for (int i = 0; i < taps.length; ++i)
+			taps[i] = (i % 7 - 3) / 8f;
+		LinearRepresentation fir = LinearAnalyzer.analyze(new FIR(taps));
+		if (fir == null || !fir.isFIR() || fir.peek() != taps.length || fir.offset(0) != 0)
+			throw new AssertionError("bad FIR representation: "+fir);
+		for (int i = 0; i < taps.length; ++i)
+			if (fir.coefficient(0, i) != taps[i])
+				throw new AssertionError(String.format("tap %d: expected %s, got %s", i, taps[i], fir.coefficient(0, i)));
+
+		LinearRepresentation affine = LinearAnalyzer.analyze(new ScaleAndOffset());
+		if (affine == null || affine.coefficient(0, 0) != 2 || affine.offset(0) != 1)
+			throw new AssertionError("bad ScaleAndOffset representation: "+affine);
+
+		for (Filter<?, ?> f : ImmutableList.<Filter<?, ?>>of(new BranchOnItem(), new StoreToFieldArray(), new NonFinalField()))
+			if (LinearAnalyzer.analyze(f) != null)
+				throw new AssertionError(f.getClass().getSimpleName()+" analyzed as linear");
+		System.out.println("LinearAnalyzer checks OK");
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		checkAnalyzer();
+		for (Benchmark b : ImmutableList.of(new FIRPipeline(), new FIRDuplicateSplitjoin(), new FIRRoundrobinSplitjoin(),
+				new AffinePipeline(), new NonlinearPipeline(), new LongFIR())) {
+			Benchmarker.runBenchmark(b, new Compiler2StreamCompiler()).get(0).print(System.out);
+			Benchmarker.runBenchmark(b, new Compiler2StreamCompiler().configuration(linearConfiguration(b, false))).get(0).print(System.out);
+		}
+		Benchmarker.runBenchmark(new LongFIR(), new Compiler2StreamCompiler().configuration(linearConfiguration(new LongFIR(), true))).get(0).print(System.out);
+		Benchmarker.runBenchmark(new FIRPipeline(), new Compiler2StreamCompiler().configuration(linearConfiguration(new FIRPipeline(), true))).get(0).print(System.out);
+		drainRoundTrip(new FIRPipeline());
+		drainRoundTrip(new FIRDuplicateSplitjoin());
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2013-2015 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.test.sanity;
+
+import com.google.common.base.Supplier;
+import com.jeffreybosboom.serviceproviderprocessor.ServiceProvider;
+import edu.mit.streamjit.api.DuplicateSplitter;
+import edu.mit.streamjit.api.Filter;
+import edu.mit.streamjit.api.OneToOneElement;
+import edu.mit.streamjit.api.Pipeline;
+import edu.mit.streamjit.api.Splitjoin;
+import edu.mit.streamjit.api.StreamCompiler;
+import edu.mit.streamjit.api.WeightedRoundrobinJoiner;
+import edu.mit.streamjit.api.WeightedRoundrobinSplitter;
+import edu.mit.streamjit.impl.compiler2.Compiler2StreamCompiler;
+import edu.mit.streamjit.impl.interp.InterpreterStreamCompiler;
+import edu.mit.streamjit.test.AbstractBenchmark;
+import edu.mit.streamjit.test.Benchmark;
+import edu.mit.streamjit.test.Benchmark.Dataset;
+import edu.mit.streamjit.test.BenchmarkProvider;
+import edu.mit.streamjit.test.Benchmarker;
+import edu.mit.streamjit.test.Datasets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Tests multirate graphs whose steady-state schedules Compiler2 solves with
+ * Schedule's combinatorial solver, checked against the interpreter.  The
+ * rates are chosen so the balance equations have nontrivial repetition
+ * vectors, within and between groups, and the peeking filters need init
+ * schedules.
+ * @since 10/17/2026
+ */
+@ServiceProvider(BenchmarkProvider.class)
+public final class ScheduleSolverSanity implements BenchmarkProvider {
+	public ScheduleSolverSanity() {}
+
+	public static void main(String[] args) {
+		StreamCompiler sc = new Compiler2StreamCompiler();
+		for (Benchmarker.Result r : Benchmarker.runBenchmarks(new ScheduleSolverSanity(), sc))
+			r.print(System.out);
+	}
+
+	@Override
+	public Iterator<Benchmark> iterator() {
+		Benchmark[] b = {
+			create("RatePipeline", new Supplier<OneToOneElement<Integer, Integer>>() {
+				@Override
+				public OneToOneElement<Integer, Integer> get() {
+					return new Pipeline<>(new RateFilter(1, 2, 1), new RateFilter(3, 2, 3), new RateFilter(2, 1, 5));
+				}
+			}),
+			create("RateDuplicateSplitjoin", new Supplier<OneToOneElement<Integer, Integer>>() {
+				@Override
+				public OneToOneElement<Integer, Integer> get() {
+					//per input item, the branches push 2 and 1/2 items
+					return new Pipeline<>(new RateFilter(2, 3, 2),
+							new Splitjoin<>(new DuplicateSplitter<Integer>(), new WeightedRoundrobinJoiner<Integer>(4, 1),
+									new RateFilter(1, 2, 1),
+									new Pipeline<>(new RateFilter(2, 1, 4), new RateFilter(3, 3, 3))));
+				}
+			}),
+			create("RateRoundrobinSplitjoin", new Supplier<OneToOneElement<Integer, Integer>>() {
+				@Override
+				public OneToOneElement<Integer, Integer> get() {
+					//per splitter firing, the branches push 3 and 1 items
+					return new Pipeline<>(
+							new Splitjoin<>(new WeightedRoundrobinSplitter<Integer>(2, 3), new WeightedRoundrobinJoiner<Integer>(3, 1),
+									new RateFilter(2, 3, 2),
+									new RateFilter(3, 1, 4)),
+							new RateFilter(5, 2, 7));
+				}
+			}),
+		};
+		return Arrays.asList(b).iterator();
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static Benchmark create(String name, final Supplier<OneToOneElement<Integer, Integer>> graph) {
+		Dataset dataset = Datasets.allIntsInRange(0, 100_000);
+		dataset = dataset.withOutput(Datasets.outputOf(new InterpreterStreamCompiler(), (OneToOneElement)graph.get(), dataset.input()));
+		return new AbstractBenchmark(name, dataset) {
+			@Override
+			public OneToOneElement<Object, Object> instantiate() {
+				return (OneToOneElement)graph.get();
+			}
+		};
+	}
+
+	/**
+	 * Pushes weighted sums of its peek window, so the output depends on every
+	 * item it peeks at and on their order.
+	 */
+	private static final class RateFilter extends Filter<Integer, Integer> {
+		private final int pops, pushes, peeks;
+		private RateFilter(int pop, int push, int peek) {
+			super(pop, push, peek);
+			this.pops = pop;
+			this.pushes = push;
+			this.peeks = peek;
+		}
+		@Override
+		public void work() {
+			int sum = 0;
+			for (int i = 0; i < peeks; ++i)
+				sum += (i + 1) * peek(i);
+			for (int i = 0; i < pushes; ++i)
+				push(sum + i);
+			for (int i = 0; i < pops; ++i)
+				pop();
+		}
+	}
+}
@@ -30,12 +30,15 @@ import edu.mit.streamjit.api.StatefulFilter;
 import edu.mit.streamjit.impl.common.TestFilters.StatefulAdder;
 import edu.mit.streamjit.impl.common.TestFilters.StatefulMultiplier;
 import edu.mit.streamjit.impl.compiler.CompilerStreamCompiler;
+import edu.mit.streamjit.impl.compiler2.Compiler2StreamCompiler;
+import edu.mit.streamjit.impl.compiler2.TieredStreamCompiler;
 import edu.mit.streamjit.impl.interp.DebugStreamCompiler;
 import edu.mit.streamjit.test.AbstractBenchmark;
 import edu.mit.streamjit.test.Benchmark;
 import edu.mit.streamjit.test.Benchmark.Dataset;
 import edu.mit.streamjit.test.Benchmarker;
 import edu.mit.streamjit.test.Datasets;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests stateful filters.
@@ -60,7 +63,7 @@ public class StatefulSanity {
 					new StatefulAdder(7));
 		}
 		@SuppressWarnings("unchecked")
-		private static Dataset plus3Times2Plus7(Dataset dataset) {
+		static Dataset plus3Times2Plus7(Dataset dataset) {
 			return dataset.withOutput(Datasets.transformOne(new Function<Integer, Integer>() {
 				private int a1 = 3, m = 2, a2 = 7;
 				@Override
@@ -75,7 +78,26 @@ public class StatefulSanity {
 		}
 	}
 
+	/**
+	 * Plus3Times2Plus7 with enough input that the tiered compiler switches
+	 * from the interpreter to compiled code mid-stream, and online tuning with
+	 * a short window swaps configurations mid-stream, so the filters' state
+	 * must carry over the switches.
+	 */
+	@ServiceProvider(Benchmark.class)
+	public static final class LongPlus3Times2Plus7 extends AbstractBenchmark {
+		public LongPlus3Times2Plus7() {
+			super("Stateful LongPlus3Times2Plus7", Plus3Times2Plus7.plus3Times2Plus7(Datasets.allIntsInRange(0, 2000000)));
+		}
+		@Override
+		public OneToOneElement<Object, Object> instantiate() {
+			return new Plus3Times2Plus7().instantiate();
+		}
+	}
+
 	public static void main(String[] args) {
 		Benchmarker.runBenchmark(new Plus3Times2Plus7(), new CompilerStreamCompiler()).get(0).print(System.out);
+		Benchmarker.runBenchmark(new LongPlus3Times2Plus7(), new TieredStreamCompiler()).get(0).print(System.out);
+		Benchmarker.runBenchmark(new LongPlus3Times2Plus7(), new Compiler2StreamCompiler().onlineTuning(10, TimeUnit.MILLISECONDS)).get(0).print(System.out);
 	}
 }